@@ -0,0 +1,119 @@
+package com.alex788.videos.benchmark;
+
+import com.alex788.videos.adapter.StorageDriveAdapter;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-memory storage that waits the given latency on every call, like a round trip to a remote storage would take.
+ * Without keeping videos it reads and drops them, so long save benchmarks don't run out of memory.
+ */
+class FakeStorageDriveAdapter implements StorageDriveAdapter {
+
+    private final long latencyNanos;
+    private final boolean keepVideos;
+    private final Map<List<String>, NavigableMap<String, byte[]>> foldersByPath = new ConcurrentHashMap<>();
+
+    FakeStorageDriveAdapter(long latencyMicros, boolean keepVideos) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.keepVideos = keepVideos;
+    }
+
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        roundTrip();
+        byte[] content;
+        try (InputStream inputStream = video.inputStream()) {
+            content = inputStream.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (keepVideos) {
+            folder(path).put(video.name(), content);
+        }
+        return Optional.of(toVideoInfo(video.name(), content));
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        roundTrip();
+        return folder(path).containsKey(videoName);
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        roundTrip();
+        NavigableMap<String, byte[]> folder = folder(path);
+        Map<String, Boolean> hasVideoByName = new LinkedHashMap<>();
+        for (String videoName : videoNames) {
+            hasVideoByName.put(videoName, folder.containsKey(videoName));
+        }
+        return hasVideoByName;
+    }
+
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        roundTrip();
+        return Optional.ofNullable(folder(path).get(videoName)).map(ByteArrayInputStream::new);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        roundTrip();
+        return Optional.ofNullable(folder(path).get(videoName))
+                .map(content -> new ByteArrayInputStream(Arrays.copyOfRange(content, (int) from, (int) to + 1)));
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        roundTrip();
+        return Optional.ofNullable(folder(path).get(videoName)).map(content -> toVideoInfo(videoName, content));
+    }
+
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        roundTrip();
+        NavigableMap<String, byte[]> folder = pageToken == null ? folder(path) : folder(path).tailMap(pageToken, false);
+        List<VideoInfo> videoInfos = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : folder.entrySet()) {
+            if (videoInfos.size() == pageSize) {
+                return new VideoInfosPage(videoInfos, videoInfos.get(pageSize - 1).name());
+            }
+            videoInfos.add(toVideoInfo(entry.getKey(), entry.getValue()));
+        }
+        return new VideoInfosPage(videoInfos, null);
+    }
+
+    private NavigableMap<String, byte[]> folder(String... path) {
+        return foldersByPath.computeIfAbsent(List.of(path), folderPath -> new ConcurrentSkipListMap<>());
+    }
+
+    private void roundTrip() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    private static VideoInfo toVideoInfo(String videoName, byte[] content) {
+        return new VideoInfo(videoName, content.length, null, null, Instant.EPOCH);
+    }
+}
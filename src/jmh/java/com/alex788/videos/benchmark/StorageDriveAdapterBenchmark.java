@@ -0,0 +1,76 @@
+package com.alex788.videos.benchmark;
+
+import com.alex788.videos.adapter.NegativeLookupStorageDriveAdapter;
+import com.alex788.videos.adapter.StorageDriveAdapter;
+import com.alex788.videos.entity.Video;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Existence checks of a folder with the given number of videos, directly and through the adapters stacked on top
+ * of the storage. Half of the checked names exist.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class StorageDriveAdapterBenchmark {
+
+    private static final String[] PATH = {"VideosApp", "user"};
+
+    @Param({"0", "200"})
+    public long storageLatencyMicros;
+
+    @Param({"1000"})
+    public int videoCount;
+
+    @Param({"plain", "negative-lookup"})
+    public String adapter;
+
+    StorageDriveAdapter storageDriveAdapter;
+
+    @Setup
+    public void setup() {
+        FakeStorageDriveAdapter storage = new FakeStorageDriveAdapter(storageLatencyMicros, true);
+        for (int i = 0; i < videoCount; i++) {
+            storage.save(new Video(null, existingName(i), new ByteArrayInputStream(new byte[0])), PATH);
+        }
+        storageDriveAdapter = switch (adapter) {
+            case "negative-lookup" -> new NegativeLookupStorageDriveAdapter(storage, 0.01, videoCount, 10,
+                    Duration.ofHours(1), MoreExecutors.directExecutor());
+            default -> storage;
+        };
+        // Builds the filters before the measurement.
+        storageDriveAdapter.hasVideo(existingName(0), PATH);
+    }
+
+    @Benchmark
+    public boolean hasVideo() {
+        int i = ThreadLocalRandom.current().nextInt(videoCount);
+        String videoName = ThreadLocalRandom.current().nextBoolean() ? existingName(i) : "missing-" + i + ".mp4";
+        return storageDriveAdapter.hasVideo(videoName, PATH);
+    }
+
+    private static String existingName(int i) {
+        return "video-" + i + ".mp4";
+    }
+}
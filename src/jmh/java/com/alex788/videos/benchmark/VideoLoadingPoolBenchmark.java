@@ -0,0 +1,84 @@
+package com.alex788.videos.benchmark;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.loading_video_pool.InMemoryVideoLoadingPool;
+import com.alex788.videos.loading_video_pool.LoadingReservation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission of the in-memory loading pool under contention. With one user every thread competes for the same
+ * counter and name set, with many users threads mostly touch different ones.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class VideoLoadingPoolBenchmark {
+
+    @Param({"1", "1000"})
+    public int userCount;
+
+    InMemoryVideoLoadingPool videoLoadingPool;
+    UUID[] userIds;
+
+    @Setup
+    public void setup() {
+        videoLoadingPool = new InMemoryVideoLoadingPool(2, InMemoryVideoLoadingPool.NO_GLOBAL_LOAD_LIMIT);
+        userIds = new UUID[userCount];
+        for (int i = 0; i < userCount; i++) {
+            userIds[i] = UUID.randomUUID();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadVideos {
+
+        Video[] videos;
+
+        @Setup
+        public void setup(VideoLoadingPoolBenchmark benchmark) {
+            String threadName = Thread.currentThread().getName();
+            videos = new Video[benchmark.userIds.length];
+            for (int i = 0; i < videos.length; i++) {
+                videos[i] = new Video(benchmark.userIds[i], threadName + ".mp4", null);
+            }
+        }
+
+        Video next() {
+            return videos[ThreadLocalRandom.current().nextInt(videos.length)];
+        }
+    }
+
+    @Benchmark
+    public LoadingReservation tryAddAndRemove(ThreadVideos threadVideos) {
+        Video video = threadVideos.next();
+        LoadingReservation reservation = videoLoadingPool.tryAdd(video);
+        if (reservation == LoadingReservation.RESERVED) {
+            videoLoadingPool.remove(video);
+        }
+        return reservation;
+    }
+
+    @Benchmark
+    public boolean canLoadParallelMore(ThreadVideos threadVideos) {
+        return videoLoadingPool.canLoadParallelMore(threadVideos.next().userId());
+    }
+}
@@ -0,0 +1,85 @@
+package com.alex788.videos.benchmark;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.executor.FairUploadScheduler;
+import com.alex788.videos.loading_video_pool.InMemoryVideoLoadingPool;
+import com.alex788.videos.repository.VideoRepositoryImpl;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The whole save path of the repository: admission by the loading pool, the duplicate check and the save itself.
+ * Saves run on the calling thread, so the benchmark measures the path and not the executor hand-off.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class VideoRepositoryAdmissionBenchmark {
+
+    /**
+     * File type box followed by a free box, so the content passes the MP4 check.
+     */
+    private static final byte[] CONTENT = ByteBuffer.allocate(1024)
+            .putInt(16).put("ftypisom".getBytes(StandardCharsets.US_ASCII)).putInt(0)
+            .putInt(1024 - 16).put("free".getBytes(StandardCharsets.US_ASCII))
+            .array();
+
+    @Param({"0", "100"})
+    public long storageLatencyMicros;
+
+    VideoRepositoryImpl videoRepository;
+    UUID[] userIds;
+    AtomicLong videoCounter = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        videoRepository = new VideoRepositoryImpl(new InMemoryVideoLoadingPool(), new FakeStorageDriveAdapter(storageLatencyMicros, false),
+                new FairUploadScheduler(MoreExecutors.newDirectExecutorService(), Integer.MAX_VALUE, Integer.MAX_VALUE, 64 * 1024 * 1024), Duration.ZERO);
+        userIds = new UUID[64];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = UUID.randomUUID();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        videoRepository.close();
+    }
+
+    @Benchmark
+    public boolean save() {
+        long videoNumber = videoCounter.incrementAndGet();
+        Video video = new Video(userIds[(int) (videoNumber % userIds.length)], videoNumber + ".mp4", new ByteArrayInputStream(CONTENT));
+        try {
+            videoRepository.save(video).join();
+            return true;
+        } catch (CompletionException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.video_cache.VideoBlockCache;
+import com.alex788.videos.video_cache.VideoCacheKey;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads videos through the {@link VideoBlockCache}: the content is downloaded as ranged reads of fixed-size blocks,
+ * several at once, instead of one sequential download, and seeks into popular videos are served from cached blocks.
+ * Videos without a checksum are read from the underlying storage as they are.
+ */
+@RequiredArgsConstructor
+public class BlockCachingStorageDriveAdapter implements StorageDriveAdapter {
+
+    private final StorageDriveAdapter storageDriveAdapter;
+    private final VideoBlockCache videoBlockCache;
+
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        try {
+            return storageDriveAdapter.save(video, path);
+        } finally {
+            videoBlockCache.invalidate(List.of(path), video.name());
+        }
+    }
+
+    @Override
+    public Optional<VideoInfo> saveByHash(String videoName, String sha256, String... path) {
+        try {
+            return storageDriveAdapter.saveByHash(videoName, sha256, path);
+        } finally {
+            videoBlockCache.invalidate(List.of(path), videoName);
+        }
+    }
+
+    @Override
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        return storageDriveAdapter.saveMetadata(videoName, metadata, path);
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        return storageDriveAdapter.hasVideo(videoName, path);
+    }
+
+    @Override
+    public boolean hasVideoBeforeSave(String videoName, String... path) {
+        return storageDriveAdapter.hasVideoBeforeSave(videoName, path);
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        return storageDriveAdapter.hasVideos(videoNames, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.getVideoInfo(videoName, path);
+        if (videoInfoOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        VideoInfo videoInfo = videoInfoOpt.get();
+        if (videoInfo.checksum() == null || videoInfo.size() == 0) {
+            return storageDriveAdapter.getVideoStream(videoName, path);
+        }
+        return Optional.of(open(videoName, videoInfo, 0, videoInfo.size() - 1, path));
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.getVideoInfo(videoName, path);
+        if (videoInfoOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        VideoInfo videoInfo = videoInfoOpt.get();
+        if (videoInfo.checksum() == null || from >= videoInfo.size()) {
+            return storageDriveAdapter.getVideoPartStream(videoName, from, to, path);
+        }
+        return Optional.of(open(videoName, videoInfo, from, Math.min(to, videoInfo.size() - 1), path));
+    }
+
+    @Override
+    public Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        return storageDriveAdapter.getVideoVersionPartStream(videoInfo, from, to, path);
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        return storageDriveAdapter.getVideoInfo(videoName, path);
+    }
+
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        return storageDriveAdapter.getVideoInfos(pageToken, pageSize, path);
+    }
+
+    /**
+     * Blocks are read from the file the info describes, so the blocks of a video replaced meanwhile aren't cached
+     * under the checksum of the old version.
+     */
+    private InputStream open(String videoName, VideoInfo videoInfo, long from, long to, String... path) {
+        VideoCacheKey key = new VideoCacheKey(List.of(path), videoName, videoInfo.checksum());
+        return videoBlockCache.open(key, videoInfo.size(), from, to, (blockFrom, blockTo) ->
+                storageDriveAdapter.getVideoVersionPartStream(videoInfo, blockFrom, blockTo, path)
+                        .orElseThrow(() -> new IOException("Video '" + videoName + "' was replaced or deleted while it was read.")));
+    }
+}
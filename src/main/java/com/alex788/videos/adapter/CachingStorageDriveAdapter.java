@@ -0,0 +1,126 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.video_cache.VideoCacheKey;
+import com.alex788.videos.video_cache.VideoDiskCache;
+import lombok.RequiredArgsConstructor;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Serves videos from the {@link VideoDiskCache} and fills it on full downloads from the underlying storage.
+ * Videos without a checksum are never cached, because a new version couldn't be told apart from the cached one.
+ * A cached video checked against the info of the storage within the validation TTL of the cache is served without
+ * asking the storage, so a new version saved by another node may be served only after the TTL.
+ */
+@RequiredArgsConstructor
+public class CachingStorageDriveAdapter implements StorageDriveAdapter {
+
+    private final StorageDriveAdapter storageDriveAdapter;
+    private final VideoDiskCache videoDiskCache;
+
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        try {
+            return storageDriveAdapter.save(video, path);
+        } finally {
+            videoDiskCache.invalidate(List.of(path), video.name());
+        }
+    }
+
+    @Override
+    public Optional<VideoInfo> saveByHash(String videoName, String sha256, String... path) {
+        try {
+            return storageDriveAdapter.saveByHash(videoName, sha256, path);
+        } finally {
+            videoDiskCache.invalidate(List.of(path), videoName);
+        }
+    }
+
+    @Override
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        return storageDriveAdapter.saveMetadata(videoName, metadata, path);
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        return storageDriveAdapter.hasVideo(videoName, path);
+    }
+
+    @Override
+    public boolean hasVideoBeforeSave(String videoName, String... path) {
+        return storageDriveAdapter.hasVideoBeforeSave(videoName, path);
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        return storageDriveAdapter.hasVideos(videoNames, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        Optional<InputStream> validatedInputStreamOpt = videoDiskCache.getValidated(List.of(path), videoName);
+        if (validatedInputStreamOpt.isPresent()) {
+            return validatedInputStreamOpt;
+        }
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.getVideoInfo(videoName, path);
+        if (videoInfoOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        VideoInfo videoInfo = videoInfoOpt.get();
+        if (videoInfo.checksum() == null) {
+            return storageDriveAdapter.getVideoStream(videoName, path);
+        }
+
+        VideoCacheKey key = new VideoCacheKey(List.of(path), videoName, videoInfo.checksum());
+        Optional<InputStream> cachedInputStreamOpt = videoDiskCache.get(key);
+        if (cachedInputStreamOpt.isPresent()) {
+            return cachedInputStreamOpt;
+        }
+        return storageDriveAdapter.getVideoStream(videoName, path)
+                .map(inputStream -> videoDiskCache.putWhileReading(key, videoInfo.size(), inputStream));
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        Optional<InputStream> validatedInputStreamOpt = videoDiskCache.getValidatedPart(List.of(path), videoName, from, to);
+        if (validatedInputStreamOpt.isPresent()) {
+            return validatedInputStreamOpt;
+        }
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.getVideoInfo(videoName, path);
+        if (videoInfoOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        VideoInfo videoInfo = videoInfoOpt.get();
+        if (videoInfo.checksum() != null) {
+            VideoCacheKey key = new VideoCacheKey(List.of(path), videoName, videoInfo.checksum());
+            Optional<InputStream> cachedInputStreamOpt = videoDiskCache.getPart(key, from, to);
+            if (cachedInputStreamOpt.isPresent()) {
+                return cachedInputStreamOpt;
+            }
+        }
+        return storageDriveAdapter.getVideoPartStream(videoName, from, to, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        return storageDriveAdapter.getVideoVersionPartStream(videoInfo, from, to, path);
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        return storageDriveAdapter.getVideoInfo(videoName, path);
+    }
+
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        return storageDriveAdapter.getVideoInfos(pageToken, pageSize, path);
+    }
+}
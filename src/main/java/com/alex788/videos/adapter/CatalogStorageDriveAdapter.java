@@ -0,0 +1,138 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.video_catalog.VideoCatalog;
+import lombok.RequiredArgsConstructor;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Answers metadata requests from the {@link VideoCatalog} instead of the underlying storage. A folder is loaded
+ * into the catalog on the first access, then it's kept up to date by saves through this adapter and by the
+ * changes of the storage. Video content is always read from the underlying storage.
+ */
+@RequiredArgsConstructor
+public class CatalogStorageDriveAdapter implements StorageDriveAdapter {
+
+    private static final int HYDRATION_PAGE_SIZE = 1000;
+
+    private final StorageDriveAdapter storageDriveAdapter;
+    private final StorageChangeFeed storageChangeFeed;
+    private final VideoCatalog videoCatalog;
+
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.save(video, path);
+        videoInfoOpt.ifPresent(videoInfo -> videoCatalog.put(List.of(path), videoInfo));
+        return videoInfoOpt;
+    }
+
+    @Override
+    public Optional<VideoInfo> saveByHash(String videoName, String sha256, String... path) {
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.saveByHash(videoName, sha256, path);
+        videoInfoOpt.ifPresent(videoInfo -> videoCatalog.put(List.of(path), videoInfo));
+        return videoInfoOpt;
+    }
+
+    @Override
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.saveMetadata(videoName, metadata, path);
+        videoInfoOpt.ifPresent(videoInfo -> videoCatalog.put(List.of(path), videoInfo));
+        return videoInfoOpt;
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        return getVideoInfo(videoName, path).isPresent();
+    }
+
+    @Override
+    public boolean hasVideoBeforeSave(String videoName, String... path) {
+        return storageDriveAdapter.hasVideoBeforeSave(videoName, path);
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        Set<String> existingVideoNames = hydrate(path) ? videoCatalog.findExistingNames(List.of(path), videoNames) : Set.of();
+        Map<String, Boolean> hasVideoByName = new LinkedHashMap<>();
+        for (String videoName : videoNames) {
+            hasVideoByName.put(videoName, existingVideoNames.contains(videoName));
+        }
+        return hasVideoByName;
+    }
+
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        return storageDriveAdapter.getVideoStream(videoName, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        return storageDriveAdapter.getVideoPartStream(videoName, from, to, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        return storageDriveAdapter.getVideoVersionPartStream(videoInfo, from, to, path);
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        if (!hydrate(path)) {
+            return Optional.empty();
+        }
+        return videoCatalog.find(List.of(path), videoName);
+    }
+
+    /**
+     * Pages the catalog by name, so a page token stays valid while the folder changes.
+     */
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        if (!hydrate(path)) {
+            return VideoInfosPage.empty();
+        }
+        List<VideoInfo> videoInfos = videoCatalog.findPage(List.of(path), NamePageTokens.toLastVideoName(pageToken), pageSize + 1);
+        if (videoInfos.size() <= pageSize) {
+            return new VideoInfosPage(videoInfos, null);
+        }
+        List<VideoInfo> pageVideoInfos = videoInfos.subList(0, pageSize);
+        return new VideoInfosPage(pageVideoInfos, NamePageTokens.toPageToken(pageVideoInfos.get(pageSize - 1).name()));
+    }
+
+    /**
+     * Lists the folder page by page unless it's already in the catalog, then puts the whole listing into the catalog
+     * at once.
+     *
+     * @return {@code false} if the folder doesn't exist in the storage
+     */
+    private boolean hydrate(String... path) {
+        List<String> folderPath = List.of(path);
+        if (videoCatalog.isHydrated(folderPath)) {
+            return true;
+        }
+        Optional<String> folderIdOpt = storageChangeFeed.getFolderId(path);
+        if (folderIdOpt.isEmpty()) {
+            return false;
+        }
+        List<VideoInfo> videoInfos = new ArrayList<>();
+        String pageToken = null;
+        do {
+            VideoInfosPage page = storageDriveAdapter.getVideoInfos(pageToken, HYDRATION_PAGE_SIZE, path);
+            videoInfos.addAll(page.videoInfos());
+            pageToken = page.nextPageToken();
+        } while (pageToken != null);
+        videoCatalog.hydrate(folderPath, folderIdOpt.get(), videoInfos);
+        return true;
+    }
+}
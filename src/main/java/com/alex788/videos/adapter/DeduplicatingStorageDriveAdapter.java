@@ -0,0 +1,279 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.exception.VideoWithSameNameAlreadyExistsException;
+import com.alex788.videos.video_blob.VideoBlob;
+import com.alex788.videos.video_blob.VideoBlobReference;
+import com.alex788.videos.video_blob.VideoBlobStore;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Stores every content once. A video with a known SHA-256 is saved as a reference of its folder to the blob of the
+ * content, the blob is transferred to the underlying storage only if no video with the same content was saved before.
+ * Blobs are videos of the blob folder named by their hash.
+ * <p>
+ * Videos without a known hash and videos saved before the deduplication are stored by name as usual,
+ * so every lookup checks the references first and the folder of the underlying storage next.
+ */
+public class DeduplicatingStorageDriveAdapter implements StorageDriveAdapter {
+
+    private static final String BLOB_EXTENSION = ".mp4";
+    private static final String STORAGE_DONE = "~";
+
+    private final StorageDriveAdapter storageDriveAdapter;
+    private final VideoBlobStore videoBlobStore;
+    private final String[] blobPath;
+
+    /**
+     * @param blobPath path of the folder blobs are stored in
+     */
+    public DeduplicatingStorageDriveAdapter(StorageDriveAdapter storageDriveAdapter, VideoBlobStore videoBlobStore, String... blobPath) {
+        this.storageDriveAdapter = storageDriveAdapter;
+        this.videoBlobStore = videoBlobStore;
+        this.blobPath = blobPath;
+    }
+
+    /**
+     * The content of the video must have the hash the video is given. If the blob folder doesn't exist,
+     * the video is stored by name.
+     */
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        if (video.sha256() == null) {
+            return storageDriveAdapter.save(video, path);
+        }
+        if (videoBlobStore.findBlob(video.sha256()).isEmpty()) {
+            // Two first uploads of the same content may both transfer it, the blobs have the same content and name.
+            Video blobVideo = new Video(video.userId(), toBlobName(video.sha256()), video.inputStream(), video.sha256());
+            Optional<VideoInfo> blobInfoOpt = storageDriveAdapter.save(blobVideo, blobPath);
+            if (blobInfoOpt.isEmpty()) {
+                return storageDriveAdapter.save(video, path);
+            }
+            VideoInfo blobInfo = blobInfoOpt.get();
+            videoBlobStore.putBlob(new VideoBlob(video.sha256(), blobInfo.size(), blobInfo.fileId(), blobInfo.checksum(), null));
+        }
+        return addReference(video.name(), video.sha256(), path);
+    }
+
+    /**
+     * Only a folder that already references the content may reference it again without transferring it. Otherwise
+     * anyone knowing the hash of a video of another folder could get its content, and the answer would tell
+     * whether the content is stored at all.
+     */
+    @Override
+    public Optional<VideoInfo> saveByHash(String videoName, String sha256, String... path) {
+        if (!videoBlobStore.hasReferenceTo(List.of(path), sha256)) {
+            return Optional.empty();
+        }
+        return addReference(videoName, sha256, path);
+    }
+
+    private Optional<VideoInfo> addReference(String videoName, String sha256, String... path) {
+        if (!videoBlobStore.addReference(List.of(path), videoName, sha256, Instant.now())) {
+            throw new VideoWithSameNameAlreadyExistsException("Video with name '" + videoName + "' already exists.");
+        }
+        return videoBlobStore.findReference(List.of(path), videoName).map(VideoBlobReference::toVideoInfo);
+    }
+
+    /**
+     * Metadata of a referenced video is kept with its blob, so it's shared by all videos with the same content.
+     */
+    @Override
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        Optional<VideoBlobReference> referenceOpt = videoBlobStore.findReference(List.of(path), videoName);
+        if (referenceOpt.isEmpty()) {
+            return storageDriveAdapter.saveMetadata(videoName, metadata, path);
+        }
+        videoBlobStore.putBlobMetadata(referenceOpt.get().blob().sha256(), metadata);
+        return videoBlobStore.findReference(List.of(path), videoName).map(VideoBlobReference::toVideoInfo);
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        return videoBlobStore.findReference(List.of(path), videoName).isPresent()
+                || storageDriveAdapter.hasVideo(videoName, path);
+    }
+
+    @Override
+    public boolean hasVideoBeforeSave(String videoName, String... path) {
+        return videoBlobStore.findReference(List.of(path), videoName).isPresent()
+                || storageDriveAdapter.hasVideoBeforeSave(videoName, path);
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        Set<String> referencedVideoNames = videoBlobStore.findReferencedNames(List.of(path), videoNames);
+        List<String> storedVideoNames = videoNames.stream()
+                .filter(videoName -> !referencedVideoNames.contains(videoName))
+                .toList();
+        Map<String, Boolean> storageHasVideoByName = storedVideoNames.isEmpty()
+                ? Map.of()
+                : storageDriveAdapter.hasVideos(storedVideoNames, path);
+
+        Map<String, Boolean> hasVideoByName = new LinkedHashMap<>();
+        for (String videoName : videoNames) {
+            hasVideoByName.put(videoName, referencedVideoNames.contains(videoName) || storageHasVideoByName.getOrDefault(videoName, false));
+        }
+        return hasVideoByName;
+    }
+
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        Optional<VideoBlobReference> referenceOpt = videoBlobStore.findReference(List.of(path), videoName);
+        if (referenceOpt.isPresent()) {
+            return storageDriveAdapter.getVideoStream(toBlobName(referenceOpt.get().blob().sha256()), blobPath);
+        }
+        return storageDriveAdapter.getVideoStream(videoName, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        Optional<VideoBlobReference> referenceOpt = videoBlobStore.findReference(List.of(path), videoName);
+        if (referenceOpt.isPresent()) {
+            return storageDriveAdapter.getVideoPartStream(toBlobName(referenceOpt.get().blob().sha256()), from, to, blobPath);
+        }
+        return storageDriveAdapter.getVideoPartStream(videoName, from, to, path);
+    }
+
+    /**
+     * The info of a referencing video carries the file id of its blob.
+     */
+    @Override
+    public Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        Optional<VideoBlobReference> referenceOpt = videoBlobStore.findReference(List.of(path), videoInfo.name());
+        if (referenceOpt.isPresent()) {
+            VideoInfo blobInfo = new VideoInfo(toBlobName(referenceOpt.get().blob().sha256()), videoInfo.size(), videoInfo.fileId(),
+                    videoInfo.checksum(), videoInfo.createdTime(), videoInfo.metadata());
+            return storageDriveAdapter.getVideoVersionPartStream(blobInfo, from, to, blobPath);
+        }
+        return storageDriveAdapter.getVideoVersionPartStream(videoInfo, from, to, path);
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        Optional<VideoBlobReference> referenceOpt = videoBlobStore.findReference(List.of(path), videoName);
+        if (referenceOpt.isPresent()) {
+            return referenceOpt.map(VideoBlobReference::toVideoInfo);
+        }
+        return storageDriveAdapter.getVideoInfo(videoName, path);
+    }
+
+    /**
+     * Merges the pages of the underlying storage with the references by name. A page ends at the last video of the
+     * storage page, because the next storage page may have videos ordered before the remaining references.
+     * The token keeps the token of the storage page and the name of the last video returned.
+     */
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        MergedPageToken token = MergedPageToken.decode(pageToken);
+
+        List<VideoInfo> storageVideoInfos = new ArrayList<>();
+        String nextStoragePageToken = null;
+        if (!token.storageDone()) {
+            VideoInfosPage storagePage = storageDriveAdapter.getVideoInfos(token.storagePageToken(), pageSize, path);
+            for (VideoInfo videoInfo : storagePage.videoInfos()) {
+                if (token.lastVideoName() == null || videoInfo.name().compareTo(token.lastVideoName()) > 0) {
+                    storageVideoInfos.add(videoInfo);
+                }
+            }
+            nextStoragePageToken = storagePage.nextPageToken();
+            if (storagePage.videoInfos().isEmpty() && nextStoragePageToken != null) {
+                return new VideoInfosPage(List.of(), new MergedPageToken(nextStoragePageToken, false, token.lastVideoName()).encode());
+            }
+        }
+        boolean storageHasMorePages = nextStoragePageToken != null;
+        List<VideoInfo> referenceVideoInfos = videoBlobStore.findReferencesPage(List.of(path), token.lastVideoName(), pageSize).stream()
+                .map(VideoBlobReference::toVideoInfo)
+                .toList();
+
+        String lastStorageVideoName = storageVideoInfos.isEmpty() ? null : storageVideoInfos.get(storageVideoInfos.size() - 1).name();
+        List<VideoInfo> videoInfos = new ArrayList<>();
+        int storageIndex = 0;
+        int referenceIndex = 0;
+        while (videoInfos.size() < pageSize) {
+            VideoInfo storageVideoInfo = storageIndex < storageVideoInfos.size() ? storageVideoInfos.get(storageIndex) : null;
+            VideoInfo referenceVideoInfo = referenceIndex < referenceVideoInfos.size() ? referenceVideoInfos.get(referenceIndex) : null;
+            if (storageVideoInfo == null && (referenceVideoInfo == null || storageHasMorePages
+                    && (lastStorageVideoName == null || referenceVideoInfo.name().compareTo(lastStorageVideoName) > 0))) {
+                break;
+            }
+            int comparison = storageVideoInfo == null ? 1
+                    : referenceVideoInfo == null ? -1
+                    : storageVideoInfo.name().compareTo(referenceVideoInfo.name());
+            if (comparison <= 0) {
+                videoInfos.add(storageVideoInfo);
+                storageIndex++;
+                if (comparison == 0) {
+                    referenceIndex++;
+                }
+            } else {
+                videoInfos.add(referenceVideoInfo);
+                referenceIndex++;
+            }
+        }
+
+        String lastVideoName = videoInfos.isEmpty() ? token.lastVideoName() : videoInfos.get(videoInfos.size() - 1).name();
+        boolean storagePageDone = storageIndex == storageVideoInfos.size();
+        boolean storageDone = token.storageDone() || storagePageDone && !storageHasMorePages;
+        boolean referencesDone = referenceIndex == referenceVideoInfos.size() && referenceVideoInfos.size() < pageSize;
+        if (storageDone && referencesDone) {
+            return new VideoInfosPage(videoInfos, null);
+        }
+        String storagePageTokenOfNextPage = storagePageDone ? nextStoragePageToken : token.storagePageToken();
+        return new VideoInfosPage(videoInfos, new MergedPageToken(storagePageTokenOfNextPage, storageDone, lastVideoName).encode());
+    }
+
+    private static String toBlobName(String sha256) {
+        return sha256 + BLOB_EXTENSION;
+    }
+
+    /**
+     * @param storagePageToken token of the storage page the next page starts in, {@code null} for the first one
+     * @param storageDone      whether all videos of the storage were returned
+     * @param lastVideoName    name of the last video returned, {@code null} if none was returned yet
+     */
+    private record MergedPageToken(String storagePageToken, boolean storageDone, String lastVideoName) {
+
+        static MergedPageToken decode(String pageToken) {
+            if (pageToken == null) {
+                return new MergedPageToken(null, false, null);
+            }
+            int separatorIndex = pageToken.indexOf('.');
+            if (separatorIndex < 0) {
+                throw new IllegalArgumentException("Illegal page token '" + pageToken + "'.");
+            }
+            String storagePart = pageToken.substring(0, separatorIndex);
+            String lastVideoName = NamePageTokens.toLastVideoName(pageToken.substring(separatorIndex + 1));
+            if (storagePart.equals(STORAGE_DONE)) {
+                return new MergedPageToken(null, true, lastVideoName);
+            }
+            try {
+                String storagePageToken = storagePart.isEmpty() ? null : new String(Base64.getUrlDecoder().decode(storagePart), StandardCharsets.UTF_8);
+                return new MergedPageToken(storagePageToken, false, lastVideoName);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Illegal page token '" + pageToken + "'.", e);
+            }
+        }
+
+        String encode() {
+            String storagePart = storageDone ? STORAGE_DONE
+                    : storagePageToken == null ? ""
+                    : Base64.getUrlEncoder().withoutPadding().encodeToString(storagePageToken.getBytes(StandardCharsets.UTF_8));
+            return storagePart + "." + NamePageTokens.toPageToken(lastVideoName == null ? "" : lastVideoName);
+        }
+    }
+}
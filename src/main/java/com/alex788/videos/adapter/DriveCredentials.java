@@ -0,0 +1,31 @@
+package com.alex788.videos.adapter;
+
+import java.nio.file.Path;
+
+/**
+ * How the {@link GoogleDriveAdapter} authorizes to the drive.
+ *
+ * @param serviceAccountKeyFile JSON key of the service account, used by {@link Type#SERVICE_ACCOUNT} only
+ */
+public record DriveCredentials(Type type, Path serviceAccountKeyFile) {
+
+    public static DriveCredentials installedApp() {
+        return new DriveCredentials(Type.INSTALLED_APP, null);
+    }
+
+    public static DriveCredentials serviceAccount(Path serviceAccountKeyFile) {
+        return new DriveCredentials(Type.SERVICE_ACCOUNT, serviceAccountKeyFile);
+    }
+
+    public enum Type {
+        /**
+         * Asks the user to authorize in the browser on the first start and keeps the tokens in the tokens directory.
+         */
+        INSTALLED_APP,
+        /**
+         * Authorizes as the service account without a user, the drive is the one of the service account
+         * or shared with it.
+         */
+        SERVICE_ACCOUNT
+    }
+}
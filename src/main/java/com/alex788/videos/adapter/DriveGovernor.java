@@ -0,0 +1,196 @@
+package com.alex788.videos.adapter;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.util.BackOff;
+import com.google.api.client.util.BackOffUtils;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.Sleeper;
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+
+/**
+ * Keeps the drive calls within the quota. Every HTTP request to the drive, retries and upload chunks included,
+ * takes a permit of a token bucket refilled at the allowed rate, so bursts queue up on the client instead of
+ * being rejected by the drive. Rejected requests are retried with exponential back-off and jitter, each rejection
+ * at a single level: 429 and 5xx by the HTTP request itself, honoring Retry-After, and 403 for the rate by
+ * {@link #execute}, since its reason is in the error body that the request can't read without consuming it.
+ * Both levels give up after the max retries or the max elapsed time.
+ */
+public class DriveGovernor {
+
+    private static final Set<String> RATE_LIMIT_REASONS = Set.of("rateLimitExceeded", "userRateLimitExceeded");
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int FORBIDDEN = 403;
+    private static final double RANDOMIZATION_FACTOR = 0.5;
+
+    private final RateLimiter rateLimiter;
+    private final int maxRetries;
+    private final Duration initialBackOff;
+    private final Duration maxBackOff;
+    private final Duration maxElapsedTime;
+    private final Sleeper sleeper;
+
+    /**
+     * @param requestsPerSecond rate of the requests to the drive, 0 means no limit
+     * @param maxRetries        retries of a rejected request before its error is thrown
+     * @param maxElapsedTime    time since the first attempt after which a rejected request isn't retried anymore
+     */
+    public DriveGovernor(double requestsPerSecond, int maxRetries, Duration initialBackOff, Duration maxBackOff,
+                         Duration maxElapsedTime) {
+        this(requestsPerSecond, maxRetries, initialBackOff, maxBackOff, maxElapsedTime, Sleeper.DEFAULT);
+    }
+
+    DriveGovernor(double requestsPerSecond, int maxRetries, Duration initialBackOff, Duration maxBackOff,
+                  Duration maxElapsedTime, Sleeper sleeper) {
+        this.rateLimiter = requestsPerSecond > 0 ? RateLimiter.create(requestsPerSecond) : null;
+        this.maxRetries = maxRetries;
+        this.initialBackOff = initialBackOff;
+        this.maxBackOff = maxBackOff;
+        this.maxElapsedTime = maxElapsedTime;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Waits for a permit of the token bucket, called before every HTTP request.
+     */
+    public void acquire() {
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @return back-off doubling from the initial to the max interval, each interval randomized by half of it,
+     * stopping once the max elapsed time has passed
+     */
+    public BackOff newBackOff() {
+        return newExponentialBackOff();
+    }
+
+    /**
+     * @return handler of a request retrying it on 429 and 5xx after the back-off or after the Retry-After
+     * of the response if it's longer. A Retry-After beyond the max elapsed time fails the request at once.
+     */
+    public HttpUnsuccessfulResponseHandler newUnsuccessfulResponseHandler() {
+        ExponentialBackOff backOff = newExponentialBackOff();
+        return (request, response, supportsRetry) -> {
+            int statusCode = response.getStatusCode();
+            if (!supportsRetry || (statusCode != TOO_MANY_REQUESTS && statusCode / 100 != 5)) {
+                return false;
+            }
+            long backOffMillis = backOff.nextBackOffMillis();
+            if (backOffMillis == BackOff.STOP) {
+                return false;
+            }
+            long retryAfterMillis = getRetryAfterMillis(response);
+            if (backOff.getElapsedTimeMillis() + retryAfterMillis > maxElapsedTime.toMillis()) {
+                return false;
+            }
+            sleep(Math.max(backOffMillis, retryAfterMillis));
+            return true;
+        };
+    }
+
+    /**
+     * Runs the call and retries it while the drive rejects it with 403 for the rate, other rejections are retried
+     * by the request. Only calls that can be repeated as a whole may be run this way, the content of an upload
+     * is read once.
+     */
+    public <T> T execute(DriveCall<T> call) throws IOException {
+        BackOff backOff = newBackOff();
+        int retries = 0;
+        while (true) {
+            try {
+                return call.execute();
+            } catch (GoogleJsonResponseException e) {
+                if (e.getStatusCode() != FORBIDDEN || !isRateLimited(e) || retries >= maxRetries || !backOff(backOff)) {
+                    throw e;
+                }
+                retries++;
+            }
+        }
+    }
+
+    /**
+     * The drive answers 403 with a rate limit reason or 429 if a call exceeded the quota.
+     */
+    static boolean isRateLimited(GoogleJsonResponseException e) {
+        if (e.getStatusCode() == TOO_MANY_REQUESTS) {
+            return true;
+        }
+        if (e.getStatusCode() != FORBIDDEN || e.getDetails() == null || e.getDetails().getErrors() == null) {
+            return false;
+        }
+        return e.getDetails().getErrors().stream()
+                .map(GoogleJsonError.ErrorInfo::getReason)
+                .anyMatch(RATE_LIMIT_REASONS::contains);
+    }
+
+    private ExponentialBackOff newExponentialBackOff() {
+        return new ExponentialBackOff.Builder()
+                .setInitialIntervalMillis((int) initialBackOff.toMillis())
+                .setMaxIntervalMillis((int) maxBackOff.toMillis())
+                .setMaxElapsedTimeMillis((int) maxElapsedTime.toMillis())
+                .setRandomizationFactor(RANDOMIZATION_FACTOR)
+                .build();
+    }
+
+    /**
+     * Retry-After is either a number of seconds or an HTTP date, 0 if it's missing or malformed.
+     */
+    private static long getRetryAfterMillis(HttpResponse response) {
+        String retryAfter = response.getHeaders().getRetryAfter();
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                Instant retryAt = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Math.max(0, Duration.between(Instant.now(), retryAt).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    private boolean backOff(BackOff backOff) throws IOException {
+        try {
+            return BackOffUtils.next(sleeper, backOff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from the drive.");
+        }
+    }
+
+    private void sleep(long millis) throws IOException {
+        try {
+            sleeper.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from the drive.");
+        }
+    }
+
+    @FunctionalInterface
+    public interface DriveCall<T> {
+
+        T execute() throws IOException;
+    }
+}
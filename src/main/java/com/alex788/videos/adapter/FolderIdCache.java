@@ -0,0 +1,69 @@
+package com.alex788.videos.adapter;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bounded cache of storage folder ids keyed by folder path. Entries expire after the given ttl
+ * and are evicted when the maximum size is reached.
+ */
+public class FolderIdCache {
+
+    private final Cache<List<String>, String> folderIdsByPath;
+
+    public FolderIdCache(long maxSize, Duration ttl) {
+        this(maxSize, ttl, Ticker.systemTicker());
+    }
+
+    FolderIdCache(long maxSize, Duration ttl, Ticker ticker) {
+        folderIdsByPath = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    public Optional<String> get(List<String> path) {
+        return Optional.ofNullable(folderIdsByPath.getIfPresent(path));
+    }
+
+    public void put(List<String> path, String folderId) {
+        folderIdsByPath.put(List.copyOf(path), folderId);
+    }
+
+    /**
+     * Removes the folder with the given path and all folders nested in it.
+     */
+    public void invalidate(List<String> path) {
+        folderIdsByPath.asMap().keySet()
+                .removeIf(cachedPath -> cachedPath.size() >= path.size() && cachedPath.subList(0, path.size()).equals(path));
+    }
+
+    /**
+     * Exports the hits, misses, evictions and size as the {@code cache.*} meters tagged with {@code cache=folder-ids}.
+     */
+    public void monitor(MeterRegistry meterRegistry, Iterable<Tag> tags) {
+        GuavaCacheMetrics.monitor(meterRegistry, folderIdsByPath, "folder-ids", tags);
+    }
+
+    public long getHitCount() {
+        return folderIdsByPath.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return folderIdsByPath.stats().missCount();
+    }
+
+    public long size() {
+        return folderIdsByPath.size();
+    }
+}
@@ -1,31 +1,57 @@
 package com.alex788.videos.adapter;
 
 import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.metrics.RequestDriveCalls;
+import com.alex788.videos.video_metadata.VideoMetadataProperties;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
 import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
 import com.google.api.client.googleapis.auth.oauth2.GoogleClientSecrets;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.googleapis.auth.oauth2.GoogleCredential;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
 import com.google.api.client.http.InputStreamContent;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.DriveScopes;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
+import com.google.common.io.CountingInputStream;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
 import java.io.*;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-public class GoogleDriveAdapter implements StorageDriveAdapter { //todo: прописать в сигнатуре throws
+public class GoogleDriveAdapter implements StorageDriveAdapter, StorageChangeFeed { //todo: прописать в сигнатуре throws
     // todo: переделать под InputStreams/OutputStream, избваиться от зависимости на Video. И переименовать методы на более абстрактные(без использования слова видео)
 
     private static final String APPLICATION_NAME = "VideosApp"; // todo: все конфиги вынести в GDrive конфиг файл
@@ -33,17 +59,74 @@ public class GoogleDriveAdapter implements StorageDriveAdapter { //todo: про
     private static final String CREDENTIALS_FILE_PATH = "/credentials.json";
     private static final String TOKENS_DIRECTORY_PATH = "tokens";
     private static final List<String> SCOPES = Collections.singletonList(DriveScopes.DRIVE);
+    private static final String VIDEO_MIME_TYPE = "video/mp4";
+    private static final String FILE_FIELDS = "id, name, size, md5Checksum, createdTime, appProperties";
+    private static final int CHANGES_PAGE_SIZE = 1000;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final long IDLE_CONNECTION_TIMEOUT_SECONDS = 60;
 
-    private final NetHttpTransport httpTransport;
+    private final HttpTransport httpTransport;
     private final Drive drive;
+    private final FolderIdCache folderIdCache;
+    private final int uploadChunkSize;
+    private final DriveGovernor driveGovernor;
+    private final MeterRegistry meterRegistry;
 
-    public GoogleDriveAdapter() throws GeneralSecurityException, IOException {
-        httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        drive = new Drive.Builder(httpTransport, JSON_FACTORY, getCredentials())
+    public GoogleDriveAdapter() throws IOException {
+        this(new FolderIdCache(1000, Duration.ofMinutes(10)), 8 * 1024 * 1024,
+                new DriveGovernor(180, 5, Duration.ofMillis(500), Duration.ofSeconds(32), Duration.ofMinutes(1)), 64, DriveCredentials.installedApp(),
+                Metrics.globalRegistry);
+    }
+
+    /**
+     * @param uploadChunkSize size of a chunk of the resumable upload, must be a multiple of 256 KB
+     * @param maxConnections  size of the pool of keep-alive connections to the drive
+     * @param meterRegistry   registry of the count and latency of the drive calls per operation
+     */
+    public GoogleDriveAdapter(FolderIdCache folderIdCache, int uploadChunkSize, DriveGovernor driveGovernor, int maxConnections,
+                              DriveCredentials credentials, MeterRegistry meterRegistry) throws IOException {
+        if (uploadChunkSize <= 0 || uploadChunkSize % MediaHttpUploader.MINIMUM_CHUNK_SIZE != 0) {
+            throw new IllegalArgumentException("Upload chunk size must be a positive multiple of " + MediaHttpUploader.MINIMUM_CHUNK_SIZE + " bytes.");
+        }
+        this.folderIdCache = folderIdCache;
+        this.uploadChunkSize = uploadChunkSize;
+        this.driveGovernor = driveGovernor;
+        this.meterRegistry = meterRegistry;
+        // All calls go to the same host, so the pool is a single route.
+        httpTransport = new ApacheHttpTransport(ApacheHttpTransport.newDefaultHttpClientBuilder()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .evictIdleConnections(IDLE_CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build());
+        Credential credential = switch (credentials.type()) {
+            case INSTALLED_APP -> getCredentials();
+            case SERVICE_ACCOUNT -> getServiceAccountCredentials(credentials);
+        };
+        drive = new Drive.Builder(httpTransport, JSON_FACTORY, request -> initializeRequest(request, credential))
                 .setApplicationName(APPLICATION_NAME)
                 .build();
     }
 
+    /**
+     * Every request waits for a permit of the governor. Failed requests are retried by the governor's handlers,
+     * at most the max retries of the governor. For resumable uploads the retry continues from the last chunk committed
+     * by the drive instead of starting from zero.
+     */
+    private void initializeRequest(HttpRequest request, Credential credential) throws IOException {
+        credential.initialize(request);
+        HttpExecuteInterceptor credentialInterceptor = request.getInterceptor();
+        request.setInterceptor(interceptedRequest -> {
+            driveGovernor.acquire();
+            credentialInterceptor.intercept(interceptedRequest);
+        });
+        HttpUnsuccessfulResponseHandler backOffHandler = driveGovernor.newUnsuccessfulResponseHandler();
+        request.setUnsuccessfulResponseHandler((retriedRequest, response, supportsRetry) ->
+                credential.handleResponse(retriedRequest, response, supportsRetry)
+                        || backOffHandler.handleResponse(retriedRequest, response, supportsRetry));
+        request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(driveGovernor.newBackOff()));
+        request.setNumberOfRetries(driveGovernor.getMaxRetries());
+    }
+
     private Credential getCredentials() throws IOException {
         InputStream in = GoogleDriveAdapter.class.getResourceAsStream(CREDENTIALS_FILE_PATH);
         if (in == null) {
@@ -63,106 +146,282 @@ public class GoogleDriveAdapter implements StorageDriveAdapter { //todo: про
         return new AuthorizationCodeInstalledApp(flow, receiver).authorize("user");
     }
 
+    /**
+     * The access token is requested with the first call and refreshed by the credential before it expires.
+     */
+    @SuppressWarnings("deprecation")
+    private Credential getServiceAccountCredentials(DriveCredentials credentials) throws IOException {
+        try (InputStream in = Files.newInputStream(credentials.serviceAccountKeyFile())) {
+            return GoogleCredential.fromStream(in, httpTransport, JSON_FACTORY)
+                    .createScoped(SCOPES);
+        }
+    }
+
+    /**
+     * A folder id that turned out to be stale is resolved once more and the video is saved to the folder found, as long
+     * as none of the content was read yet. The upload session is created before the content is sent, so it's the case
+     * when the folder was deleted and created again.
+     */
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        CountingInputStream inputStream = new CountingInputStream(video.inputStream());
+        return inFolder(path, folderId -> {
+            File fileMetadata = new File();
+            fileMetadata.setParents(List.of(folderId));
+            fileMetadata.setName(video.name());
+            InputStreamContent content = new InputStreamContent(VIDEO_MIME_TYPE, inputStream);
+            try {
+                Drive.Files.Create request = drive.files().create(fileMetadata, content)
+                        .setFields(FILE_FIELDS);
+                request.getMediaHttpUploader()
+                        .setDirectUploadEnabled(false)
+                        .setChunkSize(uploadChunkSize);
+                return toVideoInfo(execute("files.create", request::execute, false));
+            } catch (IOException e) {
+                if (isNotFound(e) && inputStream.getCount() == 0) {
+                    throw new FolderNotFoundException(folderId);
+                }
+                if (isNotFound(e)) {
+                    folderIdCache.invalidate(List.of(path));
+                }
+                throw new RuntimeException("Cannot save video '" + video.name() + "'.", e);
+            }
+        });
+    }
+
+    /**
+     * Keeps the metadata in the app properties of the file, they're visible only to this application.
+     */
     @Override
-    public void save(Video video, String... path) {
-        Optional<String> folderIdOpt = getFolderId(path);
-        if (folderIdOpt.isEmpty()) {
-            return;
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        Optional<File> fileOpt = getFile(videoName, VIDEO_MIME_TYPE, path);
+        if (fileOpt.isEmpty()) {
+            return Optional.empty();
         }
-        String folderId = folderIdOpt.get();
         File fileMetadata = new File();
-        fileMetadata.setParents(List.of(folderId));
-        fileMetadata.setName(video.name());
-        InputStreamContent content = new InputStreamContent("video/mp4", video.inputStream());
+        fileMetadata.setAppProperties(VideoMetadataProperties.toProperties(metadata));
         try {
-            drive.files().create(fileMetadata, content).execute();
-        } catch (IOException ignored) {
+            Drive.Files.Update request = drive.files().update(fileOpt.get().getId(), fileMetadata)
+                    .setFields(FILE_FIELDS);
+            return Optional.of(toVideoInfo(execute("files.update", request::execute)));
+        } catch (IOException e) {
+            if (isNotFound(e)) {
+                return Optional.empty();
+            }
+            throw new RuntimeException("Cannot save metadata of video '" + videoName + "'.", e);
         }
     }
 
     @Override
     public boolean hasVideo(String videoName, String... path) {
-        return getFile(videoName, "video/mp4", path).isPresent();
+        return getFile(videoName, VIDEO_MIME_TYPE, path).isPresent();
     }
 
+    /**
+     * Lists the names of the folder page by page instead of looking every name up, so a check of thousands of names
+     * takes a request per {@value #MAX_PAGE_SIZE} videos of the folder. Only the names of the given videos are kept.
+     */
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        Set<String> remainingVideoNames = new HashSet<>(videoNames);
+        Set<String> existingVideoNames = new HashSet<>();
+        inFolder(path, folderId -> {
+            String pageToken = null;
+            do {
+                FileList fileList = getFilesPageInFolder(VIDEO_MIME_TYPE, folderId, pageToken, MAX_PAGE_SIZE, "nextPageToken, files(name)");
+                for (File file : fileList.getFiles()) {
+                    if (remainingVideoNames.remove(file.getName())) {
+                        existingVideoNames.add(file.getName());
+                    }
+                }
+                pageToken = fileList.getNextPageToken();
+            } while (pageToken != null && !remainingVideoNames.isEmpty());
+            return existingVideoNames;
+        });
+
+        Map<String, Boolean> hasVideoByName = new LinkedHashMap<>();
+        for (String videoName : videoNames) {
+            hasVideoByName.put(videoName, existingVideoNames.contains(videoName));
+        }
+        return hasVideoByName;
+    }
+
+    /**
+     * Returns the media stream of the drive response itself, so bytes reach the consumer as soon as they arrive.
+     */
     @Override
     public Optional<InputStream> getVideoStream(String videoName, String... path) {
-        Path downloadingDirectoryPath = Path.of("downloading_videos"); //todo: директория должна быть заточена под пользователя, т.е. должен использоваться параметр path
+        Optional<File> fileOpt = getFile(videoName, VIDEO_MIME_TYPE, path);
+        if (fileOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        Drive.Files.Get request;
         try {
-            Files.createDirectories(downloadingDirectoryPath);
+            request = drive.files().get(fileOpt.get().getId());
         } catch (IOException e) {
-            throw new RuntimeException("Cannot create video downloading directory.");
+            throw new RuntimeException(e);
         }
+        return getMediaStream(request, videoName);
+    }
 
-        Path downloadingVideoPath = downloadingDirectoryPath.resolve(videoName);
-
-        Optional<File> fileOpt = getFile(videoName, "video/mp4", path);
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        Optional<File> fileOpt = getFile(videoName, VIDEO_MIME_TYPE, path);
         if (fileOpt.isEmpty()) {
             return Optional.empty();
         }
-        try (OutputStream outputStream = new FileOutputStream(downloadingVideoPath.toFile())) {
-            File file = fileOpt.get();
-            drive.files().get(file.getId()).executeMediaAndDownloadTo(outputStream);
+        Drive.Files.Get request;
+        try {
+            request = drive.files().get(fileOpt.get().getId());
         } catch (IOException e) {
-            return Optional.empty();
+            throw new RuntimeException(e);
         }
+        request.getRequestHeaders().setRange("bytes=" + from + "-" + to);
+        return getMediaStream(request, videoName);
+    }
 
+    /**
+     * Reads the file by its id, one call instead of a lookup by name and a download.
+     */
+    @Override
+    public Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        if (videoInfo.fileId() == null) {
+            return getVideoPartStream(videoInfo.name(), from, to, path);
+        }
+        Drive.Files.Get request;
         try {
-            InputStream inputStream = Files.newInputStream(downloadingVideoPath);
-            return Optional.of(inputStream);
+            request = drive.files().get(videoInfo.fileId());
         } catch (IOException e) {
-            return Optional.empty();
+            throw new RuntimeException(e);
+        }
+        request.getRequestHeaders().setRange("bytes=" + from + "-" + to);
+        return getMediaStream(request, videoInfo.name());
+    }
+
+    /**
+     * Only a video deleted after it was looked up is reported as missing, other failures are thrown.
+     */
+    private Optional<InputStream> getMediaStream(Drive.Files.Get request, String videoName) {
+        try {
+            return Optional.of(execute("files.get_media", request::executeMediaAsInputStream));
+        } catch (IOException e) {
+            if (isNotFound(e)) {
+                return Optional.empty();
+            }
+            throw new RuntimeException("Cannot download video '" + videoName + "'.", e);
         }
     }
 
     @Override
-    public List<String> getAllFileNames(String... path) {
-        return getFiles("video/mp4", path).stream()
-                .map(File::getName)
-                .toList();
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        return getFile(videoName, VIDEO_MIME_TYPE, path).map(GoogleDriveAdapter::toVideoInfo);
     }
 
-    private Optional<String> getFileId(String fileName, String fileType, String... path) {
-        return getFile(fileName, fileType, path).map(File::getId);
+    /**
+     * Asks the drive for at most {@value #MAX_PAGE_SIZE} videos and only for the fields of {@link VideoInfo}.
+     * The page token is the one of the drive itself.
+     */
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        return inFolder(path, folderId -> getFilesPageInFolder(VIDEO_MIME_TYPE, folderId, pageToken, Math.min(pageSize, MAX_PAGE_SIZE),
+                        "nextPageToken, files(" + FILE_FIELDS + ")"))
+                .map(fileList -> new VideoInfosPage(
+                        fileList.getFiles().stream().map(GoogleDriveAdapter::toVideoInfo).toList(),
+                        fileList.getNextPageToken()))
+                .orElse(VideoInfosPage.empty());
     }
 
-    private List<File> getFiles(String filesType, String... path) {
-        Optional<String> folderIdOpt = getFolderId(path);
-        if (folderIdOpt.isEmpty()) {
-            return Collections.emptyList();
+    @Override
+    public String getStartPageToken() {
+        try {
+            return execute("changes.get_start_page_token", drive.changes().getStartPageToken()::execute).getStartPageToken();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        return getFilesInFolder(filesType, folderIdOpt.get());
+    @Override
+    public StorageChangePage getChanges(String pageToken) {
+        ChangeList changeList;
+        try {
+            Drive.Changes.List request = drive.changes().list(pageToken)
+                    .setPageSize(CHANGES_PAGE_SIZE)
+                    .setFields("nextPageToken, newStartPageToken, changes(fileId, removed, file(" + FILE_FIELDS + ", mimeType, parents, trashed))");
+            changeList = execute("changes.list", request::execute);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        List<StorageChange> changes = changeList.getChanges().stream()
+                .map(GoogleDriveAdapter::toStorageChange)
+                .toList();
+        return new StorageChangePage(changes, changeList.getNextPageToken(), changeList.getNewStartPageToken());
+    }
+
+    private static StorageChange toStorageChange(Change change) {
+        File file = change.getFile();
+        boolean isRemoved = Boolean.TRUE.equals(change.getRemoved()) || file == null || Boolean.TRUE.equals(file.getTrashed())
+                || file.getParents() == null || file.getParents().isEmpty();
+        if (isRemoved || !VIDEO_MIME_TYPE.equals(file.getMimeType())) {
+            return new StorageChange(change.getFileId(), null, null);
+        }
+        return new StorageChange(change.getFileId(), file.getParents().get(0), toVideoInfo(file));
+    }
+
+    private static VideoInfo toVideoInfo(File file) {
+        long size = file.getSize() == null ? 0 : file.getSize();
+        Instant createdTime = file.getCreatedTime() == null ? null : Instant.ofEpochMilli(file.getCreatedTime().getValue());
+        return new VideoInfo(file.getName(), size, file.getId(), file.getMd5Checksum(), createdTime,
+                VideoMetadataProperties.fromProperties(file.getAppProperties()));
+    }
+
+    private Optional<String> getFileId(String fileName, String fileType, String... path) {
+        return getFile(fileName, fileType, path).map(File::getId);
     }
 
     private Optional<File> getFile(String fileName, String fileType, String... path) {
-        Optional<String> folderIdOpt = getFolderId(path);
-        if (folderIdOpt.isEmpty()) {
-            return Optional.empty();
+        return inFolder(path, folderId -> getFileInFolder(fileName, fileType, folderId))
+                .flatMap(Function.identity());
+    }
+
+    /**
+     * Resolves the folder by path and applies the action to its id. If the cached id of the folder turns out to be
+     * stale, the folder is resolved once more from the drive.
+     */
+    private <T> Optional<T> inFolder(String[] path, Function<String, T> action) {
+        for (int attempt = 0; ; attempt++) {
+            Optional<String> folderIdOpt = getFolderId(path);
+            if (folderIdOpt.isEmpty()) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(action.apply(folderIdOpt.get()));
+            } catch (FolderNotFoundException e) {
+                folderIdCache.invalidate(List.of(path));
+                if (attempt > 0) {
+                    return Optional.empty();
+                }
+            }
         }
-        String folderId = folderIdOpt.get();
-        return getFileInFolder(fileName, fileType, folderId);
     }
 
-    private Optional<String> getFolderId(String... path) {
+    @Override
+    public Optional<String> getFolderId(String... path) {
         if (path.length == 0) {
             return Optional.of("root");
         }
 
-        Optional<String> parentFolderIdOpt = getRootFolderId(path[0]);
-        for (int i = 1; i < path.length; i++) {
-            if (parentFolderIdOpt.isEmpty()) {
-                return parentFolderIdOpt;
-            }
-            String parentFolderId = parentFolderIdOpt.get();
-
-            parentFolderIdOpt = getFolderIdInOtherFolder(path[i], parentFolderId);
+        List<String> folderPath = List.of(path);
+        Optional<String> cachedFolderIdOpt = folderIdCache.get(folderPath);
+        if (cachedFolderIdOpt.isPresent()) {
+            return cachedFolderIdOpt;
         }
-        return parentFolderIdOpt;
-    }
 
-    private Optional<String> getRootFolderId(String folderName) {
-        return getFolderIdInOtherFolder(folderName, "root");
+        String[] parentPath = Arrays.copyOf(path, path.length - 1);
+        String folderName = path[path.length - 1];
+        Optional<String> folderIdOpt = inFolder(parentPath, parentFolderId -> getFolderIdInOtherFolder(folderName, parentFolderId))
+                .flatMap(Function.identity());
+        folderIdOpt.ifPresent(folderId -> folderIdCache.put(folderPath, folderId));
+        return folderIdOpt;
     }
 
     private Optional<String> getFolderIdInOtherFolder(String desireFolderName, String parentFolderId) {
@@ -181,12 +440,15 @@ public class GoogleDriveAdapter implements StorageDriveAdapter { //todo: про
     private Optional<File> getFileInFolder(String fileName, String fileType, String folderId) {
         FileList fileList;
         try {
-            fileList = drive.files().list()
+            Drive.Files.List request = drive.files().list()
                     .setPageSize(1)
-                    .setFields("nextPageToken, files(id, name)")
-                    .setQ("'" + folderId + "' in parents and name = '" + fileName + "' and mimeType = '" + fileType + "'")
-                    .execute();
+                    .setFields("nextPageToken, files(" + FILE_FIELDS + ")")
+                    .setQ("'" + folderId + "' in parents and name = '" + fileName + "' and mimeType = '" + fileType + "' and trashed = false");
+            fileList = execute("files.find", request::execute);
         } catch (IOException e) {
+            if (isNotFound(e)) {
+                throw new FolderNotFoundException(folderId);
+            }
             throw new RuntimeException(e);
         }
 
@@ -198,18 +460,65 @@ public class GoogleDriveAdapter implements StorageDriveAdapter { //todo: про
         }
     }
 
-    private List<File> getFilesInFolder(String fileType, String folderId) {
-        FileList fileList;
+    private FileList getFilesPageInFolder(String fileType, String folderId, String pageToken, int pageSize, String fields) {
         try {
-            fileList = drive.files().list()
-                    .setPageSize(1)
-                    .setFields("nextPageToken, files(id, name)")
-                    .setQ("'" + folderId + "' in parents and mimeType = '" + fileType + "'")
-                    .execute();
+            Drive.Files.List request = drive.files().list()
+                    .setPageSize(pageSize)
+                    .setPageToken(pageToken)
+                    .setOrderBy("name")
+                    .setFields(fields)
+                    .setQ("'" + folderId + "' in parents and mimeType = '" + fileType + "' and trashed = false");
+            return execute("files.list", request::execute);
         } catch (IOException e) {
+            if (isNotFound(e)) {
+                throw new FolderNotFoundException(folderId);
+            }
             throw new RuntimeException(e);
         }
+    }
 
-        return fileList.getFiles();
+    private <T> T execute(String operation, DriveGovernor.DriveCall<T> call) throws IOException {
+        return execute(operation, call, true);
+    }
+
+    /**
+     * Runs the call and records its latency tagged with the operation and the outcome. A call of the media
+     * download ends when the response headers arrive, the transfer of the body isn't included.
+     *
+     * @param repeatable whether the call is retried as a whole when the drive rejects it with 403 for the rate
+     */
+    private <T> T execute(String operation, DriveGovernor.DriveCall<T> call, boolean repeatable) throws IOException {
+        RequestDriveCalls.increment();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = repeatable ? driveGovernor.execute(call) : call.execute();
+            outcome = "success";
+            return result;
+        } catch (IOException e) {
+            if (isNotFound(e)) {
+                outcome = "not_found";
+            } else if (e instanceof GoogleJsonResponseException responseException && DriveGovernor.isRateLimited(responseException)) {
+                outcome = "rate_limited";
+            }
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("drive.requests")
+                    .description("Calls of the Google Drive API")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private static boolean isNotFound(IOException e) {
+        return e instanceof GoogleJsonResponseException responseException && responseException.getStatusCode() == 404;
+    }
+
+    private static class FolderNotFoundException extends RuntimeException {
+
+        FolderNotFoundException(String folderId) {
+            super("Folder with id '" + folderId + "' not found.");
+        }
     }
 }
@@ -0,0 +1,177 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.exception.StorageNotReadyException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Creates the storage in the background, so the application starts without waiting for the authorization
+ * and the first connections. The created storage is warmed up before it's used, a failed creation or warm-up
+ * is retried until it succeeds.
+ * <p>
+ * Calls made meanwhile wait for the storage for a while and fail with {@link StorageNotReadyException} after.
+ */
+@Slf4j
+public class LazyStorageDriveAdapter<A extends StorageDriveAdapter & StorageChangeFeed> implements StorageDriveAdapter, StorageChangeFeed {
+
+    private final Supplier<A> factory;
+    private final Consumer<A> warmUp;
+    private final Duration retryInterval;
+    private final Duration awaitTimeout;
+    private final ScheduledExecutorService executorService;
+    private final CompletableFuture<A> storageFuture = new CompletableFuture<>();
+    private A storage;
+    private volatile Throwable lastFailure;
+
+    /**
+     * @param warmUp       first calls of the created storage, the storage is ready once they succeeded
+     * @param awaitTimeout how long a call waits for the storage before it fails
+     */
+    public LazyStorageDriveAdapter(Supplier<A> factory, Consumer<A> warmUp, Duration retryInterval, Duration awaitTimeout) {
+        this.factory = factory;
+        this.warmUp = warmUp;
+        this.retryInterval = retryInterval;
+        this.awaitTimeout = awaitTimeout;
+        executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-initializer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public LazyStorageDriveAdapter<A> start() {
+        executorService.execute(this::initialize);
+        return this;
+    }
+
+    public boolean isReady() {
+        return storageFuture.isDone();
+    }
+
+    /**
+     * @return failure of the last creation or warm-up, empty once the storage is ready
+     */
+    public Optional<Throwable> getLastFailure() {
+        return isReady() ? Optional.empty() : Optional.ofNullable(lastFailure);
+    }
+
+    /**
+     * The storage is created once, only the warm-up is repeated after it was created. Errors are retried too, an
+     * error escaping the task would end the retries and leave the calls waiting until they time out.
+     */
+    private void initialize() {
+        try {
+            if (storage == null) {
+                storage = factory.get();
+            }
+            warmUp.accept(storage);
+            storageFuture.complete(storage);
+            executorService.shutdown();
+            log.info("Storage is ready.");
+        } catch (Throwable e) {
+            lastFailure = e;
+            log.warn("Cannot initialize storage, retrying in {}.", retryInterval, e);
+            executorService.schedule(this::initialize, retryInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private A getStorage() {
+        try {
+            return storageFuture.get(awaitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageNotReadyException("Interrupted while waiting for the storage.", e);
+        } catch (TimeoutException e) {
+            throw new StorageNotReadyException("The storage isn't ready yet.", lastFailure);
+        } catch (ExecutionException e) {
+            throw new StorageNotReadyException("The storage isn't ready.", e.getCause());
+        }
+    }
+
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        return getStorage().save(video, path);
+    }
+
+    @Override
+    public Optional<VideoInfo> saveByHash(String videoName, String sha256, String... path) {
+        return getStorage().saveByHash(videoName, sha256, path);
+    }
+
+    @Override
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        return getStorage().saveMetadata(videoName, metadata, path);
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        return getStorage().hasVideo(videoName, path);
+    }
+
+    @Override
+    public boolean hasVideoBeforeSave(String videoName, String... path) {
+        return getStorage().hasVideoBeforeSave(videoName, path);
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        return getStorage().hasVideos(videoNames, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        return getStorage().getVideoStream(videoName, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        return getStorage().getVideoPartStream(videoName, from, to, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        return getStorage().getVideoVersionPartStream(videoInfo, from, to, path);
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        return getStorage().getVideoInfo(videoName, path);
+    }
+
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        return getStorage().getVideoInfos(pageToken, pageSize, path);
+    }
+
+    @Override
+    public String getStartPageToken() {
+        return getStorage().getStartPageToken();
+    }
+
+    @Override
+    public StorageChangePage getChanges(String pageToken) {
+        return getStorage().getChanges(pageToken);
+    }
+
+    @Override
+    public Optional<String> getFolderId(String... path) {
+        return getStorage().getFolderId(path);
+    }
+}
@@ -0,0 +1,234 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.video_metadata.VideoMetadataProperties;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Stores videos in a local (or network mounted) directory. Every element of the path is a nested directory
+ * under the root directory.
+ */
+public class LocalStorageDriveAdapter implements StorageDriveAdapter {
+
+    private static final String VIDEO_EXTENSION = ".mp4";
+    private static final String TEMP_FILE_PREFIX = ".";
+    private static final String METADATA_EXTENSION = ".metadata";
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final Path rootDirectory;
+
+    public LocalStorageDriveAdapter(Path rootDirectory) {
+        this.rootDirectory = rootDirectory;
+    }
+
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        Path folder = resolve(path);
+        Path videoPath = resolve(folder, video.name());
+        try {
+            Files.createDirectories(folder);
+            Path tempPath = Files.createTempFile(folder, TEMP_FILE_PREFIX, ".part");
+            try {
+                try (ReadableByteChannel in = Channels.newChannel(video.inputStream());
+                     FileChannel out = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                    long position = 0;
+                    long transferred;
+                    while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                        position += transferred;
+                    }
+                    out.force(true);
+                }
+                Files.move(tempPath, videoPath, StandardCopyOption.ATOMIC_MOVE);
+                return Optional.of(toVideoInfo(videoPath));
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save video '" + video.name() + "'.", e);
+        }
+    }
+
+    /**
+     * Keeps the metadata in a hidden properties file next to the video.
+     */
+    @Override
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        Path folder = resolve(path);
+        Path videoPath = resolve(folder, videoName);
+        if (!Files.isRegularFile(videoPath)) {
+            return Optional.empty();
+        }
+        Properties properties = new Properties();
+        properties.putAll(VideoMetadataProperties.toProperties(metadata));
+        try {
+            Path tempPath = Files.createTempFile(folder, TEMP_FILE_PREFIX, ".part");
+            try {
+                try (OutputStream out = Files.newOutputStream(tempPath)) {
+                    properties.store(out, null);
+                }
+                Files.move(tempPath, toMetadataPath(videoPath), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save metadata of video '" + videoName + "'.", e);
+        }
+        return Optional.of(toVideoInfo(videoPath));
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        return Files.isRegularFile(resolve(resolve(path), videoName));
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        Path folder = resolve(path);
+        Map<String, Boolean> hasVideoByName = new LinkedHashMap<>();
+        for (String videoName : videoNames) {
+            hasVideoByName.put(videoName, Files.isRegularFile(resolve(folder, videoName)));
+        }
+        return hasVideoByName;
+    }
+
+    /**
+     * Returns a stream backed by a {@link FileChannel}. Its {@code transferTo} skips the heap only when the target is
+     * a channel too, like {@code Files.newOutputStream}; a servlet output stream still gets the video through a heap
+     * buffer.
+     */
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        try {
+            FileChannel channel = FileChannel.open(resolve(resolve(path), videoName), StandardOpenOption.READ);
+            return Optional.of(Channels.newInputStream(channel));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read video '" + videoName + "'.", e);
+        }
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        try {
+            FileChannel channel = FileChannel.open(resolve(resolve(path), videoName), StandardOpenOption.READ);
+            try {
+                channel.position(from);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return Optional.of(ByteStreams.limit(Channels.newInputStream(channel), to - from + 1));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read video '" + videoName + "'.", e);
+        }
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        Path videoPath = resolve(resolve(path), videoName);
+        if (!Files.isRegularFile(videoPath)) {
+            return Optional.empty();
+        }
+        return Optional.of(toVideoInfo(videoPath));
+    }
+
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        Path folder = resolve(path);
+        if (!Files.isDirectory(folder)) {
+            return VideoInfosPage.empty();
+        }
+        String lastVideoName = NamePageTokens.toLastVideoName(pageToken);
+        try (Stream<Path> files = Files.list(folder)) {
+            List<String> videoNames = files
+                    .filter(Files::isRegularFile)
+                    .map(file -> file.getFileName().toString())
+                    .filter(LocalStorageDriveAdapter::isVideoName)
+                    .filter(videoName -> lastVideoName == null || videoName.compareTo(lastVideoName) > 0)
+                    .sorted()
+                    .limit(pageSize + 1L)
+                    .toList();
+            List<VideoInfo> videoInfos = videoNames.stream()
+                    .limit(pageSize)
+                    .map(videoName -> toVideoInfo(folder.resolve(videoName)))
+                    .toList();
+            String nextPageToken = videoNames.size() > pageSize ? NamePageTokens.toPageToken(videoNames.get(pageSize - 1)) : null;
+            return new VideoInfosPage(videoInfos, nextPageToken);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot list folder '" + folder + "'.", e);
+        }
+    }
+
+    private static VideoInfo toVideoInfo(Path videoPath) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(videoPath, BasicFileAttributes.class);
+            return new VideoInfo(videoPath.getFileName().toString(), attributes.size(), null, null, attributes.creationTime().toInstant(),
+                    readMetadata(videoPath));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read video '" + videoPath.getFileName() + "'.", e);
+        }
+    }
+
+    private static VideoMetadata readMetadata(Path videoPath) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(toMetadataPath(videoPath))) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        Map<String, String> metadataProperties = new HashMap<>();
+        properties.stringPropertyNames().forEach(name -> metadataProperties.put(name, properties.getProperty(name)));
+        return VideoMetadataProperties.fromProperties(metadataProperties);
+    }
+
+    private static Path toMetadataPath(Path videoPath) {
+        return videoPath.resolveSibling(TEMP_FILE_PREFIX + videoPath.getFileName() + METADATA_EXTENSION);
+    }
+
+    private static boolean isVideoName(String fileName) {
+        return fileName.endsWith(VIDEO_EXTENSION) && !fileName.startsWith(TEMP_FILE_PREFIX);
+    }
+
+    private Path resolve(String... path) {
+        Path folder = rootDirectory;
+        for (String folderName : path) {
+            folder = resolve(folder, folderName);
+        }
+        return folder;
+    }
+
+    private static Path resolve(Path folder, String fileName) {
+        if (fileName.isEmpty() || fileName.equals(".") || fileName.equals("..")
+                || fileName.contains("/") || fileName.contains("\\")) {
+            throw new IllegalArgumentException("Illegal file name '" + fileName + "'.");
+        }
+        return folder.resolve(fileName);
+    }
+}
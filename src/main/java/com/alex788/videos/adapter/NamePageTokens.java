@@ -0,0 +1,32 @@
+package com.alex788.videos.adapter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Page tokens of storages that page videos by name. A token is the encoded name of the last video of the previous
+ * page, so the next page starts right after it even if videos were added or removed in between.
+ */
+class NamePageTokens {
+
+    private NamePageTokens() {
+    }
+
+    static String toPageToken(String lastVideoName) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastVideoName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return name the page starts after, {@code null} for the first page
+     */
+    static String toLastVideoName(String pageToken) {
+        if (pageToken == null) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(pageToken), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Illegal page token '" + pageToken + "'.", e);
+        }
+    }
+}
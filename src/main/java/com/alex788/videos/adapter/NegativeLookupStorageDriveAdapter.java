@@ -0,0 +1,265 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Answers "no" to existence checks of videos that surely don't exist without asking the underlying storage.
+ * Every folder has a Bloom filter of its video names. The filter is built in the background from the listing of
+ * the folder, videos saved through this adapter are added to it at once. Until the filter of a folder is built,
+ * the checks go to the underlying storage.
+ * <p>
+ * A video added to the storage by another node or outside the application is missed by the filter until the next
+ * rebuild, so the rebuild interval bounds how long such a video may be reported as missing. The check made before
+ * a save always asks the underlying storage, so such a video isn't overwritten by a video with the same name.
+ * The adapter isn't put over a {@link CatalogStorageDriveAdapter}, which learns such videos sooner.
+ */
+@Slf4j
+public class NegativeLookupStorageDriveAdapter implements StorageDriveAdapter {
+
+    private static final int LISTING_PAGE_SIZE = 1000;
+
+    private final StorageDriveAdapter storageDriveAdapter;
+    private final double falsePositiveProbability;
+    private final int minExpectedVideos;
+    private final Duration rebuildInterval;
+    private final Executor rebuildExecutor;
+    private final Ticker ticker;
+    private final Cache<List<String>, VideoNameFilter> filtersByPath;
+
+    /**
+     * @param maxFolders        maximum number of folders with a filter, the least recently used ones are dropped
+     * @param minExpectedVideos number of videos a filter is sized for at least, a filter of a folder with more
+     *                          videos is sized for twice as many videos as the folder has
+     */
+    public NegativeLookupStorageDriveAdapter(StorageDriveAdapter storageDriveAdapter, double falsePositiveProbability,
+                                             int minExpectedVideos, long maxFolders, Duration rebuildInterval, Executor rebuildExecutor) {
+        this(storageDriveAdapter, falsePositiveProbability, minExpectedVideos, maxFolders, rebuildInterval, rebuildExecutor, Ticker.systemTicker());
+    }
+
+    NegativeLookupStorageDriveAdapter(StorageDriveAdapter storageDriveAdapter, double falsePositiveProbability,
+                                      int minExpectedVideos, long maxFolders, Duration rebuildInterval, Executor rebuildExecutor,
+                                      Ticker ticker) {
+        this.storageDriveAdapter = storageDriveAdapter;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.minExpectedVideos = minExpectedVideos;
+        this.rebuildInterval = rebuildInterval;
+        this.rebuildExecutor = rebuildExecutor;
+        this.ticker = ticker;
+        filtersByPath = CacheBuilder.newBuilder()
+                .maximumSize(maxFolders)
+                .build();
+    }
+
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.save(video, path);
+        VideoNameFilter filter = filtersByPath.getIfPresent(List.of(path));
+        if (filter != null) {
+            filter.put(video.name());
+        }
+        return videoInfoOpt;
+    }
+
+    @Override
+    public Optional<VideoInfo> saveByHash(String videoName, String sha256, String... path) {
+        Optional<VideoInfo> videoInfoOpt = storageDriveAdapter.saveByHash(videoName, sha256, path);
+        if (videoInfoOpt.isPresent()) {
+            VideoNameFilter filter = filtersByPath.getIfPresent(List.of(path));
+            if (filter != null) {
+                filter.put(videoName);
+            }
+        }
+        return videoInfoOpt;
+    }
+
+    @Override
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        return storageDriveAdapter.saveMetadata(videoName, metadata, path);
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        return mightHaveVideo(videoName, path) && storageDriveAdapter.hasVideo(videoName, path);
+    }
+
+    @Override
+    public boolean hasVideoBeforeSave(String videoName, String... path) {
+        return storageDriveAdapter.hasVideoBeforeSave(videoName, path);
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        List<String> possibleVideoNames = new ArrayList<>();
+        for (String videoName : videoNames) {
+            if (mightHaveVideo(videoName, path)) {
+                possibleVideoNames.add(videoName);
+            }
+        }
+        Map<String, Boolean> storageHasVideoByName = possibleVideoNames.isEmpty()
+                ? Map.of()
+                : storageDriveAdapter.hasVideos(possibleVideoNames, path);
+
+        Map<String, Boolean> hasVideoByName = new LinkedHashMap<>();
+        for (String videoName : videoNames) {
+            hasVideoByName.put(videoName, storageHasVideoByName.getOrDefault(videoName, false));
+        }
+        return hasVideoByName;
+    }
+
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        return storageDriveAdapter.getVideoStream(videoName, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        return storageDriveAdapter.getVideoPartStream(videoName, from, to, path);
+    }
+
+    @Override
+    public Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        return storageDriveAdapter.getVideoVersionPartStream(videoInfo, from, to, path);
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        if (!mightHaveVideo(videoName, path)) {
+            return Optional.empty();
+        }
+        return storageDriveAdapter.getVideoInfo(videoName, path);
+    }
+
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        return storageDriveAdapter.getVideoInfos(pageToken, pageSize, path);
+    }
+
+    /**
+     * @return {@code false} only if the folder surely has no video with the name
+     */
+    private boolean mightHaveVideo(String videoName, String... path) {
+        VideoNameFilter filter = filtersByPath.asMap().computeIfAbsent(List.of(path), folderPath -> new VideoNameFilter());
+        if (filter.needsRebuild()) {
+            rebuildInBackground(filter, path);
+        }
+        return filter.mightContain(videoName);
+    }
+
+    private void rebuildInBackground(VideoNameFilter filter, String... path) {
+        if (!filter.rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    rebuild(filter, path);
+                } catch (RuntimeException e) {
+                    filter.stopCollectingSavedNames();
+                    log.warn("Cannot build video name filter of folder '{}'.", String.join("/", path), e);
+                } finally {
+                    filter.rebuilding.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            filter.rebuilding.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Builds a new filter page by page while the old one keeps answering, then swaps them.
+     */
+    private void rebuild(VideoNameFilter filter, String... path) {
+        filter.startCollectingSavedNames();
+        int expectedVideos = Math.max(minExpectedVideos, filter.videoCount * 2);
+        BloomFilter<CharSequence> bloomFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedVideos, falsePositiveProbability);
+        int videoCount = 0;
+        String pageToken = null;
+        do {
+            VideoInfosPage page = storageDriveAdapter.getVideoInfos(pageToken, LISTING_PAGE_SIZE, path);
+            for (VideoInfo videoInfo : page.videoInfos()) {
+                bloomFilter.put(videoInfo.name());
+                videoCount++;
+            }
+            pageToken = page.nextPageToken();
+        } while (pageToken != null);
+        filter.replace(bloomFilter, expectedVideos, videoCount);
+    }
+
+    private class VideoNameFilter {
+
+        final AtomicBoolean rebuilding = new AtomicBoolean();
+        private volatile BloomFilter<CharSequence> bloomFilter;
+        private volatile long builtAtNanos;
+        private volatile int expectedVideos;
+        private volatile int videoCount;
+        private Set<String> namesSavedDuringRebuild;
+
+        /**
+         * Filter that isn't built yet might contain every name.
+         */
+        boolean mightContain(String videoName) {
+            BloomFilter<CharSequence> currentBloomFilter = bloomFilter;
+            return currentBloomFilter == null || currentBloomFilter.mightContain(videoName);
+        }
+
+        boolean needsRebuild() {
+            return bloomFilter == null
+                    || videoCount > expectedVideos
+                    || ticker.read() - builtAtNanos > rebuildInterval.toNanos();
+        }
+
+        synchronized void put(String videoName) {
+            if (bloomFilter != null) {
+                bloomFilter.put(videoName);
+                videoCount++;
+            }
+            if (namesSavedDuringRebuild != null) {
+                namesSavedDuringRebuild.add(videoName);
+            }
+        }
+
+        synchronized void startCollectingSavedNames() {
+            namesSavedDuringRebuild = new HashSet<>();
+        }
+
+        synchronized void stopCollectingSavedNames() {
+            namesSavedDuringRebuild = null;
+        }
+
+        /**
+         * Adds the names saved while the new filter was built, they could be missed by the listing.
+         */
+        synchronized void replace(BloomFilter<CharSequence> newBloomFilter, int newExpectedVideos, int newVideoCount) {
+            namesSavedDuringRebuild.forEach(newBloomFilter::put);
+            videoCount = newVideoCount + namesSavedDuringRebuild.size();
+            namesSavedDuringRebuild = null;
+            expectedVideos = newExpectedVideos;
+            builtAtNanos = ticker.read();
+            bloomFilter = newBloomFilter;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.storage_shard.ConsistentHashRing;
+import com.alex788.videos.storage_shard.ShardAssignment;
+import com.alex788.videos.storage_shard.ShardKey;
+import com.alex788.videos.storage_shard.ShardMap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads the folders over several storages. A folder is placed on a shard by consistent hashing of its path the first
+ * time it's used and stays there, the placement is kept in the {@link ShardMap}. Videos of the spread folders are
+ * placed one by one instead, so a folder shared by all users, like the blob folder, doesn't end up on one shard.
+ * <p>
+ * While a key is migrated to another shard, new videos are saved to the target shard and lookups ask the target shard
+ * first and the old one next. Listings come from the old shard until the migration ends, so a video saved meanwhile
+ * is listed after it.
+ * <p>
+ * The storages can't create folders, a folder must exist on every shard it may be placed on.
+ */
+public class ShardedStorageDriveAdapter implements StorageDriveAdapter {
+
+    private static final long MAX_CACHED_ASSIGNMENTS = 100_000;
+
+    private final Map<String, StorageDriveAdapter> shardsByName;
+    private final ConsistentHashRing ring;
+    private final ShardMap shardMap;
+    private final Set<List<String>> spreadFolders;
+    private final String initialShard;
+    private final Cache<ShardKey, ShardAssignment> assignmentsByKey;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * @param spreadFolders paths of the folders whose videos are placed one by one, they can't be listed
+     * @param initialShard  shard with the videos saved before the sharding, a key with videos on it is placed on it
+     *                      and migrated by the {@link com.alex788.videos.storage_shard.ShardRebalancer} after.
+     *                      {@code null} if there's no such shard
+     * @param assignmentTtl how long an assignment is cached, a migration started on another node is seen after it
+     */
+    public ShardedStorageDriveAdapter(Map<String, StorageDriveAdapter> shardsByName, ConsistentHashRing ring, ShardMap shardMap,
+                                      Collection<List<String>> spreadFolders, String initialShard, Duration assignmentTtl,
+                                      MeterRegistry meterRegistry) {
+        if (initialShard != null && !shardsByName.containsKey(initialShard)) {
+            throw new IllegalArgumentException("Initial shard '" + initialShard + "' isn't configured.");
+        }
+        this.shardsByName = Map.copyOf(shardsByName);
+        this.ring = ring;
+        this.shardMap = shardMap;
+        this.spreadFolders = spreadFolders.stream().map(List::copyOf).collect(Collectors.toUnmodifiableSet());
+        this.initialShard = initialShard;
+        this.meterRegistry = meterRegistry;
+        assignmentsByKey = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_ASSIGNMENTS)
+                .expireAfterWrite(assignmentTtl)
+                .build();
+    }
+
+    @Override
+    public Optional<VideoInfo> save(Video video, String... path) {
+        String shard = getAssignment(toKey(video.name(), path)).writeShard();
+        return call(shard, "save", storage -> storage.save(video, path));
+    }
+
+    @Override
+    public Optional<VideoInfo> saveByHash(String videoName, String sha256, String... path) {
+        String shard = getAssignment(toKey(videoName, path)).writeShard();
+        return call(shard, "saveByHash", storage -> storage.saveByHash(videoName, sha256, path));
+    }
+
+    @Override
+    public Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        return find(toKey(videoName, path), "saveMetadata", storage -> storage.saveMetadata(videoName, metadata, path));
+    }
+
+    @Override
+    public boolean hasVideo(String videoName, String... path) {
+        ShardAssignment assignment = getAssignment(toKey(videoName, path));
+        return assignment.isMigrating() && call(assignment.targetShard(), "hasVideo", storage -> storage.hasVideo(videoName, path))
+                || call(assignment.shard(), "hasVideo", storage -> storage.hasVideo(videoName, path));
+    }
+
+    @Override
+    public Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path) {
+        if (spreadFolders.contains(List.of(path))) {
+            Map<String, Boolean> hasVideoByName = new LinkedHashMap<>();
+            for (String videoName : videoNames) {
+                hasVideoByName.put(videoName, hasVideo(videoName, path));
+            }
+            return hasVideoByName;
+        }
+        ShardAssignment assignment = getAssignment(ShardKey.ofFolder(List.of(path)));
+        if (!assignment.isMigrating()) {
+            return call(assignment.shard(), "hasVideos", storage -> storage.hasVideos(videoNames, path));
+        }
+        Map<String, Boolean> hasVideoByName = new LinkedHashMap<>(
+                call(assignment.targetShard(), "hasVideos", storage -> storage.hasVideos(videoNames, path)));
+        List<String> missingVideoNames = videoNames.stream()
+                .filter(videoName -> !hasVideoByName.getOrDefault(videoName, false))
+                .toList();
+        if (!missingVideoNames.isEmpty()) {
+            call(assignment.shard(), "hasVideos", storage -> storage.hasVideos(missingVideoNames, path))
+                    .forEach((videoName, hasVideo) -> hasVideoByName.merge(videoName, hasVideo, Boolean::logicalOr));
+        }
+        return hasVideoByName;
+    }
+
+    @Override
+    public Optional<InputStream> getVideoStream(String videoName, String... path) {
+        return find(toKey(videoName, path), "getVideoStream", storage -> storage.getVideoStream(videoName, path));
+    }
+
+    @Override
+    public Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path) {
+        return find(toKey(videoName, path), "getVideoPartStream", storage -> storage.getVideoPartStream(videoName, from, to, path));
+    }
+
+    /**
+     * A file id belongs to one shard, on the other shard of a migrating key the file isn't found by it.
+     */
+    @Override
+    public Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        return find(toKey(videoInfo.name(), path), "getVideoPartStream", storage -> storage.getVideoVersionPartStream(videoInfo, from, to, path));
+    }
+
+    @Override
+    public Optional<VideoInfo> getVideoInfo(String videoName, String... path) {
+        return find(toKey(videoName, path), "getVideoInfo", storage -> storage.getVideoInfo(videoName, path));
+    }
+
+    @Override
+    public VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path) {
+        if (spreadFolders.contains(List.of(path))) {
+            throw new UnsupportedOperationException("Videos of folder '" + String.join("/", path) + "' are spread over the shards.");
+        }
+        String shard = getAssignment(ShardKey.ofFolder(List.of(path))).shard();
+        return call(shard, "getVideoInfos", storage -> storage.getVideoInfos(pageToken, pageSize, path));
+    }
+
+    private ShardKey toKey(String videoName, String... path) {
+        List<String> folderPath = List.of(path);
+        return spreadFolders.contains(folderPath) ? ShardKey.ofVideo(folderPath, videoName) : ShardKey.ofFolder(folderPath);
+    }
+
+    private ShardAssignment getAssignment(ShardKey key) {
+        ShardAssignment assignment = assignmentsByKey.getIfPresent(key);
+        if (assignment == null) {
+            assignment = shardMap.find(key).orElseGet(() -> shardMap.assign(key, chooseShard(key)));
+            assignmentsByKey.put(key, assignment);
+        }
+        return assignment;
+    }
+
+    /**
+     * A key with videos on the initial shard stays there until it's migrated, a new key goes to its shard of the ring.
+     */
+    private String chooseShard(ShardKey key) {
+        if (initialShard != null && hasVideos(initialShard, key)) {
+            return initialShard;
+        }
+        return ring.locate(key.toRingKey());
+    }
+
+    private boolean hasVideos(String shard, ShardKey key) {
+        String[] path = key.path().toArray(String[]::new);
+        if (!key.isFolder()) {
+            return call(shard, "hasVideo", storage -> storage.hasVideo(key.videoName(), path));
+        }
+        VideoInfosPage page = call(shard, "getVideoInfos", storage -> storage.getVideoInfos(null, 1, path));
+        return !page.videoInfos().isEmpty() || page.nextPageToken() != null;
+    }
+
+    private <T> Optional<T> find(ShardKey key, String operation, Function<StorageDriveAdapter, Optional<T>> call) {
+        ShardAssignment assignment = getAssignment(key);
+        if (assignment.isMigrating()) {
+            Optional<T> resultOpt = call(assignment.targetShard(), operation, call);
+            if (resultOpt.isPresent()) {
+                return resultOpt;
+            }
+        }
+        return call(assignment.shard(), operation, call);
+    }
+
+    /**
+     * Runs the call on the shard and records its latency tagged with the shard, the operation and the outcome.
+     */
+    private <T> T call(String shard, String operation, Function<StorageDriveAdapter, T> call) {
+        StorageDriveAdapter storage = getShard(shard);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = call.apply(storage);
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("storage.shard.requests")
+                    .description("Calls of the storage shards")
+                    .tag("shard", shard)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private StorageDriveAdapter getShard(String shard) {
+        StorageDriveAdapter storage = shardsByName.get(shard);
+        if (storage == null) {
+            throw new IllegalStateException("Shard '" + shard + "' isn't configured.");
+        }
+        return storage;
+    }
+}
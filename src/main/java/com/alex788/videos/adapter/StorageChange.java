@@ -0,0 +1,14 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.VideoInfo;
+
+/**
+ * @param folderId  id of the folder the file is in now, {@code null} if the file was removed
+ * @param videoInfo current info of the video, {@code null} if the file was removed or isn't a video anymore
+ */
+public record StorageChange(String fileId, String folderId, VideoInfo videoInfo) {
+
+    public boolean isRemoved() {
+        return videoInfo == null;
+    }
+}
@@ -0,0 +1,18 @@
+package com.alex788.videos.adapter;
+
+import java.util.Optional;
+
+/**
+ * Feed of changes made to the files of a storage, including the ones made outside the application.
+ */
+public interface StorageChangeFeed {
+
+    /**
+     * Returns the token of the first page of changes made after this call.
+     */
+    String getStartPageToken();
+
+    StorageChangePage getChanges(String pageToken);
+
+    Optional<String> getFolderId(String... path);
+}
@@ -0,0 +1,10 @@
+package com.alex788.videos.adapter;
+
+import java.util.List;
+
+/**
+ * @param nextPageToken     token of the next page, {@code null} if this page is the last one
+ * @param newStartPageToken token to ask for the changes made after the last page, {@code null} if this page isn't the last one
+ */
+public record StorageChangePage(List<StorageChange> changes, String nextPageToken, String newStartPageToken) {
+}
@@ -1,18 +1,81 @@
 package com.alex788.videos.adapter;
 
 import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.entity.VideoMetadata;
 
 import java.io.InputStream;
-import java.util.List;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 
 public interface StorageDriveAdapter {
 
-    void save(Video video, String... path);
+    /**
+     * @return info of the saved video, empty if the folder of the video doesn't exist and nothing was saved
+     */
+    Optional<VideoInfo> save(Video video, String... path);
+
+    /**
+     * Saves a video with the content of an already stored video of the same folder without transferring it. Only
+     * storages that keep contents under their hash support it, decorators pass it to the storage they wrap.
+     *
+     * @return info of the saved video, empty if no video of the folder has content with the hash
+     */
+    default Optional<VideoInfo> saveByHash(String videoName, String sha256, String... path) {
+        return Optional.empty();
+    }
+
+    /**
+     * Attaches the metadata read from the content to a saved video. Storages that can't keep metadata ignore it.
+     *
+     * @return info of the video with the metadata, empty if the video doesn't exist or the metadata wasn't kept
+     */
+    default Optional<VideoInfo> saveMetadata(String videoName, VideoMetadata metadata, String... path) {
+        return Optional.empty();
+    }
 
     boolean hasVideo(String videoName, String... path);
 
+    /**
+     * Existence check made before a video is saved under the name. Unlike {@link #hasVideo}, it isn't answered from
+     * a view that may miss videos saved by other nodes or outside the application, like a filter or a catalog.
+     */
+    default boolean hasVideoBeforeSave(String videoName, String... path) {
+        return hasVideo(videoName, path);
+    }
+
+    /**
+     * Checks all the names at once instead of one request per name.
+     *
+     * @return whether the folder has a video with the name, for every given name in the given order
+     */
+    Map<String, Boolean> hasVideos(Collection<String> videoNames, String... path);
+
     Optional<InputStream> getVideoStream(String videoName, String... path);
 
-    List<String> getAllFileNames(String... path);
+    /**
+     * Returns the bytes of the video from {@code from} to {@code to} inclusive.
+     */
+    Optional<InputStream> getVideoPartStream(String videoName, long from, long to, String... path);
+
+    /**
+     * Returns the bytes of the version of the video the info describes from {@code from} to {@code to} inclusive.
+     * A storage with file ids reads the file by its id without looking the name up, so a video replaced meanwhile
+     * isn't read in place of it; empty if the version doesn't exist anymore.
+     */
+    default Optional<InputStream> getVideoVersionPartStream(VideoInfo videoInfo, long from, long to, String... path) {
+        return getVideoPartStream(videoInfo.name(), from, to, path);
+    }
+
+    Optional<VideoInfo> getVideoInfo(String videoName, String... path);
+
+    /**
+     * Returns a page of the videos of the folder ordered by name.
+     *
+     * @param pageToken token of the page returned with the previous page, {@code null} for the first page
+     * @param pageSize  maximum number of videos in the page, the storage may return fewer even if it's not the last page
+     */
+    VideoInfosPage getVideoInfos(String pageToken, int pageSize, String... path);
 }
@@ -0,0 +1,64 @@
+package com.alex788.videos.chunked_upload;
+
+import com.alex788.videos.entity.ChunkedUploadStatus;
+import com.alex788.videos.video_blob.ContentHashes;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@RequiredArgsConstructor
+class ChunkedUpload {
+
+    private final UUID id;
+    private final UUID userId;
+    private final String videoName;
+    private final Path spoolPath;
+    private long nextChunkNumber;
+    private long committedBytes;
+    /**
+     * Digest of the committed chunks, {@code null} for an upload restored after a restart until it's read
+     * from the spool file again.
+     */
+    private MessageDigest digest = ContentHashes.newDigest();
+    private Instant lastUpdate = Instant.now();
+    private boolean finished;
+
+    /**
+     * Restores an upload of the previous run from its metadata.
+     */
+    ChunkedUpload(UUID id, UUID userId, String videoName, Path spoolPath, long nextChunkNumber, long committedBytes,
+                  Instant lastUpdate) {
+        this(id, userId, videoName, spoolPath);
+        this.nextChunkNumber = nextChunkNumber;
+        this.committedBytes = committedBytes;
+        this.digest = null;
+        this.lastUpdate = lastUpdate;
+    }
+
+    /**
+     * @param chunkDigest digest of the committed chunks followed by this one
+     */
+    void commitChunk(long chunkBytes, MessageDigest chunkDigest, Instant lastUpdate) {
+        nextChunkNumber++;
+        committedBytes += chunkBytes;
+        digest = chunkDigest;
+        this.lastUpdate = lastUpdate;
+    }
+
+    void restoreDigest(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    void finish() {
+        finished = true;
+    }
+
+    ChunkedUploadStatus toStatus() {
+        return new ChunkedUploadStatus(id, videoName, nextChunkNumber, committedBytes);
+    }
+}
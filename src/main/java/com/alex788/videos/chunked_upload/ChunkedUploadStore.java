@@ -0,0 +1,336 @@
+package com.alex788.videos.chunked_upload;
+
+import com.alex788.videos.entity.ChunkedUploadStatus;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.exception.ChunkedUploadNotFoundException;
+import com.alex788.videos.exception.UnexpectedChunkNumberException;
+import com.alex788.videos.video_blob.ContentHashes;
+import com.alex788.videos.video_faststart.FaststartRemuxer;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Keeps chunks of unfinished uploads in spool files on the local disk. Chunks must be sent in order,
+ * a chunk that was already committed is accepted again and ignored, so a client can always retry the last chunk.
+ * Uploads that weren't updated during the expiration time are deleted.
+ * <p>
+ * The metadata of every upload is kept in a file next to its spool file and rewritten after each chunk, so uploads
+ * continue after a restart. Bytes of the spool file past the committed ones belong to a chunk that wasn't
+ * committed and are cut off on restart.
+ */
+public class ChunkedUploadStore {
+
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final String SPOOL_FILE_SUFFIX = ".part";
+    private static final String METADATA_FILE_SUFFIX = ".upload";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final Pattern UPLOAD_FILE_NAME = Pattern.compile("([0-9a-f-]{36})(\\.part|\\.upload|\\d*\\.tmp)");
+    private static final String USER_ID_PROPERTY = "userId";
+    private static final String VIDEO_NAME_PROPERTY = "videoName";
+    private static final String NEXT_CHUNK_NUMBER_PROPERTY = "nextChunkNumber";
+    private static final String COMMITTED_BYTES_PROPERTY = "committedBytes";
+    private static final String LAST_UPDATE_PROPERTY = "lastUpdate";
+
+    private final Path directory;
+    private final Duration expiration;
+    private final FaststartRemuxer faststartRemuxer;
+    private final Map<UUID, ChunkedUpload> uploadsById = new ConcurrentHashMap<>();
+
+    public ChunkedUploadStore(Path directory, Duration expiration, FaststartRemuxer faststartRemuxer) {
+        this.directory = directory;
+        this.expiration = expiration;
+        this.faststartRemuxer = faststartRemuxer;
+        try {
+            Files.createDirectories(directory);
+            loadUploads();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot prepare chunked upload directory '" + directory + "'.", e);
+        }
+        deleteExpiredUploads();
+    }
+
+    public ChunkedUploadStatus start(UUID userId, String videoName) {
+        new Video(userId, videoName, null); // validates the name before any chunk is sent
+        deleteExpiredUploads();
+        UUID uploadId = UUID.randomUUID();
+        Path spoolPath = directory.resolve(uploadId + SPOOL_FILE_SUFFIX);
+        ChunkedUpload upload = new ChunkedUpload(uploadId, userId, videoName, spoolPath);
+        try {
+            Files.createFile(spoolPath);
+            writeMetadata(upload);
+        } catch (IOException e) {
+            deleteFiles(upload);
+            throw new RuntimeException("Cannot start chunked upload of video '" + videoName + "'.", e);
+        }
+        uploadsById.put(uploadId, upload);
+        return upload.toStatus();
+    }
+
+    /**
+     * The metadata is written after the chunk was forced to the disk and the chunk is committed only once it's
+     * written. If it isn't written, the chunk is cut from the spool file and the client sends it again.
+     */
+    public ChunkedUploadStatus saveChunk(UUID uploadId, long chunkNumber, InputStream chunk) {
+        ChunkedUpload upload = getUpload(uploadId);
+        synchronized (upload) {
+            checkNotFinished(upload);
+            if (chunkNumber < upload.getNextChunkNumber()) {
+                return upload.toStatus();
+            }
+            if (chunkNumber > upload.getNextChunkNumber()) {
+                throw new UnexpectedChunkNumberException("Upload '" + uploadId + "' expects chunk " + upload.getNextChunkNumber() + ", but got " + chunkNumber + ".");
+            }
+            MessageDigest chunkDigest = copyDigest(upload);
+            long chunkBytes = append(upload, new DigestInputStream(chunk, chunkDigest));
+            Instant lastUpdate = Instant.now();
+            try {
+                writeMetadata(upload, upload.getNextChunkNumber() + 1, upload.getCommittedBytes() + chunkBytes, lastUpdate);
+            } catch (IOException e) {
+                try {
+                    cutUncommittedBytes(upload);
+                } catch (IOException cutException) {
+                    e.addSuppressed(cutException);
+                }
+                throw new RuntimeException("Cannot save chunk of upload '" + uploadId + "'.", e);
+            }
+            upload.commitChunk(chunkBytes, chunkDigest, lastUpdate);
+            return upload.toStatus();
+        }
+    }
+
+    public ChunkedUploadStatus getStatus(UUID uploadId) {
+        ChunkedUpload upload = getUpload(uploadId);
+        synchronized (upload) {
+            return upload.toStatus();
+        }
+    }
+
+    /**
+     * Finishes the upload and returns the assembled video. The spool file is deleted when the video stream is closed.
+     */
+    public Video complete(UUID uploadId) {
+        ChunkedUpload upload = getUpload(uploadId);
+        synchronized (upload) {
+            checkNotFinished(upload);
+            Video video;
+            try {
+                String sha256 = ContentHashes.toHex(getDigest(upload));
+                video = new Video(upload.getUserId(), upload.getVideoName(), faststartRemuxer.openSpool(upload.getSpoolPath()), sha256);
+                Files.deleteIfExists(getMetadataPath(uploadId));
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read chunked upload '" + uploadId + "'.", e);
+            }
+            upload.finish();
+            uploadsById.remove(uploadId);
+            return video;
+        }
+    }
+
+    /**
+     * The hash is computed while chunks are written. A chunk updates a copy of the digest, so a failed chunk
+     * leaves the digest of the committed ones intact.
+     */
+    private MessageDigest copyDigest(ChunkedUpload upload) {
+        try {
+            return (MessageDigest) getDigest(upload).clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The state of a digest can't be saved, so the digest of an upload restored after a restart is computed
+     * from its spool file once it's needed.
+     */
+    private MessageDigest getDigest(ChunkedUpload upload) {
+        if (upload.getDigest() == null) {
+            MessageDigest digest = ContentHashes.newDigest();
+            try (InputStream inputStream = ByteStreams.limit(Files.newInputStream(upload.getSpoolPath()), upload.getCommittedBytes())) {
+                new DigestInputStream(inputStream, digest).transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read chunked upload '" + upload.getId() + "'.", e);
+            }
+            upload.restoreDigest(digest);
+        }
+        return upload.getDigest();
+    }
+
+    private long append(ChunkedUpload upload, InputStream chunk) {
+        try (FileChannel out = FileChannel.open(upload.getSpoolPath(), StandardOpenOption.WRITE)) {
+            ReadableByteChannel in = Channels.newChannel(chunk);
+            long position = upload.getCommittedBytes();
+            try {
+                long transferred;
+                while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK_SIZE)) > 0) {
+                    position += transferred;
+                }
+                out.force(false);
+            } catch (IOException e) {
+                out.truncate(upload.getCommittedBytes());
+                throw e;
+            }
+            return position - upload.getCommittedBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save chunk of upload '" + upload.getId() + "'.", e);
+        }
+    }
+
+    private ChunkedUpload getUpload(UUID uploadId) {
+        ChunkedUpload upload = uploadsById.get(uploadId);
+        if (upload == null) {
+            throw new ChunkedUploadNotFoundException("Chunked upload '" + uploadId + "' doesn't exist.");
+        }
+        return upload;
+    }
+
+    private static void checkNotFinished(ChunkedUpload upload) {
+        if (upload.isFinished()) {
+            throw new ChunkedUploadNotFoundException("Chunked upload '" + upload.getId() + "' is already completed.");
+        }
+    }
+
+    private void deleteExpiredUploads() {
+        Instant expirationTime = Instant.now().minus(expiration);
+        for (ChunkedUpload upload : uploadsById.values()) {
+            synchronized (upload) {
+                if (!upload.isFinished() && upload.getLastUpdate().isBefore(expirationTime)) {
+                    upload.finish();
+                    uploadsById.remove(upload.getId());
+                    deleteFiles(upload);
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores the uploads of the previous run. Spool files without metadata, metadata without a complete spool
+     * file and temp files are deleted, files not named like the ones of the uploads are kept.
+     */
+    private void loadUploads() throws IOException {
+        Set<UUID> spoolIds = new HashSet<>();
+        Map<UUID, Path> metadataPathsById = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Matcher matcher = UPLOAD_FILE_NAME.matcher(file.getFileName().toString());
+                Optional<UUID> idOpt = matcher.matches() ? toUuid(matcher.group(1)) : Optional.empty();
+                if (idOpt.isEmpty()) {
+                    continue;
+                }
+                switch (matcher.group(2)) {
+                    case SPOOL_FILE_SUFFIX -> spoolIds.add(idOpt.get());
+                    case METADATA_FILE_SUFFIX -> metadataPathsById.put(idOpt.get(), file);
+                    default -> Files.deleteIfExists(file);
+                }
+            }
+        }
+        for (Map.Entry<UUID, Path> entry : metadataPathsById.entrySet()) {
+            Optional<ChunkedUpload> uploadOpt = spoolIds.remove(entry.getKey()) ? readMetadata(entry.getKey(), entry.getValue()) : Optional.empty();
+            if (uploadOpt.isPresent() && cutUncommittedBytes(uploadOpt.get())) {
+                uploadsById.put(entry.getKey(), uploadOpt.get());
+            } else {
+                Files.deleteIfExists(entry.getValue());
+                Files.deleteIfExists(directory.resolve(entry.getKey() + SPOOL_FILE_SUFFIX));
+            }
+        }
+        for (UUID spoolId : spoolIds) {
+            Files.deleteIfExists(directory.resolve(spoolId + SPOOL_FILE_SUFFIX));
+        }
+    }
+
+    /**
+     * @return {@code false} if the spool file is shorter than the committed bytes
+     */
+    private static boolean cutUncommittedBytes(ChunkedUpload upload) throws IOException {
+        try (FileChannel channel = FileChannel.open(upload.getSpoolPath(), StandardOpenOption.WRITE)) {
+            if (channel.size() < upload.getCommittedBytes()) {
+                return false;
+            }
+            channel.truncate(upload.getCommittedBytes());
+            return true;
+        }
+    }
+
+    private Optional<ChunkedUpload> readMetadata(UUID uploadId, Path metadataPath) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(metadataPath)) {
+            properties.load(reader);
+            return Optional.of(new ChunkedUpload(uploadId, UUID.fromString(properties.getProperty(USER_ID_PROPERTY)),
+                    Objects.requireNonNull(properties.getProperty(VIDEO_NAME_PROPERTY)), directory.resolve(uploadId + SPOOL_FILE_SUFFIX),
+                    Long.parseLong(properties.getProperty(NEXT_CHUNK_NUMBER_PROPERTY)),
+                    Long.parseLong(properties.getProperty(COMMITTED_BYTES_PROPERTY)),
+                    Instant.ofEpochMilli(Long.parseLong(properties.getProperty(LAST_UPDATE_PROPERTY)))));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void writeMetadata(ChunkedUpload upload) throws IOException {
+        writeMetadata(upload, upload.getNextChunkNumber(), upload.getCommittedBytes(), upload.getLastUpdate());
+    }
+
+    private void writeMetadata(ChunkedUpload upload, long nextChunkNumber, long committedBytes, Instant lastUpdate) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(USER_ID_PROPERTY, upload.getUserId().toString());
+        properties.setProperty(VIDEO_NAME_PROPERTY, upload.getVideoName());
+        properties.setProperty(NEXT_CHUNK_NUMBER_PROPERTY, Long.toString(nextChunkNumber));
+        properties.setProperty(COMMITTED_BYTES_PROPERTY, Long.toString(committedBytes));
+        properties.setProperty(LAST_UPDATE_PROPERTY, Long.toString(lastUpdate.toEpochMilli()));
+        Path tempPath = Files.createTempFile(directory, upload.getId().toString(), TEMP_FILE_SUFFIX);
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempPath)) {
+                properties.store(writer, null);
+            }
+            Files.move(tempPath, getMetadataPath(upload.getId()), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private Path getMetadataPath(UUID uploadId) {
+        return directory.resolve(uploadId + METADATA_FILE_SUFFIX);
+    }
+
+    private void deleteFiles(ChunkedUpload upload) {
+        try {
+            Files.deleteIfExists(getMetadataPath(upload.getId()));
+            Files.deleteIfExists(upload.getSpoolPath());
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static Optional<UUID> toUuid(String text) {
+        try {
+            return Optional.of(UUID.fromString(text));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -1,42 +1,564 @@
 package com.alex788.videos.configuration;
 
+import com.alex788.videos.adapter.BlockCachingStorageDriveAdapter;
+import com.alex788.videos.adapter.CachingStorageDriveAdapter;
+import com.alex788.videos.adapter.CatalogStorageDriveAdapter;
+import com.alex788.videos.adapter.DeduplicatingStorageDriveAdapter;
+import com.alex788.videos.adapter.DriveCredentials;
+import com.alex788.videos.adapter.DriveGovernor;
+import com.alex788.videos.adapter.FolderIdCache;
 import com.alex788.videos.adapter.GoogleDriveAdapter;
+import com.alex788.videos.adapter.LazyStorageDriveAdapter;
+import com.alex788.videos.adapter.LocalStorageDriveAdapter;
+import com.alex788.videos.adapter.NegativeLookupStorageDriveAdapter;
+import com.alex788.videos.adapter.ShardedStorageDriveAdapter;
+import com.alex788.videos.adapter.StorageChangeFeed;
 import com.alex788.videos.adapter.StorageDriveAdapter;
+import com.alex788.videos.chunked_upload.ChunkedUploadStore;
+import com.alex788.videos.controller.UploadAdmissionFilter;
+import com.alex788.videos.executor.ExecutionMode;
+import com.alex788.videos.executor.FairUploadScheduler;
+import com.alex788.videos.executor.UploadExecutors;
+import com.alex788.videos.executor.UploadPriorityPolicy;
 import com.alex788.videos.loading_video_pool.InMemoryVideoLoadingPool;
+import com.alex788.videos.loading_video_pool.JdbcVideoLoadingPool;
 import com.alex788.videos.loading_video_pool.VideoLoadingPool;
+import com.alex788.videos.repository.CoalescingVideoRepository;
 import com.alex788.videos.repository.VideoRepository;
 import com.alex788.videos.repository.VideoRepositoryImpl;
+import com.alex788.videos.service.ChunkedUploadService;
+import com.alex788.videos.service.UploadJobService;
 import com.alex788.videos.service.VideoService;
+import com.alex788.videos.storage_shard.ConsistentHashRing;
+import com.alex788.videos.storage_shard.ShardMap;
+import com.alex788.videos.storage_shard.ShardRebalancer;
+import com.alex788.videos.upload_job.UploadJobStore;
+import com.alex788.videos.video_blob.VideoBlobStore;
+import com.alex788.videos.video_cache.VideoBlockCache;
+import com.alex788.videos.video_cache.VideoDiskCache;
+import com.alex788.videos.video_catalog.VideoCatalog;
+import com.alex788.videos.video_catalog.VideoCatalogSynchronizer;
+import com.alex788.videos.video_download.SharedVideoDownloads;
+import com.alex788.videos.video_faststart.FaststartRemuxer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
 
+import javax.sql.DataSource;
 import java.io.IOException;
-import java.security.GeneralSecurityException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class AppConfiguration {
 
+    @Value("${storage.type:google-drive}")
+    private String storageType;
+
+    @Value("${storage.local.root-directory:videos}")
+    private Path localStorageRootDirectory;
+
+    @Value("${storage.sharding.shards:}")
+    private String[] storageShardNames;
+
+    @Value("${storage.sharding.points-per-weight:100}")
+    private int storageShardPointsPerWeight;
+
+    @Value("${storage.sharding.spread-folders:${deduplication.blob-path:VideosApp/blobs}}")
+    private String[] storageShardSpreadFolders;
+
+    @Value("${storage.sharding.initial-shard:}")
+    private String initialStorageShard;
+
+    @Value("${storage.sharding.assignment-ttl:30s}")
+    private Duration storageShardAssignmentTtl;
+
+    @Value("${storage.sharding.rebalance-interval:10m}")
+    private Duration storageShardRebalanceInterval;
+
+    @Value("${storage.sharding.copy-delay:10m}")
+    private Duration storageShardCopyDelay;
+
+    @Value("${storage.sharding.rebalance-lease-duration:1h}")
+    private Duration storageShardRebalanceLeaseDuration;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private ObjectProvider<DataSource> dataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${loading-pool.type:in-memory}")
+    private String loadingPoolType;
+
+    @Value("${loading-pool.parallel-load-limit:2}")
+    private int parallelLoadLimit;
+
+    @Value("${loading-pool.global-load-limit:0}")
+    private int globalLoadLimit;
+
+    @Value("${loading-pool.jdbc.lease-duration:1m}")
+    private Duration loadingPoolLeaseDuration;
+
+    @Value("${upload-executor.mode:platform}")
+    private ExecutionMode uploadExecutorMode;
+
+    @Value("${upload-executor.max-concurrency:16}")
+    private int uploadExecutorMaxConcurrency;
+
+    @Value("${upload-executor.drain-timeout:5m}")
+    private Duration uploadExecutorDrainTimeout;
+
+    @Value("${upload-scheduler.max-queued:1000}")
+    private int uploadSchedulerMaxQueued;
+
+    @Value("${upload-scheduler.quantum:64MB}")
+    private DataSize uploadSchedulerQuantum;
+
+    @Value("${upload-scheduler.high-priority-users:}")
+    private List<UUID> uploadSchedulerHighPriorityUsers;
+
+    @Value("${upload-scheduler.low-priority-users:}")
+    private List<UUID> uploadSchedulerLowPriorityUsers;
+
+    @Value("${upload-job.spool-directory:uploading_videos}")
+    private Path uploadJobSpoolDirectory;
+
+    @Value("${upload-job.retention:1h}")
+    private Duration uploadJobRetention;
+
+    @Value("${chunked-upload.directory:chunked_uploads}")
+    private Path chunkedUploadDirectory;
+
+    @Value("${chunked-upload.expiration:24h}")
+    private Duration chunkedUploadExpiration;
+
+    @Value("${shared-download.enabled:true}")
+    private boolean sharedDownloadEnabled;
+
+    @Value("${shared-download.spool-directory:sharing_videos}")
+    private Path sharedDownloadSpoolDirectory;
+
+    @Value("${shared-download.max-spool-size:5GB}")
+    private DataSize sharedDownloadMaxSpoolSize;
+
+    @Value("${shared-download.max-downloads:64}")
+    private int sharedDownloadMaxDownloads;
+
+    @Value("${faststart.enabled:false}")
+    private boolean faststartEnabled;
+
+    @Value("${faststart.max-movie-box-size:64MB}")
+    private DataSize faststartMaxMovieBoxSize;
+
+    @Value("${video-cache.enabled:true}")
+    private boolean videoCacheEnabled;
+
+    @Value("${video-cache.directory:downloading_videos}")
+    private Path videoCacheDirectory;
+
+    @Value("${video-cache.max-size:10GB}")
+    private DataSize videoCacheMaxSize;
+
+    @Value("${video-cache.validation-ttl:1m}")
+    private Duration videoCacheValidationTtl;
+
+    @Value("${block-cache.enabled:true}")
+    private boolean blockCacheEnabled;
+
+    @Value("${block-cache.block-size:4MB}")
+    private DataSize blockCacheBlockSize;
+
+    @Value("${block-cache.max-size:512MB}")
+    private DataSize blockCacheMaxSize;
+
+    @Value("${block-cache.read-ahead-blocks:4}")
+    private int blockCacheReadAheadBlocks;
+
+    @Value("${block-cache.parallel-fetches:8}")
+    private int blockCacheParallelFetches;
+
+    @Value("${block-cache.parallel-prefetches:4}")
+    private int blockCacheParallelPrefetches;
+
+    @Value("${block-cache.fetch-queue-capacity:256}")
+    private int blockCacheFetchQueueCapacity;
+
+    @Value("${video-catalog.enabled:true}")
+    private boolean videoCatalogEnabled;
+
+    @Value("${video-catalog.sync-interval:30s}")
+    private Duration videoCatalogSyncInterval;
+
+    @Value("${deduplication.enabled:true}")
+    private boolean deduplicationEnabled;
+
+    @Value("${deduplication.blob-path:VideosApp/blobs}")
+    private String deduplicationBlobPath;
+
+    @Value("${negative-lookup.enabled:true}")
+    private boolean negativeLookupEnabled;
+
+    @Value("${negative-lookup.false-positive-probability:0.01}")
+    private double negativeLookupFalsePositiveProbability;
+
+    @Value("${negative-lookup.min-expected-videos:1000}")
+    private int negativeLookupMinExpectedVideos;
+
+    @Value("${negative-lookup.max-folders:10000}")
+    private long negativeLookupMaxFolders;
+
+    @Value("${negative-lookup.rebuild-interval:10m}")
+    private Duration negativeLookupRebuildInterval;
+
+    @Value("${google-drive.upload-chunk-size:8MB}")
+    private DataSize googleDriveUploadChunkSize;
+
+    @Value("${google-drive.credentials:installed-app}")
+    private DriveCredentials.Type googleDriveCredentialsType;
+
+    @Value("${google-drive.service-account-key-file:service-account.json}")
+    private Path googleDriveServiceAccountKeyFile;
+
+    @Value("${google-drive.initialization.retry-interval:10s}")
+    private Duration googleDriveInitializationRetryInterval;
+
+    @Value("${google-drive.initialization.await-timeout:5s}")
+    private Duration googleDriveInitializationAwaitTimeout;
+
+    @Value("${google-drive.max-connections:64}")
+    private int googleDriveMaxConnections;
+
+    @Value("${google-drive.governor.requests-per-second:180}")
+    private double googleDriveRequestsPerSecond;
+
+    @Value("${google-drive.governor.max-retries:5}")
+    private int googleDriveMaxRetries;
+
+    @Value("${google-drive.governor.initial-back-off:500ms}")
+    private Duration googleDriveInitialBackOff;
+
+    @Value("${google-drive.governor.max-back-off:32s}")
+    private Duration googleDriveMaxBackOff;
+
+    @Value("${google-drive.governor.max-elapsed-time:1m}")
+    private Duration googleDriveMaxElapsedTime;
+
+    @Value("${google-drive.folder-id-cache.max-size:1000}")
+    private long folderIdCacheMaxSize;
+
+    @Value("${google-drive.folder-id-cache.ttl:10m}")
+    private Duration folderIdCacheTtl;
+
     @Bean
     public VideoService videoLoader() {
         return new VideoService(videoRepository());
     }
 
+    @Bean
+    public ChunkedUploadService chunkedUploadService() {
+        return new ChunkedUploadService(new ChunkedUploadStore(chunkedUploadDirectory, chunkedUploadExpiration, faststartRemuxer()),
+                uploadJobService());
+    }
+
+    @Bean
+    public UploadJobService uploadJobService() {
+        return new UploadJobService(new UploadJobStore(uploadJobSpoolDirectory, uploadJobRetention), faststartRemuxer(), videoLoader(),
+                new UploadPriorityPolicy(uploadSchedulerHighPriorityUsers, uploadSchedulerLowPriorityUsers), meterRegistry);
+    }
+
+    @Bean
+    public FilterRegistrationBean<UploadAdmissionFilter> uploadAdmissionFilter() {
+        FilterRegistrationBean<UploadAdmissionFilter> registration = new FilterRegistrationBean<>(new UploadAdmissionFilter(uploadJobService()));
+        registration.addUrlPatterns("/save_video");
+        return registration;
+    }
+
+    @Bean
+    public FaststartRemuxer faststartRemuxer() {
+        return new FaststartRemuxer(faststartEnabled, faststartMaxMovieBoxSize.toBytes());
+    }
+
     @Bean
     public VideoRepository videoRepository() {
-        return new VideoRepositoryImpl(videoLoadingPool(), storageDriveAdapter());
+        ExecutorService uploadExecutor = ExecutorServiceMetrics.monitor(meterRegistry,
+                UploadExecutors.create(uploadExecutorMode, uploadExecutorMaxConcurrency), "upload");
+        FairUploadScheduler uploadScheduler = new FairUploadScheduler(uploadExecutor, uploadExecutorMaxConcurrency,
+                uploadSchedulerMaxQueued, uploadSchedulerQuantum.toBytes());
+        Gauge.builder("videos.upload.queued", uploadScheduler, FairUploadScheduler::getQueuedCount)
+                .description("Uploads waiting for a slot of the upload executor")
+                .register(meterRegistry);
+        VideoRepository videoRepository = new VideoRepositoryImpl(videoLoadingPool(), storageDriveAdapter(), uploadScheduler,
+                uploadExecutorDrainTimeout, meterRegistry);
+        if (sharedDownloadEnabled) {
+            SharedVideoDownloads<CoalescingVideoRepository.VideoKey> sharedVideoDownloads = new SharedVideoDownloads<>(
+                    sharedDownloadSpoolDirectory, sharedDownloadMaxSpoolSize.toBytes(), sharedDownloadMaxDownloads,
+                    sharedDownloadTransferExecutor());
+            Gauge.builder("videos.download.spooled", sharedVideoDownloads, SharedVideoDownloads::getSpooledBytes)
+                    .description("Bytes of the spool files of the shared downloads")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            videoRepository = new CoalescingVideoRepository(videoRepository, sharedVideoDownloads);
+        }
+        return videoRepository;
     }
 
     @Bean
     public VideoLoadingPool videoLoadingPool() {
-        return new InMemoryVideoLoadingPool();
+        VideoLoadingPool videoLoadingPool = "jdbc".equals(loadingPoolType)
+                ? new JdbcVideoLoadingPool(dataSource.getObject(), parallelLoadLimit, globalLoadLimit, loadingPoolLeaseDuration)
+                : new InMemoryVideoLoadingPool(parallelLoadLimit, globalLoadLimit);
+        Gauge.builder("videos.loading", videoLoadingPool, VideoLoadingPool::getGlobalLoadCount)
+                .description("Videos loading by all users")
+                .tag("pool", loadingPoolType)
+                .register(meterRegistry);
+        return videoLoadingPool;
     }
 
     @Bean
     public StorageDriveAdapter storageDriveAdapter() {
+        StorageDriveAdapter storageDriveAdapter = createBaseStorageDriveAdapter();
+        boolean catalogUsed = false;
+        if (videoCatalogEnabled && storageDriveAdapter instanceof StorageChangeFeed storageChangeFeed) {
+            VideoCatalog videoCatalog = new VideoCatalog(dataSource.getObject());
+            new VideoCatalogSynchronizer(videoCatalog, storageChangeFeed).start(videoCatalogSyncInterval);
+            storageDriveAdapter = new CatalogStorageDriveAdapter(storageDriveAdapter, storageChangeFeed, videoCatalog);
+            catalogUsed = true;
+        }
+        if (deduplicationEnabled) {
+            storageDriveAdapter = new DeduplicatingStorageDriveAdapter(storageDriveAdapter, new VideoBlobStore(dataSource.getObject()),
+                    deduplicationBlobPath.split("/"));
+        }
+        // the catalog answers the lookups without the storage and learns videos of other nodes within its sync interval,
+        // a filter would report them missing until its rebuild
+        if (negativeLookupEnabled && !catalogUsed) {
+            storageDriveAdapter = new NegativeLookupStorageDriveAdapter(storageDriveAdapter, negativeLookupFalsePositiveProbability,
+                    negativeLookupMinExpectedVideos, negativeLookupMaxFolders, negativeLookupRebuildInterval, negativeLookupRebuildExecutor());
+        }
+        if (blockCacheEnabled) {
+            storageDriveAdapter = new BlockCachingStorageDriveAdapter(storageDriveAdapter, new VideoBlockCache(blockCacheMaxSize.toBytes(),
+                    (int) blockCacheBlockSize.toBytes(), blockCacheReadAheadBlocks, blockCacheFetchExecutor(), blockCachePrefetchExecutor()));
+        }
+        if (videoCacheEnabled) {
+            storageDriveAdapter = new CachingStorageDriveAdapter(storageDriveAdapter, new VideoDiskCache(videoCacheDirectory, videoCacheMaxSize.toBytes(),
+                    videoCacheValidationTtl));
+        }
+        return storageDriveAdapter;
+    }
+
+    /**
+     * Transfers the shared downloads to their spool files, a transfer in progress is cancelled on shutdown. The queue
+     * only takes a download started while the thread of an ended one is still finishing.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService sharedDownloadTransferExecutor() {
+        return newBoundedExecutor(sharedDownloadMaxDownloads, sharedDownloadMaxDownloads, "shared-download-transfer");
+    }
+
+    /**
+     * Rebuilds the video name filters in the background, a rebuild in progress is dropped on shutdown.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService negativeLookupRebuildExecutor() {
+        return Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "negative-lookup-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Fetches the blocks readers wait for, a fetch over the queue capacity fails the read.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService blockCacheFetchExecutor() {
+        return newBoundedExecutor(blockCacheParallelFetches, blockCacheFetchQueueCapacity, "block-cache-fetch");
+    }
+
+    /**
+     * Fetches the blocks ahead of readers, a prefetch over the queue capacity is dropped.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService blockCachePrefetchExecutor() {
+        return newBoundedExecutor(blockCacheParallelPrefetches, blockCacheFetchQueueCapacity, "block-cache-prefetch");
+    }
+
+    private static ExecutorService newBoundedExecutor(int threads, int queueCapacity, String threadName) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private StorageDriveAdapter createBaseStorageDriveAdapter() {
+        if ("local".equals(storageType)) {
+            return new LocalStorageDriveAdapter(localStorageRootDirectory);
+        }
+        if ("sharded".equals(storageType)) {
+            return createShardedStorageDriveAdapter();
+        }
+        return googleDriveAdapter();
+    }
+
+    /**
+     * Videos of the spread folders can't be listed, so the catalog, which hydrates by listing, and user folders, which
+     * are listed by their users, can't be spread.
+     */
+    private StorageDriveAdapter createShardedStorageDriveAdapter() {
+        List<List<String>> spreadFolders = Arrays.stream(storageShardSpreadFolders)
+                .map(spreadFolder -> List.of(spreadFolder.split("/")))
+                .toList();
+        if (videoCatalogEnabled && !spreadFolders.isEmpty()) {
+            throw new IllegalStateException("The video catalog can't be used with spread folders, set video-catalog.enabled=false "
+                    + "or storage.sharding.spread-folders to nothing.");
+        }
+        for (List<String> spreadFolder : spreadFolders) {
+            if (spreadFolder.size() == 2 && spreadFolder.get(0).equals("VideosApp") && isUuid(spreadFolder.get(1))) {
+                throw new IllegalStateException("User folder '" + String.join("/", spreadFolder) + "' can't be spread, it's listed.");
+            }
+        }
+        ConsistentHashRing ring = new ConsistentHashRing(storageShardWeights(), storageShardPointsPerWeight);
+        ShardMap shardMap = new ShardMap(dataSource.getObject());
+        storageShards().keySet().forEach(shard -> Gauge.builder("storage.shard.keys", shardMap, map -> map.countByShard(shard))
+                .description("Folders and spread videos placed on the shard")
+                .tag("shard", shard)
+                .register(meterRegistry));
+        Gauge.builder("storage.shard.migrations", shardMap, ShardMap::countMigrating)
+                .description("Folders and spread videos being migrated to another shard")
+                .register(meterRegistry);
+        new ShardRebalancer(storageShards(), ring, shardMap, storageShardCopyDelay, storageShardRebalanceLeaseDuration)
+                .start(storageShardRebalanceInterval);
+        return new ShardedStorageDriveAdapter(storageShards(), ring, shardMap, spreadFolders,
+                initialStorageShard.isEmpty() ? null : initialStorageShard, storageShardAssignmentTtl, meterRegistry);
+    }
+
+    private static boolean isUuid(String name) {
         try {
-            return new GoogleDriveAdapter();
-        } catch (GeneralSecurityException | IOException e) {
-            throw new RuntimeException(e);
+            UUID.fromString(name);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Storages of the shards by name, every shard is configured by the storage.sharding.shard.{name}.* properties.
+     * A drive shard has its own credentials, connections, rate and folder ids, so the rate adds up with the shards.
+     */
+    @Bean
+    @Lazy
+    public Map<String, StorageDriveAdapter> storageShards() {
+        Map<String, StorageDriveAdapter> shardsByName = new LinkedHashMap<>();
+        for (String shard : storageShardNames) {
+            String prefix = "storage.sharding.shard." + shard + ".";
+            if ("local".equals(environment.getProperty(prefix + "type", "google-drive"))) {
+                shardsByName.put(shard, new LocalStorageDriveAdapter(Path.of(environment.getRequiredProperty(prefix + "root-directory"))));
+                continue;
+            }
+            DriveCredentials credentials = environment.getProperty(prefix + "credentials", DriveCredentials.Type.class,
+                    DriveCredentials.Type.SERVICE_ACCOUNT) == DriveCredentials.Type.SERVICE_ACCOUNT
+                    ? DriveCredentials.serviceAccount(Path.of(environment.getRequiredProperty(prefix + "service-account-key-file")))
+                    : DriveCredentials.installedApp();
+            shardsByName.put(shard, createGoogleDriveAdapter(createFolderIdCache(Tags.of("shard", shard)), credentials));
+        }
+        return shardsByName;
+    }
+
+    private Map<String, Integer> storageShardWeights() {
+        Map<String, Integer> weightsByShardName = new LinkedHashMap<>();
+        for (String shard : storageShardNames) {
+            weightsByShardName.put(shard, environment.getProperty("storage.sharding.shard." + shard + ".weight", Integer.class, 1));
         }
+        return weightsByShardName;
+    }
+
+    /**
+     * The drive is authorized and warmed up in the background, the application starts without waiting for it.
+     * The warm-up resolves the root folder, which opens the first connections and caches its id.
+     */
+    @Bean
+    @Lazy
+    public LazyStorageDriveAdapter<GoogleDriveAdapter> googleDriveAdapter() {
+        DriveCredentials credentials = googleDriveCredentialsType == DriveCredentials.Type.SERVICE_ACCOUNT
+                ? DriveCredentials.serviceAccount(googleDriveServiceAccountKeyFile)
+                : DriveCredentials.installedApp();
+        return createGoogleDriveAdapter(folderIdCache(), credentials);
+    }
+
+    private LazyStorageDriveAdapter<GoogleDriveAdapter> createGoogleDriveAdapter(FolderIdCache folderIdCache, DriveCredentials credentials) {
+        DriveGovernor driveGovernor = new DriveGovernor(googleDriveRequestsPerSecond, googleDriveMaxRetries,
+                googleDriveInitialBackOff, googleDriveMaxBackOff, googleDriveMaxElapsedTime);
+        return new LazyStorageDriveAdapter<GoogleDriveAdapter>(() -> {
+            try {
+                return new GoogleDriveAdapter(folderIdCache, (int) googleDriveUploadChunkSize.toBytes(), driveGovernor,
+                        googleDriveMaxConnections, credentials, meterRegistry);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, googleDriveAdapter -> googleDriveAdapter.getFolderId("VideosApp"),
+                googleDriveInitializationRetryInterval, googleDriveInitializationAwaitTimeout).start();
+    }
+
+    /**
+     * Reports the storage down until the drive is ready, the readiness probe includes it. A sharded storage is down
+     * until the drives of all shards are ready, the details have the state of every shard.
+     */
+    @Bean
+    public HealthIndicator storageHealthIndicator() {
+        if ("local".equals(storageType)) {
+            return () -> Health.up().build();
+        }
+        if ("sharded".equals(storageType)) {
+            Map<String, StorageDriveAdapter> shardsByName = storageShards();
+            return () -> {
+                Map<String, String> statesByShard = new LinkedHashMap<>();
+                shardsByName.forEach((shard, storage) -> statesByShard.put(shard,
+                        !(storage instanceof LazyStorageDriveAdapter<?> lazyStorage) || lazyStorage.isReady() ? "UP" : "DOWN"));
+                return (statesByShard.containsValue("DOWN") ? Health.down() : Health.up())
+                        .withDetails(statesByShard)
+                        .build();
+            };
+        }
+        LazyStorageDriveAdapter<GoogleDriveAdapter> googleDriveAdapter = googleDriveAdapter();
+        return () -> googleDriveAdapter.isReady()
+                ? Health.up().build()
+                : googleDriveAdapter.getLastFailure().map(failure -> Health.down().withException(failure)).orElseGet(Health::down).build();
+    }
+
+    @Bean
+    public FolderIdCache folderIdCache() {
+        return createFolderIdCache(Tags.empty());
+    }
+
+    private FolderIdCache createFolderIdCache(Tags tags) {
+        FolderIdCache folderIdCache = new FolderIdCache(folderIdCacheMaxSize, folderIdCacheTtl);
+        folderIdCache.monitor(meterRegistry, tags);
+        return folderIdCache;
     }
 }
@@ -0,0 +1,35 @@
+package com.alex788.videos.configuration;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Streams responses on a pool configured by {@code spring.task.execution.pool.*}. Spring Boot doesn't create its
+ * application task executor when the context has other executors, so without this the responses would be streamed
+ * on a new thread each, without any limit.
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "web.virtual-threads.enabled", havingValue = "false", matchIfMissing = true)
+public class AsyncRequestExecutorConfiguration implements WebMvcConfigurer {
+
+    private final TaskExecutorBuilder taskExecutorBuilder;
+
+    @Bean
+    public ThreadPoolTaskExecutor asyncRequestExecutor() {
+        return taskExecutorBuilder
+                .threadNamePrefix("async-request-")
+                .build();
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(asyncRequestExecutor());
+    }
+}
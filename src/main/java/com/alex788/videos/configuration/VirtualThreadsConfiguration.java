@@ -0,0 +1,28 @@
+package com.alex788.videos.configuration;
+
+import com.alex788.videos.executor.VirtualThreads;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Handles requests and streams responses on virtual threads instead of the Tomcat and async request pools.
+ */
+@Configuration
+@ConditionalOnProperty(name = "web.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfiguration implements WebMvcConfigurer {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newExecutor("tomcat-"));
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(VirtualThreads.newExecutor("async-request-")));
+    }
+}
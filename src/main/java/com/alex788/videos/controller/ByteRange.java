@@ -0,0 +1,39 @@
+package com.alex788.videos.controller;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Range of bytes from {@code from} to {@code to} inclusive.
+ */
+record ByteRange(long from, long to) {
+
+    /**
+     * Merges overlapping and adjacent ranges, so no byte is read twice, the result is ordered by {@code from}.
+     */
+    static List<ByteRange> coalesce(List<ByteRange> byteRanges) {
+        List<ByteRange> sortedByteRanges = byteRanges.stream()
+                .sorted(Comparator.comparingLong(ByteRange::from))
+                .toList();
+        List<ByteRange> coalescedByteRanges = new ArrayList<>();
+        for (ByteRange byteRange : sortedByteRanges) {
+            int last = coalescedByteRanges.size() - 1;
+            if (last >= 0 && byteRange.from() <= coalescedByteRanges.get(last).to() + 1) {
+                ByteRange lastByteRange = coalescedByteRanges.get(last);
+                coalescedByteRanges.set(last, new ByteRange(lastByteRange.from(), Math.max(lastByteRange.to(), byteRange.to())));
+            } else {
+                coalescedByteRanges.add(byteRange);
+            }
+        }
+        return coalescedByteRanges;
+    }
+
+    long length() {
+        return to - from + 1;
+    }
+
+    String toContentRange(long size) {
+        return "bytes " + from + "-" + to + "/" + size;
+    }
+}
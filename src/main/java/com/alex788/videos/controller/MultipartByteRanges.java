@@ -0,0 +1,86 @@
+package com.alex788.videos.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Body of a {@code multipart/byteranges} response. The parts of the video are requested one after another
+ * while the body is being read, so only one part is open at a time.
+ */
+class MultipartByteRanges {
+
+    private static final String CRLF = "\r\n";
+
+    private final String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+    private final List<ByteRange> ranges;
+    private final long videoSize;
+    private final PartReader partReader;
+
+    MultipartByteRanges(List<ByteRange> ranges, long videoSize, PartReader partReader) {
+        this.ranges = ranges;
+        this.videoSize = videoSize;
+        this.partReader = partReader;
+    }
+
+    MediaType getContentType() {
+        return MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary);
+    }
+
+    long getContentLength() {
+        long contentLength = getClosingDelimiter().length;
+        for (ByteRange range : ranges) {
+            contentLength += getPartHeader(range).length + range.length();
+        }
+        return contentLength;
+    }
+
+    InputStream getInputStream() {
+        List<Supplier<InputStream>> segments = new ArrayList<>();
+        for (ByteRange range : ranges) {
+            segments.add(() -> new ByteArrayInputStream(getPartHeader(range)));
+            segments.add(() -> partReader.read(range.from(), range.to()));
+        }
+        segments.add(() -> new ByteArrayInputStream(getClosingDelimiter()));
+
+        Iterator<Supplier<InputStream>> iterator = segments.iterator();
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return iterator.next().get();
+            }
+        });
+    }
+
+    private byte[] getPartHeader(ByteRange range) {
+        String header = CRLF + "--" + boundary + CRLF
+                + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + CRLF
+                + HttpHeaders.CONTENT_RANGE + ": " + range.toContentRange(videoSize) + CRLF
+                + CRLF;
+        return header.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private byte[] getClosingDelimiter() {
+        return (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    interface PartReader {
+
+        InputStream read(long from, long to);
+    }
+}
@@ -0,0 +1,45 @@
+package com.alex788.videos.controller;
+
+import com.alex788.videos.exception.UploadQueueFullException;
+import com.alex788.videos.executor.UploadReservation;
+import com.alex788.videos.service.UploadJobService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Takes a slot of the upload queue before the body of an upload request is read, the multipart body is parsed
+ * by the dispatcher before any handler runs. A full queue answers 429 without receiving the content; the slot
+ * is passed to the handler in the {@link #RESERVATION_ATTRIBUTE} request attribute and freed if it isn't used.
+ */
+@RequiredArgsConstructor
+public class UploadAdmissionFilter extends OncePerRequestFilter {
+
+    public static final String RESERVATION_ATTRIBUTE = "com.alex788.videos.controller.UploadAdmissionFilter.reservation";
+
+    private final UploadJobService uploadJobService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        UploadReservation reservation;
+        try {
+            reservation = uploadJobService.reserveUpload();
+        } catch (UploadQueueFullException e) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+            return;
+        }
+        try (reservation) {
+            request.setAttribute(RESERVATION_ATTRIBUTE, reservation);
+            filterChain.doFilter(request, response);
+        }
+    }
+}
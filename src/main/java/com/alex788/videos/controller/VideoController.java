@@ -1,26 +1,55 @@
 package com.alex788.videos.controller;
 
+import com.alex788.videos.entity.ChunkedUploadStatus;
+import com.alex788.videos.entity.UploadJobStatus;
 import com.alex788.videos.entity.Video;
 import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.exception.InvalidVideoException;
+import com.alex788.videos.exception.StorageNotReadyException;
+import com.alex788.videos.exception.UploadQueueFullException;
+import com.alex788.videos.executor.UploadReservation;
+import com.alex788.videos.service.ChunkedUploadService;
+import com.alex788.videos.service.UploadJobService;
 import com.alex788.videos.service.VideoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.CountingOutputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
 @RequiredArgsConstructor
 public class VideoController {
 
+    /**
+     * Ranges of one request after the overlapping ones are merged, every range is a separate read of the storage.
+     */
+    private static final int MAX_RANGES = 16;
+    private static final Duration DOWNLOAD_RETRY_AFTER = Duration.ofSeconds(5);
+
     private final VideoService videoService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final UploadJobService uploadJobService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
 
     @GetMapping("/has_video")
     public String hasVideo(@RequestParam String userName, @RequestParam String videoName) {
@@ -29,32 +58,187 @@ public class VideoController {
         return "User " + userName + " " + s + " video " + videoName + ".";
     }
 
+    /**
+     * Checks many videos in one request, answers whether the user has a video with the name for every given name.
+     */
+    @PostMapping("/has_videos")
+    public Map<String, Boolean> hasVideos(@RequestParam String userName, @RequestBody List<String> videoNames) {
+        return videoService.doesUserHaveVideosWithNames(videoNames, UUID.fromString(userName));
+    }
+
     @GetMapping("/get_video_infos")
-    public List<VideoInfo> getVideoInfos(@RequestParam String userName) {
-        return videoService.getAllVideoInfosByUserId(UUID.fromString(userName));
+    public VideoInfosPage getVideoInfos(@RequestParam String userName, @RequestParam(required = false) String pageToken,
+                                        @RequestParam(defaultValue = "100") int pageSize) {
+        return videoService.getVideoInfosPageByUserId(UUID.fromString(userName), pageToken, pageSize);
     }
 
-    @GetMapping(value = "/download_video")
-    public ResponseEntity<Resource> downloadVideo(@RequestParam String userName, @RequestParam String videoName) throws IOException {
-        Video video = videoService.getVideo(videoName, UUID.fromString(userName));
+    /**
+     * Writes all video infos of the user as newline delimited JSON while they are fetched page by page,
+     * so the memory used doesn't depend on the number of videos.
+     */
+    @GetMapping(value = "/get_video_infos", params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamVideoInfos(@RequestParam String userName) {
+        UUID userId = UUID.fromString(userName);
+        StreamingResponseBody body = outputStream -> videoService.forEachVideoInfoByUserId(userId, videoInfo -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(videoInfo));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
 
-        int available = video.inputStream().available();
-        InputStreamResource inputStreamResource = new InputStreamResource(video.inputStream());
+    @GetMapping(value = "/download_video")
+    public ResponseEntity<StreamingResponseBody> downloadVideo(@RequestParam String userName, @RequestParam String videoName,
+                                                               @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
+        UUID userId = UUID.fromString(userName);
+        long videoSize = videoService.getVideoInfo(videoName, userId).size();
 
         HttpHeaders httpHeaders = new HttpHeaders();
-        httpHeaders.add("filename", video.name());
-        httpHeaders.setContentDispositionFormData("attachment", video.name());
-        return ResponseEntity.ok()
-                .contentLength(available)
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+        httpHeaders.add("filename", videoName);
+        httpHeaders.setContentDispositionFormData("attachment", videoName);
+        httpHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (range == null) {
+            Video video = videoService.getVideo(videoName, userId);
+            return ResponseEntity.ok()
+                    .contentLength(videoSize)
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .headers(httpHeaders)
+                    .body(streamOf(video.inputStream()));
+        }
+
+        List<ByteRange> byteRanges;
+        try {
+            byteRanges = ByteRange.coalesce(HttpRange.parseRanges(range).stream()
+                    .map(httpRange -> new ByteRange(httpRange.getRangeStart(videoSize), httpRange.getRangeEnd(videoSize)))
+                    .filter(byteRange -> byteRange.from() <= byteRange.to())
+                    .toList());
+        } catch (IllegalArgumentException e) {
+            byteRanges = List.of();
+        }
+        if (byteRanges.isEmpty() || byteRanges.size() > MAX_RANGES) {
+            httpHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes */" + videoSize);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .headers(httpHeaders)
+                    .build();
+        }
+
+        if (byteRanges.size() == 1) {
+            ByteRange byteRange = byteRanges.get(0);
+            Video videoPart = videoService.getVideoPart(videoName, userId, byteRange.from(), byteRange.to());
+            httpHeaders.set(HttpHeaders.CONTENT_RANGE, byteRange.toContentRange(videoSize));
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .contentLength(byteRange.length())
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .headers(httpHeaders)
+                    .body(streamOf(videoPart.inputStream()));
+        }
+
+        MultipartByteRanges multipartByteRanges = new MultipartByteRanges(byteRanges, videoSize,
+                (from, to) -> videoService.getVideoPart(videoName, userId, from, to).inputStream());
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .contentLength(multipartByteRanges.getContentLength())
+                .contentType(multipartByteRanges.getContentType())
                 .headers(httpHeaders)
-                .body(inputStreamResource);
+                .body(streamOf(multipartByteRanges.getInputStream()));
+    }
+
+    /**
+     * Copies the stream to the response on the async request executor, so the servlet thread is released while
+     * the video is being transferred. The bytes written are counted even if the client disconnects midway.
+     */
+    private StreamingResponseBody streamOf(InputStream inputStream) {
+        return outputStream -> {
+            CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+            try (inputStream) {
+                inputStream.transferTo(countingOutputStream);
+            } finally {
+                Counter.builder("videos.download.bytes")
+                        .description("Bytes of videos written to responses")
+                        .baseUnit("bytes")
+                        .register(meterRegistry)
+                        .increment(countingOutputStream.getCount());
+            }
+        };
     }
 
+    /**
+     * @param sha256      hash of the content computed by the client, checked against the received content
+     * @param reservation upload queue slot taken by the {@link UploadAdmissionFilter} before the body was read
+     */
     @PostMapping(value = "/save_video", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public String saveVideo(@RequestParam("file") MultipartFile file, @RequestParam String userName, @RequestParam String videoName) throws IOException {
-        Video video = new Video(UUID.fromString(userName), videoName, file.getInputStream());
-        videoService.save(video);
-        return "OK";
+    public UploadJobStatus saveVideo(@RequestParam("file") MultipartFile file, @RequestParam String userName, @RequestParam String videoName,
+                                     @RequestParam(required = false) String sha256,
+                                     @RequestAttribute(UploadAdmissionFilter.RESERVATION_ATTRIBUTE) UploadReservation reservation) throws IOException {
+        return uploadJobService.submit(UUID.fromString(userName), videoName, file, sha256, reservation);
+    }
+
+    /**
+     * Saves a video without its content if a video of the user with the same content is already stored, otherwise
+     * answers that the content must be uploaded with {@code /save_video}. Contents of other users can't be reused
+     * this way, knowing their hash doesn't prove having them.
+     */
+    @PostMapping("/save_video_by_hash")
+    public VideoInfo saveVideoByHash(@RequestParam String userName, @RequestParam String videoName, @RequestParam String sha256) {
+        return videoService.saveByHash(videoName, sha256, UUID.fromString(userName));
+    }
+
+    @GetMapping("/upload_status")
+    public UploadJobStatus getUploadStatus(@RequestParam String jobId) {
+        return uploadJobService.getStatus(UUID.fromString(jobId));
+    }
+
+    @PostMapping("/start_chunked_upload")
+    public ChunkedUploadStatus startChunkedUpload(@RequestParam String userName, @RequestParam String videoName) {
+        return chunkedUploadService.start(UUID.fromString(userName), videoName);
+    }
+
+    @PutMapping(value = "/save_video_chunk", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ChunkedUploadStatus saveVideoChunk(@RequestParam String uploadId, @RequestParam long chunkNumber, InputStream chunk) {
+        return chunkedUploadService.saveChunk(UUID.fromString(uploadId), chunkNumber, chunk);
+    }
+
+    @GetMapping("/chunked_upload_status")
+    public ChunkedUploadStatus getChunkedUploadStatus(@RequestParam String uploadId) {
+        return chunkedUploadService.getStatus(UUID.fromString(uploadId));
+    }
+
+    @PostMapping("/complete_chunked_upload")
+    public UploadJobStatus completeChunkedUpload(@RequestParam String uploadId) {
+        return chunkedUploadService.complete(UUID.fromString(uploadId));
+    }
+
+    @ExceptionHandler(InvalidVideoException.class)
+    public ResponseEntity<String> handleInvalidVideo(InvalidVideoException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(StorageNotReadyException.class)
+    public ResponseEntity<String> handleStorageNotReady(StorageNotReadyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(e.getMessage());
+    }
+
+    /**
+     * The async request executor is full, the response can't be streamed.
+     */
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<String> handleTaskRejected(TaskRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(DOWNLOAD_RETRY_AFTER.toSeconds()))
+                .body("Too many downloads are in progress.");
+    }
+
+    @ExceptionHandler(UploadQueueFullException.class)
+    public ResponseEntity<String> handleUploadQueueFull(UploadQueueFullException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                .body(e.getMessage());
     }
 }
@@ -0,0 +1,10 @@
+package com.alex788.videos.entity;
+
+import java.util.UUID;
+
+/**
+ * @param nextChunkNumber number of the chunk the upload expects next, chunks are numbered from zero
+ * @param committedBytes  count of bytes stored by the server so far
+ */
+public record ChunkedUploadStatus(UUID uploadId, String videoName, long nextChunkNumber, long committedBytes) {
+}
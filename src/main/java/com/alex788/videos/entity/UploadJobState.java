@@ -0,0 +1,8 @@
+package com.alex788.videos.entity;
+
+public enum UploadJobState {
+    QUEUED,
+    UPLOADING,
+    SUCCEEDED,
+    FAILED
+}
@@ -0,0 +1,13 @@
+package com.alex788.videos.entity;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * @param bytesPerSecond average throughput of the transfer to the storage
+ * @param failureReason  message of the error the upload failed with, {@code null} unless the upload failed
+ */
+public record UploadJobStatus(UUID jobId, UUID userId, String videoName, UploadJobState state,
+                              long bytesTransferred, long totalBytes, long bytesPerSecond, String failureReason,
+                              Instant createdAt, Instant finishedAt) {
+}
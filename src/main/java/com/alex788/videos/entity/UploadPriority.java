@@ -0,0 +1,18 @@
+package com.alex788.videos.entity;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Priority class of an upload. Every user's uploads of a class get a share of the upload slots
+ * proportional to the weight of the class.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum UploadPriority {
+    HIGH(4),
+    NORMAL(2),
+    LOW(1);
+
+    private final int weight;
+}
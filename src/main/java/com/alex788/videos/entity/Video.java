@@ -1,9 +1,14 @@
 package com.alex788.videos.entity;
 
+import com.alex788.videos.video_blob.ContentHashes;
+
 import java.io.InputStream;
 import java.util.UUID;
 
-public record Video(UUID userId, String name, InputStream inputStream) {
+/**
+ * @param sha256 hex SHA-256 of the content if it's known before the video is saved, {@code null} otherwise
+ */
+public record Video(UUID userId, String name, InputStream inputStream, String sha256) {
 
     private static final String VIDEO_EXTENSION = ".mp4";
 
@@ -11,5 +16,12 @@ public record Video(UUID userId, String name, InputStream inputStream) {
         if (!name.endsWith(VIDEO_EXTENSION) || name.length() <= VIDEO_EXTENSION.length()) {
             throw new RuntimeException("The video extension must be .mp4 and the name must not be empty.");
         }
+        if (sha256 != null) {
+            sha256 = ContentHashes.normalize(sha256);
+        }
+    }
+
+    public Video(UUID userId, String name, InputStream inputStream) {
+        this(userId, name, inputStream, null);
     }
 }
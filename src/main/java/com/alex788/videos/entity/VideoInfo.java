@@ -1,4 +1,17 @@
 package com.alex788.videos.entity;
 
-public record VideoInfo(String name) {
+import java.time.Instant;
+
+/**
+ * @param fileId      id of the video file in the storage, {@code null} if the storage doesn't have ids
+ * @param checksum    checksum of the video content, changes with every new version of the video.
+ *                    {@code null} if the storage doesn't provide it
+ * @param createdTime time the video was saved to the storage, {@code null} if unknown
+ * @param metadata    metadata read from the content when it was saved, {@code null} if unknown
+ */
+public record VideoInfo(String name, long size, String fileId, String checksum, Instant createdTime, VideoMetadata metadata) {
+
+    public VideoInfo(String name, long size, String fileId, String checksum, Instant createdTime) {
+        this(name, size, fileId, checksum, createdTime, null);
+    }
 }
@@ -0,0 +1,13 @@
+package com.alex788.videos.entity;
+
+import java.util.List;
+
+/**
+ * @param nextPageToken token to ask for the next page with, {@code null} if this page is the last one
+ */
+public record VideoInfosPage(List<VideoInfo> videoInfos, String nextPageToken) {
+
+    public static VideoInfosPage empty() {
+        return new VideoInfosPage(List.of(), null);
+    }
+}
@@ -0,0 +1,14 @@
+package com.alex788.videos.entity;
+
+/**
+ * Properties of the video read from its MP4 boxes, a component is {@code null} if the video doesn't have it.
+ *
+ * @param durationMillis duration of the movie
+ * @param width          width of the first video track in pixels
+ * @param height         height of the first video track in pixels
+ * @param videoCodec     sample entry type of the first video track, e.g. {@code avc1}
+ * @param audioCodec     sample entry type of the first audio track, e.g. {@code mp4a}
+ * @param bitrate        average bitrate of the whole file in bits per second
+ */
+public record VideoMetadata(Long durationMillis, Integer width, Integer height, String videoCodec, String audioCodec, Long bitrate) {
+}
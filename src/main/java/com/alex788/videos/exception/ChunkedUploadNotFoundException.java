@@ -0,0 +1,8 @@
+package com.alex788.videos.exception;
+
+public class ChunkedUploadNotFoundException extends RuntimeException {
+
+    public ChunkedUploadNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.alex788.videos.exception;
+
+public class InvalidVideoException extends RuntimeException {
+
+    public InvalidVideoException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.alex788.videos.exception;
+
+public class StorageNotReadyException extends RuntimeException {
+
+    public StorageNotReadyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
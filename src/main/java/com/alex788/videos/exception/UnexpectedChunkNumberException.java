@@ -0,0 +1,8 @@
+package com.alex788.videos.exception;
+
+public class UnexpectedChunkNumberException extends RuntimeException {
+
+    public UnexpectedChunkNumberException(String message) {
+        super(message);
+    }
+}
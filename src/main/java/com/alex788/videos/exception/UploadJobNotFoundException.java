@@ -0,0 +1,8 @@
+package com.alex788.videos.exception;
+
+public class UploadJobNotFoundException extends RuntimeException {
+
+    public UploadJobNotFoundException(String message) {
+        super(message);
+    }
+}
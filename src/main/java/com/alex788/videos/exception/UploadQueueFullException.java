@@ -0,0 +1,19 @@
+package com.alex788.videos.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+public class UploadQueueFullException extends RuntimeException {
+
+    /**
+     * Estimated time until the queue has room again.
+     */
+    @Getter
+    private final Duration retryAfter;
+
+    public UploadQueueFullException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+}
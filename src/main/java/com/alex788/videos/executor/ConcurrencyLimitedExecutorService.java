@@ -0,0 +1,117 @@
+package com.alex788.videos.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs at most {@code maxConcurrency} tasks of the delegate at the same time. Other tasks are started right away
+ * but wait for a permit, which is cheap when the delegate runs them on virtual threads.
+ * <p>
+ * A task interrupted while it waits for a permit, by {@link #shutdownNow()} included, doesn't run.
+ * Its future, if it has one, is cancelled.
+ */
+public class ConcurrencyLimitedExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+    private final Set<WaitingTask> waitingTasks = ConcurrentHashMap.newKeySet();
+
+    public ConcurrencyLimitedExecutorService(ExecutorService delegate, int maxConcurrency) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        WaitingTask task = new WaitingTask(command);
+        waitingTasks.add(task);
+        try {
+            delegate.execute(task);
+        } catch (RejectedExecutionException e) {
+            waitingTasks.remove(task);
+            throw e;
+        }
+    }
+
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> notStartedCommands = new ArrayList<>();
+        for (WaitingTask task : waitingTasks) {
+            if (waitingTasks.remove(task)) {
+                notStartedCommands.add(task.command);
+            }
+        }
+        delegate.shutdownNow();
+        return notStartedCommands;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    private class WaitingTask implements Runnable {
+
+        private final Runnable command;
+
+        WaitingTask(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                drop();
+                return;
+            }
+            try {
+                // Removed by shutdownNow meanwhile, which returned the command instead of running it.
+                if (waitingTasks.remove(this)) {
+                    command.run();
+                }
+            } finally {
+                permits.release();
+            }
+        }
+
+        private void drop() {
+            if (waitingTasks.remove(this) && command instanceof Future<?> future) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.alex788.videos.executor;
+
+public enum ExecutionMode {
+    /**
+     * Tasks run on a fixed pool of platform threads.
+     */
+    PLATFORM,
+    /**
+     * Every task runs on its own virtual thread.
+     */
+    VIRTUAL
+}
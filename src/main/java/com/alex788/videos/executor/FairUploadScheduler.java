@@ -0,0 +1,277 @@
+package com.alex788.videos.executor;
+
+import com.alex788.videos.entity.UploadPriority;
+import com.alex788.videos.exception.UploadQueueFullException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues uploads per user and priority and starts at most {@code maxConcurrency} of them at a time on the executor.
+ * The queues are served by deficit round-robin: every round a queue may start uploads for up to its quantum of bytes,
+ * the quantum is the base quantum times the weight of the priority. So a user with hundreds of queued uploads
+ * gets the same share as a user with one, and a large upload waits for as many rounds as its size needs.
+ * <p>
+ * The total number of queued uploads is bounded, an upload over the bound is rejected at once instead of holding
+ * its content until a slot is free. A slot may be reserved before the content is received, see {@link #reserve()}.
+ */
+public class FairUploadScheduler {
+
+    private static final double DURATION_SMOOTHING = 0.2;
+
+    private final ExecutorService executorService;
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final long quantum;
+
+    private final Map<FlowKey, Flow> flowsByKey = new HashMap<>();
+    private final Deque<Flow> activeFlows = new ArrayDeque<>();
+    private int queuedCount;
+    private int reservedCount;
+    private int runningCount;
+    private boolean shutdown;
+    private double averageUploadNanos;
+
+    /**
+     * @param maxQueued maximum number of uploads waiting for a slot
+     * @param quantum   bytes a queue of the weight 1 may start per round, also the cost of an upload of unknown size
+     */
+    public FairUploadScheduler(ExecutorService executorService, int maxConcurrency, int maxQueued, long quantum) {
+        this.executorService = executorService;
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueued = maxQueued;
+        this.quantum = quantum;
+    }
+
+    /**
+     * @param size size of the upload in bytes, 0 if unknown
+     * @throws UploadQueueFullException if the queue is full
+     */
+    public CompletableFuture<Void> submit(UUID userId, UploadPriority priority, long size, Runnable upload) {
+        return submit(reserve(), userId, priority, size, upload);
+    }
+
+    /**
+     * Takes a slot of the queue for an upload whose content isn't received yet. Reserved slots count as queued
+     * uploads until they're used or closed.
+     *
+     * @throws UploadQueueFullException if the queue is full
+     */
+    public UploadReservation reserve() {
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Upload scheduler is shut down.");
+            }
+            if (queuedCount + reservedCount >= maxQueued) {
+                throw new UploadQueueFullException("Too many uploads are queued, retry later.", estimateRetryAfter());
+            }
+            reservedCount++;
+        }
+        return new UploadReservation(this);
+    }
+
+    /**
+     * Queues the upload in the reserved slot, it isn't rejected for a full queue.
+     *
+     * @param size size of the upload in bytes, 0 if unknown
+     */
+    public CompletableFuture<Void> submit(UploadReservation reservation, UUID userId, UploadPriority priority, long size, Runnable upload) {
+        if (!reservation.take()) {
+            throw new IllegalStateException("Upload reservation is already used.");
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        List<Task> tasksToStart;
+        synchronized (this) {
+            reservedCount--;
+            if (shutdown) {
+                throw new RejectedExecutionException("Upload scheduler is shut down.");
+            }
+            FlowKey key = new FlowKey(userId, priority);
+            Flow flow = flowsByKey.computeIfAbsent(key, k -> new Flow(k, quantum * priority.getWeight()));
+            if (flow.tasks.isEmpty()) {
+                activeFlows.addLast(flow);
+            }
+            flow.tasks.addLast(new Task(upload, future, size > 0 ? size : quantum));
+            queuedCount++;
+            tasksToStart = takeTasksToStart();
+        }
+        start(tasksToStart);
+        return future;
+    }
+
+    synchronized void release() {
+        reservedCount--;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queuedCount;
+    }
+
+    public synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    /**
+     * Stops accepting uploads, the queued ones are still started.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * Waits until the queued and running uploads finish, then shuts the executor down.
+     *
+     * @return {@code false} if the uploads didn't finish in time
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (queuedCount > 0 || runningCount > 0) {
+                long remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            }
+        }
+        executorService.shutdown();
+        return executorService.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancels the queued uploads and interrupts the running ones.
+     */
+    public void shutdownNow() {
+        List<Task> cancelledTasks = new ArrayList<>();
+        synchronized (this) {
+            shutdown = true;
+            for (Flow flow : activeFlows) {
+                cancelledTasks.addAll(flow.tasks);
+            }
+            activeFlows.clear();
+            flowsByKey.clear();
+            queuedCount = 0;
+            notifyAll();
+        }
+        cancelledTasks.forEach(task -> task.future.completeExceptionally(new CancellationException("Upload scheduler is shut down.")));
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Tasks are handed to the executor outside the lock, the executor may run them on the calling thread.
+     */
+    private void start(List<Task> tasks) {
+        for (Task task : tasks) {
+            try {
+                executorService.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                task.future.completeExceptionally(e);
+                finish(0);
+            }
+        }
+    }
+
+    private void run(Task task) {
+        long startNanos = System.nanoTime();
+        try {
+            task.upload.run();
+            task.future.complete(null);
+        } catch (Throwable e) {
+            task.future.completeExceptionally(e);
+        } finally {
+            finish(System.nanoTime() - startNanos);
+        }
+    }
+
+    private void finish(long uploadNanos) {
+        List<Task> tasksToStart;
+        synchronized (this) {
+            runningCount--;
+            if (uploadNanos > 0) {
+                averageUploadNanos = averageUploadNanos == 0
+                        ? uploadNanos
+                        : averageUploadNanos + DURATION_SMOOTHING * (uploadNanos - averageUploadNanos);
+            }
+            tasksToStart = takeTasksToStart();
+            notifyAll();
+        }
+        start(tasksToStart);
+    }
+
+    private List<Task> takeTasksToStart() {
+        List<Task> tasks = new ArrayList<>();
+        while (runningCount < maxConcurrency && queuedCount > 0) {
+            tasks.add(takeNextTask());
+            queuedCount--;
+            runningCount++;
+        }
+        return tasks;
+    }
+
+    /**
+     * One step of deficit round-robin. The flow at the head gets its quantum once per round and starts tasks
+     * while its deficit covers them, then it moves to the tail.
+     */
+    private Task takeNextTask() {
+        while (true) {
+            Flow flow = activeFlows.getFirst();
+            if (!flow.quantumGranted) {
+                flow.deficit += flow.quantum;
+                flow.quantumGranted = true;
+            }
+            Task task = flow.tasks.getFirst();
+            if (task.cost <= flow.deficit) {
+                flow.tasks.removeFirst();
+                flow.deficit -= task.cost;
+                if (flow.tasks.isEmpty()) {
+                    activeFlows.removeFirst();
+                    flowsByKey.remove(flow.key);
+                }
+                return task;
+            }
+            activeFlows.removeFirst();
+            flow.quantumGranted = false;
+            activeFlows.addLast(flow);
+        }
+    }
+
+    /**
+     * Time the running uploads and the ones ahead in the queue need on average to free a slot.
+     */
+    private Duration estimateRetryAfter() {
+        double waves = (double) (queuedCount + runningCount) / maxConcurrency;
+        long seconds = (long) Math.ceil(averageUploadNanos * waves / TimeUnit.SECONDS.toNanos(1));
+        return Duration.ofSeconds(Math.max(1, seconds));
+    }
+
+    private record FlowKey(UUID userId, UploadPriority priority) {
+    }
+
+    private record Task(Runnable upload, CompletableFuture<Void> future, long cost) {
+    }
+
+    private static class Flow {
+
+        final FlowKey key;
+        final long quantum;
+        final Deque<Task> tasks = new ArrayDeque<>();
+        long deficit;
+        boolean quantumGranted;
+
+        Flow(FlowKey key, long quantum) {
+            this.key = key;
+            this.quantum = quantum;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.alex788.videos.executor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class UploadExecutors {
+
+    private UploadExecutors() {
+    }
+
+    /**
+     * @param maxConcurrency count of uploads running at the same time, the pool size in the platform mode
+     */
+    public static ExecutorService create(ExecutionMode mode, int maxConcurrency) {
+        return switch (mode) {
+            case PLATFORM -> Executors.newFixedThreadPool(maxConcurrency);
+            case VIRTUAL -> new ConcurrencyLimitedExecutorService(VirtualThreads.newExecutor("upload-"), maxConcurrency);
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.alex788.videos.executor;
+
+import com.alex788.videos.entity.UploadPriority;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Assigns the priority of an upload on the server by its user, so a client can't take a bigger share of the upload
+ * slots by asking for it. Users that aren't listed get {@link UploadPriority#NORMAL}.
+ */
+public class UploadPriorityPolicy {
+
+    private final Set<UUID> highPriorityUserIds;
+    private final Set<UUID> lowPriorityUserIds;
+
+    public UploadPriorityPolicy(Collection<UUID> highPriorityUserIds, Collection<UUID> lowPriorityUserIds) {
+        this.highPriorityUserIds = Set.copyOf(highPriorityUserIds);
+        this.lowPriorityUserIds = Set.copyOf(lowPriorityUserIds);
+    }
+
+    public UploadPriority getPriority(UUID userId) {
+        if (highPriorityUserIds.contains(userId)) {
+            return UploadPriority.HIGH;
+        }
+        if (lowPriorityUserIds.contains(userId)) {
+            return UploadPriority.LOW;
+        }
+        return UploadPriority.NORMAL;
+    }
+}
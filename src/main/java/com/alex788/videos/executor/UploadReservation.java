@@ -0,0 +1,32 @@
+package com.alex788.videos.executor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Slot of the upload queue taken before the content of the upload is received, so an upload that was let in
+ * isn't rejected after its content was spooled. A reservation is used by one submission, closing an unused one
+ * frees the slot.
+ */
+public class UploadReservation implements AutoCloseable {
+
+    private final FairUploadScheduler scheduler;
+    private final AtomicBoolean taken = new AtomicBoolean();
+
+    UploadReservation(FairUploadScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return {@code false} if the reservation was already used or closed
+     */
+    boolean take() {
+        return taken.compareAndSet(false, true);
+    }
+
+    @Override
+    public void close() {
+        if (take()) {
+            scheduler.release();
+        }
+    }
+}
@@ -1,59 +1,133 @@
 package com.alex788.videos.loading_video_pool;
 
 import com.alex788.videos.entity.Video;
-import lombok.RequiredArgsConstructor;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-@RequiredArgsConstructor
+/**
+ * Lock-free loading pool. Every user has a counter of loading videos and a set of their names.
+ * A counter of a user without loading videos is retired (set to -1) before it's removed from the map,
+ * so a concurrent reservation never lands on a removed counter.
+ */
 public class InMemoryVideoLoadingPool implements VideoLoadingPool {
 
-    public static final int PARALLEL_LOAD_LIMIT = 2;
+    public static final int DEFAULT_PARALLEL_LOAD_LIMIT = 2;
+    public static final int NO_GLOBAL_LOAD_LIMIT = 0;
 
-    final Map<UUID, List<Video>> loadingVideosByUserId = new ConcurrentHashMap<>();
+    private static final int RETIRED = -1;
+
+    final Map<UUID, UserLoads> loadsByUserId = new ConcurrentHashMap<>();
+    private final AtomicInteger globalLoadCount = new AtomicInteger();
+    private final int parallelLoadLimit;
+    private final int globalLoadLimit;
+
+    public InMemoryVideoLoadingPool() {
+        this(DEFAULT_PARALLEL_LOAD_LIMIT, NO_GLOBAL_LOAD_LIMIT);
+    }
+
+    /**
+     * @param globalLoadLimit limit of videos loading by all users, {@link #NO_GLOBAL_LOAD_LIMIT} for no limit
+     */
+    public InMemoryVideoLoadingPool(int parallelLoadLimit, int globalLoadLimit) {
+        this.parallelLoadLimit = parallelLoadLimit;
+        this.globalLoadLimit = globalLoadLimit;
+    }
 
     @Override
-    public void add(Video video) {
-        List<Video> videos = loadingVideosByUserId.computeIfAbsent(video.userId(), id -> new ArrayList<>());
-        videos.add(video);
+    public LoadingReservation tryAdd(Video video) {
+        while (true) {
+            UserLoads loads = loadsByUserId.computeIfAbsent(video.userId(), id -> new UserLoads());
+            int count = loads.count.get();
+            if (count == RETIRED) {
+                loadsByUserId.remove(video.userId(), loads);
+                continue;
+            }
+            if (count >= parallelLoadLimit) {
+                return LoadingReservation.PARALLEL_LOAD_LIMIT_EXCEEDED;
+            }
+            if (!loads.count.compareAndSet(count, count + 1)) {
+                continue;
+            }
+
+            if (!loads.names.add(video.name())) {
+                release(video.userId(), loads);
+                return LoadingReservation.VIDEO_WITH_SAME_NAME_LOADING;
+            }
+            if (!tryAcquireGlobalSlot()) {
+                loads.names.remove(video.name());
+                release(video.userId(), loads);
+                return LoadingReservation.GLOBAL_LOAD_LIMIT_EXCEEDED;
+            }
+            return LoadingReservation.RESERVED;
+        }
     }
 
     @Override
     public void remove(Video video) {
-        List<Video> videos = loadingVideosByUserId.get(video.userId());
-        videos.remove(video);
-        if (videos.isEmpty()) {
-            loadingVideosByUserId.remove(video.userId());
+        UserLoads loads = loadsByUserId.get(video.userId());
+        if (loads != null && loads.names.remove(video.name())) {
+            release(video.userId(), loads);
+            globalLoadCount.decrementAndGet();
         }
     }
 
     @Override
     public boolean canLoadParallelMore(UUID userId) {
-        return getHowMuchMoreCanLoadParallel(userId) != 0;
+        return getLoadingCountByUser(userId) < parallelLoadLimit
+                && (globalLoadLimit == NO_GLOBAL_LOAD_LIMIT || globalLoadCount.get() < globalLoadLimit);
+    }
+
+    @Override
+    public boolean doesUserHaveVideoWithName(UUID userId, String videoName) {
+        UserLoads loads = loadsByUserId.get(userId);
+        return loads != null && loads.names.contains(videoName);
     }
 
-    private int getHowMuchMoreCanLoadParallel(UUID userId) {
-        return PARALLEL_LOAD_LIMIT - getLoadingCountByUser(userId);
+    @Override
+    public Set<String> getLoadingVideoNames(UUID userId) {
+        UserLoads loads = loadsByUserId.get(userId);
+        return loads == null ? Set.of() : Set.copyOf(loads.names);
+    }
+
+    @Override
+    public int getGlobalLoadCount() {
+        return globalLoadCount.get();
     }
 
     private int getLoadingCountByUser(UUID userId) {
-        if (loadingVideosByUserId.get(userId) == null) {
-            return 0;
+        UserLoads loads = loadsByUserId.get(userId);
+        return loads == null ? 0 : Math.max(0, loads.count.get());
+    }
+
+    private boolean tryAcquireGlobalSlot() {
+        if (globalLoadLimit == NO_GLOBAL_LOAD_LIMIT) {
+            globalLoadCount.incrementAndGet();
+            return true;
+        }
+        while (true) {
+            int count = globalLoadCount.get();
+            if (count >= globalLoadLimit) {
+                return false;
+            }
+            if (globalLoadCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
         }
-        return loadingVideosByUserId.get(userId).size();
     }
 
-    @Override
-    public boolean doesUserHaveVideoWithName(UUID userId, String videoName) {
-        List<Video> userVideos = loadingVideosByUserId.get(userId);
-        if (userVideos == null) {
-            return false;
+    private void release(UUID userId, UserLoads loads) {
+        if (loads.count.decrementAndGet() == 0 && loads.count.compareAndSet(0, RETIRED)) {
+            loadsByUserId.remove(userId, loads);
         }
-        return userVideos.stream()
-                .anyMatch(video -> videoName.equals(video.name()));
     }
-}
\ No newline at end of file
+
+    static class UserLoads {
+
+        final AtomicInteger count = new AtomicInteger();
+        final Set<String> names = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -0,0 +1,300 @@
+package com.alex788.videos.loading_video_pool;
+
+import com.alex788.videos.entity.Video;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading pool shared by all nodes through a database, so the limits hold per user and not per node.
+ * <p>
+ * Every reservation is a lease owned by the node that made it. A node renews all its leases with one
+ * statement a few times per lease duration, so leases of a crashed node expire and stop taking slots.
+ * The expiry is computed and compared by the database, so the clocks of the nodes don't matter.
+ * Reservations of a user are serialized by locking the row of the user, reservations of different users
+ * don't wait for each other unless the global limit is set.
+ */
+@Slf4j
+public class JdbcVideoLoadingPool implements VideoLoadingPool, AutoCloseable {
+
+    static final String GLOBAL_LOCK_ID = "*";
+
+    private final DataSource dataSource;
+    private final int parallelLoadLimit;
+    private final int globalLoadLimit;
+    private final Duration leaseDuration;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ScheduledExecutorService leaseRenewer;
+
+    /**
+     * @param globalLoadLimit limit of videos loading by all users, {@link InMemoryVideoLoadingPool#NO_GLOBAL_LOAD_LIMIT} for no limit
+     * @param leaseDuration   how long a reservation of a node that stopped renewing it keeps taking a slot
+     */
+    public JdbcVideoLoadingPool(DataSource dataSource, int parallelLoadLimit, int globalLoadLimit, Duration leaseDuration) {
+        this(dataSource, parallelLoadLimit, globalLoadLimit, leaseDuration, true);
+    }
+
+    JdbcVideoLoadingPool(DataSource dataSource, int parallelLoadLimit, int globalLoadLimit, Duration leaseDuration, boolean renewLeases) {
+        this.dataSource = dataSource;
+        this.parallelLoadLimit = parallelLoadLimit;
+        this.globalLoadLimit = globalLoadLimit;
+        this.leaseDuration = leaseDuration;
+        createTables();
+
+        if (renewLeases) {
+            leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "loading-pool-lease-renewer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long renewalPeriodMillis = Math.max(1, leaseDuration.toMillis() / 3);
+            leaseRenewer.scheduleWithFixedDelay(this::renewLeasesQuietly, renewalPeriodMillis, renewalPeriodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            leaseRenewer = null;
+        }
+    }
+
+    @Override
+    public LoadingReservation tryAdd(Video video) {
+        String userId = video.userId().toString();
+        insertLockRowIfAbsent(userId);
+        if (globalLoadLimit != InMemoryVideoLoadingPool.NO_GLOBAL_LOAD_LIMIT) {
+            insertLockRowIfAbsent(GLOBAL_LOCK_ID);
+        }
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                LoadingReservation reservation = tryAdd(connection, userId, video.name());
+                if (reservation == LoadingReservation.RESERVED) {
+                    connection.commit();
+                } else {
+                    connection.rollback();
+                }
+                return reservation;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Cannot reserve loading of video '" + video.name() + "'.", e);
+        }
+    }
+
+    private LoadingReservation tryAdd(Connection connection, String userId, String videoName) throws SQLException {
+        // The global lock is always taken before the user one, so two reservations can't deadlock.
+        if (globalLoadLimit != InMemoryVideoLoadingPool.NO_GLOBAL_LOAD_LIMIT) {
+            lock(connection, GLOBAL_LOCK_ID);
+        }
+        lock(connection, userId);
+
+        update(connection, "DELETE FROM video_loading_reservation WHERE user_id = ? AND expires_at <= CURRENT_TIMESTAMP", userId);
+
+        int userLoadCount = 0;
+        boolean isNameLoading = false;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT video_name FROM video_loading_reservation WHERE user_id = ?")) {
+            statement.setString(1, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    userLoadCount++;
+                    isNameLoading |= resultSet.getString(1).equals(videoName);
+                }
+            }
+        }
+        if (userLoadCount >= parallelLoadLimit) {
+            return LoadingReservation.PARALLEL_LOAD_LIMIT_EXCEEDED;
+        }
+        if (isNameLoading) {
+            return LoadingReservation.VIDEO_WITH_SAME_NAME_LOADING;
+        }
+        if (globalLoadLimit != InMemoryVideoLoadingPool.NO_GLOBAL_LOAD_LIMIT && countLiveReservations(connection) >= globalLoadLimit) {
+            return LoadingReservation.GLOBAL_LOAD_LIMIT_EXCEEDED;
+        }
+
+        update(connection, "INSERT INTO video_loading_reservation (user_id, video_name, node_id, expires_at) "
+                + "VALUES (?, ?, ?, DATEADD(MILLISECOND, ?, CURRENT_TIMESTAMP))", userId, videoName, nodeId, leaseDuration.toMillis());
+        return LoadingReservation.RESERVED;
+    }
+
+    /**
+     * Removes the reservation only if it's still owned by this node, so a reservation that expired
+     * and was taken by another node is kept.
+     */
+    @Override
+    public void remove(Video video) {
+        execute("DELETE FROM video_loading_reservation WHERE user_id = ? AND video_name = ? AND node_id = ?",
+                video.userId().toString(), video.name(), nodeId);
+    }
+
+    @Override
+    public boolean canLoadParallelMore(UUID userId) {
+        try (Connection connection = dataSource.getConnection()) {
+            int userLoadCount;
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM video_loading_reservation WHERE user_id = ? AND expires_at > CURRENT_TIMESTAMP")) {
+                statement.setString(1, userId.toString());
+                userLoadCount = queryInt(statement);
+            }
+            return userLoadCount < parallelLoadLimit
+                    && (globalLoadLimit == InMemoryVideoLoadingPool.NO_GLOBAL_LOAD_LIMIT || countLiveReservations(connection) < globalLoadLimit);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean doesUserHaveVideoWithName(UUID userId, String videoName) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT COUNT(*) FROM video_loading_reservation WHERE user_id = ? AND video_name = ? AND expires_at > CURRENT_TIMESTAMP")) {
+            statement.setString(1, userId.toString());
+            statement.setString(2, videoName);
+            return queryInt(statement) > 0;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public Set<String> getLoadingVideoNames(UUID userId) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT video_name FROM video_loading_reservation WHERE user_id = ? AND expires_at > CURRENT_TIMESTAMP")) {
+            statement.setString(1, userId.toString());
+            Set<String> videoNames = new HashSet<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    videoNames.add(resultSet.getString(1));
+                }
+            }
+            return videoNames;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Counts the live reservations of all nodes.
+     */
+    @Override
+    public int getGlobalLoadCount() {
+        try (Connection connection = dataSource.getConnection()) {
+            return countLiveReservations(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Prolongs all leases of this node and deletes the expired leases of all nodes.
+     */
+    void renewLeases() {
+        execute("UPDATE video_loading_reservation SET expires_at = DATEADD(MILLISECOND, ?, CURRENT_TIMESTAMP) WHERE node_id = ?",
+                leaseDuration.toMillis(), nodeId);
+        execute("DELETE FROM video_loading_reservation WHERE expires_at <= CURRENT_TIMESTAMP");
+    }
+
+    private void renewLeasesQuietly() {
+        try {
+            renewLeases();
+        } catch (RuntimeException e) {
+            // The next renewal retries, leases are long enough to survive a missed one.
+            log.warn("Cannot renew loading leases of node '{}'.", nodeId, e);
+        }
+    }
+
+    /**
+     * Stops renewing the leases and releases the ones still held by this node.
+     */
+    @Override
+    public void close() {
+        if (leaseRenewer != null) {
+            leaseRenewer.shutdownNow();
+        }
+        execute("DELETE FROM video_loading_reservation WHERE node_id = ?", nodeId);
+    }
+
+    private void createTables() {
+        execute("CREATE TABLE IF NOT EXISTS video_loading_lock (id VARCHAR(36) PRIMARY KEY)");
+        execute("CREATE TABLE IF NOT EXISTS video_loading_reservation ("
+                + "user_id VARCHAR(36) NOT NULL, "
+                + "video_name VARCHAR(1024) NOT NULL, "
+                + "node_id VARCHAR(36) NOT NULL, "
+                + "expires_at TIMESTAMP WITH TIME ZONE NOT NULL, "
+                + "PRIMARY KEY (user_id, video_name))");
+    }
+
+    /**
+     * Runs in its own transaction, because a failed insert aborts the whole transaction on some databases.
+     */
+    private void insertLockRowIfAbsent(String id) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO video_loading_lock (id) SELECT CAST(? AS VARCHAR(36)) WHERE NOT EXISTS (SELECT 1 FROM video_loading_lock WHERE id = ?)")) {
+            statement.setString(1, id);
+            statement.setString(2, id);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            if (!isIntegrityViolation(e)) {
+                throw new RuntimeException(e);
+            }
+            // Inserted by a concurrent reservation.
+        }
+    }
+
+    private static void lock(Connection connection, String id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT id FROM video_loading_lock WHERE id = ? FOR UPDATE")) {
+            statement.setString(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+            }
+        }
+    }
+
+    private static int countLiveReservations(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT COUNT(*) FROM video_loading_reservation WHERE expires_at > CURRENT_TIMESTAMP")) {
+            return queryInt(statement);
+        }
+    }
+
+    private static int queryInt(PreparedStatement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private void execute(String sql, Object... parameters) {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, sql, parameters);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private static boolean isIntegrityViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+}
@@ -0,0 +1,8 @@
+package com.alex788.videos.loading_video_pool;
+
+public enum LoadingReservation {
+    RESERVED,
+    PARALLEL_LOAD_LIMIT_EXCEEDED,
+    GLOBAL_LOAD_LIMIT_EXCEEDED,
+    VIDEO_WITH_SAME_NAME_LOADING
+}
@@ -2,15 +2,27 @@ package com.alex788.videos.loading_video_pool;
 
 import com.alex788.videos.entity.Video;
 
+import java.util.Set;
 import java.util.UUID;
 
 public interface VideoLoadingPool {
 
-    void add(Video video);
+    /**
+     * Checks the limits and the name of the video and reserves a loading slot for it in one atomic step.
+     * The slot is reserved only if {@link LoadingReservation#RESERVED} is returned.
+     */
+    LoadingReservation tryAdd(Video video);
 
     void remove(Video video);
 
     boolean canLoadParallelMore(UUID userId);
 
     boolean doesUserHaveVideoWithName(UUID userId, String videoName);
+
+    Set<String> getLoadingVideoNames(UUID userId);
+
+    /**
+     * @return number of videos loading by all users
+     */
+    int getGlobalLoadCount();
 }
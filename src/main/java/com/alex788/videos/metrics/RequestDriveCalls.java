@@ -0,0 +1,37 @@
+package com.alex788.videos.metrics;
+
+/**
+ * Counts the drive calls made by the thread handling the current HTTP request.
+ * Calls made outside a request, e.g. by background uploads, aren't counted.
+ */
+public final class RequestDriveCalls {
+
+    private static final ThreadLocal<int[]> CALL_COUNT = new ThreadLocal<>();
+
+    private RequestDriveCalls() {
+    }
+
+    public static void increment() {
+        int[] callCount = CALL_COUNT.get();
+        if (callCount != null) {
+            callCount[0]++;
+        }
+    }
+
+    static void start() {
+        CALL_COUNT.set(new int[1]);
+    }
+
+    static boolean isStarted() {
+        return CALL_COUNT.get() != null;
+    }
+
+    /**
+     * @return number of calls made since {@link #start()}
+     */
+    static int finish() {
+        int[] callCount = CALL_COUNT.get();
+        CALL_COUNT.remove();
+        return callCount == null ? 0 : callCount[0];
+    }
+}
@@ -0,0 +1,93 @@
+package com.alex788.videos.repository;
+
+import com.alex788.videos.entity.UploadPriority;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.executor.SingleFlight;
+import com.alex788.videos.executor.UploadReservation;
+import com.alex788.videos.video_download.SharedVideoDownloads;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Coalesces concurrent reads of the same video: readers of a video being downloaded stream from that download
+ * instead of starting their own, and concurrent lookups of the same video share one call to the repository.
+ * Nothing is kept after the download or the lookup ended.
+ */
+public class CoalescingVideoRepository implements VideoRepository, AutoCloseable {
+
+    private final VideoRepository videoRepository;
+    private final SharedVideoDownloads<VideoKey> sharedVideoDownloads;
+    private final SingleFlight<VideoKey, Optional<VideoInfo>> infoLookups = new SingleFlight<>();
+    private final SingleFlight<VideoKey, Boolean> existenceLookups = new SingleFlight<>();
+
+    public CoalescingVideoRepository(VideoRepository videoRepository, SharedVideoDownloads<VideoKey> sharedVideoDownloads) {
+        this.videoRepository = videoRepository;
+        this.sharedVideoDownloads = sharedVideoDownloads;
+    }
+
+    @Override
+    public UploadReservation reserveUpload() {
+        return videoRepository.reserveUpload();
+    }
+
+    @Override
+    public CompletableFuture<Void> save(Video video, UploadPriority priority, long size, UploadReservation reservation) {
+        return videoRepository.save(video, priority, size, reservation);
+    }
+
+    @Override
+    public Optional<VideoInfo> saveByHash(UUID userId, String videoName, String sha256) {
+        return videoRepository.saveByHash(userId, videoName, sha256);
+    }
+
+    @Override
+    public Optional<Video> findByUserAndName(UUID userId, String videoName) {
+        return sharedVideoDownloads.open(new VideoKey(userId, videoName), () -> videoRepository.findByUserAndName(userId, videoName)
+                        .map(Video::inputStream))
+                .map(inputStream -> new Video(userId, videoName, inputStream));
+    }
+
+    /**
+     * Parts aren't coalesced, readers seldom ask for the same range at once.
+     */
+    @Override
+    public Optional<Video> findPartByUserAndName(UUID userId, String videoName, long from, long to) {
+        return videoRepository.findPartByUserAndName(userId, videoName, from, to);
+    }
+
+    @Override
+    public Optional<VideoInfo> findInfoByUserAndName(UUID userId, String videoName) {
+        return infoLookups.execute(new VideoKey(userId, videoName), () -> videoRepository.findInfoByUserAndName(userId, videoName));
+    }
+
+    @Override
+    public boolean doesUserHaveVideoWithName(UUID userId, String videoName) {
+        return existenceLookups.execute(new VideoKey(userId, videoName), () -> videoRepository.doesUserHaveVideoWithName(userId, videoName));
+    }
+
+    @Override
+    public Map<String, Boolean> doesUserHaveVideosWithNames(UUID userId, Collection<String> videoNames) {
+        return videoRepository.doesUserHaveVideosWithNames(userId, videoNames);
+    }
+
+    @Override
+    public VideoInfosPage findInfosByUser(UUID userId, String pageToken, int pageSize) {
+        return videoRepository.findInfosByUser(userId, pageToken, pageSize);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (videoRepository instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    public record VideoKey(UUID userId, String videoName) {
+    }
+}
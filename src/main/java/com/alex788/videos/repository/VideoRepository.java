@@ -1,23 +1,68 @@
 package com.alex788.videos.repository;
 
+import com.alex788.videos.entity.UploadPriority;
 import com.alex788.videos.entity.Video;
 import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.executor.UploadReservation;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Video repository that displays loaded videos and videos currently loading.
  */
 public interface VideoRepository {
 
-    Future<?> save(Video video);
+    default CompletableFuture<Void> save(Video video) {
+        try (UploadReservation reservation = reserveUpload()) {
+            return save(video, UploadPriority.NORMAL, 0, reservation);
+        }
+    }
+
+    /**
+     * Takes a slot of the upload queue before the content of the video is received.
+     *
+     * @throws com.alex788.videos.exception.UploadQueueFullException if too many uploads are queued
+     */
+    UploadReservation reserveUpload();
+
+    /**
+     * Queues the upload in the reserved slot fairly among the uploads of other users.
+     *
+     * @param size size of the video in bytes, 0 if unknown
+     * @throws com.alex788.videos.exception.InvalidVideoException if the content isn't an MP4 file
+     */
+    CompletableFuture<Void> save(Video video, UploadPriority priority, long size, UploadReservation reservation);
+
+    /**
+     * Saves a video with the content of an already stored video of the user with the SHA-256.
+     *
+     * @return info of the saved video, empty if no video of the user has content with the hash
+     */
+    Optional<VideoInfo> saveByHash(UUID userId, String videoName, String sha256);
 
     Optional<Video> findByUserAndName(UUID userId, String videoName);
 
+    /**
+     * Finds the video with a stream of its bytes from {@code from} to {@code to} inclusive.
+     */
+    Optional<Video> findPartByUserAndName(UUID userId, String videoName, long from, long to);
+
+    Optional<VideoInfo> findInfoByUserAndName(UUID userId, String videoName);
+
     boolean doesUserHaveVideoWithName(UUID userId, String videoName);
 
-    List<VideoInfo> findInfosByUser(UUID userId);
+    /**
+     * Bulk version of {@link #doesUserHaveVideoWithName(UUID, String)}, answers for all names at once.
+     */
+    Map<String, Boolean> doesUserHaveVideosWithNames(UUID userId, Collection<String> videoNames);
+
+    /**
+     * @param pageToken token returned with the previous page, {@code null} for the first page
+     */
+    VideoInfosPage findInfosByUser(UUID userId, String pageToken, int pageSize);
 }
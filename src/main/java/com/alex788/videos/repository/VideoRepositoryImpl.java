@@ -1,58 +1,184 @@
 package com.alex788.videos.repository;
 
 import com.alex788.videos.adapter.StorageDriveAdapter;
+import com.alex788.videos.entity.UploadPriority;
 import com.alex788.videos.entity.Video;
 import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.exception.InvalidVideoException;
 import com.alex788.videos.exception.ParallelLoadLimitExceededException;
+import com.alex788.videos.exception.UploadQueueFullException;
+import com.alex788.videos.executor.FairUploadScheduler;
+import com.alex788.videos.executor.UploadReservation;
 import com.alex788.videos.exception.VideoWithSameNameAlreadyExistsException;
+import com.alex788.videos.loading_video_pool.LoadingReservation;
 import com.alex788.videos.loading_video_pool.VideoLoadingPool;
-import com.antkorwin.xsync.XSync;
-import lombok.RequiredArgsConstructor;
+import com.alex788.videos.video_metadata.Mp4MetadataInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.InputStream;
-import java.util.List;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-@RequiredArgsConstructor
-public class VideoRepositoryImpl implements VideoRepository {
+@Slf4j
+public class VideoRepositoryImpl implements VideoRepository, AutoCloseable {
 
-    private final XSync<UUID> xSync = new XSync<>();
-    private final ExecutorService executorService = Executors.newFixedThreadPool(16);
+    private final FairUploadScheduler uploadScheduler;
+    private final Duration drainTimeout;
 
     private final VideoLoadingPool videoLoadingPool;
     private final StorageDriveAdapter storageDriveAdapter;
+    private final MeterRegistry meterRegistry;
 
+    public VideoRepositoryImpl(VideoLoadingPool videoLoadingPool, StorageDriveAdapter storageDriveAdapter) {
+        this(videoLoadingPool, storageDriveAdapter,
+                new FairUploadScheduler(Executors.newFixedThreadPool(16), 16, Integer.MAX_VALUE, 64 * 1024 * 1024), Duration.ZERO);
+    }
+
+    public VideoRepositoryImpl(VideoLoadingPool videoLoadingPool, StorageDriveAdapter storageDriveAdapter,
+                               FairUploadScheduler uploadScheduler, Duration drainTimeout) {
+        this(videoLoadingPool, storageDriveAdapter, uploadScheduler, drainTimeout, Metrics.globalRegistry);
+    }
+
+    /**
+     * @param drainTimeout  how long running and queued uploads are awaited on close
+     * @param meterRegistry registry of the rejected uploads
+     */
+    public VideoRepositoryImpl(VideoLoadingPool videoLoadingPool, StorageDriveAdapter storageDriveAdapter,
+                               FairUploadScheduler uploadScheduler, Duration drainTimeout, MeterRegistry meterRegistry) {
+        this.videoLoadingPool = videoLoadingPool;
+        this.storageDriveAdapter = storageDriveAdapter;
+        this.uploadScheduler = uploadScheduler;
+        this.drainTimeout = drainTimeout;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public UploadReservation reserveUpload() {
+        try {
+            return uploadScheduler.reserve();
+        } catch (UploadQueueFullException e) {
+            countRejection("QUEUE_FULL");
+            throw e;
+        }
+    }
+
+    /**
+     * Checks the content starts as an MP4 file before the upload is queued.
+     *
+     * @throws InvalidVideoException if the content isn't an MP4 file
+     */
     @Override
-    public Future<?> save(Video video) {
-        return executorService.submit(() -> {
-            xSync.execute(video.userId(), () -> {
-                if (!videoLoadingPool.canLoadParallelMore(video.userId())) {
-                    throw new ParallelLoadLimitExceededException("User with id '" + video.userId() + "' already has video with name '" + video.name() + "'.");
-                } else if (doesUserHaveVideoWithName(video.userId(), video.name())) {
-                    throw new VideoWithSameNameAlreadyExistsException("Video with name '" + video.name() + "' already exists.");
-                }
-
-                videoLoadingPool.add(video);
-            });
-
-            storageDriveAdapter.save(video, "VideosApp", video.userId().toString());
-
-            xSync.execute(video.userId(), () ->
-                    videoLoadingPool.remove(video)
-            );
+    public CompletableFuture<Void> save(Video video, UploadPriority priority, long size, UploadReservation reservation) {
+        Mp4MetadataInputStream metadataInputStream = new Mp4MetadataInputStream(video.inputStream());
+        try {
+            metadataInputStream.checkFileType();
+        } catch (InvalidVideoException e) {
+            countRejection("INVALID_VIDEO");
+            throw e;
+        }
+        Video parsedVideo = new Video(video.userId(), video.name(), metadataInputStream, video.sha256());
+        return uploadScheduler.submit(reservation, video.userId(), priority, size, () -> {
+            reserve(video);
+            try {
+                checkNotStored(video);
+                saveWithMetadata(parsedVideo, metadataInputStream);
+            } finally {
+                videoLoadingPool.remove(video);
+            }
         });
     }
 
+    /**
+     * The metadata is read while the content is transferred and attached to the video afterwards, the movie box
+     * of most files follows the media data. The video is kept even if its metadata can't be saved.
+     */
+    private void saveWithMetadata(Video video, Mp4MetadataInputStream metadataInputStream) {
+        String[] path = {"VideosApp", video.userId().toString()};
+        if (storageDriveAdapter.save(video, path).isEmpty()) {
+            return;
+        }
+        metadataInputStream.getMetadata().ifPresent(metadata -> {
+            try {
+                storageDriveAdapter.saveMetadata(video.name(), metadata, path);
+            } catch (RuntimeException e) {
+                log.warn("Cannot save metadata of video '{}'.", video.name(), e);
+            }
+        });
+    }
+
+    /**
+     * Runs on the calling thread, nothing is transferred.
+     */
+    @Override
+    public Optional<VideoInfo> saveByHash(UUID userId, String videoName, String sha256) {
+        Video video = new Video(userId, videoName, null, sha256);
+        reserve(video);
+        try {
+            checkNotStored(video);
+            return storageDriveAdapter.saveByHash(videoName, video.sha256(), "VideosApp", userId.toString());
+        } finally {
+            videoLoadingPool.remove(video);
+        }
+    }
+
+    private void reserve(Video video) {
+        LoadingReservation reservation = videoLoadingPool.tryAdd(video);
+        if (reservation != LoadingReservation.RESERVED) {
+            countRejection(reservation.name());
+        }
+        switch (reservation) {
+            case PARALLEL_LOAD_LIMIT_EXCEEDED -> throw new ParallelLoadLimitExceededException("User with id '" + video.userId() + "' reached the limit of parallel loading videos.");
+            case GLOBAL_LOAD_LIMIT_EXCEEDED -> throw new ParallelLoadLimitExceededException("The limit of parallel loading videos of all users is reached.");
+            case VIDEO_WITH_SAME_NAME_LOADING -> throw new VideoWithSameNameAlreadyExistsException("Video with name '" + video.name() + "' already exists.");
+            case RESERVED -> {
+            }
+        }
+    }
+
+    private void checkNotStored(Video video) {
+        if (storageDriveAdapter.hasVideoBeforeSave(video.name(), "VideosApp", video.userId().toString())) {
+            countRejection("VIDEO_WITH_SAME_NAME_STORED");
+            throw new VideoWithSameNameAlreadyExistsException("Video with name '" + video.name() + "' already exists.");
+        }
+    }
+
+    private void countRejection(String reason) {
+        Counter.builder("videos.upload.rejections")
+                .description("Uploads rejected before the transfer to the storage")
+                .tag("reason", reason.toLowerCase())
+                .register(meterRegistry)
+                .increment();
+    }
+
     @Override
     public Optional<Video> findByUserAndName(UUID userId, String videoName) {
         Optional<InputStream> inputStreamOpt = storageDriveAdapter.getVideoStream(videoName, "VideosApp", userId.toString());// todo: как-то вынести константу. Завести @Value rootFolder
         return inputStreamOpt.map(inputStream -> new Video(userId, videoName, inputStream));
     }
 
+    @Override
+    public Optional<Video> findPartByUserAndName(UUID userId, String videoName, long from, long to) {
+        Optional<InputStream> inputStreamOpt = storageDriveAdapter.getVideoPartStream(videoName, from, to, "VideosApp", userId.toString());
+        return inputStreamOpt.map(inputStream -> new Video(userId, videoName, inputStream));
+    }
+
+    @Override
+    public Optional<VideoInfo> findInfoByUserAndName(UUID userId, String videoName) {
+        return storageDriveAdapter.getVideoInfo(videoName, "VideosApp", userId.toString());
+    }
+
     @Override
     public boolean doesUserHaveVideoWithName(UUID userId, String videoName) {
         return videoLoadingPool.doesUserHaveVideoWithName(userId, videoName)
@@ -60,9 +186,26 @@ public class VideoRepositoryImpl implements VideoRepository {
     }
 
     @Override
-    public List<VideoInfo> findInfosByUser(UUID userId) {
-        return storageDriveAdapter.getAllFileNames("VideosApp", userId.toString()).stream()
-                .map(VideoInfo::new)
-                .toList();
+    public Map<String, Boolean> doesUserHaveVideosWithNames(UUID userId, Collection<String> videoNames) {
+        Set<String> loadingVideoNames = videoLoadingPool.getLoadingVideoNames(userId);
+        Map<String, Boolean> hasVideoByName = new LinkedHashMap<>(storageDriveAdapter.hasVideos(videoNames, "VideosApp", userId.toString()));
+        hasVideoByName.replaceAll((videoName, hasVideo) -> hasVideo || loadingVideoNames.contains(videoName));
+        return hasVideoByName;
+    }
+
+    @Override
+    public VideoInfosPage findInfosByUser(UUID userId, String pageToken, int pageSize) {
+        return storageDriveAdapter.getVideoInfos(pageToken, pageSize, "VideosApp", userId.toString());
+    }
+
+    /**
+     * Stops accepting uploads and waits for the started ones to finish.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        uploadScheduler.shutdown();
+        if (!uploadScheduler.awaitTermination(drainTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            uploadScheduler.shutdownNow();
+        }
     }
 }
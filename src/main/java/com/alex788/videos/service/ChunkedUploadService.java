@@ -0,0 +1,44 @@
+package com.alex788.videos.service;
+
+import com.alex788.videos.chunked_upload.ChunkedUploadStore;
+import com.alex788.videos.entity.ChunkedUploadStatus;
+import com.alex788.videos.entity.UploadJobStatus;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.executor.UploadReservation;
+import lombok.RequiredArgsConstructor;
+
+import java.io.InputStream;
+import java.util.UUID;
+
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+
+    private final ChunkedUploadStore chunkedUploadStore;
+    private final UploadJobService uploadJobService;
+
+    public ChunkedUploadStatus start(UUID userId, String videoName) {
+        return chunkedUploadStore.start(userId, videoName);
+    }
+
+    public ChunkedUploadStatus saveChunk(UUID uploadId, long chunkNumber, InputStream chunk) {
+        return chunkedUploadStore.saveChunk(uploadId, chunkNumber, chunk);
+    }
+
+    public ChunkedUploadStatus getStatus(UUID uploadId) {
+        return chunkedUploadStore.getStatus(uploadId);
+    }
+
+    /**
+     * The upload queue slot is taken before the upload is completed, so an upload rejected for a full queue stays
+     * intact and can be completed again later.
+     *
+     * @throws com.alex788.videos.exception.UploadQueueFullException if too many uploads are queued
+     */
+    public UploadJobStatus complete(UUID uploadId) {
+        long size = chunkedUploadStore.getStatus(uploadId).committedBytes();
+        try (UploadReservation reservation = uploadJobService.reserveUpload()) {
+            Video video = chunkedUploadStore.complete(uploadId);
+            return uploadJobService.submit(video, size, reservation);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.alex788.videos.service;
+
+import com.alex788.videos.entity.UploadJobStatus;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.executor.UploadPriorityPolicy;
+import com.alex788.videos.executor.UploadReservation;
+import com.alex788.videos.upload_job.UploadJob;
+import com.alex788.videos.upload_job.UploadJobStore;
+import com.alex788.videos.video_blob.ContentHashes;
+import com.alex788.videos.video_faststart.FaststartRemuxer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+@RequiredArgsConstructor
+public class UploadJobService {
+
+    private final UploadJobStore uploadJobStore;
+    private final FaststartRemuxer faststartRemuxer;
+    private final VideoService videoService;
+    private final UploadPriorityPolicy uploadPriorityPolicy;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Takes a slot of the upload queue before the content is received, so a full queue rejects the upload before
+     * its content is spooled.
+     *
+     * @throws com.alex788.videos.exception.UploadQueueFullException if too many uploads are queued
+     */
+    public UploadReservation reserveUpload() {
+        return videoService.reserveUpload();
+    }
+
+    /**
+     * Spools the file to the local disk computing its SHA-256 on the way and starts the upload in the background.
+     * The hash is the one of the received content even if the spool is remuxed for faststart.
+     *
+     * @param expectedSha256 hash the client computed, the upload fails if the content doesn't match it; may be {@code null}
+     * @param reservation    slot the upload is queued in, see {@link #reserveUpload()}
+     */
+    public UploadJobStatus submit(UUID userId, String videoName, MultipartFile file, String expectedSha256,
+                                  UploadReservation reservation) throws IOException {
+        Video validatedVideo = new Video(userId, videoName, null, expectedSha256); // validates the name and the hash before the file is spooled
+        UploadJob job = uploadJobStore.create(userId, videoName, file.getSize());
+        Path spoolPath = uploadJobStore.getSpoolPath(job);
+        InputStream spoolInputStream;
+        String sha256;
+        try {
+            MessageDigest digest = ContentHashes.newDigest();
+            try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(inputStream, spoolPath);
+            }
+            sha256 = ContentHashes.toHex(digest);
+            if (validatedVideo.sha256() != null && !validatedVideo.sha256().equals(sha256)) {
+                throw new IllegalArgumentException("Content of video '" + videoName + "' doesn't match SHA-256 '" + validatedVideo.sha256() + "'.");
+            }
+            spoolInputStream = faststartRemuxer.openSpool(spoolPath);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(spoolPath);
+            job.fail(e);
+            record(job);
+            throw e;
+        }
+        return submit(job, new Video(userId, videoName, spoolInputStream, sha256), file.getSize(), reservation);
+    }
+
+    /**
+     * Starts the upload of a video which content is already on the local disk.
+     */
+    public UploadJobStatus submit(Video video, long size, UploadReservation reservation) {
+        UploadJob job = uploadJobStore.create(video.userId(), video.name(), size);
+        return submit(job, video, size, reservation);
+    }
+
+    public UploadJobStatus getStatus(UUID jobId) {
+        return uploadJobStore.get(jobId).toStatus();
+    }
+
+    /**
+     * An upload rejected before it's queued fails at once, its content is released and the rejection is thrown.
+     */
+    private UploadJobStatus submit(UploadJob job, Video video, long size, UploadReservation reservation) {
+        Video trackedVideo = new Video(video.userId(), video.name(), uploadJobStore.track(job, video.inputStream()), video.sha256());
+        CompletableFuture<Void> future;
+        try {
+            future = videoService.save(trackedVideo, uploadPriorityPolicy.getPriority(video.userId()), size, reservation);
+        } catch (RuntimeException e) {
+            closeQuietly(video.inputStream());
+            job.fail(e);
+            record(job);
+            throw e;
+        }
+        future.whenComplete((ignored, e) -> {
+            closeQuietly(video.inputStream());
+            if (e == null) {
+                job.succeed();
+            } else {
+                job.fail(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+            record(job);
+        });
+        return job.toStatus();
+    }
+
+    /**
+     * Records the duration of a finished upload, from the submission to the end, and the bytes it transferred.
+     */
+    private void record(UploadJob job) {
+        UploadJobStatus status = job.toStatus();
+        Timer.builder("videos.uploads")
+                .description("Uploads from the submission to the end")
+                .tag("result", status.state().name().toLowerCase())
+                .register(meterRegistry)
+                .record(Duration.between(status.createdAt(), status.finishedAt()));
+        Counter.builder("videos.upload.bytes")
+                .description("Bytes transferred to the storage by uploads")
+                .baseUnit("bytes")
+                .register(meterRegistry)
+                .increment(status.bytesTransferred());
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
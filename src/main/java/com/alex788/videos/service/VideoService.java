@@ -1,22 +1,51 @@
 package com.alex788.videos.service;
 
+import com.alex788.videos.entity.UploadPriority;
 import com.alex788.videos.entity.Video;
 import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
 import com.alex788.videos.exception.VideoNotFoundException;
+import com.alex788.videos.executor.UploadReservation;
 import com.alex788.videos.repository.VideoRepository;
 import lombok.RequiredArgsConstructor;
 
-import java.util.List;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @RequiredArgsConstructor
 public class VideoService {
 
+    public static final int MAX_VIDEO_INFOS_PAGE_SIZE = 1000;
+
     private final VideoRepository videoRepository;
 
-    public void save(Video video) {
-        videoRepository.save(video);
+    /**
+     * @throws com.alex788.videos.exception.UploadQueueFullException if too many uploads are queued
+     */
+    public UploadReservation reserveUpload() {
+        return videoRepository.reserveUpload();
+    }
+
+    /**
+     * @param size size of the video in bytes, 0 if unknown
+     */
+    public CompletableFuture<Void> save(Video video, UploadPriority priority, long size, UploadReservation reservation) {
+        return videoRepository.save(video, priority, size, reservation);
+    }
+
+    /**
+     * Saves the video without transferring its content, if a video of the user with the same content is already stored.
+     */
+    public VideoInfo saveByHash(String videoName, String sha256, UUID userId) {
+        Optional<VideoInfo> videoInfoOpt = videoRepository.saveByHash(userId, videoName, sha256);
+        if (videoInfoOpt.isEmpty()) {
+            throw new VideoNotFoundException("No video of the user has SHA-256 '" + sha256 + "', the content must be uploaded.");
+        }
+        return videoInfoOpt.get();
     }
 
     public Video getVideo(String videoName, UUID userId) {
@@ -27,11 +56,49 @@ public class VideoService {
         return videoOpt.get();
     }
 
+    public Video getVideoPart(String videoName, UUID userId, long from, long to) {
+        Optional<Video> videoOpt = videoRepository.findPartByUserAndName(userId, videoName, from, to);
+        if (videoOpt.isEmpty()) {
+            throw new VideoNotFoundException("Video '" + videoName + "' of user with id " + userId + " doesn't exists.");
+        }
+        return videoOpt.get();
+    }
+
+    public VideoInfo getVideoInfo(String videoName, UUID userId) {
+        Optional<VideoInfo> videoInfoOpt = videoRepository.findInfoByUserAndName(userId, videoName);
+        if (videoInfoOpt.isEmpty()) {
+            throw new VideoNotFoundException("Video '" + videoName + "' of user with id " + userId + " doesn't exists.");
+        }
+        return videoInfoOpt.get();
+    }
+
     public boolean doesUserHaveVideoWithName(String videoName, UUID userId) {
         return videoRepository.doesUserHaveVideoWithName(userId, videoName);
     }
 
-    public List<VideoInfo> getAllVideoInfosByUserId(UUID userId) {
-        return videoRepository.findInfosByUser(userId);
+    public Map<String, Boolean> doesUserHaveVideosWithNames(Collection<String> videoNames, UUID userId) {
+        return videoRepository.doesUserHaveVideosWithNames(userId, videoNames);
+    }
+
+    /**
+     * @param pageSize page size, limited by {@link #MAX_VIDEO_INFOS_PAGE_SIZE}
+     */
+    public VideoInfosPage getVideoInfosPageByUserId(UUID userId, String pageToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive.");
+        }
+        return videoRepository.findInfosByUser(userId, pageToken, Math.min(pageSize, MAX_VIDEO_INFOS_PAGE_SIZE));
+    }
+
+    /**
+     * Passes all video infos of the user to the consumer page by page, so only one page is kept in memory.
+     */
+    public void forEachVideoInfoByUserId(UUID userId, Consumer<VideoInfo> consumer) {
+        String pageToken = null;
+        do {
+            VideoInfosPage page = videoRepository.findInfosByUser(userId, pageToken, MAX_VIDEO_INFOS_PAGE_SIZE);
+            page.videoInfos().forEach(consumer);
+            pageToken = page.nextPageToken();
+        } while (pageToken != null);
     }
 }
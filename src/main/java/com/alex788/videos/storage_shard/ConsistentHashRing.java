@@ -0,0 +1,50 @@
+package com.alex788.videos.storage_shard;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Places keys on shards by consistent hashing. Every shard has points on the ring in proportion to its weight,
+ * a key belongs to the shard of the first point at or after the hash of the key. Adding a shard moves only the keys
+ * that fall on the points of the new shard, about its share of all the keys.
+ */
+public class ConsistentHashRing {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final NavigableMap<Long, String> shardNamesByPoint = new TreeMap<>();
+
+    /**
+     * @param weightsByShardName weight of every shard, a shard with twice the weight gets about twice as many keys
+     * @param pointsPerWeight    points of a shard per unit of its weight, more points spread the keys more evenly
+     */
+    public ConsistentHashRing(Map<String, Integer> weightsByShardName, int pointsPerWeight) {
+        if (weightsByShardName.isEmpty()) {
+            throw new IllegalArgumentException("The ring needs at least one shard.");
+        }
+        weightsByShardName.forEach((shardName, weight) -> {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Weight of shard '" + shardName + "' must be positive.");
+            }
+            for (int i = 0; i < weight * pointsPerWeight; i++) {
+                // Points of different shards rarely collide, the smaller name wins so every node builds the same ring.
+                shardNamesByPoint.merge(hash(shardName + "#" + i), shardName,
+                        (shardName1, shardName2) -> shardName1.compareTo(shardName2) <= 0 ? shardName1 : shardName2);
+            }
+        });
+    }
+
+    public String locate(String key) {
+        Map.Entry<Long, String> entry = shardNamesByPoint.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : shardNamesByPoint.firstEntry().getValue();
+    }
+
+    private static long hash(String value) {
+        return HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+}
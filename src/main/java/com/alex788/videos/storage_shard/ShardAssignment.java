@@ -0,0 +1,20 @@
+package com.alex788.videos.storage_shard;
+
+/**
+ * Shard a key is placed on.
+ *
+ * @param targetShard shard the key is being migrated to, {@code null} if it isn't migrated
+ */
+public record ShardAssignment(ShardKey key, String shard, String targetShard) {
+
+    public boolean isMigrating() {
+        return targetShard != null;
+    }
+
+    /**
+     * New videos of a migrated key go to the target shard, so the migration doesn't have to catch up with them.
+     */
+    public String writeShard() {
+        return isMigrating() ? targetShard : shard;
+    }
+}
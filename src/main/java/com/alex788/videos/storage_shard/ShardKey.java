@@ -0,0 +1,31 @@
+package com.alex788.videos.storage_shard;
+
+import java.util.List;
+
+/**
+ * Unit placed on a shard: a whole folder, or a single video of a folder whose videos are spread over the shards.
+ *
+ * @param videoName name of the video, {@code null} for the whole folder
+ */
+public record ShardKey(List<String> path, String videoName) {
+
+    public static ShardKey ofFolder(List<String> path) {
+        return new ShardKey(path, null);
+    }
+
+    public static ShardKey ofVideo(List<String> path, String videoName) {
+        return new ShardKey(path, videoName);
+    }
+
+    public boolean isFolder() {
+        return videoName == null;
+    }
+
+    /**
+     * Value hashed onto the ring.
+     */
+    public String toRingKey() {
+        String folderPath = String.join("/", path);
+        return isFolder() ? folderPath : folderPath + "/" + videoName;
+    }
+}
@@ -0,0 +1,213 @@
+package com.alex788.videos.storage_shard;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Shards the keys are placed on, shared by all nodes. A key keeps its shard once it's assigned, so a change of the
+ * ring moves the key only when it's migrated.
+ */
+public class ShardMap {
+
+    private static final String FOLDER = "";
+
+    private final DataSource dataSource;
+
+    public ShardMap(DataSource dataSource) {
+        this.dataSource = dataSource;
+        createTables();
+    }
+
+    public Optional<ShardAssignment> find(ShardKey key) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT folder_path, video_name, shard, target_shard FROM storage_shard_assignment WHERE folder_path = ? AND video_name = ?")) {
+            statement.setString(1, toFolderPath(key));
+            statement.setString(2, toVideoName(key));
+            return toAssignments(statement).stream().findFirst();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Places the key on the shard unless it's already placed.
+     *
+     * @return assignment of the key, the one made before if any
+     */
+    public ShardAssignment assign(ShardKey key, String shard) {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, "INSERT INTO storage_shard_assignment (folder_path, video_name, shard) VALUES (?, ?, ?)",
+                    toFolderPath(key), toVideoName(key), shard);
+        } catch (SQLException e) {
+            if (!isIntegrityViolation(e)) {
+                throw new RuntimeException(e);
+            }
+            // Assigned concurrently by another call or node, its assignment wins.
+        }
+        return find(key).orElseThrow(() -> new IllegalStateException("Assignment of '" + key.toRingKey() + "' disappeared."));
+    }
+
+    /**
+     * Marks the key as migrated to the target shard. A migration to another target is replaced.
+     */
+    public void startMigration(ShardKey key, String targetShard) {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, "UPDATE storage_shard_assignment SET target_shard = ? WHERE folder_path = ? AND video_name = ? AND shard <> ?",
+                    targetShard, toFolderPath(key), toVideoName(key), targetShard);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Moves the key to the target shard, unless its migration was replaced meanwhile.
+     */
+    public void completeMigration(ShardKey key, String targetShard) {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, "UPDATE storage_shard_assignment SET shard = target_shard, target_shard = NULL "
+                    + "WHERE folder_path = ? AND video_name = ? AND target_shard = ?", toFolderPath(key), toVideoName(key), targetShard);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns at most {@code limit} assignments ordered by the folder path and the video name.
+     *
+     * @param lastKey key the page starts after, {@code null} for the first page
+     */
+    public List<ShardAssignment> findPage(ShardKey lastKey, int limit) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT folder_path, video_name, shard, target_shard FROM storage_shard_assignment "
+                             + "WHERE folder_path > ? OR folder_path = ? AND video_name > ? ORDER BY folder_path, video_name LIMIT ?")) {
+            String lastFolderPath = lastKey == null ? "" : toFolderPath(lastKey);
+            statement.setString(1, lastFolderPath);
+            statement.setString(2, lastFolderPath);
+            statement.setString(3, lastKey == null ? "" : toVideoName(lastKey));
+            statement.setInt(4, limit);
+            return toAssignments(statement);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Takes the rebalancing lease for the node, or prolongs it if the node holds it already. The expiry is computed
+     * and compared by the database, so the clocks of the nodes don't matter.
+     *
+     * @return whether the node holds the lease until {@code leaseDuration} from now
+     */
+    public boolean tryAcquireRebalanceLease(String nodeId, Duration leaseDuration) {
+        try (Connection connection = dataSource.getConnection()) {
+            try {
+                update(connection, "INSERT INTO storage_shard_rebalance_lease (id, node_id, expires_at) "
+                        + "VALUES (1, ?, DATEADD(MILLISECOND, ?, CURRENT_TIMESTAMP))", nodeId, leaseDuration.toMillis());
+                return true;
+            } catch (SQLException e) {
+                if (!isIntegrityViolation(e)) {
+                    throw e;
+                }
+                // Held or held before by some node, it's taken over only if it expired.
+            }
+            return update(connection, "UPDATE storage_shard_rebalance_lease SET node_id = ?, expires_at = DATEADD(MILLISECOND, ?, CURRENT_TIMESTAMP) "
+                    + "WHERE id = 1 AND (node_id = ? OR expires_at <= CURRENT_TIMESTAMP)", nodeId, leaseDuration.toMillis(), nodeId) == 1;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gives the rebalancing lease up if the node still holds it, so another node can take it without waiting.
+     */
+    public void releaseRebalanceLease(String nodeId) {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, "DELETE FROM storage_shard_rebalance_lease WHERE node_id = ?", nodeId);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public long countByShard(String shard) {
+        return count("SELECT COUNT(*) FROM storage_shard_assignment WHERE shard = ?", shard);
+    }
+
+    public long countMigrating() {
+        return count("SELECT COUNT(*) FROM storage_shard_assignment WHERE target_shard IS NOT NULL");
+    }
+
+    private long count(String sql, Object... parameters) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<ShardAssignment> toAssignments(PreparedStatement statement) throws SQLException {
+        List<ShardAssignment> assignments = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                List<String> path = Arrays.asList(resultSet.getString(1).split("/"));
+                String videoName = resultSet.getString(2);
+                ShardKey key = videoName.equals(FOLDER) ? ShardKey.ofFolder(path) : ShardKey.ofVideo(path, videoName);
+                assignments.add(new ShardAssignment(key, resultSet.getString(3), resultSet.getString(4)));
+            }
+        }
+        return assignments;
+    }
+
+    private void createTables() {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, "CREATE TABLE IF NOT EXISTS storage_shard_assignment ("
+                    + "folder_path VARCHAR(1024) NOT NULL, "
+                    + "video_name VARCHAR(1024) NOT NULL, "
+                    + "shard VARCHAR(255) NOT NULL, "
+                    + "target_shard VARCHAR(255), "
+                    + "PRIMARY KEY (folder_path, video_name))");
+            update(connection, "CREATE TABLE IF NOT EXISTS storage_shard_rebalance_lease ("
+                    + "id INT PRIMARY KEY, "
+                    + "node_id VARCHAR(36) NOT NULL, "
+                    + "expires_at TIMESTAMP WITH TIME ZONE NOT NULL)");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            return statement.executeUpdate();
+        }
+    }
+
+    private static boolean isIntegrityViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    private static String toFolderPath(ShardKey key) {
+        return String.join("/", key.path());
+    }
+
+    private static String toVideoName(ShardKey key) {
+        return key.isFolder() ? FOLDER : key.videoName();
+    }
+}
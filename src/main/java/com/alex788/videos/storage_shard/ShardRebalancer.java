@@ -0,0 +1,229 @@
+package com.alex788.videos.storage_shard;
+
+import com.alex788.videos.adapter.StorageDriveAdapter;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Migrates the keys whose shard differs from their shard of the ring, which happens when shards are added.
+ * The misplaced keys are marked as migrated first, so new videos go to the target shard, then after the copy delay
+ * their videos missing on the target shard are copied and the keys are moved to it. The copies on the old shard are
+ * kept, the storages can't delete.
+ * <p>
+ * Only the node holding the lease in the {@link ShardMap} rebalances, so the nodes don't copy the same videos.
+ * A failed migration stays marked and is continued by the next rebalancing, the videos already copied are skipped.
+ */
+@Slf4j
+public class ShardRebalancer {
+
+    private static final int ASSIGNMENTS_PAGE_SIZE = 100;
+    private static final int LISTING_PAGE_SIZE = 1000;
+
+    private final Map<String, StorageDriveAdapter> shardsByName;
+    private final ConsistentHashRing ring;
+    private final ShardMap shardMap;
+    private final Duration copyDelay;
+    private final Duration leaseDuration;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    /**
+     * @param copyDelay     time between marking the keys and copying their videos. Must be longer than the time
+     *                      the nodes cache assignments for, plus the longest upload, so no video is saved to the old
+     *                      shard after it's copied
+     * @param leaseDuration how long another node waits before it takes over the rebalancing of a node that stopped.
+     *                      The lease is prolonged after the copy delay and after every migrated key, so it must be
+     *                      longer than the copy delay and the migration of the largest folder
+     */
+    public ShardRebalancer(Map<String, StorageDriveAdapter> shardsByName, ConsistentHashRing ring, ShardMap shardMap, Duration copyDelay,
+                           Duration leaseDuration) {
+        if (leaseDuration.compareTo(copyDelay) <= 0) {
+            throw new IllegalArgumentException("Rebalance lease duration " + leaseDuration + " must be longer than copy delay " + copyDelay + ".");
+        }
+        this.shardsByName = Map.copyOf(shardsByName);
+        this.ring = ring;
+        this.shardMap = shardMap;
+        this.copyDelay = copyDelay;
+        this.leaseDuration = leaseDuration;
+    }
+
+    /**
+     * Starts rebalancing in the background with the given interval. The first rebalancing waits for the interval too,
+     * so it doesn't compete with the shards starting up.
+     */
+    public ShardRebalancer start(Duration interval) {
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-shard-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.scheduleWithFixedDelay(this::rebalanceQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Migrates all misplaced keys, unless another node holds the lease. All of them are marked before the copy delay,
+     * so it's waited once per rebalancing.
+     */
+    public void rebalance() {
+        if (!shardMap.tryAcquireRebalanceLease(nodeId, leaseDuration)) {
+            log.debug("Storage shards are rebalanced by another node.");
+            return;
+        }
+        try {
+            if (!markMisplaced()) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(copyDelay.toMillis());
+            migrateMarked();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            shardMap.releaseRebalanceLease(nodeId);
+        }
+    }
+
+    /**
+     * @return whether any key is migrating, including the ones whose migration failed before
+     */
+    private boolean markMisplaced() {
+        boolean migrating = false;
+        ShardKey lastKey = null;
+        List<ShardAssignment> assignments;
+        while (!(assignments = shardMap.findPage(lastKey, ASSIGNMENTS_PAGE_SIZE)).isEmpty()) {
+            lastKey = assignments.get(assignments.size() - 1).key();
+            for (ShardAssignment assignment : assignments) {
+                String ringShard = ring.locate(assignment.key().toRingKey());
+                if (!assignment.shard().equals(ringShard)) {
+                    if (!ringShard.equals(assignment.targetShard())) {
+                        shardMap.startMigration(assignment.key(), ringShard);
+                    }
+                    migrating = true;
+                }
+            }
+        }
+        return migrating;
+    }
+
+    /**
+     * Stops when the lease is lost, the node that took it over continues.
+     */
+    private void migrateMarked() {
+        ShardKey lastKey = null;
+        List<ShardAssignment> assignments;
+        while (!(assignments = shardMap.findPage(lastKey, ASSIGNMENTS_PAGE_SIZE)).isEmpty()) {
+            lastKey = assignments.get(assignments.size() - 1).key();
+            for (ShardAssignment assignment : assignments) {
+                if (!assignment.isMigrating()) {
+                    continue;
+                }
+                if (!shardMap.tryAcquireRebalanceLease(nodeId, leaseDuration)) {
+                    log.warn("Rebalancing lease of node '{}' expired, the rebalancing is left to another node.", nodeId);
+                    return;
+                }
+                migrateQuietly(assignment.key(), assignment.shard(), assignment.targetShard());
+            }
+        }
+    }
+
+    private void migrateQuietly(ShardKey key, String shard, String targetShard) {
+        try {
+            migrate(key, shard, targetShard);
+            log.info("Migrated '{}' from shard '{}' to shard '{}'.", key.toRingKey(), shard, targetShard);
+        } catch (RuntimeException e) {
+            log.warn("Cannot migrate '{}' from shard '{}' to shard '{}'.", key.toRingKey(), shard, targetShard, e);
+        }
+    }
+
+    private void migrate(ShardKey key, String shard, String targetShard) {
+        StorageDriveAdapter storage = getShard(shard);
+        StorageDriveAdapter targetStorage = getShard(targetShard);
+        String[] path = key.path().toArray(String[]::new);
+        if (key.isFolder()) {
+            String pageToken = null;
+            do {
+                VideoInfosPage page = storage.getVideoInfos(pageToken, LISTING_PAGE_SIZE, path);
+                copyMissing(page.videoInfos(), storage, targetStorage, targetShard, path);
+                pageToken = page.nextPageToken();
+            } while (pageToken != null);
+        } else {
+            copyMissing(storage.getVideoInfo(key.videoName(), path).stream().toList(), storage, targetStorage, targetShard, path);
+        }
+        shardMap.completeMigration(key, targetShard);
+    }
+
+    private static void copyMissing(List<VideoInfo> videoInfos, StorageDriveAdapter storage, StorageDriveAdapter targetStorage,
+                                    String targetShard, String... path) {
+        if (videoInfos.isEmpty()) {
+            return;
+        }
+        Map<String, Boolean> targetHasVideoByName = targetStorage.hasVideos(videoInfos.stream().map(VideoInfo::name).toList(), path);
+        for (VideoInfo videoInfo : videoInfos) {
+            if (!targetHasVideoByName.getOrDefault(videoInfo.name(), false)) {
+                copy(videoInfo, storage, targetStorage, targetShard, path);
+            }
+        }
+    }
+
+    private static void copy(VideoInfo videoInfo, StorageDriveAdapter storage, StorageDriveAdapter targetStorage, String targetShard,
+                             String... path) {
+        Optional<InputStream> inputStreamOpt = storage.getVideoStream(videoInfo.name(), path);
+        if (inputStreamOpt.isEmpty()) {
+            // Removed from the storage meanwhile.
+            return;
+        }
+        try (InputStream inputStream = inputStreamOpt.get()) {
+            if (targetStorage.save(new Video(toUserId(path), videoInfo.name(), inputStream), path).isEmpty()) {
+                throw new IllegalStateException("Folder '" + String.join("/", path) + "' doesn't exist on shard '" + targetShard + "'.");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot copy video '" + videoInfo.name() + "'.", e);
+        }
+        if (videoInfo.metadata() != null) {
+            targetStorage.saveMetadata(videoInfo.name(), videoInfo.metadata(), path);
+        }
+    }
+
+    /**
+     * A user folder is named by the id of its user. Videos of the other folders, like the blobs shared by the users,
+     * have no single owner.
+     */
+    private static UUID toUserId(String... path) {
+        if (path.length == 0) {
+            return null;
+        }
+        try {
+            return UUID.fromString(path[path.length - 1]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private StorageDriveAdapter getShard(String shard) {
+        StorageDriveAdapter storage = shardsByName.get(shard);
+        if (storage == null) {
+            throw new IllegalStateException("Shard '" + shard + "' isn't configured.");
+        }
+        return storage;
+    }
+
+    private void rebalanceQuietly() {
+        try {
+            rebalance();
+        } catch (RuntimeException e) {
+            log.warn("Cannot rebalance storage shards.", e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.alex788.videos.upload_job;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports every read byte to the upload job. Bytes read after a mark are reported only once the stream is read
+ * past the read limit or to the end, bytes peeked at and reset are read again and reported then.
+ */
+class ProgressInputStream extends FilterInputStream {
+
+    private final UploadJob uploadJob;
+    private int readLimit;
+    private long markedBytes = -1;
+
+    ProgressInputStream(InputStream inputStream, UploadJob uploadJob) {
+        super(inputStream);
+        this.uploadJob = uploadJob;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        count(b != -1 ? 1 : -1);
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        count(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        super.mark(readLimit);
+        this.readLimit = readLimit;
+        markedBytes = 0;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        super.reset();
+        markedBytes = 0;
+    }
+
+    /**
+     * @param bytes -1 at the end of the stream
+     */
+    private void count(long bytes) {
+        if (markedBytes < 0) {
+            if (bytes > 0) {
+                uploadJob.addTransferredBytes(bytes);
+            }
+            return;
+        }
+        markedBytes += Math.max(0, bytes);
+        if (bytes < 0 || markedBytes > readLimit) {
+            if (markedBytes > 0) {
+                uploadJob.addTransferredBytes(markedBytes);
+            }
+            markedBytes = -1;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.alex788.videos.upload_job;
+
+import com.alex788.videos.entity.UploadJobState;
+import com.alex788.videos.entity.UploadJobStatus;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one upload. Updated by the thread transferring the video and read by status requests.
+ */
+public class UploadJob {
+
+    @Getter
+    private final UUID id;
+    private final UUID userId;
+    private final String videoName;
+    private final long totalBytes;
+    private final Instant createdAt = Instant.now();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    private volatile UploadJobState state = UploadJobState.QUEUED;
+    private volatile Instant transferStartedAt;
+    private volatile Instant finishedAt;
+    private volatile String failureReason;
+
+    public UploadJob(UUID id, UUID userId, String videoName, long totalBytes) {
+        this.id = id;
+        this.userId = userId;
+        this.videoName = videoName;
+        this.totalBytes = totalBytes;
+    }
+
+    void addTransferredBytes(long bytes) {
+        if (transferStartedAt == null) {
+            transferStartedAt = Instant.now();
+            state = UploadJobState.UPLOADING;
+        }
+        bytesTransferred.addAndGet(bytes);
+    }
+
+    public void succeed() {
+        finishedAt = Instant.now();
+        state = UploadJobState.SUCCEEDED;
+    }
+
+    public void fail(Throwable cause) {
+        failureReason = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        finishedAt = Instant.now();
+        state = UploadJobState.FAILED;
+    }
+
+    boolean isFinishedBefore(Instant time) {
+        Instant finishedAt = this.finishedAt;
+        return finishedAt != null && finishedAt.isBefore(time);
+    }
+
+    public UploadJobStatus toStatus() {
+        return new UploadJobStatus(id, userId, videoName, state, bytesTransferred.get(), totalBytes,
+                getBytesPerSecond(), failureReason, createdAt, finishedAt);
+    }
+
+    private long getBytesPerSecond() {
+        Instant transferStartedAt = this.transferStartedAt;
+        if (transferStartedAt == null) {
+            return 0;
+        }
+        Instant transferEndedAt = finishedAt != null ? finishedAt : Instant.now();
+        long millis = Math.max(1, Duration.between(transferStartedAt, transferEndedAt).toMillis());
+        return bytesTransferred.get() * 1000 / millis;
+    }
+}
@@ -0,0 +1,67 @@
+package com.alex788.videos.upload_job;
+
+import com.alex788.videos.exception.UploadJobNotFoundException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps upload jobs and the directory their request bodies are spooled to. Finished jobs are kept
+ * for the retention time, so clients can still ask for their status.
+ */
+public class UploadJobStore {
+
+    private final Path spoolDirectory;
+    private final Duration retention;
+    private final Map<UUID, UploadJob> jobsById = new ConcurrentHashMap<>();
+
+    public UploadJobStore(Path spoolDirectory, Duration retention) {
+        this.spoolDirectory = spoolDirectory;
+        this.retention = retention;
+        try {
+            Files.createDirectories(spoolDirectory);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create upload spool directory '" + spoolDirectory + "'.", e);
+        }
+    }
+
+    public UploadJob create(UUID userId, String videoName, long totalBytes) {
+        deleteExpiredJobs();
+        UploadJob job = new UploadJob(UUID.randomUUID(), userId, videoName, totalBytes);
+        jobsById.put(job.getId(), job);
+        return job;
+    }
+
+    public Path getSpoolPath(UploadJob job) {
+        return spoolDirectory.resolve(job.getId() + ".part");
+    }
+
+    /**
+     * Wraps the stream so every byte read from it is counted as transferred by the job. The stream supports mark,
+     * the content checked before the upload is queued isn't counted until the upload reads it.
+     */
+    public InputStream track(UploadJob job, InputStream inputStream) {
+        return new ProgressInputStream(new BufferedInputStream(inputStream), job);
+    }
+
+    public UploadJob get(UUID jobId) {
+        UploadJob job = jobsById.get(jobId);
+        if (job == null) {
+            throw new UploadJobNotFoundException("Upload job '" + jobId + "' doesn't exist.");
+        }
+        return job;
+    }
+
+    private void deleteExpiredJobs() {
+        Instant expirationTime = Instant.now().minus(retention);
+        jobsById.values().removeIf(job -> job.isFinishedBefore(expirationTime));
+    }
+}
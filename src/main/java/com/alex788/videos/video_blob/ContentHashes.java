@@ -0,0 +1,45 @@
+package com.alex788.videos.video_blob;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * SHA-256 of video contents, the key blobs are stored under.
+ */
+public final class ContentHashes {
+
+    private static final Pattern SHA_256 = Pattern.compile("[0-9a-f]{64}");
+
+    private ContentHashes() {
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Completes the digest, so it's reset afterwards.
+     */
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return hash in lower case
+     * @throws IllegalArgumentException if the hash isn't a hex SHA-256
+     */
+    public static String normalize(String sha256) {
+        String normalizedSha256 = sha256.toLowerCase(Locale.ROOT);
+        if (!SHA_256.matcher(normalizedSha256).matches()) {
+            throw new IllegalArgumentException("'" + sha256 + "' is not a hex SHA-256.");
+        }
+        return normalizedSha256;
+    }
+}
@@ -0,0 +1,13 @@
+package com.alex788.videos.video_blob;
+
+import com.alex788.videos.entity.VideoMetadata;
+
+/**
+ * Content stored once and shared by all videos with the same SHA-256.
+ *
+ * @param fileId   id of the file of the content in the storage
+ * @param checksum checksum of the file computed by the storage
+ * @param metadata metadata read from the content, {@code null} if unknown
+ */
+public record VideoBlob(String sha256, long size, String fileId, String checksum, VideoMetadata metadata) {
+}
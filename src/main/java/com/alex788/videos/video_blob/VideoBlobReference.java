@@ -0,0 +1,15 @@
+package com.alex788.videos.video_blob;
+
+import com.alex788.videos.entity.VideoInfo;
+
+import java.time.Instant;
+
+/**
+ * Video of a folder whose content is a shared blob.
+ */
+public record VideoBlobReference(String videoName, Instant createdTime, VideoBlob blob) {
+
+    public VideoInfo toVideoInfo() {
+        return new VideoInfo(videoName, blob.size(), blob.fileId(), blob.checksum(), createdTime, blob.metadata());
+    }
+}
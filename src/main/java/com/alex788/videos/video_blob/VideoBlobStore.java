@@ -0,0 +1,240 @@
+package com.alex788.videos.video_blob;
+
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.video_metadata.VideoMetadataProperties;
+import com.google.common.collect.Iterables;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Blobs stored under their SHA-256 and the references of the videos of the folders to them. Every blob counts
+ * its references, the count is updated in the same transaction as the references.
+ */
+public class VideoBlobStore {
+
+    private static final int NAMES_CHUNK_SIZE = 500;
+    private static final String REFERENCE_COLUMNS = "r.video_name, r.created_time, b.sha256, b.size, b.file_id, b.checksum, b.metadata";
+
+    private final DataSource dataSource;
+
+    public VideoBlobStore(DataSource dataSource) {
+        this.dataSource = dataSource;
+        createTables();
+    }
+
+    public Optional<VideoBlob> findBlob(String sha256) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT sha256, size, file_id, checksum, metadata FROM video_blob WHERE sha256 = ?")) {
+            statement.setString(1, sha256);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return Optional.empty();
+                }
+                return Optional.of(new VideoBlob(resultSet.getString(1), resultSet.getLong(2), resultSet.getString(3), resultSet.getString(4),
+                        VideoMetadataProperties.fromText(resultSet.getString(5))));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Adds the blob without references. If a blob with the same hash is already added, it's kept.
+     */
+    public void putBlob(VideoBlob blob) {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, "INSERT INTO video_blob (sha256, size, file_id, checksum, reference_count) VALUES (?, ?, ?, ?, 0)",
+                    blob.sha256(), blob.size(), blob.fileId(), blob.checksum());
+        } catch (SQLException e) {
+            if (!isIntegrityViolation(e)) {
+                throw new RuntimeException(e);
+            }
+            // Stored concurrently by another upload of the same content.
+        }
+    }
+
+    public void putBlobMetadata(String sha256, VideoMetadata metadata) {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, "UPDATE video_blob SET metadata = ? WHERE sha256 = ?", VideoMetadataProperties.toText(metadata), sha256);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return {@code false} if the folder already has a video with the name
+     */
+    public boolean addReference(List<String> path, String videoName, String sha256, Instant createdTime) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                update(connection, "INSERT INTO video_blob_reference (folder_path, video_name, sha256, created_time) VALUES (?, ?, ?, ?)",
+                        toFolderPath(path), videoName, sha256, Timestamp.from(createdTime));
+                update(connection, "UPDATE video_blob SET reference_count = reference_count + 1 WHERE sha256 = ?", sha256);
+                connection.commit();
+                return true;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            if (isIntegrityViolation(e)) {
+                return false;
+            }
+            throw new RuntimeException(e);
+        }
+    }
+
+    public int getReferenceCount(String sha256) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT reference_count FROM video_blob WHERE sha256 = ?")) {
+            statement.setString(1, sha256);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return whether a video of the folder references the blob with the hash
+     */
+    public boolean hasReferenceTo(List<String> path, String sha256) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT 1 FROM video_blob_reference WHERE folder_path = ? AND sha256 = ? LIMIT 1")) {
+            statement.setString(1, toFolderPath(path));
+            statement.setString(2, sha256);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Optional<VideoBlobReference> findReference(List<String> path, String videoName) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT " + REFERENCE_COLUMNS + " FROM video_blob_reference r JOIN video_blob b ON b.sha256 = r.sha256 "
+                             + "WHERE r.folder_path = ? AND r.video_name = ?")) {
+            statement.setString(1, toFolderPath(path));
+            statement.setString(2, videoName);
+            return toReferences(statement).stream().findFirst();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the names of the given ones the folder has references with, one query per {@value #NAMES_CHUNK_SIZE} names.
+     */
+    public Set<String> findReferencedNames(List<String> path, Collection<String> videoNames) {
+        String folderPath = toFolderPath(path);
+        Set<String> referencedVideoNames = new HashSet<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (List<String> chunk : Iterables.partition(videoNames, NAMES_CHUNK_SIZE)) {
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT video_name FROM video_blob_reference WHERE folder_path = ? AND video_name IN (" + placeholders + ")")) {
+                    statement.setString(1, folderPath);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setString(i + 2, chunk.get(i));
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            referencedVideoNames.add(resultSet.getString(1));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return referencedVideoNames;
+    }
+
+    /**
+     * Returns at most {@code limit} references of the folder ordered by name.
+     *
+     * @param lastVideoName name the page starts after, {@code null} for the first page
+     */
+    public List<VideoBlobReference> findReferencesPage(List<String> path, String lastVideoName, int limit) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT " + REFERENCE_COLUMNS + " FROM video_blob_reference r JOIN video_blob b ON b.sha256 = r.sha256 "
+                             + "WHERE r.folder_path = ? AND r.video_name > ? ORDER BY r.video_name LIMIT ?")) {
+            statement.setString(1, toFolderPath(path));
+            statement.setString(2, lastVideoName == null ? "" : lastVideoName);
+            statement.setInt(3, limit);
+            return toReferences(statement);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<VideoBlobReference> toReferences(PreparedStatement statement) throws SQLException {
+        List<VideoBlobReference> references = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                VideoBlob blob = new VideoBlob(resultSet.getString(3), resultSet.getLong(4), resultSet.getString(5), resultSet.getString(6),
+                        VideoMetadataProperties.fromText(resultSet.getString(7)));
+                references.add(new VideoBlobReference(resultSet.getString(1), resultSet.getTimestamp(2).toInstant(), blob));
+            }
+        }
+        return references;
+    }
+
+    private void createTables() {
+        try (Connection connection = dataSource.getConnection()) {
+            update(connection, "CREATE TABLE IF NOT EXISTS video_blob ("
+                    + "sha256 VARCHAR(64) PRIMARY KEY, "
+                    + "size BIGINT NOT NULL, "
+                    + "file_id VARCHAR(128), "
+                    + "checksum VARCHAR(64), "
+                    + "reference_count INT NOT NULL)");
+            update(connection, "CREATE TABLE IF NOT EXISTS video_blob_reference ("
+                    + "folder_path VARCHAR(1024) NOT NULL, "
+                    + "video_name VARCHAR(1024) NOT NULL, "
+                    + "sha256 VARCHAR(64) NOT NULL REFERENCES video_blob (sha256), "
+                    + "created_time TIMESTAMP NOT NULL, "
+                    + "PRIMARY KEY (folder_path, video_name))");
+            // Added after the table was introduced, so tables created before get it too.
+            update(connection, "ALTER TABLE video_blob ADD COLUMN IF NOT EXISTS metadata VARCHAR(512)");
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private static boolean isIntegrityViolation(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    private static String toFolderPath(List<String> path) {
+        return String.join("/", path);
+    }
+}
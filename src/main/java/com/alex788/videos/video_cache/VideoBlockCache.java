@@ -0,0 +1,206 @@
+package com.alex788.videos.video_cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Size-bounded LRU cache of fixed-size blocks of videos held off-heap. Missing blocks are fetched with ranged reads
+ * in the background, so the blocks ahead of a reader download in parallel while it consumes the current one.
+ * A block fetched by one reader is shared with the others waiting for it.
+ * Evicted blocks are freed once the readers holding them move on.
+ * <p>
+ * Blocks a reader waits for are fetched on the demand executor, blocks ahead of it on the prefetch executor, so
+ * demanded blocks don't queue behind prefetches. A prefetch still queued when its block is demanded is moved to the
+ * demand executor. A prefetch the prefetch executor rejects is dropped.
+ */
+public class VideoBlockCache {
+
+    private final int blockSize;
+    private final int readAheadBlocks;
+    private final Executor demandFetchExecutor;
+    private final Executor prefetchExecutor;
+    private final Cache<VideoBlockKey, ByteBuffer> blocksByKey;
+    private final Map<VideoBlockKey, BlockFetch> fetchesByKey = new ConcurrentHashMap<>();
+
+    /**
+     * @param readAheadBlocks number of blocks fetched ahead of the one being read
+     */
+    public VideoBlockCache(long maxSizeInBytes, int blockSize, int readAheadBlocks, Executor demandFetchExecutor,
+                           Executor prefetchExecutor) {
+        this.blockSize = blockSize;
+        this.readAheadBlocks = readAheadBlocks;
+        this.demandFetchExecutor = demandFetchExecutor;
+        this.prefetchExecutor = prefetchExecutor;
+        blocksByKey = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(1, maxSizeInBytes / 1024))
+                .weigher((VideoBlockKey key, ByteBuffer block) -> block.capacity() / 1024 + 1)
+                .build();
+    }
+
+    /**
+     * Returns bytes of the video from {@code from} to {@code to} inclusive. Blocks missing in the cache
+     * are fetched whole, read-ahead doesn't go past {@code to}.
+     *
+     * @param size size of the video
+     */
+    public InputStream open(VideoCacheKey key, long size, long from, long to, BlockFetcher fetcher) {
+        VideoBlockInputStream inputStream = new VideoBlockInputStream(this, key, size, from, to + 1, fetcher);
+        inputStream.fetchAhead();
+        return inputStream;
+    }
+
+    /**
+     * Removes all cached blocks of all versions of the video.
+     */
+    public void invalidate(List<String> path, String videoName) {
+        blocksByKey.asMap().keySet()
+                .removeIf(key -> key.video().path().equals(path) && key.video().videoName().equals(videoName));
+    }
+
+    public long size() {
+        return blocksByKey.size();
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    int getReadAheadBlocks() {
+        return readAheadBlocks;
+    }
+
+    /**
+     * @param demanded whether a reader waits for the block, otherwise it's fetched ahead of a reader
+     * @return block with its position at 0 and its limit at its length, shared between readers
+     */
+    CompletableFuture<ByteBuffer> getBlock(VideoBlockKey key, long size, BlockFetcher fetcher, boolean demanded) {
+        ByteBuffer block = blocksByKey.getIfPresent(key);
+        if (block != null) {
+            return CompletableFuture.completedFuture(block);
+        }
+        BlockFetch fetch = new BlockFetch(key, size, fetcher);
+        BlockFetch existingFetch = fetchesByKey.putIfAbsent(key, fetch);
+        if (existingFetch != null) {
+            fetch = existingFetch;
+        } else if (!demanded) {
+            fetch.prefetch();
+        }
+        if (demanded) {
+            fetch.demand();
+        }
+        return fetch.future;
+    }
+
+    private void fetch(VideoBlockKey key, long size, BlockFetcher fetcher, CompletableFuture<ByteBuffer> future) {
+        long from = key.index() * blockSize;
+        int length = (int) Math.min(blockSize, size - from);
+        try (InputStream inputStream = fetcher.fetch(from, from + length - 1)) {
+            ByteBuffer block = ByteBuffer.allocateDirect(length);
+            ReadableByteChannel channel = Channels.newChannel(inputStream);
+            while (block.hasRemaining()) {
+                if (channel.read(block) < 0) {
+                    throw new IOException("Block " + key.index() + " of video '" + key.video().videoName() + "' ended early.");
+                }
+            }
+            block.flip();
+            blocksByKey.put(key, block);
+            future.complete(block);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Fetch of a block submitted to one or both executors, it runs once on the one that starts it first.
+     */
+    private class BlockFetch implements Runnable {
+
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        private final VideoBlockKey key;
+        private final long size;
+        private final BlockFetcher fetcher;
+        private boolean started;
+        private boolean demanded;
+
+        BlockFetch(VideoBlockKey key, long size, BlockFetcher fetcher) {
+            this.key = key;
+            this.size = size;
+            this.fetcher = fetcher;
+        }
+
+        void prefetch() {
+            try {
+                prefetchExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                fail(e, false);
+            }
+        }
+
+        void demand() {
+            synchronized (this) {
+                if (started || demanded) {
+                    return;
+                }
+                demanded = true;
+            }
+            try {
+                demandFetchExecutor.execute(this);
+            } catch (RejectedExecutionException e) {
+                fail(e, true);
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (started) {
+                    return;
+                }
+                started = true;
+            }
+            try {
+                fetch(key, size, fetcher, future);
+            } finally {
+                fetchesByKey.remove(key, this);
+            }
+        }
+
+        /**
+         * A dropped prefetch whose block was demanded meanwhile is left to the demand executor.
+         */
+        private void fail(RejectedExecutionException e, boolean demandRejected) {
+            synchronized (this) {
+                if (started || !demandRejected && demanded) {
+                    return;
+                }
+                started = true;
+            }
+            fetchesByKey.remove(key, this);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Reads bytes of the video from the storage.
+     */
+    @FunctionalInterface
+    public interface BlockFetcher {
+
+        /**
+         * @return bytes from {@code from} to {@code to} inclusive
+         */
+        InputStream fetch(long from, long to) throws IOException;
+    }
+}
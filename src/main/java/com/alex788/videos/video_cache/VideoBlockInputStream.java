@@ -0,0 +1,109 @@
+package com.alex788.videos.video_cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads a range of a video block by block from the {@link VideoBlockCache}. Every time the reader enters a block,
+ * the blocks ahead of it up to the read-ahead window are requested, so they are fetched while it reads.
+ */
+class VideoBlockInputStream extends InputStream {
+
+    private final VideoBlockCache videoBlockCache;
+    private final VideoCacheKey key;
+    private final long size;
+    private final long end;
+    private final VideoBlockCache.BlockFetcher fetcher;
+    private long position;
+    private long blockIndex = -1;
+    private ByteBuffer block;
+
+    /**
+     * @param end position after the last byte read
+     */
+    VideoBlockInputStream(VideoBlockCache videoBlockCache, VideoCacheKey key, long size, long from, long end,
+                          VideoBlockCache.BlockFetcher fetcher) {
+        this.videoBlockCache = videoBlockCache;
+        this.key = key;
+        this.size = size;
+        this.position = from;
+        this.end = Math.min(end, size);
+        this.fetcher = fetcher;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] singleByte = new byte[1];
+        int count = read(singleByte, 0, 1);
+        return count < 0 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position >= end) {
+            return -1;
+        }
+        long index = position / videoBlockCache.getBlockSize();
+        if (index != blockIndex) {
+            block = null;
+            blockIndex = index;
+            fetchAhead();
+            block = await(index);
+        }
+        int positionInBlock = (int) (position - index * videoBlockCache.getBlockSize());
+        int count = (int) Math.min(Math.min(length, block.limit() - positionInBlock), end - position);
+        block.get(positionInBlock, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Skipped blocks aren't fetched.
+     */
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        if (block == null || position >= end) {
+            return 0;
+        }
+        long blockEnd = Math.min(end, blockIndex * videoBlockCache.getBlockSize() + block.limit());
+        return (int) Math.max(0, blockEnd - position);
+    }
+
+    /**
+     * Demands the block at the position and prefetches the blocks of the read-ahead window after it.
+     */
+    void fetchAhead() {
+        if (position >= end) {
+            return;
+        }
+        long firstIndex = position / videoBlockCache.getBlockSize();
+        long lastIndex = Math.min((end - 1) / videoBlockCache.getBlockSize(), firstIndex + videoBlockCache.getReadAheadBlocks());
+        for (long index = firstIndex; index <= lastIndex; index++) {
+            videoBlockCache.getBlock(new VideoBlockKey(key, index), size, fetcher, index == firstIndex);
+        }
+    }
+
+    private ByteBuffer await(long index) throws IOException {
+        try {
+            return videoBlockCache.getBlock(new VideoBlockKey(key, index), size, fetcher, true).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading video '" + key.videoName() + "'.");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot read video '" + key.videoName() + "'.", e.getCause());
+        }
+    }
+}
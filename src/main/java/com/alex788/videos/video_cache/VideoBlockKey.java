@@ -0,0 +1,7 @@
+package com.alex788.videos.video_cache;
+
+/**
+ * Identifies a block of one version of a video, the block starts at {@code index} times the block size.
+ */
+record VideoBlockKey(VideoCacheKey video, long index) {
+}
@@ -0,0 +1,18 @@
+package com.alex788.videos.video_cache;
+
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Identifies one version of a video: the folder path, the video name and the checksum of its content.
+ */
+public record VideoCacheKey(List<String> path, String videoName, String checksum) {
+
+    String toFileName() {
+        return Hashing.sha256()
+                .hashString(String.join("/", path) + "/" + videoName + "#" + checksum, StandardCharsets.UTF_8)
+                .toString();
+    }
+}
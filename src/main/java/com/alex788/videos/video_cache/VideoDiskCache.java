@@ -0,0 +1,418 @@
+package com.alex788.videos.video_cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.io.ByteStreams;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded LRU cache of downloaded videos on the local disk. A video is written to a temp file while it is
+ * being read by the first consumer and becomes visible to others only after it was read completely.
+ * Evicted files are deleted, readers that already opened them keep reading.
+ * <p>
+ * Every cached video has a key file next to it, so the cache is rebuilt from the directory after a restart.
+ * Only files named like the ones the cache writes are read or deleted, other files and subdirectories are kept.
+ */
+@Slf4j
+public class VideoDiskCache {
+
+    private static final String TEMP_FILE_SUFFIX = ".part";
+    private static final String KEY_FILE_SUFFIX = ".key";
+    private static final Pattern VIDEO_FILE_NAME = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern TEMP_FILE_NAME = Pattern.compile("[0-9a-f]{64}\\d*" + Pattern.quote(TEMP_FILE_SUFFIX));
+    private static final Pattern KEY_FILE_NAME = Pattern.compile("[0-9a-f]{64}" + Pattern.quote(KEY_FILE_SUFFIX));
+    private static final String PATH_PROPERTY_PREFIX = "path.";
+    private static final String NAME_PROPERTY = "name";
+    private static final String CHECKSUM_PROPERTY = "checksum";
+    private static final String SIZE_PROPERTY = "size";
+
+    private final Path directory;
+    private final Cache<VideoName, VideoCacheKey> validatedKeysByVideo;
+    private final Cache<VideoCacheKey, Path> videoPathsByKey;
+
+    /**
+     * @param validationTtl time a version of a video checked against the storage is served by
+     *                      {@link #getValidated} without checking it again
+     */
+    public VideoDiskCache(Path directory, long maxSizeInBytes, Duration validationTtl) {
+        this.directory = directory;
+        validatedKeysByVideo = CacheBuilder.newBuilder()
+                .expireAfterWrite(validationTtl)
+                .build();
+        videoPathsByKey = CacheBuilder.newBuilder()
+                .concurrencyLevel(1) // the weight is split between segments, a video heavier than one would be evicted at once
+                .maximumWeight(Math.max(1, maxSizeInBytes / 1024))
+                .weigher(VideoDiskCache::getWeightInKilobytes)
+                .removalListener(this::deleteEvictedFiles)
+                .build();
+        loadDirectory();
+    }
+
+    /**
+     * The key must have the checksum the storage currently reports for the video, a hit is then valid
+     * for the validation TTL.
+     */
+    public Optional<InputStream> get(VideoCacheKey key) {
+        return open(key).map(channel -> {
+            validate(key);
+            return Channels.newInputStream(channel);
+        });
+    }
+
+    /**
+     * Returns bytes of the cached video from {@code from} to {@code to} inclusive, validated like {@link #get}.
+     */
+    public Optional<InputStream> getPart(VideoCacheKey key, long from, long to) {
+        return open(key).map(channel -> {
+            validate(key);
+            return toPart(channel, key, from, to);
+        });
+    }
+
+    /**
+     * Returns the cached version of the video that was checked against the storage within the validation TTL,
+     * without asking the storage.
+     */
+    public Optional<InputStream> getValidated(List<String> path, String videoName) {
+        return findValidatedKey(path, videoName)
+                .flatMap(key -> open(key).map(Channels::newInputStream));
+    }
+
+    public Optional<InputStream> getValidatedPart(List<String> path, String videoName, long from, long to) {
+        return findValidatedKey(path, videoName)
+                .flatMap(key -> open(key).map(channel -> toPart(channel, key, from, to)));
+    }
+
+    /**
+     * Wraps the source stream so the video is put into the cache once the stream was read to the end
+     * and exactly {@code size} bytes were read.
+     */
+    public InputStream putWhileReading(VideoCacheKey key, long size, InputStream source) {
+        Path tempPath;
+        OutputStream tempOutputStream;
+        try {
+            tempPath = Files.createTempFile(directory, key.toFileName(), TEMP_FILE_SUFFIX);
+            tempOutputStream = Files.newOutputStream(tempPath);
+        } catch (IOException e) {
+            log.warn("Cannot cache video '{}'.", key.videoName(), e);
+            return source;
+        }
+        return new CachingInputStream(source, key, size, tempPath, tempOutputStream);
+    }
+
+    /**
+     * Removes all cached versions of the video.
+     */
+    public void invalidate(List<String> path, String videoName) {
+        validatedKeysByVideo.invalidate(new VideoName(path, videoName));
+        videoPathsByKey.asMap().keySet()
+                .removeIf(key -> key.path().equals(path) && key.videoName().equals(videoName));
+    }
+
+    public long size() {
+        return videoPathsByKey.size();
+    }
+
+    private Optional<VideoCacheKey> findValidatedKey(List<String> path, String videoName) {
+        return Optional.ofNullable(validatedKeysByVideo.getIfPresent(new VideoName(path, videoName)));
+    }
+
+    private void validate(VideoCacheKey key) {
+        validatedKeysByVideo.put(new VideoName(key.path(), key.videoName()), key);
+    }
+
+    private Optional<FileChannel> open(VideoCacheKey key) {
+        Path videoPath = videoPathsByKey.getIfPresent(key);
+        if (videoPath == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(FileChannel.open(videoPath, StandardOpenOption.READ));
+        } catch (NoSuchFileException e) {
+            videoPathsByKey.invalidate(key);
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read cached video '" + key.videoName() + "'.", e);
+        }
+    }
+
+    private static InputStream toPart(FileChannel channel, VideoCacheKey key, long from, long to) {
+        try {
+            channel.position(from);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new RuntimeException("Cannot read cached video '" + key.videoName() + "'.", e);
+        }
+        return ByteStreams.limit(Channels.newInputStream(channel), to - from + 1);
+    }
+
+    /**
+     * The key file is written before the video is moved in place, so a video is never left without its key.
+     */
+    private void publish(VideoCacheKey key, long size, Path tempPath) throws IOException {
+        Path videoPath = directory.resolve(key.toFileName());
+        writeKeyFile(key, size);
+        Files.move(tempPath, videoPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        videoPathsByKey.put(key, videoPath);
+        validate(key);
+    }
+
+    /**
+     * Indexes the videos left by the previous run, the most recently written ones last so they're evicted last.
+     * Temp files of interrupted downloads, videos without a valid key file and key files without their video
+     * are deleted.
+     */
+    private void loadDirectory() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> keyFiles = new ArrayList<>();
+            Set<Path> videoFiles = new HashSet<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) {
+                    String fileName = file.getFileName().toString();
+                    if (TEMP_FILE_NAME.matcher(fileName).matches()) {
+                        Files.deleteIfExists(file);
+                    } else if (KEY_FILE_NAME.matcher(fileName).matches()) {
+                        keyFiles.add(file);
+                    } else if (VIDEO_FILE_NAME.matcher(fileName).matches()) {
+                        videoFiles.add(file);
+                    }
+                }
+            }
+            keyFiles.sort(Comparator.comparingLong(VideoDiskCache::getLastModifiedMillis));
+            for (Path keyFile : keyFiles) {
+                Path videoPath = toVideoPath(keyFile);
+                if (videoFiles.remove(videoPath) && load(keyFile, videoPath)) {
+                    continue;
+                }
+                Files.deleteIfExists(keyFile);
+                Files.deleteIfExists(videoPath);
+            }
+            for (Path videoFile : videoFiles) {
+                Files.deleteIfExists(videoFile);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot prepare video cache directory '" + directory + "'.", e);
+        }
+    }
+
+    private boolean load(Path keyFile, Path videoPath) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(keyFile)) {
+            properties.load(reader);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        List<String> path = new ArrayList<>();
+        for (int i = 0; properties.containsKey(PATH_PROPERTY_PREFIX + i); i++) {
+            path.add(properties.getProperty(PATH_PROPERTY_PREFIX + i));
+        }
+        String videoName = properties.getProperty(NAME_PROPERTY);
+        String checksum = properties.getProperty(CHECKSUM_PROPERTY);
+        String size = properties.getProperty(SIZE_PROPERTY);
+        if (videoName == null || checksum == null || size == null) {
+            return false;
+        }
+        VideoCacheKey key = new VideoCacheKey(List.copyOf(path), videoName, checksum);
+        // A video truncated by a crash after it was moved in place has another size.
+        if (!videoPath.equals(directory.resolve(key.toFileName())) || !size.equals(Long.toString(Files.size(videoPath)))) {
+            return false;
+        }
+        videoPathsByKey.put(key, videoPath);
+        return true;
+    }
+
+    private void writeKeyFile(VideoCacheKey key, long size) throws IOException {
+        Properties properties = new Properties();
+        for (int i = 0; i < key.path().size(); i++) {
+            properties.setProperty(PATH_PROPERTY_PREFIX + i, key.path().get(i));
+        }
+        properties.setProperty(NAME_PROPERTY, key.videoName());
+        properties.setProperty(CHECKSUM_PROPERTY, key.checksum());
+        properties.setProperty(SIZE_PROPERTY, Long.toString(size));
+        Path tempKeyFile = Files.createTempFile(directory, key.toFileName(), TEMP_FILE_SUFFIX);
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempKeyFile)) {
+                properties.store(writer, null);
+            }
+            Files.move(tempKeyFile, directory.resolve(key.toFileName() + KEY_FILE_SUFFIX),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempKeyFile);
+        }
+    }
+
+    private static Path toVideoPath(Path keyFile) {
+        String fileName = keyFile.getFileName().toString();
+        return keyFile.resolveSibling(fileName.substring(0, fileName.length() - KEY_FILE_SUFFIX.length()));
+    }
+
+    private static long getLastModifiedMillis(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static int getWeightInKilobytes(VideoCacheKey key, Path videoPath) {
+        try {
+            return (int) Math.min(Integer.MAX_VALUE, Files.size(videoPath) / 1024 + 1);
+        } catch (IOException e) {
+            return 1;
+        }
+    }
+
+    private void deleteEvictedFiles(RemovalNotification<VideoCacheKey, Path> notification) {
+        if (notification.getCause() == RemovalCause.REPLACED) {
+            return;
+        }
+        VideoCacheKey key = notification.getKey();
+        validatedKeysByVideo.asMap().remove(new VideoName(key.path(), key.videoName()), key);
+        Path videoPath = notification.getValue();
+        try {
+            Files.deleteIfExists(videoPath);
+            Files.deleteIfExists(videoPath.resolveSibling(videoPath.getFileName() + KEY_FILE_SUFFIX));
+        } catch (IOException e) {
+            log.warn("Cannot delete cached video '{}'.", videoPath, e);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    private record VideoName(List<String> path, String videoName) {
+    }
+
+    private class CachingInputStream extends FilterInputStream {
+
+        private final VideoCacheKey key;
+        private final long size;
+        private final Path tempPath;
+        private OutputStream tempOutputStream;
+        private long readBytes;
+
+        CachingInputStream(InputStream source, VideoCacheKey key, long size, Path tempPath, OutputStream tempOutputStream) {
+            super(source);
+            this.key = key;
+            this.size = size;
+            this.tempPath = tempPath;
+            this.tempOutputStream = tempOutputStream;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete();
+            } else {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                complete();
+            } else {
+                write(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abandon();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abandon();
+            }
+        }
+
+        private void write(byte[] b, int off, int len) {
+            if (tempOutputStream == null) {
+                return;
+            }
+            try {
+                tempOutputStream.write(b, off, len);
+                readBytes += len;
+            } catch (IOException e) {
+                log.warn("Cannot cache video '{}'.", key.videoName(), e);
+                abandon();
+            }
+        }
+
+        private void complete() {
+            if (tempOutputStream == null) {
+                return;
+            }
+            if (readBytes != size) {
+                abandon();
+                return;
+            }
+            try {
+                tempOutputStream.close();
+                tempOutputStream = null;
+                publish(key, size, tempPath);
+            } catch (IOException e) {
+                log.warn("Cannot cache video '{}'.", key.videoName(), e);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (tempOutputStream != null) {
+                closeQuietly(tempOutputStream);
+                tempOutputStream = null;
+            }
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException e) {
+                log.warn("Cannot delete temp file '{}'.", tempPath, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.alex788.videos.video_catalog;
+
+import com.alex788.videos.adapter.StorageChange;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.video_metadata.VideoMetadataProperties;
+import com.google.common.collect.Iterables;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Local copy of the video infos of the storage folders. A folder is cataloged as a whole: once it's hydrated,
+ * the catalog has every video of the folder and the folder is kept up to date by the changes of the storage.
+ * The token of the next page of changes is kept with the catalog, so it's updated in the same transaction
+ * as the changes it covers, and it's as durable as the database: with an in-memory database both are lost
+ * on restart and the folders are hydrated again.
+ */
+public class VideoCatalog {
+
+    private static final int STATE_ID = 1;
+    private static final int NAMES_CHUNK_SIZE = 500;
+
+    private final DataSource dataSource;
+
+    public VideoCatalog(DataSource dataSource) {
+        this.dataSource = dataSource;
+        createTables();
+    }
+
+    public boolean isHydrated(List<String> path) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM video_catalog_folder WHERE folder_path = ?")) {
+            statement.setString(1, toFolderPath(path));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Replaces the videos of the folder with all its videos and marks it as hydrated in one transaction, so readers
+     * see either the old state or the whole folder. If the folder is hydrated concurrently, the first hydration wins.
+     */
+    public void hydrate(List<String> path, String folderId, List<VideoInfo> videoInfos) {
+        String folderPath = toFolderPath(path);
+        inTransactionUnlessDuplicateKey(connection -> {
+            update(connection, "DELETE FROM video_catalog_entry WHERE folder_path = ?", folderPath);
+            for (VideoInfo videoInfo : videoInfos) {
+                insert(connection, folderPath, videoInfo);
+            }
+            update(connection, "INSERT INTO video_catalog_folder (folder_path, folder_id) VALUES (?, ?)", folderPath, folderId);
+        });
+    }
+
+    public void put(List<String> path, VideoInfo videoInfo) {
+        putAll(path, List.of(videoInfo));
+    }
+
+    /**
+     * If the same video is put concurrently, the first put wins.
+     */
+    public void putAll(List<String> path, List<VideoInfo> videoInfos) {
+        String folderPath = toFolderPath(path);
+        inTransactionUnlessDuplicateKey(connection -> {
+            for (VideoInfo videoInfo : videoInfos) {
+                update(connection, "DELETE FROM video_catalog_entry WHERE folder_path = ? AND name = ?", folderPath, videoInfo.name());
+                insert(connection, folderPath, videoInfo);
+            }
+        });
+    }
+
+    public Optional<VideoInfo> find(List<String> path, String videoName) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT name, size, file_id, checksum, created_time, metadata FROM video_catalog_entry WHERE folder_path = ? AND name = ?")) {
+            statement.setString(1, toFolderPath(path));
+            statement.setString(2, videoName);
+            return toVideoInfos(statement).stream().findFirst();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the names of the given ones the folder has videos with. The names are looked up in chunks,
+     * one query per {@value #NAMES_CHUNK_SIZE} names.
+     */
+    public Set<String> findExistingNames(List<String> path, Collection<String> videoNames) {
+        String folderPath = toFolderPath(path);
+        Set<String> existingVideoNames = new HashSet<>();
+        try (Connection connection = dataSource.getConnection()) {
+            for (List<String> chunk : Iterables.partition(videoNames, NAMES_CHUNK_SIZE)) {
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT name FROM video_catalog_entry WHERE folder_path = ? AND name IN (" + placeholders + ")")) {
+                    statement.setString(1, folderPath);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        statement.setString(i + 2, chunk.get(i));
+                    }
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            existingVideoNames.add(resultSet.getString(1));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return existingVideoNames;
+    }
+
+    /**
+     * Returns at most {@code limit} videos of the folder ordered by name.
+     *
+     * @param lastVideoName name the page starts after, {@code null} for the first page
+     */
+    public List<VideoInfo> findPage(List<String> path, String lastVideoName, int limit) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT name, size, file_id, checksum, created_time, metadata FROM video_catalog_entry "
+                             + "WHERE folder_path = ? AND name > ? ORDER BY name LIMIT ?")) {
+            statement.setString(1, toFolderPath(path));
+            statement.setString(2, lastVideoName == null ? "" : lastVideoName);
+            statement.setInt(3, limit);
+            return toVideoInfos(statement);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Optional<String> getPageToken() {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT page_token FROM video_catalog_state WHERE id = ?")) {
+            statement.setInt(1, STATE_ID);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? Optional.of(resultSet.getString(1)) : Optional.empty();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Forgets all hydrated folders and starts following the changes from the given token. Used when the changes
+     * since the last known token can't be applied, so the folders are hydrated again on the next access.
+     */
+    public void reset(String pageToken) {
+        inTransaction(connection -> {
+            update(connection, "DELETE FROM video_catalog_entry");
+            update(connection, "DELETE FROM video_catalog_folder");
+            setPageToken(connection, pageToken);
+        });
+    }
+
+    /**
+     * Applies the changes to the hydrated folders and saves the token of the next page of changes.
+     * Changes of files in folders that aren't hydrated are skipped, they're fetched with the folder.
+     */
+    public void applyChanges(List<StorageChange> changes, String nextPageToken) {
+        inTransaction(connection -> {
+            for (StorageChange change : changes) {
+                update(connection, "DELETE FROM video_catalog_entry WHERE file_id = ?", change.fileId());
+                if (change.isRemoved()) {
+                    continue;
+                }
+                Optional<String> folderPathOpt = findFolderPath(connection, change.folderId());
+                if (folderPathOpt.isPresent()) {
+                    update(connection, "DELETE FROM video_catalog_entry WHERE folder_path = ? AND name = ?",
+                            folderPathOpt.get(), change.videoInfo().name());
+                    insert(connection, folderPathOpt.get(), change.videoInfo());
+                }
+            }
+            setPageToken(connection, nextPageToken);
+        });
+    }
+
+    private static Optional<String> findFolderPath(Connection connection, String folderId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT folder_path FROM video_catalog_folder WHERE folder_id = ?")) {
+            statement.setString(1, folderId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? Optional.of(resultSet.getString(1)) : Optional.empty();
+            }
+        }
+    }
+
+    private static void setPageToken(Connection connection, String pageToken) throws SQLException {
+        update(connection, "DELETE FROM video_catalog_state WHERE id = ?", STATE_ID);
+        update(connection, "INSERT INTO video_catalog_state (id, page_token) VALUES (?, ?)", STATE_ID, pageToken);
+    }
+
+    private static void insert(Connection connection, String folderPath, VideoInfo videoInfo) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO video_catalog_entry (folder_path, name, size, file_id, checksum, created_time, metadata) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            statement.setString(1, folderPath);
+            statement.setString(2, videoInfo.name());
+            statement.setLong(3, videoInfo.size());
+            statement.setString(4, videoInfo.fileId());
+            statement.setString(5, videoInfo.checksum());
+            statement.setTimestamp(6, videoInfo.createdTime() == null ? null : Timestamp.from(videoInfo.createdTime()));
+            statement.setString(7, VideoMetadataProperties.toText(videoInfo.metadata()));
+            statement.executeUpdate();
+        }
+    }
+
+    private static List<VideoInfo> toVideoInfos(PreparedStatement statement) throws SQLException {
+        List<VideoInfo> videoInfos = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                Timestamp createdTime = resultSet.getTimestamp(5);
+                videoInfos.add(new VideoInfo(resultSet.getString(1), resultSet.getLong(2), resultSet.getString(3),
+                        resultSet.getString(4), createdTime == null ? null : createdTime.toInstant(),
+                        VideoMetadataProperties.fromText(resultSet.getString(6))));
+            }
+        }
+        return videoInfos;
+    }
+
+    private void createTables() {
+        inTransaction(connection -> {
+            update(connection, "CREATE TABLE IF NOT EXISTS video_catalog_folder ("
+                    + "folder_path VARCHAR(1024) PRIMARY KEY, "
+                    + "folder_id VARCHAR(128) NOT NULL)");
+            update(connection, "CREATE TABLE IF NOT EXISTS video_catalog_entry ("
+                    + "folder_path VARCHAR(1024) NOT NULL, "
+                    + "name VARCHAR(1024) NOT NULL, "
+                    + "size BIGINT NOT NULL, "
+                    + "file_id VARCHAR(128), "
+                    + "checksum VARCHAR(64), "
+                    + "created_time TIMESTAMP, "
+                    + "PRIMARY KEY (folder_path, name))");
+            // Added after the table was introduced, so catalogs created before get it too.
+            update(connection, "ALTER TABLE video_catalog_entry ADD COLUMN IF NOT EXISTS metadata VARCHAR(512)");
+            update(connection, "CREATE INDEX IF NOT EXISTS video_catalog_entry_file_id ON video_catalog_entry (file_id)");
+            update(connection, "CREATE TABLE IF NOT EXISTS video_catalog_state ("
+                    + "id INT PRIMARY KEY, "
+                    + "page_token VARCHAR(1024) NOT NULL)");
+        });
+    }
+
+    private void inTransaction(SqlAction action) {
+        try {
+            runInTransaction(action);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Rolls the action back without a failure if a concurrent transaction inserted the same key first.
+     */
+    private void inTransactionUnlessDuplicateKey(SqlAction action) {
+        try {
+            runInTransaction(action);
+        } catch (SQLException e) {
+            if (!isDuplicateKey(e)) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private void runInTransaction(SqlAction action) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                action.run(connection);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Unique constraint violation, other integrity violations mean a bug and are thrown.
+     */
+    private static boolean isDuplicateKey(SQLException e) {
+        return "23505".equals(e.getSQLState());
+    }
+
+    private static String toFolderPath(List<String> path) {
+        return String.join("/", path);
+    }
+
+    @FunctionalInterface
+    private interface SqlAction {
+
+        void run(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,67 @@
+package com.alex788.videos.video_catalog;
+
+import com.alex788.videos.adapter.StorageChangeFeed;
+import com.alex788.videos.adapter.StorageChangePage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the {@link VideoCatalog} in sync with the changes made to the storage outside the application.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class VideoCatalogSynchronizer {
+
+    private final VideoCatalog videoCatalog;
+    private final StorageChangeFeed storageChangeFeed;
+
+    /**
+     * Starts polling the changes in the background with the given interval.
+     */
+    public VideoCatalogSynchronizer start(Duration interval) {
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "video-catalog-synchronizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executorService.scheduleWithFixedDelay(this::synchronizeQuietly, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Applies all the changes made since the last synchronization. The first synchronization only remembers
+     * where the changes start, because folders hydrated before it are hydrated again after it.
+     */
+    public void synchronize() {
+        Optional<String> pageTokenOpt = videoCatalog.getPageToken();
+        if (pageTokenOpt.isEmpty()) {
+            videoCatalog.reset(storageChangeFeed.getStartPageToken());
+            return;
+        }
+
+        String pageToken = pageTokenOpt.get();
+        while (true) {
+            StorageChangePage page = storageChangeFeed.getChanges(pageToken);
+            boolean isLastPage = page.nextPageToken() == null;
+            pageToken = isLastPage ? page.newStartPageToken() : page.nextPageToken();
+            videoCatalog.applyChanges(page.changes(), pageToken);
+            if (isLastPage) {
+                return;
+            }
+        }
+    }
+
+    private void synchronizeQuietly() {
+        try {
+            synchronize();
+        } catch (RuntimeException e) {
+            log.warn("Cannot synchronize video catalog.", e);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.alex788.videos.video_download;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Runs one download per key at a time and lets every reader asking for the key meanwhile stream from it.
+ * The download is spooled to a file in the background at the speed of the source, each reader reads the file
+ * at its own pace and waits for the bytes that haven't arrived yet.
+ * <p>
+ * A download is shared only while it runs, readers arriving after it ended start a new one. It's cancelled
+ * once all its readers closed their streams.
+ * <p>
+ * The spool files take at most about the max spool size: while the spooled bytes reach it, new downloads aren't
+ * shared and stream from the source directly. Downloads already running finish, so the spool exceeds the max by
+ * at most what they still have to transfer. A spool file counts until its last reader closed it, since a deleted
+ * file keeps its space while it's open. Only the spool files are deleted from the directory.
+ * <p>
+ * Each download takes a thread of the transfer executor while it runs, so at most max downloads run at a time,
+ * new downloads over it aren't shared either.
+ */
+@Slf4j
+public class SharedVideoDownloads<K> {
+
+    private static final String SPOOL_FILE_PREFIX = "video";
+    private static final String SPOOL_FILE_SUFFIX = ".part";
+    private static final Pattern SPOOL_FILE_NAME = Pattern.compile(SPOOL_FILE_PREFIX + "\\d*" + Pattern.quote(SPOOL_FILE_SUFFIX));
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long maxSpoolSizeInBytes;
+    private final int maxDownloads;
+    private final Executor transferExecutor;
+    /**
+     * Downloads and the spooled bytes are guarded by the map.
+     */
+    private final Map<K, Download> downloadsByKey = new HashMap<>();
+    private long spooledBytes;
+
+    /**
+     * @param transferExecutor runs the transfers of the downloads, must run max downloads at once
+     */
+    public SharedVideoDownloads(Path directory, long maxSpoolSizeInBytes, int maxDownloads, Executor transferExecutor) {
+        this.directory = directory;
+        this.maxSpoolSizeInBytes = maxSpoolSizeInBytes;
+        this.maxDownloads = maxDownloads;
+        this.transferExecutor = transferExecutor;
+        deleteSpoolFiles();
+    }
+
+    /**
+     * Joins the running download of the key or starts a new one with the source. If the spool is full or max
+     * downloads run and no download of the key runs, the source is returned as is.
+     *
+     * @param source opens the video in the storage, empty if it's missing
+     * @return empty if the video is missing
+     */
+    public Optional<InputStream> open(K key, Supplier<Optional<InputStream>> source) {
+        Download download;
+        SpoolInputStream inputStream;
+        boolean isNew = false;
+        synchronized (downloadsByKey) {
+            download = downloadsByKey.get(key);
+            if (download == null && spooledBytes < maxSpoolSizeInBytes && downloadsByKey.size() < maxDownloads) {
+                download = new Download(key, createSpoolFile());
+                downloadsByKey.put(key, download);
+                isNew = true;
+            }
+            inputStream = download == null ? null : download.newReader();
+        }
+        if (download == null) {
+            return source.get();
+        }
+        if (isNew) {
+            download.start(source);
+        }
+        try {
+            if (!download.opened.join()) {
+                inputStream.closeQuietly();
+                return Optional.empty();
+            }
+        } catch (CompletionException e) {
+            inputStream.closeQuietly();
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        return Optional.of(inputStream);
+    }
+
+    /**
+     * @return number of downloads running
+     */
+    public int size() {
+        synchronized (downloadsByKey) {
+            return downloadsByKey.size();
+        }
+    }
+
+    /**
+     * @return bytes of the spool files that still take space
+     */
+    public long getSpooledBytes() {
+        synchronized (downloadsByKey) {
+            return spooledBytes;
+        }
+    }
+
+    private Path createSpoolFile() {
+        try {
+            return Files.createTempFile(directory, SPOOL_FILE_PREFIX, SPOOL_FILE_SUFFIX);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create spool file in '" + directory + "'.", e);
+        }
+    }
+
+    /**
+     * Deletes the spool files left by downloads running when the previous run stopped, other files are kept.
+     */
+    private void deleteSpoolFiles() {
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    if (SPOOL_FILE_NAME.matcher(file.getFileName().toString()).matches() && Files.isRegularFile(file)) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot prepare shared download directory '" + directory + "'.", e);
+        }
+    }
+
+    /**
+     * Readers are added and removed under the lock of the downloads, so a download isn't joined after
+     * its spool file was deleted. The progress of the transfer is guarded by the download itself.
+     */
+    private class Download {
+
+        private final K key;
+        private final Path spoolPath;
+        /**
+         * Completes with {@code false} if the video is missing.
+         */
+        private final CompletableFuture<Boolean> opened = new CompletableFuture<>();
+        private int readerCount;
+        private long spooledBytesOfDownload;
+        private boolean spoolEnded;
+        private volatile boolean cancelled;
+        private long transferredBytes;
+        private boolean ended;
+        private IOException failure;
+
+        Download(K key, Path spoolPath) {
+            this.key = key;
+            this.spoolPath = spoolPath;
+        }
+
+        SpoolInputStream newReader() {
+            try {
+                SpoolInputStream inputStream = new SpoolInputStream(this, FileChannel.open(spoolPath, StandardOpenOption.READ));
+                readerCount++;
+                return inputStream;
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot read spool file '" + spoolPath + "'.", e);
+            }
+        }
+
+        void removeReader() {
+            synchronized (downloadsByKey) {
+                readerCount--;
+                if (readerCount == 0) {
+                    cancelled = true;
+                    downloadsByKey.remove(key, this);
+                    releaseSpooledBytesIfUnused();
+                }
+            }
+        }
+
+        /**
+         * Called under the lock of the downloads once the spool file was deleted or its last reader closed it,
+         * the bytes are released after both.
+         */
+        private void releaseSpooledBytesIfUnused() {
+            if (spoolEnded && readerCount == 0) {
+                spooledBytes -= spooledBytesOfDownload;
+                spooledBytesOfDownload = 0;
+            }
+        }
+
+        void start(Supplier<Optional<InputStream>> source) {
+            FileChannel spoolChannel;
+            Optional<InputStream> inputStreamOpt;
+            try {
+                spoolChannel = FileChannel.open(spoolPath, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                end(null, null);
+                opened.completeExceptionally(new RuntimeException("Cannot write spool file '" + spoolPath + "'.", e));
+                return;
+            }
+            try {
+                inputStreamOpt = source.get();
+            } catch (RuntimeException e) {
+                end(null, spoolChannel);
+                opened.completeExceptionally(e);
+                return;
+            }
+            if (inputStreamOpt.isEmpty()) {
+                end(null, spoolChannel);
+                opened.complete(false);
+                return;
+            }
+            InputStream inputStream = inputStreamOpt.get();
+            try {
+                transferExecutor.execute(() -> transfer(inputStream, spoolChannel));
+            } catch (RejectedExecutionException e) {
+                end(inputStream, spoolChannel);
+                opened.completeExceptionally(e);
+                return;
+            }
+            opened.complete(true);
+        }
+
+        private void transfer(InputStream inputStream, FileChannel spoolChannel) {
+            IOException transferFailure = null;
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long position = 0;
+                int count;
+                while (!cancelled && (count = inputStream.read(buffer)) >= 0) {
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, count);
+                    while (byteBuffer.hasRemaining()) {
+                        position += spoolChannel.write(byteBuffer, position);
+                    }
+                    synchronized (downloadsByKey) {
+                        spooledBytes += count;
+                        spooledBytesOfDownload += count;
+                    }
+                    synchronized (this) {
+                        transferredBytes = position;
+                        notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                if (!cancelled) {
+                    log.warn("Cannot download video '{}'.", key, e);
+                }
+                transferFailure = e;
+            } catch (RuntimeException e) {
+                log.warn("Cannot download video '{}'.", key, e);
+                transferFailure = new IOException(e);
+            }
+            synchronized (this) {
+                ended = true;
+                failure = transferFailure;
+                notifyAll();
+            }
+            end(inputStream, spoolChannel);
+        }
+
+        /**
+         * The spool file is deleted once no reader can join, readers that joined already keep their channels open.
+         */
+        private void end(InputStream inputStream, FileChannel spoolChannel) {
+            synchronized (downloadsByKey) {
+                downloadsByKey.remove(key, this);
+            }
+            closeQuietly(inputStream);
+            closeQuietly(spoolChannel);
+            try {
+                Files.deleteIfExists(spoolPath);
+            } catch (IOException e) {
+                log.warn("Cannot delete spool file '{}'.", spoolPath, e);
+            }
+            synchronized (downloadsByKey) {
+                spoolEnded = true;
+                releaseSpooledBytesIfUnused();
+            }
+        }
+
+        /**
+         * Waits until the download passed the position.
+         *
+         * @return number of bytes readable from the position, 0 at the end of the video
+         */
+        synchronized long awaitBytes(long position) throws IOException {
+            while (transferredBytes <= position && !ended) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while downloading video '" + key + "'.");
+                }
+            }
+            if (transferredBytes <= position && failure != null) {
+                throw new IOException("Cannot download video '" + key + "'.", failure);
+            }
+            return transferredBytes - position;
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    private class SpoolInputStream extends InputStream {
+
+        private final Download download;
+        private final FileChannel channel;
+        private long position;
+        private boolean closed;
+
+        SpoolInputStream(Download download, FileChannel channel) {
+            this.download = download;
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+            int count = read(singleByte, 0, 1);
+            return count < 0 ? -1 : singleByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            long readableBytes = download.awaitBytes(position);
+            if (readableBytes == 0) {
+                return -1;
+            }
+            int count = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, readableBytes)), position);
+            if (count < 0) {
+                throw new IOException("Spool file of video '" + download.key + "' ended early.");
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                channel.close();
+            } finally {
+                download.removeReader();
+            }
+        }
+
+        void closeQuietly() {
+            SharedVideoDownloads.closeQuietly(this);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.alex788.videos.video_faststart;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves the movie box of an MP4 file ahead of the media data, so players can start before the whole file is
+ * downloaded. The file isn't copied: the remuxed stream reads the regions of the spool file around the movie box
+ * in the new order, only the movie box is held in memory to shift the chunk offsets of its tracks.
+ * <p>
+ * A file that is already faststart, isn't a plain MP4 or needs its 32-bit chunk offsets widened is passed as it is.
+ */
+@Slf4j
+public class FaststartRemuxer {
+
+    private static final Set<String> CONTAINER_BOXES = Set.of("moov", "trak", "mdia", "minf", "stbl");
+    private static final int HEADER_SIZE = 8;
+    private static final int LARGE_HEADER_SIZE = 16;
+    private static final int FULL_BOX_HEADER_SIZE = 4;
+    private static final long MAX_UINT32 = 0xFFFFFFFFL;
+
+    private final boolean enabled;
+    private final long maxMovieBoxSize;
+
+    /**
+     * @param maxMovieBoxSize size of the largest movie box moved, files with larger ones are passed as they are
+     */
+    public FaststartRemuxer(boolean enabled, long maxMovieBoxSize) {
+        this.enabled = enabled;
+        this.maxMovieBoxSize = maxMovieBoxSize;
+    }
+
+    /**
+     * Opens the spool file remuxed if needed. The remuxed content has the same size as the file.
+     * The file is deleted when the stream is closed.
+     */
+    public InputStream openSpool(Path spoolPath) throws IOException {
+        FileChannel channel = FileChannel.open(spoolPath, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        try {
+            List<InputStream> parts = enabled ? remux(channel) : List.of();
+            if (parts.isEmpty()) {
+                return Channels.newInputStream(channel);
+            }
+            return new SequenceInputStream(Collections.enumeration(parts)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        channel.close();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return parts of the remuxed content, empty if the file is passed as it is
+     */
+    private List<InputStream> remux(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        Box mediaDataBox = null;
+        Box movieBox = null;
+        long position = 0;
+        while (position < fileSize) {
+            Box box = readBox(channel, position, fileSize);
+            if (box == null) {
+                return List.of();
+            }
+            if (box.type.equals("mdat") && mediaDataBox == null) {
+                mediaDataBox = box;
+            } else if (box.type.equals("moov")) {
+                movieBox = box;
+                break;
+            }
+            position = box.end();
+        }
+        if (mediaDataBox == null || movieBox == null || movieBox.start < mediaDataBox.start) {
+            return List.of();
+        }
+        if (movieBox.size > Math.min(maxMovieBoxSize, Integer.MAX_VALUE - LARGE_HEADER_SIZE)) {
+            log.info("Movie box of {} bytes is larger than {} bytes, the video is stored as it is.", movieBox.size, maxMovieBoxSize);
+            return List.of();
+        }
+
+        ByteBuffer movie = ByteBuffer.allocate((int) movieBox.size);
+        readFully(channel, movie, movieBox.start);
+        int movieHeaderSize = (movie.getInt(0) & MAX_UINT32) == 1 ? LARGE_HEADER_SIZE : HEADER_SIZE;
+        if (!shiftChunkOffsets(movie, movieHeaderSize, movie.capacity(), mediaDataBox.start, movieBox.start, movieBox.size)) {
+            return List.of();
+        }
+        List<InputStream> parts = new ArrayList<>();
+        parts.add(new RegionInputStream(channel, 0, mediaDataBox.start));
+        parts.add(new ByteArrayInputStream(movie.array()));
+        parts.add(new RegionInputStream(channel, mediaDataBox.start, movieBox.start));
+        parts.add(new RegionInputStream(channel, movieBox.end(), fileSize));
+        return parts;
+    }
+
+    /**
+     * Adds the size of the movie box to the offsets pointing between the start of the media data and the movie box,
+     * the only bytes moved by the remux.
+     *
+     * @return {@code false} if an offset doesn't fit its 32-bit entry any more or a box is malformed
+     */
+    private static boolean shiftChunkOffsets(ByteBuffer movie, int from, int to, long movedFrom, long movedTo, long shift) {
+        int position = from;
+        while (position < to) {
+            if (to - position < HEADER_SIZE) {
+                return false;
+            }
+            long size = movie.getInt(position) & MAX_UINT32;
+            String type = toFourCc(movie, position + 4);
+            int headerSize = HEADER_SIZE;
+            if (size == 1) {
+                if (to - position < LARGE_HEADER_SIZE) {
+                    return false;
+                }
+                size = movie.getLong(position + HEADER_SIZE);
+                headerSize = LARGE_HEADER_SIZE;
+            } else if (size == 0) {
+                size = to - position;
+            }
+            if (size < headerSize || size > to - position) {
+                return false;
+            }
+            int bodyStart = position + headerSize;
+            int end = (int) (position + size);
+            if (CONTAINER_BOXES.contains(type)) {
+                if (!shiftChunkOffsets(movie, bodyStart, end, movedFrom, movedTo, shift)) {
+                    return false;
+                }
+            } else if (type.equals("stco") || type.equals("co64")) {
+                int entrySize = type.equals("stco") ? 4 : 8;
+                int entriesStart = bodyStart + FULL_BOX_HEADER_SIZE + 4;
+                if (entriesStart > end) {
+                    return false;
+                }
+                long entryCount = movie.getInt(bodyStart + FULL_BOX_HEADER_SIZE) & MAX_UINT32;
+                if (entryCount > (end - entriesStart) / entrySize) {
+                    return false;
+                }
+                for (int i = 0; i < entryCount; i++) {
+                    int entryPosition = entriesStart + i * entrySize;
+                    long offset = entrySize == 4 ? movie.getInt(entryPosition) & MAX_UINT32 : movie.getLong(entryPosition);
+                    if (offset < movedFrom || offset >= movedTo) {
+                        continue;
+                    }
+                    long shiftedOffset = offset + shift;
+                    if (entrySize == 4) {
+                        if (shiftedOffset > MAX_UINT32) {
+                            return false;
+                        }
+                        movie.putInt(entryPosition, (int) shiftedOffset);
+                    } else {
+                        movie.putLong(entryPosition, shiftedOffset);
+                    }
+                }
+            }
+            position = end;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code null} if the box is malformed
+     */
+    private static Box readBox(FileChannel channel, long position, long fileSize) throws IOException {
+        if (fileSize - position < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(LARGE_HEADER_SIZE);
+        header.limit((int) Math.min(LARGE_HEADER_SIZE, fileSize - position));
+        readFully(channel, header, position);
+        long size = header.getInt(0) & MAX_UINT32;
+        String type = toFourCc(header, 4);
+        int headerSize = HEADER_SIZE;
+        if (size == 1) {
+            if (header.limit() < LARGE_HEADER_SIZE) {
+                return null;
+            }
+            size = header.getLong(HEADER_SIZE);
+            headerSize = LARGE_HEADER_SIZE;
+        } else if (size == 0) {
+            size = fileSize - position;
+        }
+        if (size < headerSize || size > fileSize - position) {
+            return null;
+        }
+        return new Box(type, position, size);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + buffer.position());
+            if (count < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+    }
+
+    private static String toFourCc(ByteBuffer buffer, int position) {
+        char[] chars = new char[4];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (buffer.get(position + i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    private record Box(String type, long start, long size) {
+
+        long end() {
+            return start + size;
+        }
+    }
+
+    /**
+     * Reads a region of the file with positional reads, so regions of the same channel don't share a position.
+     * Closing it leaves the channel open.
+     */
+    private static class RegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RegionInputStream(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            this.position = from;
+            this.end = to;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] singleByte = new byte[1];
+            int count = read(singleByte, 0, 1);
+            return count < 0 ? -1 : singleByte[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position));
+            int count = channel.read(buffer, position);
+            if (count < 0) {
+                throw new IOException("Unexpected end of file.");
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
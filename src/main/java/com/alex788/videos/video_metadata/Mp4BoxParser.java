@@ -0,0 +1,294 @@
+package com.alex788.videos.video_metadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Push parser of the ISO base media file format boxes. It's fed the bytes of the file in order and keeps only
+ * the first bytes of the few boxes the fields are read from, every other box, the media data included, is skipped
+ * as it passes. Parsing stops at the end of the movie box or at the first malformed box.
+ */
+class Mp4BoxParser {
+
+    static final String FILE_TYPE_BOX = "ftyp";
+
+    private static final Set<String> CONTAINER_BOXES = Set.of("moov", "trak", "mdia", "minf", "stbl");
+    /**
+     * Number of the first bytes of the body the fields are read from, per box type.
+     */
+    private static final Map<String, Integer> READ_SIZES = Map.of("mvhd", 32, "tkhd", 96, "hdlr", 12, "stsd", 16);
+    private static final int HEADER_SIZE = 8;
+    private static final int LARGE_HEADER_SIZE = 16;
+    private static final long UNTIL_END_OF_FILE = Long.MAX_VALUE;
+
+    private final byte[] header = new byte[LARGE_HEADER_SIZE];
+    private final Deque<Container> containers = new ArrayDeque<>();
+    private State state = State.HEADER;
+    private long position;
+    private int headerLength;
+    private String boxType;
+    private byte[] body;
+    private int bodyLength;
+    private long remaining;
+
+    private String firstBoxType;
+    private boolean movieParsed;
+    private Long durationMillis;
+    private Track track;
+    private Track videoTrack;
+    private Track audioTrack;
+
+    void update(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        while (offset < end && state != State.DONE) {
+            offset = switch (state) {
+                case HEADER -> readHeader(bytes, offset, end);
+                case BODY -> readBody(bytes, offset, end);
+                case SKIP -> skip(offset, end);
+                case DONE -> end;
+            };
+        }
+    }
+
+    /**
+     * @return type of the first box once its header is read, {@code null} before
+     */
+    String getFirstBoxType() {
+        return firstBoxType;
+    }
+
+    boolean isMovieParsed() {
+        return movieParsed;
+    }
+
+    Long getDurationMillis() {
+        return durationMillis;
+    }
+
+    Integer getWidth() {
+        return videoTrack == null ? null : videoTrack.width;
+    }
+
+    Integer getHeight() {
+        return videoTrack == null ? null : videoTrack.height;
+    }
+
+    String getVideoCodec() {
+        return videoTrack == null ? null : videoTrack.sampleEntryType;
+    }
+
+    String getAudioCodec() {
+        return audioTrack == null ? null : audioTrack.sampleEntryType;
+    }
+
+    private int readHeader(byte[] bytes, int offset, int end) {
+        int needed = headerLength >= HEADER_SIZE && readUint32(header, 0) == 1 ? LARGE_HEADER_SIZE : HEADER_SIZE;
+        int count = Math.min(needed - headerLength, end - offset);
+        System.arraycopy(bytes, offset, header, headerLength, count);
+        headerLength += count;
+        position += count;
+        if (headerLength == HEADER_SIZE && firstBoxType == null) {
+            firstBoxType = toFourCc(header, 4);
+        }
+        if (headerLength == HEADER_SIZE && readUint32(header, 0) == 1) {
+            return offset + count;
+        }
+        if (headerLength == needed) {
+            startBox();
+        }
+        return offset + count;
+    }
+
+    private void startBox() {
+        long size = readUint32(header, 0);
+        int headerSize = HEADER_SIZE;
+        if (size == 1) {
+            size = readInt64(header, HEADER_SIZE);
+            headerSize = LARGE_HEADER_SIZE;
+        }
+        boxType = toFourCc(header, 4);
+        headerLength = 0;
+        long bodySize;
+        if (size == 0) {
+            bodySize = UNTIL_END_OF_FILE;
+        } else if (size < headerSize) {
+            state = State.DONE;
+            return;
+        } else {
+            bodySize = size - headerSize;
+        }
+        Container parent = containers.peek();
+        if (parent != null && bodySize != UNTIL_END_OF_FILE && position + bodySize > parent.end) {
+            state = State.DONE;
+            return;
+        }
+
+        if (CONTAINER_BOXES.contains(boxType) && bodySize != UNTIL_END_OF_FILE) {
+            containers.push(new Container(boxType, position + bodySize));
+            if (boxType.equals("trak")) {
+                track = new Track();
+            }
+            state = State.HEADER;
+            closeEndedContainers();
+            return;
+        }
+        remaining = bodySize;
+        Integer readSize = READ_SIZES.get(boxType);
+        if (readSize != null) {
+            body = new byte[(int) Math.min(readSize, bodySize)];
+            bodyLength = 0;
+            state = State.BODY;
+            if (body.length == 0) {
+                parseBody();
+            }
+        } else {
+            state = State.SKIP;
+            if (remaining == 0) {
+                endBox();
+            }
+        }
+    }
+
+    private int readBody(byte[] bytes, int offset, int end) {
+        int count = Math.min(body.length - bodyLength, end - offset);
+        System.arraycopy(bytes, offset, body, bodyLength, count);
+        bodyLength += count;
+        position += count;
+        remaining -= count;
+        if (bodyLength == body.length) {
+            parseBody();
+        }
+        return offset + count;
+    }
+
+    private void parseBody() {
+        switch (boxType) {
+            case "mvhd" -> parseMovieHeader();
+            case "tkhd" -> parseTrackHeader();
+            case "hdlr" -> parseHandler();
+            case "stsd" -> parseSampleDescription();
+            default -> {
+            }
+        }
+        body = null;
+        state = State.SKIP;
+        if (remaining == 0) {
+            endBox();
+        }
+    }
+
+    private int skip(int offset, int end) {
+        int count = (int) Math.min(remaining, end - offset);
+        position += count;
+        remaining -= count;
+        if (remaining == 0) {
+            endBox();
+        }
+        return offset + count;
+    }
+
+    private void endBox() {
+        state = State.HEADER;
+        closeEndedContainers();
+    }
+
+    private void closeEndedContainers() {
+        while (!containers.isEmpty() && containers.peek().end <= position) {
+            Container container = containers.pop();
+            if (container.type.equals("trak")) {
+                endTrack();
+            } else if (container.type.equals("moov")) {
+                movieParsed = true;
+                state = State.DONE;
+            }
+        }
+    }
+
+    private void endTrack() {
+        if (track == null) {
+            return;
+        }
+        if ("vide".equals(track.handlerType) && videoTrack == null) {
+            videoTrack = track;
+        } else if ("soun".equals(track.handlerType) && audioTrack == null) {
+            audioTrack = track;
+        }
+        track = null;
+    }
+
+    private void parseMovieHeader() {
+        int version = body[0];
+        int timescaleOffset = version == 1 ? 20 : 12;
+        int durationSize = version == 1 ? 8 : 4;
+        if (body.length < timescaleOffset + 4 + durationSize) {
+            return;
+        }
+        long timescale = readUint32(body, timescaleOffset);
+        long duration = version == 1 ? readInt64(body, timescaleOffset + 4) : readUint32(body, timescaleOffset + 4);
+        // All ones is an unknown duration.
+        boolean isDurationKnown = version == 1 ? duration != -1 : duration != 0xFFFFFFFFL;
+        if (timescale > 0 && duration >= 0 && isDurationKnown) {
+            durationMillis = duration / timescale * 1000 + duration % timescale * 1000 / timescale;
+        }
+    }
+
+    private void parseTrackHeader() {
+        int widthOffset = body[0] == 1 ? 88 : 76;
+        if (track == null || body.length < widthOffset + 8) {
+            return;
+        }
+        // Fixed point 16.16 numbers.
+        int width = (int) (readUint32(body, widthOffset) >>> 16);
+        int height = (int) (readUint32(body, widthOffset + 4) >>> 16);
+        track.width = width > 0 ? width : null;
+        track.height = height > 0 ? height : null;
+    }
+
+    private void parseHandler() {
+        if (track != null && body.length >= 12) {
+            track.handlerType = toFourCc(body, 8);
+        }
+    }
+
+    private void parseSampleDescription() {
+        if (track != null && body.length >= 16 && readUint32(body, 4) > 0) {
+            String sampleEntryType = toFourCc(body, 12);
+            track.sampleEntryType = isPrintable(sampleEntryType) ? sampleEntryType : null;
+        }
+    }
+
+    private static long readUint32(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFFL) << 24) | ((bytes[offset + 1] & 0xFFL) << 16)
+                | ((bytes[offset + 2] & 0xFFL) << 8) | (bytes[offset + 3] & 0xFFL);
+    }
+
+    private static long readInt64(byte[] bytes, int offset) {
+        return (readUint32(bytes, offset) << 32) | readUint32(bytes, offset + 4);
+    }
+
+    private static String toFourCc(byte[] bytes, int offset) {
+        return new String(bytes, offset, 4, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isPrintable(String fourCc) {
+        return fourCc.chars().allMatch(c -> c >= 0x20 && c < 0x7F);
+    }
+
+    private enum State {
+        HEADER, BODY, SKIP, DONE
+    }
+
+    private record Container(String type, long end) {
+    }
+
+    private static class Track {
+
+        String handlerType;
+        String sampleEntryType;
+        Integer width;
+        Integer height;
+    }
+}
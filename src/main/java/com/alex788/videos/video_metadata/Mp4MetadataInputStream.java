@@ -0,0 +1,145 @@
+package com.alex788.videos.video_metadata;
+
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.exception.InvalidVideoException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Reads the metadata of an MP4 video from the bytes passing through on their way to the storage, so the content
+ * is read once. Only the boxes of the movie header are kept, the media data is counted and passed on.
+ */
+public class Mp4MetadataInputStream extends FilterInputStream {
+
+    private static final int FIRST_HEADER_SIZE = 8;
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    private final Mp4BoxParser parser = new Mp4BoxParser();
+    private byte[] readAhead = new byte[0];
+    private int readAheadPosition;
+    private long size;
+    private boolean ended;
+
+    public Mp4MetadataInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Reads the header of the first box ahead and checks it's the file type box every MP4 file starts with.
+     * The bytes read ahead are returned by the next reads as usual. If the underlying stream supports mark,
+     * the header is peeked at and read from it again later, so it's read from the stream only once it's needed.
+     *
+     * @throws InvalidVideoException if the content isn't an MP4 file
+     */
+    public void checkFileType() {
+        Mp4BoxParser headerParser;
+        try {
+            if (in.markSupported()) {
+                in.mark(FIRST_HEADER_SIZE);
+                byte[] header = in.readNBytes(FIRST_HEADER_SIZE);
+                in.reset();
+                headerParser = new Mp4BoxParser();
+                headerParser.update(header, 0, header.length);
+            } else {
+                readAhead = in.readNBytes(FIRST_HEADER_SIZE);
+                readAheadPosition = 0;
+                consume(readAhead, 0, readAhead.length);
+                headerParser = parser;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read video.", e);
+        }
+        if (!Mp4BoxParser.FILE_TYPE_BOX.equals(headerParser.getFirstBoxType())) {
+            throw new InvalidVideoException("The video content isn't an MP4 file.");
+        }
+    }
+
+    /**
+     * The bitrate is known only if the stream was read to the end.
+     *
+     * @return empty until the movie box passed through or if it's malformed
+     */
+    public Optional<VideoMetadata> getMetadata() {
+        if (!parser.isMovieParsed()) {
+            return Optional.empty();
+        }
+        Long durationMillis = parser.getDurationMillis();
+        Long bitrate = ended && durationMillis != null && durationMillis > 0 ? size * 8 * 1000 / durationMillis : null;
+        return Optional.of(new VideoMetadata(durationMillis, parser.getWidth(), parser.getHeight(),
+                parser.getVideoCodec(), parser.getAudioCodec(), bitrate));
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] singleByte = new byte[1];
+        int count = read(singleByte, 0, 1);
+        return count < 0 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (readAheadPosition < readAhead.length) {
+            int count = Math.min(length, readAhead.length - readAheadPosition);
+            System.arraycopy(readAhead, readAheadPosition, bytes, offset, count);
+            readAheadPosition += count;
+            return count;
+        }
+        int count = in.read(bytes, offset, length);
+        if (count < 0) {
+            ended = true;
+        } else {
+            consume(bytes, offset, count);
+        }
+        return count;
+    }
+
+    /**
+     * Skipped bytes are read, the parser must see them.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        byte[] buffer = new byte[(int) Math.min(n, SKIP_BUFFER_SIZE)];
+        long skipped = 0;
+        while (skipped < n) {
+            int count = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (count < 0) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return readAhead.length - readAheadPosition + in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("Mark isn't supported.");
+    }
+
+    private void consume(byte[] bytes, int offset, int count) {
+        size += count;
+        parser.update(bytes, offset, count);
+    }
+}
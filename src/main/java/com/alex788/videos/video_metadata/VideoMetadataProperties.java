@@ -0,0 +1,104 @@
+package com.alex788.videos.video_metadata;
+
+import com.alex788.videos.entity.VideoMetadata;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link VideoMetadata} as string properties, the form it's kept in by the storages and the catalogs.
+ */
+public final class VideoMetadataProperties {
+
+    private static final String DURATION_MILLIS = "duration_ms";
+    private static final String WIDTH = "width";
+    private static final String HEIGHT = "height";
+    private static final String VIDEO_CODEC = "video_codec";
+    private static final String AUDIO_CODEC = "audio_codec";
+    private static final String BITRATE = "bitrate";
+    private static final String TEXT_SEPARATOR = ";";
+
+    private VideoMetadataProperties() {
+    }
+
+    /**
+     * @return properties of the known components only
+     */
+    public static Map<String, String> toProperties(VideoMetadata metadata) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        putIfKnown(properties, DURATION_MILLIS, metadata.durationMillis());
+        putIfKnown(properties, WIDTH, metadata.width());
+        putIfKnown(properties, HEIGHT, metadata.height());
+        putIfKnown(properties, VIDEO_CODEC, metadata.videoCodec());
+        putIfKnown(properties, AUDIO_CODEC, metadata.audioCodec());
+        putIfKnown(properties, BITRATE, metadata.bitrate());
+        return properties;
+    }
+
+    /**
+     * Properties of other kinds are ignored, so the metadata may share them with other properties.
+     *
+     * @return {@code null} if the properties have no metadata
+     */
+    public static VideoMetadata fromProperties(Map<String, String> properties) {
+        if (properties == null) {
+            return null;
+        }
+        VideoMetadata metadata = new VideoMetadata(toLong(properties.get(DURATION_MILLIS)), toInteger(properties.get(WIDTH)),
+                toInteger(properties.get(HEIGHT)), properties.get(VIDEO_CODEC), properties.get(AUDIO_CODEC), toLong(properties.get(BITRATE)));
+        return toProperties(metadata).isEmpty() ? null : metadata;
+    }
+
+    /**
+     * @return properties joined as {@code name=value;name=value}, {@code null} for {@code null} metadata
+     */
+    public static String toText(VideoMetadata metadata) {
+        if (metadata == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        toProperties(metadata).forEach((name, value) -> {
+            if (!text.isEmpty()) {
+                text.append(TEXT_SEPARATOR);
+            }
+            text.append(name).append('=').append(value);
+        });
+        return text.toString();
+    }
+
+    public static VideoMetadata fromText(String text) {
+        if (text == null) {
+            return null;
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String property : text.split(TEXT_SEPARATOR)) {
+            int separatorIndex = property.indexOf('=');
+            if (separatorIndex > 0) {
+                properties.put(property.substring(0, separatorIndex), property.substring(separatorIndex + 1));
+            }
+        }
+        return fromProperties(properties);
+    }
+
+    private static void putIfKnown(Map<String, String> properties, String name, Object value) {
+        if (value != null) {
+            properties.put(name, value.toString());
+        }
+    }
+
+    private static Long toLong(String value) {
+        try {
+            return value == null ? null : Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Integer toInteger(String value) {
+        try {
+            return value == null ? null : Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
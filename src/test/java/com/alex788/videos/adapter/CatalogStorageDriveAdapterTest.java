@@ -0,0 +1,151 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.video_catalog.VideoCatalog;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class CatalogStorageDriveAdapterTest {
+
+    StorageDriveAdapter storageDriveAdapter;
+    StorageChangeFeed storageChangeFeed;
+    VideoCatalog videoCatalog;
+    CatalogStorageDriveAdapter catalogStorageDriveAdapter;
+
+    @BeforeEach
+    void beforeEach() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        videoCatalog = new VideoCatalog(dataSource);
+
+        storageDriveAdapter = mock(StorageDriveAdapter.class);
+        storageChangeFeed = mock(StorageChangeFeed.class);
+        doReturn(Optional.of("folderId")).when(storageChangeFeed).getFolderId(any());
+        doReturn(new VideoInfosPage(List.of(videoInfo("First.mp4", "firstId")), null)).when(storageDriveAdapter).getVideoInfos(any(), anyInt(), any());
+
+        catalogStorageDriveAdapter = new CatalogStorageDriveAdapter(storageDriveAdapter, storageChangeFeed, videoCatalog);
+    }
+
+    @Test
+    void hasVideo_CalledTwice_ListsFolderOnlyOnce() {
+        assertThat(catalogStorageDriveAdapter.hasVideo("First.mp4", "VideosApp")).isTrue();
+        assertThat(catalogStorageDriveAdapter.hasVideo("Second.mp4", "VideosApp")).isFalse();
+
+        verify(storageDriveAdapter, times(1)).getVideoInfos(any(), anyInt(), any());
+        verify(storageDriveAdapter, never()).hasVideo(any(), any());
+    }
+
+    @Test
+    void hasVideos_SeveralNames_AnswersForEveryNameInOrder() {
+        Map<String, Boolean> hasVideoByName = catalogStorageDriveAdapter.hasVideos(List.of("Second.mp4", "First.mp4"), "VideosApp");
+
+        assertThat(hasVideoByName).containsExactly(entry("Second.mp4", false), entry("First.mp4", true));
+        verify(storageDriveAdapter, never()).hasVideos(any(), any());
+    }
+
+    @Test
+    void getVideoInfo_FolderDoesNotExist_ReturnsEmpty() {
+        doReturn(Optional.empty()).when(storageChangeFeed).getFolderId(any());
+
+        assertThat(catalogStorageDriveAdapter.getVideoInfo("First.mp4", "VideosApp")).isEmpty();
+        assertThat(videoCatalog.isHydrated(List.of("VideosApp"))).isFalse();
+    }
+
+    @Test
+    void save_SavedVideo_IsServedFromCatalog() {
+        VideoInfo savedVideoInfo = videoInfo("Second.mp4", "secondId");
+        doReturn(Optional.of(savedVideoInfo)).when(storageDriveAdapter).save(any(), any());
+        catalogStorageDriveAdapter.hasVideo("First.mp4", "VideosApp");
+
+        catalogStorageDriveAdapter.save(new Video(UUID.randomUUID(), "Second.mp4", null), "VideosApp");
+
+        assertThat(catalogStorageDriveAdapter.getVideoInfos(null, 10, "VideosApp").videoInfos())
+                .extracting(VideoInfo::name)
+                .containsExactly("First.mp4", "Second.mp4");
+        assertThat(catalogStorageDriveAdapter.getVideoInfo("Second.mp4", "VideosApp")).contains(savedVideoInfo);
+    }
+
+    @Test
+    void getVideoInfos_AfterChanges_ReturnsChangedVideos() {
+        catalogStorageDriveAdapter.hasVideo("First.mp4", "VideosApp");
+
+        videoCatalog.applyChanges(List.of(
+                new StorageChange("firstId", null, null),
+                new StorageChange("thirdId", "folderId", videoInfo("Third.mp4", "thirdId")),
+                new StorageChange("otherId", "otherFolderId", videoInfo("Other.mp4", "otherId"))
+        ), "nextPageToken");
+
+        assertThat(catalogStorageDriveAdapter.getVideoInfos(null, 10, "VideosApp").videoInfos())
+                .extracting(VideoInfo::name)
+                .containsExactly("Third.mp4");
+        assertThat(videoCatalog.getPageToken()).contains("nextPageToken");
+    }
+
+    @Test
+    void getVideoInfos_MoreVideosThanPageSize_ReturnsThemPageByPage() {
+        doReturn(new VideoInfosPage(List.of(videoInfo("A.mp4", "a"), videoInfo("B.mp4", "b")), "driveToken"))
+                .when(storageDriveAdapter).getVideoInfos(isNull(), anyInt(), any());
+        doReturn(new VideoInfosPage(List.of(videoInfo("C.mp4", "c")), null))
+                .when(storageDriveAdapter).getVideoInfos(eq("driveToken"), anyInt(), any());
+
+        VideoInfosPage firstPage = catalogStorageDriveAdapter.getVideoInfos(null, 2, "VideosApp");
+        VideoInfosPage secondPage = catalogStorageDriveAdapter.getVideoInfos(firstPage.nextPageToken(), 2, "VideosApp");
+
+        assertThat(firstPage.videoInfos()).extracting(VideoInfo::name).containsExactly("A.mp4", "B.mp4");
+        assertThat(secondPage.videoInfos()).extracting(VideoInfo::name).containsExactly("C.mp4");
+        assertThat(secondPage.nextPageToken()).isNull();
+    }
+
+    @Test
+    void hydrate_FolderHydratedConcurrently_FirstHydrationWins() {
+        videoCatalog.hydrate(List.of("VideosApp"), "folderId", List.of(videoInfo("First.mp4", "firstId")));
+
+        videoCatalog.hydrate(List.of("VideosApp"), "folderId", List.of(videoInfo("Second.mp4", "secondId")));
+
+        assertThat(videoCatalog.findPage(List.of("VideosApp"), null, 10)).extracting(VideoInfo::name).containsExactly("First.mp4");
+    }
+
+    @Test
+    void getVideoInfo_ListingFailsOnSecondPage_LeavesFolderNotHydrated() {
+        doReturn(new VideoInfosPage(List.of(videoInfo("A.mp4", "a")), "driveToken"))
+                .when(storageDriveAdapter).getVideoInfos(isNull(), anyInt(), any());
+        doThrow(new RuntimeException("Listing failed."))
+                .when(storageDriveAdapter).getVideoInfos(eq("driveToken"), anyInt(), any());
+
+        assertThatThrownBy(() -> catalogStorageDriveAdapter.getVideoInfo("A.mp4", "VideosApp"))
+                .hasMessage("Listing failed.");
+
+        assertThat(videoCatalog.isHydrated(List.of("VideosApp"))).isFalse();
+        assertThat(videoCatalog.findPage(List.of("VideosApp"), null, 10)).isEmpty();
+    }
+
+    @Test
+    void put_VideoInfoViolatingOtherConstraint_ThrowsException() {
+        assertThatThrownBy(() -> videoCatalog.put(List.of("VideosApp"), videoInfo(null, "id")))
+                .isInstanceOf(RuntimeException.class)
+                .hasCauseInstanceOf(SQLException.class);
+    }
+
+    static VideoInfo videoInfo(String name, String fileId) {
+        return new VideoInfo(name, 10, fileId, "checksum", Instant.parse("2023-01-01T00:00:00Z"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.alex788.videos.video_blob.ContentHashes;
+import com.alex788.videos.video_blob.VideoBlobStore;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeduplicatingStorageDriveAdapterTest {
+
+    static final byte[] CONTENT = {1, 2, 3};
+
+    @TempDir
+    Path rootDirectory;
+
+    VideoBlobStore videoBlobStore;
+    DeduplicatingStorageDriveAdapter deduplicatingStorageDriveAdapter;
+
+    @BeforeEach
+    void beforeEach() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        videoBlobStore = new VideoBlobStore(dataSource);
+        deduplicatingStorageDriveAdapter = new DeduplicatingStorageDriveAdapter(new LocalStorageDriveAdapter(rootDirectory), videoBlobStore, "blobs");
+    }
+
+    @Test
+    void save_SameContentTwice_StoresContentOnce() throws IOException {
+        deduplicatingStorageDriveAdapter.save(video("First.mp4", new ByteArrayInputStream(CONTENT)), "first");
+        ByteArrayInputStream secondContent = new ByteArrayInputStream(CONTENT);
+        deduplicatingStorageDriveAdapter.save(video("Second.mp4", secondContent), "second");
+
+        assertThat(secondContent.available()).isEqualTo(CONTENT.length);
+        try (Stream<Path> blobs = Files.list(rootDirectory.resolve("blobs"))) {
+            assertThat(blobs.count()).isEqualTo(1);
+        }
+        assertThat(videoBlobStore.getReferenceCount(sha256(CONTENT))).isEqualTo(2);
+        try (InputStream inputStream = deduplicatingStorageDriveAdapter.getVideoStream("Second.mp4", "second").orElseThrow()) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void getVideoVersionPartStream_ReferencingVideo_ReadsBlob() throws IOException {
+        deduplicatingStorageDriveAdapter.save(video("First.mp4", new ByteArrayInputStream(CONTENT)), "first");
+        VideoInfo videoInfo = deduplicatingStorageDriveAdapter.saveByHash("Second.mp4", sha256(CONTENT), "first").orElseThrow();
+
+        try (InputStream inputStream = deduplicatingStorageDriveAdapter.getVideoVersionPartStream(videoInfo, 1, 2, "first").orElseThrow()) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(new byte[]{2, 3});
+        }
+    }
+
+    @Test
+    void saveByHash_ContentNotStored_ReturnsNothing() {
+        assertThat(deduplicatingStorageDriveAdapter.saveByHash("Video.mp4", sha256(CONTENT), "first")).isEmpty();
+        assertThat(deduplicatingStorageDriveAdapter.hasVideo("Video.mp4", "first")).isFalse();
+    }
+
+    @Test
+    void saveByHash_ContentStoredInSameFolder_ReferencesIt() {
+        deduplicatingStorageDriveAdapter.save(video("First.mp4", new ByteArrayInputStream(CONTENT)), "first");
+
+        VideoInfo videoInfo = deduplicatingStorageDriveAdapter.saveByHash("Second.mp4", sha256(CONTENT), "first").orElseThrow();
+
+        assertThat(videoInfo.name()).isEqualTo("Second.mp4");
+        assertThat(videoInfo.size()).isEqualTo(CONTENT.length);
+        assertThat(deduplicatingStorageDriveAdapter.hasVideo("Second.mp4", "first")).isTrue();
+    }
+
+    @Test
+    void saveByHash_ContentStoredOnlyInOtherFolder_ReturnsNothing() {
+        deduplicatingStorageDriveAdapter.save(video("First.mp4", new ByteArrayInputStream(CONTENT)), "first");
+
+        assertThat(deduplicatingStorageDriveAdapter.saveByHash("Second.mp4", sha256(CONTENT), "second")).isEmpty();
+        assertThat(deduplicatingStorageDriveAdapter.hasVideo("Second.mp4", "second")).isFalse();
+        assertThat(videoBlobStore.getReferenceCount(sha256(CONTENT))).isEqualTo(1);
+    }
+
+    @Test
+    void getVideoInfos_StoredAndReferencedVideos_MergesThemByName() {
+        deduplicatingStorageDriveAdapter.save(video("A.mp4", new ByteArrayInputStream(CONTENT)), "first");
+        deduplicatingStorageDriveAdapter.save(new Video(UUID.randomUUID(), "B.mp4", new ByteArrayInputStream(new byte[]{4})), "first");
+        deduplicatingStorageDriveAdapter.saveByHash("C.mp4", sha256(CONTENT), "first");
+
+        List<String> names = new ArrayList<>();
+        String pageToken = null;
+        do {
+            VideoInfosPage page = deduplicatingStorageDriveAdapter.getVideoInfos(pageToken, 1, "first");
+            page.videoInfos().forEach(videoInfo -> names.add(videoInfo.name()));
+            pageToken = page.nextPageToken();
+        } while (pageToken != null);
+
+        assertThat(names).containsExactly("A.mp4", "B.mp4", "C.mp4");
+    }
+
+    static Video video(String name, InputStream inputStream) {
+        return new Video(UUID.randomUUID(), name, inputStream, sha256(CONTENT));
+    }
+
+    static String sha256(byte[] content) {
+        MessageDigest digest = ContentHashes.newDigest();
+        digest.update(content);
+        return ContentHashes.toHex(digest);
+    }
+}
@@ -0,0 +1,156 @@
+package com.alex788.videos.adapter;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DriveGovernorTest {
+
+    List<Long> sleepsMillis;
+    DriveGovernor driveGovernor;
+
+    @BeforeEach
+    void beforeEach() {
+        sleepsMillis = new ArrayList<>();
+        driveGovernor = new DriveGovernor(0, 3, Duration.ofMillis(100), Duration.ofSeconds(1), Duration.ofSeconds(10), sleepsMillis::add);
+    }
+
+    @Test
+    void execute_RateLimitedTwice_RetriesWithBackOff() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = driveGovernor.execute(() -> {
+            if (calls.incrementAndGet() <= 2) {
+                throw responseException(403, "userRateLimitExceeded");
+            }
+            return "file";
+        });
+
+        assertThat(result).isEqualTo("file");
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(sleepsMillis).hasSize(2);
+        assertThat(sleepsMillis.get(0)).isBetween(50L, 150L);
+    }
+
+    @Test
+    void execute_RateLimitedOnEveryCall_ThrowsAfterMaxRetries() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> driveGovernor.execute(() -> {
+            calls.incrementAndGet();
+            throw responseException(403, "rateLimitExceeded");
+        })).isInstanceOf(GoogleJsonResponseException.class);
+
+        assertThat(calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    void execute_TooManyRequests_LeavesRetriesToRequest() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> driveGovernor.execute(() -> {
+            calls.incrementAndGet();
+            throw responseException(429, "rateLimitExceeded");
+        })).isInstanceOf(GoogleJsonResponseException.class);
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(sleepsMillis).isEmpty();
+    }
+
+    @Test
+    void newUnsuccessfulResponseHandler_TooManyRequestsWithRetryAfter_WaitsForIt() throws IOException {
+        HttpRequest request = newRequest(new MockLowLevelHttpResponse().setStatusCode(429).addHeader("Retry-After", "3"),
+                new MockLowLevelHttpResponse().setContent("file"));
+
+        HttpResponse response = request.execute();
+
+        assertThat(response.parseAsString()).isEqualTo("file");
+        assertThat(sleepsMillis).containsExactly(3000L);
+    }
+
+    @Test
+    void newUnsuccessfulResponseHandler_RetryAfterBeyondMaxElapsedTime_FailsAtOnce() {
+        HttpRequest request = newRequest(new MockLowLevelHttpResponse().setStatusCode(429).addHeader("Retry-After", "60"),
+                new MockLowLevelHttpResponse().setContent("file"));
+
+        assertThatThrownBy(request::execute)
+                .isInstanceOfSatisfying(HttpResponseException.class, e -> assertThat(e.getStatusCode()).isEqualTo(429));
+        assertThat(sleepsMillis).isEmpty();
+    }
+
+    @Test
+    void newUnsuccessfulResponseHandler_ServerErrorOnEveryAttempt_ThrowsAfterMaxRetries() {
+        MockLowLevelHttpResponse serverError = new MockLowLevelHttpResponse().setStatusCode(503);
+        HttpRequest request = newRequest(serverError, serverError, serverError, serverError, serverError);
+
+        assertThatThrownBy(request::execute)
+                .isInstanceOfSatisfying(HttpResponseException.class, e -> assertThat(e.getStatusCode()).isEqualTo(503));
+        assertThat(sleepsMillis).hasSize(3);
+    }
+
+    HttpRequest newRequest(MockLowLevelHttpResponse... responses) {
+        Iterator<MockLowLevelHttpResponse> responseIterator = List.of(responses).iterator();
+        MockHttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() {
+                        return responseIterator.next();
+                    }
+                };
+            }
+        };
+        try {
+            HttpRequest request = transport.createRequestFactory().buildGetRequest(new GenericUrl("https://www.googleapis.com/drive/v3/files"));
+            request.setUnsuccessfulResponseHandler(driveGovernor.newUnsuccessfulResponseHandler());
+            request.setNumberOfRetries(driveGovernor.getMaxRetries());
+            return request;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void execute_ForbiddenForOtherReason_ThrowsWithoutRetry() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> driveGovernor.execute(() -> {
+            calls.incrementAndGet();
+            throw responseException(403, "insufficientFilePermissions");
+        })).isInstanceOf(GoogleJsonResponseException.class);
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(sleepsMillis).isEmpty();
+    }
+
+    static GoogleJsonResponseException responseException(int statusCode, String reason) {
+        GoogleJsonError.ErrorInfo errorInfo = new GoogleJsonError.ErrorInfo();
+        errorInfo.setReason(reason);
+        GoogleJsonError details = new GoogleJsonError();
+        details.setCode(statusCode);
+        details.setErrors(List.of(errorInfo));
+        return new GoogleJsonResponseException(new HttpResponseException.Builder(statusCode, null, new HttpHeaders()), details);
+    }
+}
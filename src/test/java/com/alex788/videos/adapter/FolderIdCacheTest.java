@@ -0,0 +1,88 @@
+package com.alex788.videos.adapter;
+
+import com.google.common.base.Ticker;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FolderIdCacheTest {
+
+    AtomicLong nanos;
+    FolderIdCache folderIdCache;
+
+    @BeforeEach
+    void beforeEach() {
+        nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        folderIdCache = new FolderIdCache(2, Duration.ofMinutes(1), ticker);
+    }
+
+    @Test
+    void monitor_AfterGets_ExportsHitsAndMisses() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        folderIdCache.monitor(meterRegistry, Tags.of("shard", "first"));
+        folderIdCache.put(List.of("VideosApp"), "id");
+
+        folderIdCache.get(List.of("VideosApp"));
+        folderIdCache.get(List.of("Other"));
+
+        assertThat(meterRegistry.get("cache.gets").tags("cache", "folder-ids", "shard", "first", "result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tags("cache", "folder-ids", "shard", "first", "result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void get_AfterPut_ReturnsFolderIdAndCountsHit() {
+        folderIdCache.put(List.of("VideosApp"), "id");
+
+        assertThat(folderIdCache.get(List.of("VideosApp"))).contains("id");
+        assertThat(folderIdCache.get(List.of("Other"))).isEmpty();
+        assertThat(folderIdCache.getHitCount()).isEqualTo(1);
+        assertThat(folderIdCache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    void get_AfterTtl_ReturnsNothing() {
+        folderIdCache.put(List.of("VideosApp"), "id");
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(2));
+
+        assertThat(folderIdCache.get(List.of("VideosApp"))).isEmpty();
+    }
+
+    @Test
+    void put_MoreThanMaxSize_EvictsEntries() {
+        folderIdCache.put(List.of("a"), "1");
+        folderIdCache.put(List.of("b"), "2");
+        folderIdCache.put(List.of("c"), "3");
+
+        assertThat(folderIdCache.size()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void invalidate_Folder_RemovesFolderAndNestedFolders() {
+        folderIdCache.put(List.of("VideosApp"), "root");
+        folderIdCache.put(List.of("VideosApp", "user"), "user");
+        folderIdCache.put(List.of("Other"), "other");
+
+        folderIdCache.invalidate(List.of("VideosApp"));
+
+        assertThat(folderIdCache.get(List.of("VideosApp"))).isEmpty();
+        assertThat(folderIdCache.get(List.of("VideosApp", "user"))).isEmpty();
+        assertThat(folderIdCache.get(List.of("Other"))).contains("other");
+    }
+}
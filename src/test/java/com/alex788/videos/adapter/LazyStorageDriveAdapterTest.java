@@ -0,0 +1,108 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.exception.StorageNotReadyException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+class LazyStorageDriveAdapterTest {
+
+    FeedStorageDriveAdapter storage;
+    AtomicInteger createdStorages;
+
+    @BeforeEach
+    void beforeEach() {
+        storage = mock(FeedStorageDriveAdapter.class);
+        doReturn(Optional.of(new VideoInfo("Video.mp4", 10, "id", "md5", null))).when(storage).getVideoInfo("Video.mp4", "VideosApp");
+        createdStorages = new AtomicInteger();
+    }
+
+    @Test
+    void getVideoInfo_StorageReady_AsksIt() throws InterruptedException {
+        LazyStorageDriveAdapter<FeedStorageDriveAdapter> lazyStorageDriveAdapter = new LazyStorageDriveAdapter<>(this::createStorage,
+                storage -> storage.getFolderId("VideosApp"), Duration.ofMillis(10), Duration.ofSeconds(5)).start();
+
+        assertThat(lazyStorageDriveAdapter.getVideoInfo("Video.mp4", "VideosApp")).isPresent();
+        awaitReady(lazyStorageDriveAdapter);
+        verify(storage, times(1)).getFolderId("VideosApp");
+    }
+
+    @Test
+    void getVideoInfo_StorageIsBeingCreated_ThrowsException() {
+        CountDownLatch created = new CountDownLatch(1);
+        LazyStorageDriveAdapter<FeedStorageDriveAdapter> lazyStorageDriveAdapter = new LazyStorageDriveAdapter<>(() -> {
+            try {
+                created.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return createStorage();
+        }, storage -> {
+        }, Duration.ofMillis(10), Duration.ofMillis(50)).start();
+
+        try {
+            assertThatThrownBy(() -> lazyStorageDriveAdapter.getVideoInfo("Video.mp4", "VideosApp"))
+                    .isInstanceOf(StorageNotReadyException.class);
+            assertThat(lazyStorageDriveAdapter.isReady()).isFalse();
+        } finally {
+            created.countDown();
+        }
+    }
+
+    @Test
+    void start_WarmUpFailsOnce_RetriesItWithSameStorage() throws InterruptedException {
+        AtomicInteger warmUps = new AtomicInteger();
+        LazyStorageDriveAdapter<FeedStorageDriveAdapter> lazyStorageDriveAdapter = new LazyStorageDriveAdapter<>(this::createStorage, storage -> {
+            if (warmUps.incrementAndGet() == 1) {
+                throw new RuntimeException("Drive is unreachable.");
+            }
+        }, Duration.ofMillis(10), Duration.ofSeconds(5)).start();
+
+        awaitReady(lazyStorageDriveAdapter);
+
+        assertThat(warmUps.get()).isEqualTo(2);
+        assertThat(createdStorages.get()).isEqualTo(1);
+        assertThat(lazyStorageDriveAdapter.getLastFailure()).isEmpty();
+    }
+
+    @Test
+    void start_CreationThrowsErrorOnce_RetriesIt() throws InterruptedException {
+        LazyStorageDriveAdapter<FeedStorageDriveAdapter> lazyStorageDriveAdapter = new LazyStorageDriveAdapter<>(() -> {
+            if (createdStorages.get() == 0) {
+                createdStorages.incrementAndGet();
+                throw new NoClassDefFoundError("com/google/api/services/drive/Drive");
+            }
+            return createStorage();
+        }, storage -> {
+        }, Duration.ofMillis(10), Duration.ofSeconds(5)).start();
+
+        awaitReady(lazyStorageDriveAdapter);
+
+        assertThat(createdStorages.get()).isEqualTo(2);
+    }
+
+    FeedStorageDriveAdapter createStorage() {
+        createdStorages.incrementAndGet();
+        return storage;
+    }
+
+    static void awaitReady(LazyStorageDriveAdapter<?> lazyStorageDriveAdapter) throws InterruptedException {
+        for (int i = 0; i < 500 && !lazyStorageDriveAdapter.isReady(); i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertThat(lazyStorageDriveAdapter.isReady()).isTrue();
+    }
+
+    interface FeedStorageDriveAdapter extends StorageDriveAdapter, StorageChangeFeed {
+    }
+}
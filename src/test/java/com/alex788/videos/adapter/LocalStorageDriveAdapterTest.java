@@ -0,0 +1,124 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.User;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalStorageDriveAdapterTest {
+
+    @TempDir
+    Path rootDirectory;
+
+    LocalStorageDriveAdapter localStorageDriveAdapter;
+
+    @BeforeEach
+    void beforeEach() {
+        localStorageDriveAdapter = new LocalStorageDriveAdapter(rootDirectory);
+    }
+
+    @Test
+    void save_ThenGetVideoStream_ReturnsSavedContent() throws IOException {
+        Video video = video("Video.mp4", "content");
+
+        localStorageDriveAdapter.save(video, "VideosApp", video.userId().toString());
+
+        Optional<InputStream> inputStreamOpt = localStorageDriveAdapter.getVideoStream("Video.mp4", "VideosApp", video.userId().toString());
+        assertThat(inputStreamOpt).isPresent();
+        try (InputStream inputStream = inputStreamOpt.get()) {
+            assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("content");
+        }
+    }
+
+    @Test
+    void hasVideo_OnlyIfVideoWasSaved_ReturnsTrue() {
+        Video video = video("Video.mp4", "content");
+
+        assertThat(localStorageDriveAdapter.hasVideo("Video.mp4", "VideosApp", video.userId().toString())).isFalse();
+        localStorageDriveAdapter.save(video, "VideosApp", video.userId().toString());
+        assertThat(localStorageDriveAdapter.hasVideo("Video.mp4", "VideosApp", video.userId().toString())).isTrue();
+    }
+
+    @Test
+    void getVideoStream_NoVideo_ReturnsNothing() {
+        assertThat(localStorageDriveAdapter.getVideoStream("Video.mp4", "VideosApp")).isEmpty();
+    }
+
+    @Test
+    void getVideoStream_WithRange_ReturnsOnlyRequestedBytes() throws IOException {
+        Video video = video("Video.mp4", "0123456789");
+        localStorageDriveAdapter.save(video, "VideosApp");
+
+        Optional<InputStream> inputStreamOpt = localStorageDriveAdapter.getVideoPartStream("Video.mp4", 2, 5, "VideosApp");
+
+        assertThat(inputStreamOpt).isPresent();
+        try (InputStream inputStream = inputStreamOpt.get()) {
+            assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("2345");
+        }
+    }
+
+    @Test
+    void getVideoInfo_SavedVideo_ReturnsNameAndSize() {
+        Video video = video("Video.mp4", "0123456789");
+        localStorageDriveAdapter.save(video, "VideosApp");
+
+        assertThat(localStorageDriveAdapter.getVideoInfo("Video.mp4", "VideosApp").map(VideoInfo::size))
+                .contains(10L);
+        assertThat(localStorageDriveAdapter.getVideoInfo("Other.mp4", "VideosApp")).isEmpty();
+    }
+
+    @Test
+    void getVideoInfos_SavedVideos_ReturnsOnlyVideos() {
+        Video first = video("First.mp4", "1");
+        Video second = new Video(first.userId(), "Second.mp4", new ByteArrayInputStream(new byte[0]));
+
+        localStorageDriveAdapter.save(first, "VideosApp", first.userId().toString());
+        localStorageDriveAdapter.save(second, "VideosApp", first.userId().toString());
+
+        assertThat(localStorageDriveAdapter.getVideoInfos(null, 10, "VideosApp", first.userId().toString()).videoInfos())
+                .extracting(VideoInfo::name)
+                .containsExactly("First.mp4", "Second.mp4");
+        assertThat(localStorageDriveAdapter.getVideoInfos(null, 10, "VideosApp", "unknown").videoInfos()).isEmpty();
+    }
+
+    @Test
+    void getVideoInfos_MoreVideosThanPageSize_ReturnsThemPageByPage() {
+        for (String videoName : List.of("A.mp4", "B.mp4", "C.mp4")) {
+            localStorageDriveAdapter.save(video(videoName, videoName), "VideosApp");
+        }
+
+        VideoInfosPage firstPage = localStorageDriveAdapter.getVideoInfos(null, 2, "VideosApp");
+        VideoInfosPage secondPage = localStorageDriveAdapter.getVideoInfos(firstPage.nextPageToken(), 2, "VideosApp");
+
+        assertThat(firstPage.videoInfos()).extracting(VideoInfo::name).containsExactly("A.mp4", "B.mp4");
+        assertThat(firstPage.nextPageToken()).isNotNull();
+        assertThat(secondPage.videoInfos()).extracting(VideoInfo::name).containsExactly("C.mp4");
+        assertThat(secondPage.nextPageToken()).isNull();
+    }
+
+    @Test
+    void save_PathOutsideRootDirectory_ThrowsException() {
+        Video video = video("Video.mp4", "content");
+
+        assertThatThrownBy(() -> localStorageDriveAdapter.save(video, ".."))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Video video(String name, String content) {
+        return new Video(new User().getId(), name, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
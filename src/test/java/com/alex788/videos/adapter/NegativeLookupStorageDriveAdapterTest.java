@@ -0,0 +1,120 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.entity.VideoInfosPage;
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class NegativeLookupStorageDriveAdapterTest {
+
+    AtomicLong nanos;
+    StorageDriveAdapter storageDriveAdapter;
+    NegativeLookupStorageDriveAdapter negativeLookupStorageDriveAdapter;
+
+    @BeforeEach
+    void beforeEach() {
+        nanos = new AtomicLong();
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        storageDriveAdapter = mock(StorageDriveAdapter.class);
+        doReturn(new VideoInfosPage(List.of(videoInfo("Existing.mp4")), null)).when(storageDriveAdapter).getVideoInfos(any(), anyInt(), any());
+        doReturn(true).when(storageDriveAdapter).hasVideo(any(), any());
+        negativeLookupStorageDriveAdapter = new NegativeLookupStorageDriveAdapter(storageDriveAdapter, 0.01, 100, 10,
+                Duration.ofMinutes(10), Runnable::run, ticker);
+    }
+
+    @Test
+    void hasVideo_MissingName_DoesNotAskStorage() {
+        assertThat(negativeLookupStorageDriveAdapter.hasVideo("Missing.mp4", "VideosApp")).isFalse();
+
+        verify(storageDriveAdapter, never()).hasVideo(any(), any());
+    }
+
+    @Test
+    void hasVideoBeforeSave_NameMissingFromFilter_AsksStorage() {
+        negativeLookupStorageDriveAdapter.hasVideo("Missing.mp4", "VideosApp");
+        doReturn(true).when(storageDriveAdapter).hasVideoBeforeSave("Missing.mp4", "VideosApp");
+
+        assertThat(negativeLookupStorageDriveAdapter.hasVideoBeforeSave("Missing.mp4", "VideosApp")).isTrue();
+    }
+
+    @Test
+    void hasVideo_ExistingName_AsksStorage() {
+        assertThat(negativeLookupStorageDriveAdapter.hasVideo("Existing.mp4", "VideosApp")).isTrue();
+
+        verify(storageDriveAdapter, times(1)).hasVideo("Existing.mp4", "VideosApp");
+    }
+
+    @Test
+    void hasVideo_SavedAfterFilterIsBuilt_AsksStorage() {
+        negativeLookupStorageDriveAdapter.hasVideo("Existing.mp4", "VideosApp");
+
+        negativeLookupStorageDriveAdapter.save(new Video(UUID.randomUUID(), "Saved.mp4", null), "VideosApp");
+
+        assertThat(negativeLookupStorageDriveAdapter.hasVideo("Saved.mp4", "VideosApp")).isTrue();
+    }
+
+    @Test
+    void hasVideo_FilterIsBuilding_AsksStorage() {
+        negativeLookupStorageDriveAdapter = new NegativeLookupStorageDriveAdapter(storageDriveAdapter, 0.01, 100, 10,
+                Duration.ofMinutes(10), runnable -> {
+        });
+
+        assertThat(negativeLookupStorageDriveAdapter.hasVideo("Missing.mp4", "VideosApp")).isTrue();
+        verify(storageDriveAdapter, times(1)).hasVideo("Missing.mp4", "VideosApp");
+    }
+
+    @Test
+    void hasVideo_AfterRebuildInterval_RebuildsFilter() {
+        negativeLookupStorageDriveAdapter.hasVideo("Added.mp4", "VideosApp");
+        doReturn(new VideoInfosPage(List.of(videoInfo("Existing.mp4"), videoInfo("Added.mp4")), null))
+                .when(storageDriveAdapter).getVideoInfos(any(), anyInt(), any());
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(11));
+
+        assertThat(negativeLookupStorageDriveAdapter.hasVideo("Added.mp4", "VideosApp")).isTrue();
+        verify(storageDriveAdapter, times(2)).getVideoInfos(any(), anyInt(), any());
+    }
+
+    @Test
+    void hasVideos_OnlyPossibleNames_AreAskedFromStorage() {
+        doReturn(Map.of("Existing.mp4", true)).when(storageDriveAdapter).hasVideos(any(), any());
+        negativeLookupStorageDriveAdapter.hasVideo("Existing.mp4", "VideosApp");
+
+        Map<String, Boolean> hasVideoByName = negativeLookupStorageDriveAdapter.hasVideos(List.of("Missing.mp4", "Existing.mp4"), "VideosApp");
+
+        assertThat(hasVideoByName).containsExactly(entry("Missing.mp4", false), entry("Existing.mp4", true));
+        verify(storageDriveAdapter, times(1)).hasVideos(List.of("Existing.mp4"), "VideosApp");
+    }
+
+    @Test
+    void getVideoInfo_MissingName_DoesNotAskStorage() {
+        assertThat(negativeLookupStorageDriveAdapter.getVideoInfo("Missing.mp4", "VideosApp")).isEqualTo(Optional.empty());
+
+        verify(storageDriveAdapter, never()).getVideoInfo(any(), any());
+    }
+
+    static VideoInfo videoInfo(String name) {
+        return new VideoInfo(name, 1, null, null, null);
+    }
+}
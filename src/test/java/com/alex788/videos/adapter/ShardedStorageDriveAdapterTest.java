@@ -0,0 +1,101 @@
+package com.alex788.videos.adapter;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.storage_shard.ConsistentHashRing;
+import com.alex788.videos.storage_shard.ShardKey;
+import com.alex788.videos.storage_shard.ShardMap;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardedStorageDriveAdapterTest {
+
+    static final byte[] CONTENT = {1, 2, 3};
+
+    @TempDir
+    Path firstRootDirectory;
+    @TempDir
+    Path secondRootDirectory;
+
+    LocalStorageDriveAdapter firstStorage;
+    LocalStorageDriveAdapter secondStorage;
+    ShardMap shardMap;
+    String userId;
+
+    @BeforeEach
+    void beforeEach() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        shardMap = new ShardMap(dataSource);
+        firstStorage = new LocalStorageDriveAdapter(firstRootDirectory);
+        secondStorage = new LocalStorageDriveAdapter(secondRootDirectory);
+        userId = UUID.randomUUID().toString();
+    }
+
+    @Test
+    void save_FolderWithoutAssignment_SavesToShardOfRingAndKeepsIt() {
+        ShardedStorageDriveAdapter shardedStorageDriveAdapter = createAdapter(null);
+
+        shardedStorageDriveAdapter.save(video("Video.mp4"), "VideosApp", userId);
+
+        assertThat(secondStorage.hasVideo("Video.mp4", "VideosApp", userId)).isTrue();
+        assertThat(firstStorage.hasVideo("Video.mp4", "VideosApp", userId)).isFalse();
+        assertThat(shardMap.find(ShardKey.ofFolder(List.of("VideosApp", userId))).orElseThrow().shard()).isEqualTo("second");
+    }
+
+    @Test
+    void save_InitialShardHasVideosOfFolder_KeepsFolderOnIt() {
+        firstStorage.save(video("Old.mp4"), "VideosApp", userId);
+        ShardedStorageDriveAdapter shardedStorageDriveAdapter = createAdapter("first");
+
+        shardedStorageDriveAdapter.save(video("New.mp4"), "VideosApp", userId);
+
+        assertThat(firstStorage.hasVideo("New.mp4", "VideosApp", userId)).isTrue();
+        assertThat(shardedStorageDriveAdapter.hasVideos(List.of("Old.mp4", "New.mp4"), "VideosApp", userId))
+                .containsExactly(Map.entry("Old.mp4", true), Map.entry("New.mp4", true));
+    }
+
+    @Test
+    void getVideoStream_FolderMigrating_SavesToTargetShardAndReadsBothShards() throws IOException {
+        ShardKey key = ShardKey.ofFolder(List.of("VideosApp", userId));
+        shardMap.assign(key, "first");
+        shardMap.startMigration(key, "second");
+        firstStorage.save(video("Old.mp4"), "VideosApp", userId);
+        ShardedStorageDriveAdapter shardedStorageDriveAdapter = createAdapter(null);
+
+        shardedStorageDriveAdapter.save(video("New.mp4"), "VideosApp", userId);
+
+        assertThat(secondStorage.hasVideo("New.mp4", "VideosApp", userId)).isTrue();
+        for (String videoName : List.of("Old.mp4", "New.mp4")) {
+            try (InputStream inputStream = shardedStorageDriveAdapter.getVideoStream(videoName, "VideosApp", userId).orElseThrow()) {
+                assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+            }
+        }
+    }
+
+    /**
+     * The ring has only the second shard, so a new key always lands on it.
+     */
+    ShardedStorageDriveAdapter createAdapter(String initialShard) {
+        return new ShardedStorageDriveAdapter(Map.of("first", firstStorage, "second", secondStorage),
+                new ConsistentHashRing(Map.of("second", 1), 100), shardMap, List.of(List.of("VideosApp", "blobs")), initialShard,
+                Duration.ofMinutes(1), new SimpleMeterRegistry());
+    }
+
+    static Video video(String name) {
+        return new Video(UUID.randomUUID(), name, new ByteArrayInputStream(CONTENT));
+    }
+}
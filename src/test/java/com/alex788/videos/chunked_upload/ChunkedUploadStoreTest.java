@@ -0,0 +1,166 @@
+package com.alex788.videos.chunked_upload;
+
+import com.alex788.videos.entity.ChunkedUploadStatus;
+import com.alex788.videos.entity.User;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.exception.ChunkedUploadNotFoundException;
+import com.alex788.videos.exception.UnexpectedChunkNumberException;
+import com.alex788.videos.video_blob.ContentHashes;
+import com.alex788.videos.video_faststart.FaststartRemuxer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkedUploadStoreTest {
+
+    @TempDir
+    Path directory;
+
+    ChunkedUploadStore chunkedUploadStore;
+    UUID userId;
+
+    @BeforeEach
+    void beforeEach() {
+        chunkedUploadStore = new ChunkedUploadStore(directory, Duration.ofHours(1), new FaststartRemuxer(false, 0));
+        userId = new User().getId();
+    }
+
+    @Test
+    void complete_AfterAllChunks_ReturnsAssembledVideo() throws IOException {
+        UUID uploadId = chunkedUploadStore.start(userId, "Video.mp4").uploadId();
+        chunkedUploadStore.saveChunk(uploadId, 0, chunk("012"));
+        chunkedUploadStore.saveChunk(uploadId, 1, chunk("345"));
+
+        Video video = chunkedUploadStore.complete(uploadId);
+
+        assertThat(video.userId()).isEqualTo(userId);
+        assertThat(video.name()).isEqualTo("Video.mp4");
+        try (InputStream inputStream = video.inputStream()) {
+            assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("012345");
+        }
+        assertThat(directory.toFile().list()).isEmpty();
+    }
+
+    @Test
+    void saveChunk_AlreadyCommittedChunk_IsIgnored() {
+        UUID uploadId = chunkedUploadStore.start(userId, "Video.mp4").uploadId();
+        chunkedUploadStore.saveChunk(uploadId, 0, chunk("012"));
+
+        ChunkedUploadStatus status = chunkedUploadStore.saveChunk(uploadId, 0, chunk("012"));
+
+        assertThat(status.nextChunkNumber()).isEqualTo(1);
+        assertThat(status.committedBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void saveChunk_ChunkFromFuture_ThrowsException() {
+        UUID uploadId = chunkedUploadStore.start(userId, "Video.mp4").uploadId();
+
+        assertThatThrownBy(() -> chunkedUploadStore.saveChunk(uploadId, 1, chunk("345")))
+                .isInstanceOf(UnexpectedChunkNumberException.class);
+    }
+
+    @Test
+    void saveChunk_MetadataNotWritten_ChunkIsNotCommitted() throws IOException {
+        UUID uploadId = chunkedUploadStore.start(userId, "Video.mp4").uploadId();
+        chunkedUploadStore.saveChunk(uploadId, 0, chunk("012"));
+        Path metadataPath = directory.resolve(uploadId + ".upload");
+        Files.delete(metadataPath);
+        Files.createDirectory(metadataPath);
+        Files.createFile(metadataPath.resolve("blocker"));
+
+        assertThatThrownBy(() -> chunkedUploadStore.saveChunk(uploadId, 1, chunk("345")))
+                .isInstanceOf(RuntimeException.class);
+
+        assertThat(chunkedUploadStore.getStatus(uploadId)).isEqualTo(new ChunkedUploadStatus(uploadId, "Video.mp4", 1, 3));
+        assertThat(Files.size(directory.resolve(uploadId + ".part"))).isEqualTo(3);
+        Files.delete(metadataPath.resolve("blocker"));
+        Files.delete(metadataPath);
+        assertThat(chunkedUploadStore.saveChunk(uploadId, 1, chunk("345"))).isEqualTo(new ChunkedUploadStatus(uploadId, "Video.mp4", 2, 6));
+        try (InputStream inputStream = chunkedUploadStore.complete(uploadId).inputStream()) {
+            assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("012345");
+        }
+    }
+
+    @Test
+    void getStatus_AfterChunks_ReturnsCommittedOffset() {
+        UUID uploadId = chunkedUploadStore.start(userId, "Video.mp4").uploadId();
+        chunkedUploadStore.saveChunk(uploadId, 0, chunk("012"));
+
+        ChunkedUploadStatus status = chunkedUploadStore.getStatus(uploadId);
+
+        assertThat(status.nextChunkNumber()).isEqualTo(1);
+        assertThat(status.committedBytes()).isEqualTo(3);
+    }
+
+    @Test
+    void saveChunk_CompletedUpload_ThrowsException() {
+        UUID uploadId = chunkedUploadStore.start(userId, "Video.mp4").uploadId();
+        chunkedUploadStore.complete(uploadId);
+
+        assertThatThrownBy(() -> chunkedUploadStore.saveChunk(uploadId, 0, chunk("012")))
+                .isInstanceOf(ChunkedUploadNotFoundException.class);
+    }
+
+    @Test
+    void start_NotVideoName_ThrowsException() {
+        assertThatThrownBy(() -> chunkedUploadStore.start(userId, "Video.avi"))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    void constructor_UnfinishedUploadOfPreviousRun_ContinuesIt() throws IOException {
+        UUID uploadId = chunkedUploadStore.start(userId, "Video.mp4").uploadId();
+        chunkedUploadStore.saveChunk(uploadId, 0, chunk("012"));
+        Files.writeString(directory.resolve(uploadId + ".part"), "uncommitted", StandardOpenOption.APPEND);
+
+        ChunkedUploadStore restartedChunkedUploadStore = new ChunkedUploadStore(directory, Duration.ofHours(1), new FaststartRemuxer(false, 0));
+        assertThat(restartedChunkedUploadStore.getStatus(uploadId)).isEqualTo(new ChunkedUploadStatus(uploadId, "Video.mp4", 1, 3));
+        restartedChunkedUploadStore.saveChunk(uploadId, 1, chunk("345"));
+        Video video = restartedChunkedUploadStore.complete(uploadId);
+
+        assertThat(video.userId()).isEqualTo(userId);
+        assertThat(video.sha256()).isEqualTo(sha256("012345"));
+        try (InputStream inputStream = video.inputStream()) {
+            assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("012345");
+        }
+        assertThat(directory.toFile().list()).isEmpty();
+    }
+
+    @Test
+    void constructor_OrphanedAndForeignFiles_DeletesOnlyOrphans() throws IOException {
+        Path orphanedSpoolPath = Files.writeString(directory.resolve(UUID.randomUUID() + ".part"), "012");
+        Path orphanedMetadataPath = Files.writeString(directory.resolve(UUID.randomUUID() + ".upload"), "videoName=Video.mp4");
+        Path foreignPath = Files.writeString(directory.resolve("notes.txt"), "notes");
+
+        new ChunkedUploadStore(directory, Duration.ofHours(1), new FaststartRemuxer(false, 0));
+
+        assertThat(orphanedSpoolPath).doesNotExist();
+        assertThat(orphanedMetadataPath).doesNotExist();
+        assertThat(foreignPath).exists();
+    }
+
+    private static String sha256(String content) {
+        MessageDigest digest = ContentHashes.newDigest();
+        digest.update(content.getBytes(StandardCharsets.UTF_8));
+        return ContentHashes.toHex(digest);
+    }
+
+    private static InputStream chunk(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,47 @@
+package com.alex788.videos.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MultipartByteRangesTest {
+
+    static final byte[] VIDEO = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void getInputStream_TwoRanges_ReturnsBothPartsWithHeaders() throws IOException {
+        MultipartByteRanges multipartByteRanges = new MultipartByteRanges(
+                List.of(new ByteRange(0, 1), new ByteRange(8, 9)), VIDEO.length,
+                (from, to) -> new ByteArrayInputStream(Arrays.copyOfRange(VIDEO, (int) from, (int) to + 1)));
+
+        byte[] body;
+        try (InputStream inputStream = multipartByteRanges.getInputStream()) {
+            body = inputStream.readAllBytes();
+        }
+
+        String content = new String(body, StandardCharsets.US_ASCII);
+        String boundary = multipartByteRanges.getContentType().getParameter("boundary");
+        assertThat(content)
+                .contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n--" + boundary + "\r\n")
+                .contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n--" + boundary + "--\r\n");
+        assertThat(body).hasSize((int) multipartByteRanges.getContentLength());
+    }
+
+    @Test
+    void getInputStream_BeforeReading_DoesNotRequestParts() {
+        MultipartByteRanges multipartByteRanges = new MultipartByteRanges(
+                List.of(new ByteRange(0, 1), new ByteRange(8, 9)), VIDEO.length,
+                (from, to) -> {
+                    throw new AssertionError("Part must not be requested before reading.");
+                });
+
+        assertThat(multipartByteRanges.getInputStream()).isNotNull();
+    }
+}
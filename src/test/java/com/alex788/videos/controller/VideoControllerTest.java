@@ -0,0 +1,132 @@
+package com.alex788.videos.controller;
+
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.entity.VideoInfo;
+import com.alex788.videos.service.ChunkedUploadService;
+import com.alex788.videos.service.UploadJobService;
+import com.alex788.videos.service.VideoService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class VideoControllerTest {
+
+    static final byte[] VIDEO = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    VideoService videoService;
+    VideoController videoController;
+    UUID userId;
+
+    @BeforeEach
+    void beforeEach() {
+        videoService = mock(VideoService.class);
+        videoController = new VideoController(videoService, mock(ChunkedUploadService.class), mock(UploadJobService.class),
+                new ObjectMapper(), new SimpleMeterRegistry());
+        userId = UUID.randomUUID();
+        doReturn(new VideoInfo("Video.mp4", VIDEO.length, "id", "md5", null)).when(videoService).getVideoInfo("Video.mp4", userId);
+        doAnswer(invocation -> {
+            int from = (int) (long) invocation.getArgument(2);
+            int to = (int) (long) invocation.getArgument(3);
+            return new Video(userId, "Video.mp4", new ByteArrayInputStream(Arrays.copyOfRange(VIDEO, from, to + 1)));
+        }).when(videoService).getVideoPart(eq("Video.mp4"), eq(userId), anyLong(), anyLong());
+    }
+
+    @Test
+    void downloadVideo_SingleRange_ReturnsPartialContent() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = download("bytes=2-4");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-4/10");
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(3);
+        assertThat(write(response)).isEqualTo("234");
+    }
+
+    @Test
+    void downloadVideo_RangeBeyondVideo_ReturnsRangeNotSatisfiable() {
+        ResponseEntity<StreamingResponseBody> response = download("bytes=20-30");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+        verify(videoService, never()).getVideoPart(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void downloadVideo_MalformedRange_ReturnsRangeNotSatisfiable() {
+        ResponseEntity<StreamingResponseBody> response = download("bytes=abc");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    @Test
+    void downloadVideo_SeparateRanges_ReturnsMultipartBody() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = download("bytes=0-1,8-9");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getContentType().toString()).startsWith("multipart/byteranges");
+        assertThat(write(response))
+                .contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n")
+                .contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n");
+    }
+
+    @Test
+    void downloadVideo_OverlappingRanges_ReadsMergedRangeOnce() throws IOException {
+        ResponseEntity<StreamingResponseBody> response = download("bytes=4-6,0-2,2-4");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-6/10");
+        assertThat(write(response)).isEqualTo("0123456");
+        verify(videoService, times(1)).getVideoPart(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void downloadVideo_TooManySeparateRanges_ReturnsRangeNotSatisfiable() {
+        doReturn(new VideoInfo("Video.mp4", 100, "id", "md5", null)).when(videoService).getVideoInfo("Video.mp4", userId);
+        String range = "bytes=" + IntStream.range(0, 17)
+                .mapToObj(i -> i * 2 + "-" + i * 2)
+                .collect(Collectors.joining(","));
+
+        ResponseEntity<StreamingResponseBody> response = download(range);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        verify(videoService, never()).getVideoPart(any(), any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void handleTaskRejected_AsyncRequestExecutorFull_ReturnsServiceUnavailableWithRetryAfter() {
+        ResponseEntity<String> response = videoController.handleTaskRejected(new TaskRejectedException("Executor is full."));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("5");
+    }
+
+    ResponseEntity<StreamingResponseBody> download(String range) {
+        return videoController.downloadVideo(userId.toString(), "Video.mp4", range);
+    }
+
+    static String write(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        response.getBody().writeTo(outputStream);
+        return outputStream.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,105 @@
+package com.alex788.videos.executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimitedExecutorServiceTest {
+
+    static final int MAX_CONCURRENCY = 2;
+
+    ConcurrencyLimitedExecutorService executorService;
+
+    @BeforeEach
+    void beforeEach() {
+        executorService = new ConcurrencyLimitedExecutorService(Executors.newCachedThreadPool(), MAX_CONCURRENCY);
+    }
+
+    @AfterEach
+    void afterEach() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void submit_MoreTasksThanLimit_RunsAtMostLimitAtOnce() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(executorService.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        // a future completes before its task releases the permit
+        executorService.shutdown();
+        assertThat(executorService.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(MAX_CONCURRENCY);
+        assertThat(executorService.getAvailablePermits()).isEqualTo(MAX_CONCURRENCY);
+    }
+
+    @Test
+    void awaitTermination_AfterShutdown_WaitsForStartedTasks() throws Exception {
+        AtomicInteger finished = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            executorService.execute(() -> {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finished.incrementAndGet();
+            });
+        }
+
+        executorService.shutdown();
+
+        assertThat(executorService.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(finished.get()).isEqualTo(4);
+    }
+
+    @Test
+    void shutdownNow_TasksWaitingForPermit_DoesNotRunThem() throws Exception {
+        CountDownLatch started = new CountDownLatch(MAX_CONCURRENCY);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < MAX_CONCURRENCY; i++) {
+            executorService.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        AtomicInteger waitingRan = new AtomicInteger();
+        Future<?> waitingFuture = executorService.submit(waitingRan::incrementAndGet);
+
+        List<Runnable> notStartedCommands = executorService.shutdownNow();
+
+        assertThat(executorService.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(notStartedCommands).containsExactly((Runnable) waitingFuture);
+        assertThat(waitingRan.get()).isZero();
+    }
+}
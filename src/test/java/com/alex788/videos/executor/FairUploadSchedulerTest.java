@@ -0,0 +1,115 @@
+package com.alex788.videos.executor;
+
+import com.alex788.videos.entity.UploadPriority;
+import com.alex788.videos.exception.UploadQueueFullException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class FairUploadSchedulerTest {
+
+    static final long QUANTUM = 100;
+
+    List<Runnable> startedTasks;
+    ExecutorService executorService;
+
+    @BeforeEach
+    void beforeEach() {
+        startedTasks = new ArrayList<>();
+        executorService = mock(ExecutorService.class);
+        doAnswer(invocation -> startedTasks.add(invocation.getArgument(0))).when(executorService).execute(any());
+    }
+
+    @Test
+    void submit_OneUserQueuedManyUploads_OtherUserIsServedInNextRound() {
+        FairUploadScheduler scheduler = new FairUploadScheduler(executorService, 1, 10, QUANTUM);
+        UUID firstUserId = UUID.randomUUID();
+        UUID secondUserId = UUID.randomUUID();
+        List<String> order = new ArrayList<>();
+        long roundSize = QUANTUM * UploadPriority.NORMAL.getWeight();
+
+        scheduler.submit(firstUserId, UploadPriority.NORMAL, roundSize, () -> order.add("first-1"));
+        scheduler.submit(firstUserId, UploadPriority.NORMAL, roundSize, () -> order.add("first-2"));
+        scheduler.submit(firstUserId, UploadPriority.NORMAL, roundSize, () -> order.add("first-3"));
+        scheduler.submit(secondUserId, UploadPriority.NORMAL, roundSize, () -> order.add("second-1"));
+        runStartedTasks();
+
+        assertThat(order).containsExactly("first-1", "first-2", "second-1", "first-3");
+    }
+
+    @Test
+    void submit_HigherPriority_StartsMoreUploadsPerRound() {
+        FairUploadScheduler scheduler = new FairUploadScheduler(executorService, 1, 10, QUANTUM);
+        UUID lowUserId = UUID.randomUUID();
+        UUID highUserId = UUID.randomUUID();
+        List<String> order = new ArrayList<>();
+
+        scheduler.submit(lowUserId, UploadPriority.LOW, QUANTUM, () -> order.add("low-1"));
+        scheduler.submit(lowUserId, UploadPriority.LOW, QUANTUM, () -> order.add("low-2"));
+        scheduler.submit(lowUserId, UploadPriority.LOW, QUANTUM, () -> order.add("low-3"));
+        for (int i = 1; i <= 5; i++) {
+            String name = "high-" + i;
+            scheduler.submit(highUserId, UploadPriority.HIGH, QUANTUM, () -> order.add(name));
+        }
+        runStartedTasks();
+
+        assertThat(order).containsExactly("low-1", "low-2", "high-1", "high-2", "high-3", "high-4", "low-3", "high-5");
+    }
+
+    @Test
+    void submit_QueueFull_ThrowsExceptionWithRetryAfter() {
+        FairUploadScheduler scheduler = new FairUploadScheduler(executorService, 1, 1, QUANTUM);
+        scheduler.submit(UUID.randomUUID(), UploadPriority.NORMAL, 0, () -> {
+        });
+        scheduler.submit(UUID.randomUUID(), UploadPriority.NORMAL, 0, () -> {
+        });
+
+        UploadQueueFullException exception = catchThrowableOfType(() -> scheduler.submit(UUID.randomUUID(), UploadPriority.NORMAL, 0, () -> {
+        }), UploadQueueFullException.class);
+
+        assertThat(exception).isNotNull();
+        assertThat(exception.getRetryAfter().getSeconds()).isGreaterThanOrEqualTo(1);
+        assertThat(scheduler.getQueuedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void reserve_QueueFullOfReservations_ThrowsExceptionUntilReservationClosed() {
+        FairUploadScheduler scheduler = new FairUploadScheduler(executorService, 1, 1, QUANTUM);
+        UploadReservation reservation = scheduler.reserve();
+
+        assertThat(catchThrowableOfType(scheduler::reserve, UploadQueueFullException.class)).isNotNull();
+
+        reservation.close();
+        scheduler.reserve();
+    }
+
+    @Test
+    void submit_Reservation_QueuesUploadInReservedSlot() {
+        FairUploadScheduler scheduler = new FairUploadScheduler(executorService, 1, 1, QUANTUM);
+        scheduler.submit(UUID.randomUUID(), UploadPriority.NORMAL, 0, () -> {
+        });
+        UploadReservation reservation = scheduler.reserve();
+
+        scheduler.submit(reservation, UUID.randomUUID(), UploadPriority.NORMAL, 0, () -> {
+        });
+        reservation.close();
+
+        assertThat(scheduler.getQueuedCount()).isEqualTo(1);
+        assertThat(catchThrowableOfType(scheduler::reserve, UploadQueueFullException.class)).isNotNull();
+    }
+
+    void runStartedTasks() {
+        while (!startedTasks.isEmpty()) {
+            startedTasks.remove(0).run();
+        }
+    }
+}
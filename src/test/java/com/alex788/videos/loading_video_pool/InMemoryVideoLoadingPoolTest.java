@@ -5,7 +5,17 @@ import com.alex788.videos.entity.Video;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
-import static com.alex788.videos.loading_video_pool.InMemoryVideoLoadingPool.PARALLEL_LOAD_LIMIT;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.alex788.videos.loading_video_pool.InMemoryVideoLoadingPool.DEFAULT_PARALLEL_LOAD_LIMIT;
+import static com.alex788.videos.loading_video_pool.InMemoryVideoLoadingPool.NO_GLOBAL_LOAD_LIMIT;
 import static org.assertj.core.api.Assertions.assertThat;
 
 class InMemoryVideoLoadingPoolTest {
@@ -19,14 +29,15 @@ class InMemoryVideoLoadingPoolTest {
 
     @Test
     void canLoadParallelMore_onlyIfYouReachLimit_ReturnsFalse() {
-        Video video = new Video(new User().getId(), "Video.mp4", null);
+        UUID userId = new User().getId();
 
-        for (int i = 0; i < PARALLEL_LOAD_LIMIT; i++) {
-            assertThat(inMemoryVideoLoadingPool.canLoadParallelMore(video.userId())).isTrue();
-            inMemoryVideoLoadingPool.add(video);
+        for (int i = 0; i < DEFAULT_PARALLEL_LOAD_LIMIT; i++) {
+            assertThat(inMemoryVideoLoadingPool.canLoadParallelMore(userId)).isTrue();
+            assertThat(inMemoryVideoLoadingPool.tryAdd(new Video(userId, "Video" + i + ".mp4", null))).isEqualTo(LoadingReservation.RESERVED);
         }
 
-        assertThat(inMemoryVideoLoadingPool.canLoadParallelMore(video.userId())).isFalse();
+        assertThat(inMemoryVideoLoadingPool.canLoadParallelMore(userId)).isFalse();
+        assertThat(inMemoryVideoLoadingPool.tryAdd(new Video(userId, "Video.mp4", null))).isEqualTo(LoadingReservation.PARALLEL_LOAD_LIMIT_EXCEEDED);
     }
 
     @Test
@@ -34,7 +45,68 @@ class InMemoryVideoLoadingPoolTest {
         Video video = new Video(new User().getId(), "Video.mp4", null);
 
         assertThat(inMemoryVideoLoadingPool.doesUserHaveVideoWithName(video.userId(), video.name())).isFalse();
-        inMemoryVideoLoadingPool.add(video);
+        inMemoryVideoLoadingPool.tryAdd(video);
         assertThat(inMemoryVideoLoadingPool.doesUserHaveVideoWithName(video.userId(), video.name())).isTrue();
     }
-}
\ No newline at end of file
+
+    @Test
+    void tryAdd_VideoWithSameNameIsLoading_DoesNotReserve() {
+        Video video = new Video(new User().getId(), "Video.mp4", null);
+        inMemoryVideoLoadingPool.tryAdd(video);
+
+        assertThat(inMemoryVideoLoadingPool.tryAdd(video)).isEqualTo(LoadingReservation.VIDEO_WITH_SAME_NAME_LOADING);
+        assertThat(inMemoryVideoLoadingPool.canLoadParallelMore(video.userId())).isTrue();
+    }
+
+    @Test
+    void tryAdd_GlobalLimitReached_DoesNotReserve() {
+        inMemoryVideoLoadingPool = new InMemoryVideoLoadingPool(DEFAULT_PARALLEL_LOAD_LIMIT, 1);
+        inMemoryVideoLoadingPool.tryAdd(new Video(new User().getId(), "Video.mp4", null));
+
+        Video otherUserVideo = new Video(new User().getId(), "Video.mp4", null);
+
+        assertThat(inMemoryVideoLoadingPool.tryAdd(otherUserVideo)).isEqualTo(LoadingReservation.GLOBAL_LOAD_LIMIT_EXCEEDED);
+        assertThat(inMemoryVideoLoadingPool.doesUserHaveVideoWithName(otherUserVideo.userId(), otherUserVideo.name())).isFalse();
+    }
+
+    @Test
+    void remove_ReservedVideo_FreesSlotAndName() {
+        Video video = new Video(new User().getId(), "Video.mp4", null);
+        inMemoryVideoLoadingPool.tryAdd(video);
+
+        inMemoryVideoLoadingPool.remove(video);
+
+        assertThat(inMemoryVideoLoadingPool.doesUserHaveVideoWithName(video.userId(), video.name())).isFalse();
+        assertThat(inMemoryVideoLoadingPool.loadsByUserId).isEmpty();
+        assertThat(inMemoryVideoLoadingPool.getGlobalLoadCount()).isZero();
+        assertThat(inMemoryVideoLoadingPool.tryAdd(video)).isEqualTo(LoadingReservation.RESERVED);
+    }
+
+    @Test
+    void tryAdd_ConcurrentReservations_NeverExceedLimit() throws Exception {
+        inMemoryVideoLoadingPool = new InMemoryVideoLoadingPool(DEFAULT_PARALLEL_LOAD_LIMIT, NO_GLOBAL_LOAD_LIMIT);
+        UUID userId = new User().getId();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<LoadingReservation>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            Video video = new Video(userId, "Video" + i + ".mp4", null);
+            futures.add(executorService.submit(() -> {
+                start.await();
+                return inMemoryVideoLoadingPool.tryAdd(video);
+            }));
+        }
+        start.countDown();
+
+        int reserved = 0;
+        for (Future<LoadingReservation> future : futures) {
+            if (future.get(5, TimeUnit.SECONDS) == LoadingReservation.RESERVED) {
+                reserved++;
+            }
+        }
+        executorService.shutdown();
+
+        assertThat(reserved).isEqualTo(DEFAULT_PARALLEL_LOAD_LIMIT);
+    }
+}
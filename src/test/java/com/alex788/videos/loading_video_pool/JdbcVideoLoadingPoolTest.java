@@ -0,0 +1,125 @@
+package com.alex788.videos.loading_video_pool;
+
+import com.alex788.videos.entity.User;
+import com.alex788.videos.entity.Video;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.alex788.videos.loading_video_pool.InMemoryVideoLoadingPool.NO_GLOBAL_LOAD_LIMIT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JdbcVideoLoadingPoolTest {
+
+    static final Duration LEASE_DURATION = Duration.ofMinutes(1);
+
+    JdbcDataSource dataSource;
+    JdbcVideoLoadingPool firstNodePool;
+    JdbcVideoLoadingPool secondNodePool;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        firstNodePool = createPool(2, NO_GLOBAL_LOAD_LIMIT);
+        secondNodePool = createPool(2, NO_GLOBAL_LOAD_LIMIT);
+    }
+
+    @Test
+    void tryAdd_LimitReachedOnOtherNode_DoesNotReserve() {
+        UUID userId = new User().getId();
+        firstNodePool.tryAdd(new Video(userId, "Video1.mp4", null));
+        secondNodePool.tryAdd(new Video(userId, "Video2.mp4", null));
+
+        assertThat(firstNodePool.tryAdd(new Video(userId, "Video3.mp4", null))).isEqualTo(LoadingReservation.PARALLEL_LOAD_LIMIT_EXCEEDED);
+        assertThat(secondNodePool.canLoadParallelMore(userId)).isFalse();
+    }
+
+    @Test
+    void tryAdd_VideoWithSameNameLoadingOnOtherNode_DoesNotReserve() {
+        Video video = new Video(new User().getId(), "Video.mp4", null);
+        firstNodePool.tryAdd(video);
+
+        assertThat(secondNodePool.tryAdd(video)).isEqualTo(LoadingReservation.VIDEO_WITH_SAME_NAME_LOADING);
+        assertThat(secondNodePool.doesUserHaveVideoWithName(video.userId(), video.name())).isTrue();
+    }
+
+    @Test
+    void tryAdd_GlobalLimitReached_DoesNotReserve() {
+        firstNodePool = createPool(2, 1);
+        secondNodePool = createPool(2, 1);
+        firstNodePool.tryAdd(new Video(new User().getId(), "Video.mp4", null));
+
+        assertThat(secondNodePool.tryAdd(new Video(new User().getId(), "Video.mp4", null))).isEqualTo(LoadingReservation.GLOBAL_LOAD_LIMIT_EXCEEDED);
+    }
+
+    @Test
+    void remove_ReservedVideo_FreesSlot() {
+        Video video = new Video(new User().getId(), "Video.mp4", null);
+        firstNodePool.tryAdd(video);
+
+        firstNodePool.remove(video);
+
+        assertThat(secondNodePool.doesUserHaveVideoWithName(video.userId(), video.name())).isFalse();
+        assertThat(secondNodePool.tryAdd(video)).isEqualTo(LoadingReservation.RESERVED);
+    }
+
+    @Test
+    void tryAdd_LeaseOfStoppedNodeExpired_Reserves() {
+        Video video = new Video(new User().getId(), "Video.mp4", null);
+        createPool(2, NO_GLOBAL_LOAD_LIMIT, Duration.ZERO).tryAdd(video);
+
+        assertThat(secondNodePool.doesUserHaveVideoWithName(video.userId(), video.name())).isFalse();
+        assertThat(secondNodePool.tryAdd(video)).isEqualTo(LoadingReservation.RESERVED);
+    }
+
+    @Test
+    void renewLeases_BeforeExpiration_KeepsReservation() throws InterruptedException {
+        Duration leaseDuration = Duration.ofSeconds(1);
+        firstNodePool = createPool(2, NO_GLOBAL_LOAD_LIMIT, leaseDuration);
+        Video video = new Video(new User().getId(), "Video.mp4", null);
+        firstNodePool.tryAdd(video);
+
+        TimeUnit.MILLISECONDS.sleep(leaseDuration.dividedBy(2).plusMillis(100).toMillis());
+        firstNodePool.renewLeases();
+        TimeUnit.MILLISECONDS.sleep(leaseDuration.dividedBy(2).toMillis());
+
+        assertThat(secondNodePool.tryAdd(video)).isEqualTo(LoadingReservation.VIDEO_WITH_SAME_NAME_LOADING);
+    }
+
+    @Test
+    void remove_ReservationExpiredAndTakenByOtherNode_KeepsIt() {
+        Video video = new Video(new User().getId(), "Video.mp4", null);
+        firstNodePool = createPool(2, NO_GLOBAL_LOAD_LIMIT, Duration.ZERO);
+        firstNodePool.tryAdd(video);
+        secondNodePool.tryAdd(video);
+
+        firstNodePool.remove(video);
+
+        assertThat(secondNodePool.doesUserHaveVideoWithName(video.userId(), video.name())).isTrue();
+    }
+
+    @Test
+    void getGlobalLoadCount_ReservationsOnBothNodes_CountsLiveOnes() {
+        firstNodePool.tryAdd(new Video(new User().getId(), "Video.mp4", null));
+        secondNodePool.tryAdd(new Video(new User().getId(), "Video.mp4", null));
+        createPool(2, NO_GLOBAL_LOAD_LIMIT, Duration.ZERO).tryAdd(new Video(new User().getId(), "Video.mp4", null));
+
+        assertThat(firstNodePool.getGlobalLoadCount()).isEqualTo(2);
+    }
+
+    JdbcVideoLoadingPool createPool(int parallelLoadLimit, int globalLoadLimit) {
+        return createPool(parallelLoadLimit, globalLoadLimit, LEASE_DURATION);
+    }
+
+    /**
+     * Leases of a pool with zero lease duration are expired as soon as they're made.
+     */
+    JdbcVideoLoadingPool createPool(int parallelLoadLimit, int globalLoadLimit, Duration leaseDuration) {
+        return new JdbcVideoLoadingPool(dataSource, parallelLoadLimit, globalLoadLimit, leaseDuration, false);
+    }
+}
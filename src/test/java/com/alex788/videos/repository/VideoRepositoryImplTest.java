@@ -3,21 +3,32 @@ package com.alex788.videos.repository;
 import com.alex788.videos.adapter.StorageDriveAdapter;
 import com.alex788.videos.entity.User;
 import com.alex788.videos.entity.Video;
+import com.alex788.videos.exception.InvalidVideoException;
 import com.alex788.videos.exception.ParallelLoadLimitExceededException;
 import com.alex788.videos.exception.VideoWithSameNameAlreadyExistsException;
+import com.alex788.videos.loading_video_pool.LoadingReservation;
 import com.alex788.videos.loading_video_pool.VideoLoadingPool;
 import org.apache.http.impl.io.EmptyInputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 class VideoRepositoryImplTest {
@@ -29,7 +40,7 @@ class VideoRepositoryImplTest {
     @BeforeEach
     void beforeEach() {
         videoLoadingPool = mock(VideoLoadingPool.class);
-        doReturn(true).when(videoLoadingPool).canLoadParallelMore(any());
+        doReturn(LoadingReservation.RESERVED).when(videoLoadingPool).tryAdd(any());
         doReturn(false).when(videoLoadingPool).doesUserHaveVideoWithName(any(), any());
 
         storageDriveAdapter = mock(StorageDriveAdapter.class);
@@ -40,20 +51,33 @@ class VideoRepositoryImplTest {
 
     @Test
     void save_WithCorrectData_Ok() throws ExecutionException, InterruptedException {
-        Video video = new Video(new User().getId(), "Video.mp4", null);
+        Video video = new Video(new User().getId(), "Video.mp4", mp4Content());
 
         Future<?> future = videoRepository.save(video);
 
         future.get();
-        verify(videoLoadingPool, times(1)).add(video);
+        verify(videoLoadingPool, times(1)).tryAdd(video);
         verify(storageDriveAdapter, times(1)).save(any(), any(), any());
         verify(videoLoadingPool, times(1)).remove(video);
     }
 
+    @Test
+    void doesUserHaveVideosWithNames_VideoIsLoading_ReturnsTrueForIt() {
+        UUID userId = new User().getId();
+        doReturn(Set.of("Loading.mp4")).when(videoLoadingPool).getLoadingVideoNames(userId);
+        doReturn(Map.of("Saved.mp4", true, "Loading.mp4", false, "Other.mp4", false))
+                .when(storageDriveAdapter).hasVideos(any(), any(), any());
+
+        Map<String, Boolean> hasVideoByName = videoRepository.doesUserHaveVideosWithNames(userId, List.of("Saved.mp4", "Loading.mp4", "Other.mp4"));
+
+        assertThat(hasVideoByName).containsOnly(entry("Saved.mp4", true), entry("Loading.mp4", true), entry("Other.mp4", false));
+        verify(storageDriveAdapter, never()).hasVideo(any(), any(), any());
+    }
+
     @Test
     void save_VideoLoadingPoolIsFull_ThrowsException() {
-        Video video = new Video(new User().getId(), "Video.mp4", null);
-        doReturn(false).when(videoLoadingPool).canLoadParallelMore(video.userId());
+        Video video = new Video(new User().getId(), "Video.mp4", mp4Content());
+        doReturn(LoadingReservation.PARALLEL_LOAD_LIMIT_EXCEEDED).when(videoLoadingPool).tryAdd(video);
 
         Future<?> future = videoRepository.save(video);
 
@@ -63,24 +87,37 @@ class VideoRepositoryImplTest {
 
     @Test
     void save_VideoWithSameNameIsLoadingByCurrentUser_ThrowsException() {
-        Video video = new Video(new User().getId(), "Video.mp4", null);
-        doReturn(true).when(videoLoadingPool).doesUserHaveVideoWithName(any(), any());
+        Video video = new Video(new User().getId(), "Video.mp4", mp4Content());
+        doReturn(LoadingReservation.VIDEO_WITH_SAME_NAME_LOADING).when(videoLoadingPool).tryAdd(video);
 
         Future<?> future = videoRepository.save(video);
 
         assertThatThrownBy(future::get)
                 .hasCauseExactlyInstanceOf(VideoWithSameNameAlreadyExistsException.class);
+        verify(videoLoadingPool, never()).remove(video);
     }
 
     @Test
     void save_VideoWithSameNameAlreadySavedByCurrentUser_ThrowsException() {
-        Video video = new Video(new User().getId(), "Video.mp4", null);
-        doReturn(true).when(storageDriveAdapter).hasVideo(any(), any(), any());
+        Video video = new Video(new User().getId(), "Video.mp4", mp4Content());
+        doReturn(true).when(storageDriveAdapter).hasVideoBeforeSave(any(), any(), any());
 
         Future<?> future = videoRepository.save(video);
 
         assertThatThrownBy(future::get)
                 .hasCauseExactlyInstanceOf(VideoWithSameNameAlreadyExistsException.class);
+        verify(videoLoadingPool, times(1)).remove(video);
+        verify(storageDriveAdapter, never()).save(any(), any(), any());
+    }
+
+    @Test
+    void save_ContentIsNotMp4_ThrowsExceptionBeforeReservation() {
+        Video video = new Video(new User().getId(), "Video.mp4", new ByteArrayInputStream("<html></html>".getBytes(StandardCharsets.UTF_8)));
+
+        assertThatThrownBy(() -> videoRepository.save(video))
+                .isInstanceOf(InvalidVideoException.class);
+        verify(videoLoadingPool, never()).tryAdd(any());
+        verify(storageDriveAdapter, never()).save(any(), any(), any());
     }
 
     @Test
@@ -105,6 +142,19 @@ class VideoRepositoryImplTest {
         assertThat(videoOpt).isEmpty();
     }
 
+    @Test
+    void findPartByUserAndName_StorageDriveHasVideo_RequestsOnlyRange() {
+        UUID userId = new User().getId();
+        String videoName = "Video.mp4";
+        doReturn(Optional.of(EmptyInputStream.nullInputStream())).when(storageDriveAdapter).getVideoPartStream(any(), anyLong(), anyLong(), any(), any());
+
+        Optional<Video> videoOpt = videoRepository.findPartByUserAndName(userId, videoName, 10, 20);
+
+        assertThat(videoOpt).isPresent();
+        verify(storageDriveAdapter, times(1)).getVideoPartStream(videoName, 10, 20, "VideosApp", userId.toString());
+        verify(storageDriveAdapter, never()).getVideoStream(any(), any(), any());
+    }
+
     @Test
     void doesUserHaveVideoWithName_ThereIsVideoInStorageDriveOrLoadingPool_True() {
         UUID userId = new User().getId();
@@ -121,4 +171,9 @@ class VideoRepositoryImplTest {
 
         assertThat(videoRepository.doesUserHaveVideoWithName(userId, videoName)).isFalse();
     }
-}
\ No newline at end of file
+
+    static InputStream mp4Content() {
+        byte[] fileTypeBox = ByteBuffer.allocate(16).putInt(16).put("ftypisom".getBytes(StandardCharsets.US_ASCII)).putInt(0).array();
+        return new ByteArrayInputStream(fileTypeBox);
+    }
+}
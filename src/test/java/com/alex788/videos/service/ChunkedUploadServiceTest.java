@@ -0,0 +1,70 @@
+package com.alex788.videos.service;
+
+import com.alex788.videos.chunked_upload.ChunkedUploadStore;
+import com.alex788.videos.entity.User;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.exception.UploadQueueFullException;
+import com.alex788.videos.executor.UploadPriorityPolicy;
+import com.alex788.videos.executor.UploadReservation;
+import com.alex788.videos.upload_job.UploadJobStore;
+import com.alex788.videos.video_faststart.FaststartRemuxer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class ChunkedUploadServiceTest {
+
+    @TempDir
+    Path chunkedUploadDirectory;
+    @TempDir
+    Path spoolDirectory;
+
+    VideoService videoService;
+    ChunkedUploadService chunkedUploadService;
+
+    @BeforeEach
+    void beforeEach() {
+        videoService = mock(VideoService.class);
+        UploadJobService uploadJobService = new UploadJobService(new UploadJobStore(spoolDirectory, Duration.ofHours(1)),
+                new FaststartRemuxer(false, 0), videoService, new UploadPriorityPolicy(List.of(), List.of()), new SimpleMeterRegistry());
+        chunkedUploadService = new ChunkedUploadService(new ChunkedUploadStore(chunkedUploadDirectory, Duration.ofHours(1),
+                new FaststartRemuxer(false, 0)), uploadJobService);
+    }
+
+    @Test
+    void complete_UploadQueueFull_KeepsUploadForRetry() {
+        UUID uploadId = chunkedUploadService.start(new User().getId(), "Video.mp4").uploadId();
+        chunkedUploadService.saveChunk(uploadId, 0, new ByteArrayInputStream("012".getBytes(StandardCharsets.UTF_8)));
+        doThrow(new UploadQueueFullException("Too many uploads.", Duration.ofSeconds(1)))
+                .doReturn(mock(UploadReservation.class))
+                .when(videoService).reserveUpload();
+        doAnswer(invocation -> {
+            Video video = invocation.getArgument(0);
+            assertThat(new String(video.inputStream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("012");
+            return CompletableFuture.completedFuture(null);
+        }).when(videoService).save(any(), any(), anyLong(), any());
+
+        assertThatThrownBy(() -> chunkedUploadService.complete(uploadId))
+                .isInstanceOf(UploadQueueFullException.class);
+        assertThat(chunkedUploadService.getStatus(uploadId).committedBytes()).isEqualTo(3);
+
+        chunkedUploadService.complete(uploadId);
+
+        verify(videoService).save(any(), any(), eq(3L), any());
+    }
+}
@@ -0,0 +1,182 @@
+package com.alex788.videos.service;
+
+import com.alex788.videos.entity.UploadJobState;
+import com.alex788.videos.entity.UploadJobStatus;
+import com.alex788.videos.entity.UploadPriority;
+import com.alex788.videos.entity.User;
+import com.alex788.videos.entity.Video;
+import com.alex788.videos.exception.ParallelLoadLimitExceededException;
+import com.alex788.videos.exception.UploadJobNotFoundException;
+import com.alex788.videos.exception.UploadQueueFullException;
+import com.alex788.videos.adapter.StorageDriveAdapter;
+import com.alex788.videos.executor.FairUploadScheduler;
+import com.alex788.videos.executor.UploadPriorityPolicy;
+import com.alex788.videos.executor.UploadReservation;
+import com.alex788.videos.loading_video_pool.LoadingReservation;
+import com.alex788.videos.loading_video_pool.VideoLoadingPool;
+import com.alex788.videos.repository.VideoRepositoryImpl;
+import com.alex788.videos.upload_job.UploadJobStore;
+import com.alex788.videos.video_faststart.FaststartRemuxer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class UploadJobServiceTest {
+
+    @TempDir
+    Path spoolDirectory;
+
+    VideoService videoService;
+    SimpleMeterRegistry meterRegistry;
+    UploadJobService uploadJobService;
+    UUID highPriorityUserId;
+
+    @BeforeEach
+    void beforeEach() {
+        videoService = mock(VideoService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        highPriorityUserId = new User().getId();
+        uploadJobService = new UploadJobService(new UploadJobStore(spoolDirectory, Duration.ofHours(1)), new FaststartRemuxer(false, 0),
+                videoService, new UploadPriorityPolicy(List.of(highPriorityUserId), List.of()), meterRegistry);
+    }
+
+    @Test
+    void submit_SaveNotFinished_JobIsQueued() {
+        doReturn(new CompletableFuture<Void>()).when(videoService).save(any(), any(), anyLong(), any());
+
+        UploadJobStatus status = uploadJobService.submit(video(), 3, mock(UploadReservation.class));
+
+        assertThat(status.state()).isEqualTo(UploadJobState.QUEUED);
+        assertThat(uploadJobService.getStatus(status.jobId()).state()).isEqualTo(UploadJobState.QUEUED);
+    }
+
+    @Test
+    void submit_UploadQueuedInRepository_FileTypeCheckIsNotCountedUntilUploadStarts() {
+        List<Runnable> startedUploads = new ArrayList<>();
+        ExecutorService executorService = mock(ExecutorService.class);
+        doAnswer(invocation -> startedUploads.add(invocation.getArgument(0))).when(executorService).execute(any());
+        VideoLoadingPool videoLoadingPool = mock(VideoLoadingPool.class);
+        doReturn(LoadingReservation.RESERVED).when(videoLoadingPool).tryAdd(any());
+        StorageDriveAdapter storageDriveAdapter = mock(StorageDriveAdapter.class);
+        doAnswer(invocation -> {
+            Video video = invocation.getArgument(0);
+            video.inputStream().readAllBytes();
+            return Optional.empty();
+        }).when(storageDriveAdapter).save(any(), any(), any());
+        VideoRepositoryImpl videoRepository = new VideoRepositoryImpl(videoLoadingPool, storageDriveAdapter,
+                new FairUploadScheduler(executorService, 1, 10, 1024), Duration.ZERO, meterRegistry);
+        uploadJobService = new UploadJobService(new UploadJobStore(spoolDirectory, Duration.ofHours(1)), new FaststartRemuxer(false, 0),
+                new VideoService(videoRepository), new UploadPriorityPolicy(List.of(), List.of()), meterRegistry);
+        byte[] content = ByteBuffer.allocate(16).putInt(16).put("ftypisom".getBytes(StandardCharsets.US_ASCII)).putInt(0).array();
+
+        UploadJobStatus status = uploadJobService.submit(new Video(new User().getId(), "Video.mp4", new ByteArrayInputStream(content)),
+                content.length, videoRepository.reserveUpload());
+
+        UploadJobStatus queuedStatus = uploadJobService.getStatus(status.jobId());
+        assertThat(queuedStatus.state()).isEqualTo(UploadJobState.QUEUED);
+        assertThat(queuedStatus.bytesTransferred()).isZero();
+        assertThat(queuedStatus.bytesPerSecond()).isZero();
+        startedUploads.forEach(Runnable::run);
+        UploadJobStatus finishedStatus = uploadJobService.getStatus(status.jobId());
+        assertThat(finishedStatus.state()).isEqualTo(UploadJobState.SUCCEEDED);
+        assertThat(finishedStatus.bytesTransferred()).isEqualTo(content.length);
+    }
+
+    @Test
+    void submit_SaveSucceeded_JobSucceededWithTransferredBytes() {
+        doAnswer(invocation -> {
+            Video video = invocation.getArgument(0);
+            video.inputStream().readAllBytes();
+            return CompletableFuture.completedFuture(null);
+        }).when(videoService).save(any(), any(), anyLong(), any());
+
+        UploadJobStatus status = uploadJobService.submit(video(), 3, mock(UploadReservation.class));
+
+        UploadJobStatus finishedStatus = uploadJobService.getStatus(status.jobId());
+        assertThat(finishedStatus.state()).isEqualTo(UploadJobState.SUCCEEDED);
+        assertThat(finishedStatus.bytesTransferred()).isEqualTo(3);
+        assertThat(finishedStatus.finishedAt()).isNotNull();
+    }
+
+    @Test
+    void submit_SaveFailed_JobFailedWithReason() {
+        doReturn(CompletableFuture.failedFuture(new ParallelLoadLimitExceededException("Limit exceeded.")))
+                .when(videoService).save(any(), any(), anyLong(), any());
+
+        UploadJobStatus status = uploadJobService.submit(video(), 3, mock(UploadReservation.class));
+
+        UploadJobStatus finishedStatus = uploadJobService.getStatus(status.jobId());
+        assertThat(finishedStatus.state()).isEqualTo(UploadJobState.FAILED);
+        assertThat(finishedStatus.failureReason()).isEqualTo("Limit exceeded.");
+    }
+
+    @Test
+    void submit_SaveFinished_RecordsResultAndBytes() {
+        doAnswer(invocation -> {
+            Video video = invocation.getArgument(0);
+            video.inputStream().readAllBytes();
+            return CompletableFuture.completedFuture(null);
+        }).when(videoService).save(any(), any(), anyLong(), any());
+        uploadJobService.submit(video(), 3, mock(UploadReservation.class));
+
+        doReturn(CompletableFuture.failedFuture(new ParallelLoadLimitExceededException("Limit exceeded.")))
+                .when(videoService).save(any(), any(), anyLong(), any());
+        uploadJobService.submit(video(), 3, mock(UploadReservation.class));
+
+        assertThat(meterRegistry.get("videos.uploads").tag("result", "succeeded").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("videos.uploads").tag("result", "failed").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("videos.upload.bytes").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void submit_UploadQueueFull_ThrowsExceptionAndCountsFailedUpload() {
+        doThrow(new UploadQueueFullException("Too many uploads.", Duration.ofSeconds(1)))
+                .when(videoService).save(any(), any(), anyLong(), any());
+
+        assertThatThrownBy(() -> uploadJobService.submit(video(), 3, mock(UploadReservation.class)))
+                .isInstanceOf(UploadQueueFullException.class);
+        assertThat(meterRegistry.get("videos.uploads").tag("result", "failed").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void submit_UserWithHighPriority_SavesWithPriorityOfUser() {
+        doReturn(new CompletableFuture<Void>()).when(videoService).save(any(), any(), anyLong(), any());
+        UploadReservation reservation = mock(UploadReservation.class);
+
+        uploadJobService.submit(new Video(highPriorityUserId, "Video.mp4", new ByteArrayInputStream(new byte[]{1, 2, 3})), 3, reservation);
+        uploadJobService.submit(video(), 3, reservation);
+
+        verify(videoService).save(any(), eq(UploadPriority.HIGH), eq(3L), eq(reservation));
+        verify(videoService).save(any(), eq(UploadPriority.NORMAL), eq(3L), eq(reservation));
+    }
+
+    @Test
+    void getStatus_UnknownJob_ThrowsException() {
+        assertThatThrownBy(() -> uploadJobService.getStatus(UUID.randomUUID()))
+                .isInstanceOf(UploadJobNotFoundException.class);
+    }
+
+    private static Video video() {
+        return new Video(new User().getId(), "Video.mp4", new ByteArrayInputStream(new byte[]{1, 2, 3}));
+    }
+}
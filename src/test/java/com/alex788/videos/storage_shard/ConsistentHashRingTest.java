@@ -0,0 +1,42 @@
+package com.alex788.videos.storage_shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+    static final int KEYS = 10_000;
+
+    @Test
+    void locate_ShardAdded_MovesOnlyKeysToNewShard() {
+        ConsistentHashRing ring = new ConsistentHashRing(Map.of("first", 1, "second", 1), 100);
+        ConsistentHashRing grownRing = new ConsistentHashRing(Map.of("first", 1, "second", 1, "third", 1), 100);
+
+        int movedKeys = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String shard = ring.locate("VideosApp/" + i);
+            String grownShard = grownRing.locate("VideosApp/" + i);
+            if (!shard.equals(grownShard)) {
+                assertThat(grownShard).isEqualTo("third");
+                movedKeys++;
+            }
+        }
+        assertThat(movedKeys).isBetween(KEYS / 5, KEYS / 2);
+    }
+
+    @Test
+    void locate_ShardWithDoubleWeight_GetsAboutTwiceAsManyKeys() {
+        ConsistentHashRing ring = new ConsistentHashRing(Map.of("first", 2, "second", 1), 100);
+
+        int firstShardKeys = 0;
+        for (int i = 0; i < KEYS; i++) {
+            if (ring.locate("VideosApp/" + i).equals("first")) {
+                firstShardKeys++;
+            }
+        }
+        assertThat(firstShardKeys).isBetween(KEYS * 55 / 100, KEYS * 78 / 100);
+    }
+}
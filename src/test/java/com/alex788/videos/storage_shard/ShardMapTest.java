@@ -0,0 +1,107 @@
+package com.alex788.videos.storage_shard;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShardMapTest {
+
+    static final ShardKey FOLDER_KEY = ShardKey.ofFolder(List.of("VideosApp", "user"));
+
+    JdbcDataSource dataSource;
+    ShardMap shardMap;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        shardMap = new ShardMap(dataSource);
+    }
+
+    @Test
+    void assign_KeyAssignedOnOtherNode_ReturnsFirstAssignment() {
+        new ShardMap(dataSource).assign(FOLDER_KEY, "first");
+
+        ShardAssignment assignment = shardMap.assign(FOLDER_KEY, "second");
+
+        assertThat(assignment).isEqualTo(new ShardAssignment(FOLDER_KEY, "first", null));
+        assertThat(shardMap.countByShard("second")).isZero();
+    }
+
+    @Test
+    void find_VideoKeyInFolderOfFolderKey_KeepsThemApart() {
+        ShardKey videoKey = ShardKey.ofVideo(List.of("VideosApp", "user"), "Video.mp4");
+        shardMap.assign(FOLDER_KEY, "first");
+        shardMap.assign(videoKey, "second");
+
+        assertThat(shardMap.find(FOLDER_KEY).orElseThrow().shard()).isEqualTo("first");
+        assertThat(shardMap.find(videoKey).orElseThrow()).isEqualTo(new ShardAssignment(videoKey, "second", null));
+        assertThat(shardMap.find(ShardKey.ofFolder(List.of("VideosApp", "other")))).isEmpty();
+    }
+
+    @Test
+    void startMigration_ToShardOfKey_DoesNotMarkIt() {
+        shardMap.assign(FOLDER_KEY, "first");
+
+        shardMap.startMigration(FOLDER_KEY, "first");
+
+        assertThat(shardMap.find(FOLDER_KEY).orElseThrow().isMigrating()).isFalse();
+        assertThat(shardMap.countMigrating()).isZero();
+    }
+
+    @Test
+    void completeMigration_MigrationReplacedMeanwhile_KeepsKeyOnItsShard() {
+        shardMap.assign(FOLDER_KEY, "first");
+        shardMap.startMigration(FOLDER_KEY, "second");
+        shardMap.startMigration(FOLDER_KEY, "third");
+
+        shardMap.completeMigration(FOLDER_KEY, "second");
+        assertThat(shardMap.find(FOLDER_KEY).orElseThrow()).isEqualTo(new ShardAssignment(FOLDER_KEY, "first", "third"));
+
+        shardMap.completeMigration(FOLDER_KEY, "third");
+        assertThat(shardMap.find(FOLDER_KEY).orElseThrow()).isEqualTo(new ShardAssignment(FOLDER_KEY, "third", null));
+        assertThat(shardMap.countMigrating()).isZero();
+    }
+
+    @Test
+    void findPage_AfterLastKey_ReturnsNextKeysInOrder() {
+        ShardKey otherFolderKey = ShardKey.ofFolder(List.of("VideosApp", "other"));
+        ShardKey firstVideoKey = ShardKey.ofVideo(List.of("VideosApp", "blobs"), "a");
+        ShardKey secondVideoKey = ShardKey.ofVideo(List.of("VideosApp", "blobs"), "b");
+        for (ShardKey key : List.of(FOLDER_KEY, secondVideoKey, otherFolderKey, firstVideoKey)) {
+            shardMap.assign(key, "first");
+        }
+
+        List<ShardAssignment> firstPage = shardMap.findPage(null, 2);
+        List<ShardAssignment> secondPage = shardMap.findPage(firstPage.get(1).key(), 2);
+
+        assertThat(firstPage).extracting(ShardAssignment::key).containsExactly(firstVideoKey, secondVideoKey);
+        assertThat(secondPage).extracting(ShardAssignment::key).containsExactly(otherFolderKey, FOLDER_KEY);
+        assertThat(shardMap.findPage(secondPage.get(1).key(), 2)).isEmpty();
+    }
+
+    @Test
+    void tryAcquireRebalanceLease_HeldByOtherNode_DoesNotTakeItUntilReleased() {
+        assertThat(shardMap.tryAcquireRebalanceLease("first", Duration.ofMinutes(1))).isTrue();
+
+        assertThat(shardMap.tryAcquireRebalanceLease("second", Duration.ofMinutes(1))).isFalse();
+        assertThat(shardMap.tryAcquireRebalanceLease("first", Duration.ofMinutes(1))).isTrue();
+
+        shardMap.releaseRebalanceLease("first");
+        assertThat(shardMap.tryAcquireRebalanceLease("second", Duration.ofMinutes(1))).isTrue();
+    }
+
+    @Test
+    void tryAcquireRebalanceLease_LeaseOfOtherNodeExpired_TakesItOver() {
+        shardMap.tryAcquireRebalanceLease("first", Duration.ZERO);
+
+        assertThat(shardMap.tryAcquireRebalanceLease("second", Duration.ofMinutes(1))).isTrue();
+        assertThat(shardMap.tryAcquireRebalanceLease("first", Duration.ofMinutes(1))).isFalse();
+    }
+}
@@ -0,0 +1,113 @@
+package com.alex788.videos.storage_shard;
+
+import com.alex788.videos.adapter.LocalStorageDriveAdapter;
+import com.alex788.videos.adapter.StorageDriveAdapter;
+import com.alex788.videos.entity.Video;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class ShardRebalancerTest {
+
+    static final byte[] CONTENT = {1, 2, 3};
+
+    @TempDir
+    Path firstRootDirectory;
+    @TempDir
+    Path secondRootDirectory;
+
+    LocalStorageDriveAdapter firstStorage;
+    LocalStorageDriveAdapter secondStorage;
+    ShardMap shardMap;
+    ShardRebalancer shardRebalancer;
+
+    @BeforeEach
+    void beforeEach() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        shardMap = new ShardMap(dataSource);
+        firstStorage = new LocalStorageDriveAdapter(firstRootDirectory);
+        secondStorage = new LocalStorageDriveAdapter(secondRootDirectory);
+        shardRebalancer = new ShardRebalancer(Map.of("first", firstStorage, "second", secondStorage),
+                new ConsistentHashRing(Map.of("second", 1), 100), shardMap, Duration.ZERO, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void rebalance_FolderOnOtherShardThanRing_CopiesVideosAndMovesFolder() throws IOException {
+        ShardKey key = ShardKey.ofFolder(List.of("VideosApp", "user"));
+        shardMap.assign(key, "first");
+        firstStorage.save(video("First.mp4"), "VideosApp", "user");
+        firstStorage.save(video("Second.mp4"), "VideosApp", "user");
+
+        shardRebalancer.rebalance();
+
+        assertThat(shardMap.find(key).orElseThrow()).isEqualTo(new ShardAssignment(key, "second", null));
+        for (String videoName : List.of("First.mp4", "Second.mp4")) {
+            try (InputStream inputStream = secondStorage.getVideoStream(videoName, "VideosApp", "user").orElseThrow()) {
+                assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+            }
+        }
+    }
+
+    @Test
+    void rebalance_SpreadVideoOnOtherShardThanRing_CopiesOnlyIt() {
+        ShardKey key = ShardKey.ofVideo(List.of("VideosApp", "blobs"), "First.mp4");
+        shardMap.assign(key, "first");
+        firstStorage.save(video("First.mp4"), "VideosApp", "blobs");
+        firstStorage.save(video("Second.mp4"), "VideosApp", "blobs");
+
+        shardRebalancer.rebalance();
+
+        assertThat(shardMap.find(key).orElseThrow().shard()).isEqualTo("second");
+        assertThat(secondStorage.hasVideos(List.of("First.mp4", "Second.mp4"), "VideosApp", "blobs"))
+                .containsExactly(Map.entry("First.mp4", true), Map.entry("Second.mp4", false));
+    }
+
+    @Test
+    void rebalance_UserFolder_CopiesVideosWithUserId() {
+        UUID userId = UUID.randomUUID();
+        ShardKey key = ShardKey.ofFolder(List.of("VideosApp", userId.toString()));
+        shardMap.assign(key, "first");
+        firstStorage.save(video("First.mp4"), "VideosApp", userId.toString());
+        StorageDriveAdapter targetStorage = spy(secondStorage);
+        shardRebalancer = new ShardRebalancer(Map.of("first", firstStorage, "second", targetStorage),
+                new ConsistentHashRing(Map.of("second", 1), 100), shardMap, Duration.ZERO, Duration.ofMinutes(1));
+
+        shardRebalancer.rebalance();
+
+        ArgumentCaptor<Video> videoCaptor = ArgumentCaptor.forClass(Video.class);
+        verify(targetStorage).save(videoCaptor.capture(), eq("VideosApp"), eq(userId.toString()));
+        assertThat(videoCaptor.getValue().userId()).isEqualTo(userId);
+    }
+
+    @Test
+    void rebalance_LeaseHeldByOtherNode_DoesNotMigrate() {
+        ShardKey key = ShardKey.ofFolder(List.of("VideosApp", "user"));
+        shardMap.assign(key, "first");
+        shardMap.tryAcquireRebalanceLease("other-node", Duration.ofMinutes(1));
+
+        shardRebalancer.rebalance();
+
+        assertThat(shardMap.find(key).orElseThrow()).isEqualTo(new ShardAssignment(key, "first", null));
+    }
+
+    static Video video(String name) {
+        return new Video(UUID.randomUUID(), name, new ByteArrayInputStream(CONTENT));
+    }
+}
@@ -0,0 +1,104 @@
+package com.alex788.videos.video_cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VideoBlockCacheTest {
+
+    static final byte[] CONTENT = "0123456789abcdefghij".getBytes(StandardCharsets.UTF_8);
+
+    VideoBlockCache videoBlockCache;
+    VideoCacheKey key;
+    List<String> fetchedRanges;
+
+    @BeforeEach
+    void beforeEach() {
+        videoBlockCache = new VideoBlockCache(1024 * 1024, 4, 2, Runnable::run, Runnable::run);
+        key = new VideoCacheKey(List.of("VideosApp", "user"), "Video.mp4", "md5");
+        fetchedRanges = new ArrayList<>();
+    }
+
+    @Test
+    void open_WholeVideo_FetchesEveryBlockOnceWithRangedReads() throws IOException {
+        try (InputStream inputStream = videoBlockCache.open(key, CONTENT.length, 0, CONTENT.length - 1, this::fetch)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+
+        assertThat(fetchedRanges).containsExactly("0-3", "4-7", "8-11", "12-15", "16-19");
+    }
+
+    @Test
+    void open_PartOfCachedVideo_ReadsCachedBlocks() throws IOException {
+        try (InputStream inputStream = videoBlockCache.open(key, CONTENT.length, 0, CONTENT.length - 1, this::fetch)) {
+            inputStream.readAllBytes();
+        }
+        fetchedRanges.clear();
+
+        try (InputStream inputStream = videoBlockCache.open(key, CONTENT.length, 6, 13, this::fetch)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(Arrays.copyOfRange(CONTENT, 6, 14));
+        }
+        assertThat(fetchedRanges).isEmpty();
+    }
+
+    @Test
+    void open_Part_DoesNotReadAheadPastIt() throws IOException {
+        try (InputStream inputStream = videoBlockCache.open(key, CONTENT.length, 5, 9, this::fetch)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(Arrays.copyOfRange(CONTENT, 5, 10));
+        }
+
+        assertThat(fetchedRanges).containsExactly("4-7", "8-11");
+    }
+
+    @Test
+    void read_VideoDeletedWhileRead_ThrowsException() throws IOException {
+        try (InputStream inputStream = videoBlockCache.open(key, CONTENT.length, 0, CONTENT.length - 1, (from, to) -> {
+            throw new IOException("Video was deleted.");
+        })) {
+            assertThatThrownBy(inputStream::readAllBytes)
+                    .isInstanceOf(IOException.class);
+        }
+        assertThat(videoBlockCache.size()).isEqualTo(0);
+    }
+
+    @Test
+    void read_PrefetchesStillQueued_DemandedBlocksAreFetchedFirst() throws IOException {
+        List<Runnable> queuedPrefetches = new ArrayList<>();
+        videoBlockCache = new VideoBlockCache(1024 * 1024, 4, 2, Runnable::run, queuedPrefetches::add);
+
+        try (InputStream inputStream = videoBlockCache.open(key, CONTENT.length, 0, CONTENT.length - 1, this::fetch)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+
+        assertThat(fetchedRanges).containsExactly("0-3", "4-7", "8-11", "12-15", "16-19");
+        queuedPrefetches.forEach(Runnable::run);
+        assertThat(fetchedRanges).hasSize(5);
+    }
+
+    @Test
+    void read_PrefetchesRejected_ReadsDemandedBlocks() throws IOException {
+        videoBlockCache = new VideoBlockCache(1024 * 1024, 4, 2, Runnable::run, runnable -> {
+            throw new RejectedExecutionException("Prefetch queue is full.");
+        });
+
+        try (InputStream inputStream = videoBlockCache.open(key, CONTENT.length, 0, CONTENT.length - 1, this::fetch)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+    }
+
+    InputStream fetch(long from, long to) {
+        fetchedRanges.add(from + "-" + to);
+        return new ByteArrayInputStream(CONTENT, (int) from, (int) (to - from + 1));
+    }
+}
@@ -0,0 +1,167 @@
+package com.alex788.videos.video_cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VideoDiskCacheTest {
+
+    static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    VideoDiskCache videoDiskCache;
+    VideoCacheKey key;
+
+    @BeforeEach
+    void beforeEach() {
+        videoDiskCache = new VideoDiskCache(directory, 1024 * 1024, Duration.ofMinutes(1));
+        key = new VideoCacheKey(List.of("VideosApp", "user"), "Video.mp4", "md5");
+    }
+
+    @Test
+    void get_AfterVideoWasReadCompletely_ReturnsCachedVideo() throws IOException {
+        try (InputStream inputStream = videoDiskCache.putWhileReading(key, CONTENT.length, new ByteArrayInputStream(CONTENT))) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+
+        Optional<InputStream> cachedOpt = videoDiskCache.get(key);
+        assertThat(cachedOpt).isPresent();
+        try (InputStream cached = cachedOpt.get()) {
+            assertThat(cached.readAllBytes()).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void get_VideoWasNotReadCompletely_ReturnsNothing() throws IOException {
+        try (InputStream inputStream = videoDiskCache.putWhileReading(key, CONTENT.length, new ByteArrayInputStream(CONTENT))) {
+            assertThat(inputStream.read(new byte[4])).isEqualTo(4);
+        }
+
+        assertThat(videoDiskCache.get(key)).isEmpty();
+        assertThat(directory.toFile().list()).isEmpty();
+    }
+
+    @Test
+    void get_ReadSizeDiffersFromExpected_ReturnsNothing() throws IOException {
+        try (InputStream inputStream = videoDiskCache.putWhileReading(key, CONTENT.length + 1, new ByteArrayInputStream(CONTENT))) {
+            inputStream.readAllBytes();
+        }
+
+        assertThat(videoDiskCache.get(key)).isEmpty();
+    }
+
+    @Test
+    void getPart_CachedVideo_ReturnsOnlyRequestedBytes() throws IOException {
+        try (InputStream inputStream = videoDiskCache.putWhileReading(key, CONTENT.length, new ByteArrayInputStream(CONTENT))) {
+            inputStream.readAllBytes();
+        }
+
+        Optional<InputStream> partOpt = videoDiskCache.getPart(key, 3, 5);
+        assertThat(partOpt).isPresent();
+        try (InputStream part = partOpt.get()) {
+            assertThat(new String(part.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("345");
+        }
+    }
+
+    @Test
+    void get_VideoLargerThanQuarterOfMaxSize_ReturnsCachedVideo() throws IOException {
+        videoDiskCache = new VideoDiskCache(directory, 100 * 1024, Duration.ofMinutes(1));
+        byte[] content = new byte[30 * 1024];
+        try (InputStream inputStream = videoDiskCache.putWhileReading(key, content.length, new ByteArrayInputStream(content))) {
+            inputStream.readAllBytes();
+        }
+
+        Optional<InputStream> cachedOpt = videoDiskCache.get(key);
+
+        assertThat(cachedOpt).isPresent();
+        try (InputStream cached = cachedOpt.get()) {
+            assertThat(cached.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void invalidate_CachedVideo_RemovesAllVersions() throws IOException {
+        VideoCacheKey otherVersionKey = new VideoCacheKey(key.path(), key.videoName(), "other md5");
+        for (VideoCacheKey cacheKey : List.of(key, otherVersionKey)) {
+            try (InputStream inputStream = videoDiskCache.putWhileReading(cacheKey, CONTENT.length, new ByteArrayInputStream(CONTENT))) {
+                inputStream.readAllBytes();
+            }
+        }
+
+        videoDiskCache.invalidate(key.path(), key.videoName());
+
+        assertThat(videoDiskCache.get(key)).isEmpty();
+        assertThat(videoDiskCache.get(otherVersionKey)).isEmpty();
+        assertThat(directory.toFile().list()).isEmpty();
+    }
+
+    @Test
+    void getValidated_VideoCachedWithinTtl_ReturnsItWithoutKey() throws IOException {
+        put(key);
+
+        Optional<InputStream> cachedOpt = videoDiskCache.getValidated(key.path(), key.videoName());
+        assertThat(cachedOpt).isPresent();
+        try (InputStream cached = cachedOpt.get()) {
+            assertThat(cached.readAllBytes()).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void getValidated_TtlPassed_ReturnsNothing() throws IOException {
+        videoDiskCache = new VideoDiskCache(directory, 1024 * 1024, Duration.ZERO);
+        put(key);
+
+        assertThat(videoDiskCache.getValidated(key.path(), key.videoName())).isEmpty();
+        assertThat(videoDiskCache.get(key)).isPresent();
+    }
+
+    @Test
+    void constructor_DirectoryOfPreviousRun_KeepsCachedVideosAndForeignFiles() throws IOException {
+        put(key);
+        Path foreignFile = Files.writeString(directory.resolve("notes.txt"), "notes");
+        Path subdirectory = Files.createDirectories(directory.resolve("nested"));
+        Files.writeString(subdirectory.resolve("file"), "file");
+        Path leftTempFile = Files.writeString(directory.resolve(key.toFileName() + "123.part"), "0123");
+
+        VideoDiskCache reloadedVideoDiskCache = new VideoDiskCache(directory, 1024 * 1024, Duration.ofMinutes(1));
+
+        assertThat(reloadedVideoDiskCache.size()).isEqualTo(1);
+        try (InputStream cached = reloadedVideoDiskCache.get(key).orElseThrow()) {
+            assertThat(cached.readAllBytes()).isEqualTo(CONTENT);
+        }
+        assertThat(foreignFile).exists();
+        assertThat(subdirectory.resolve("file")).exists();
+        assertThat(leftTempFile).doesNotExist();
+    }
+
+    @Test
+    void constructor_VideoTruncated_DeletesIt() throws IOException {
+        put(key);
+        Files.write(directory.resolve(key.toFileName()), new byte[]{1});
+
+        VideoDiskCache reloadedVideoDiskCache = new VideoDiskCache(directory, 1024 * 1024, Duration.ofMinutes(1));
+
+        assertThat(reloadedVideoDiskCache.get(key)).isEmpty();
+        assertThat(directory.toFile().list()).isEmpty();
+    }
+
+    void put(VideoCacheKey cacheKey) throws IOException {
+        try (InputStream inputStream = videoDiskCache.putWhileReading(cacheKey, CONTENT.length, new ByteArrayInputStream(CONTENT))) {
+            inputStream.readAllBytes();
+        }
+    }
+}
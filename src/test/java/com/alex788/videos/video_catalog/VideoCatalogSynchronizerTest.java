@@ -0,0 +1,59 @@
+package com.alex788.videos.video_catalog;
+
+import com.alex788.videos.adapter.StorageChange;
+import com.alex788.videos.adapter.StorageChangeFeed;
+import com.alex788.videos.adapter.StorageChangePage;
+import com.alex788.videos.entity.VideoInfo;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class VideoCatalogSynchronizerTest {
+
+    StorageChangeFeed storageChangeFeed;
+    VideoCatalog videoCatalog;
+    VideoCatalogSynchronizer videoCatalogSynchronizer;
+
+    @BeforeEach
+    void beforeEach() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        videoCatalog = new VideoCatalog(dataSource);
+        storageChangeFeed = mock(StorageChangeFeed.class);
+        videoCatalogSynchronizer = new VideoCatalogSynchronizer(videoCatalog, storageChangeFeed);
+    }
+
+    @Test
+    void synchronize_WithoutPageToken_ForgetsHydratedFolders() {
+        videoCatalog.hydrate(List.of("VideosApp"), "folderId", List.of());
+        doReturn("startToken").when(storageChangeFeed).getStartPageToken();
+
+        videoCatalogSynchronizer.synchronize();
+
+        assertThat(videoCatalog.getPageToken()).contains("startToken");
+        assertThat(videoCatalog.isHydrated(List.of("VideosApp"))).isFalse();
+    }
+
+    @Test
+    void synchronize_SeveralPages_AppliesAllAndSavesNewStartToken() {
+        videoCatalog.reset("firstToken");
+        videoCatalog.hydrate(List.of("VideosApp"), "folderId", List.of());
+        VideoInfo first = new VideoInfo("First.mp4", 1, "firstId", null, null);
+        VideoInfo second = new VideoInfo("Second.mp4", 2, "secondId", null, null);
+        doReturn(new StorageChangePage(List.of(new StorageChange("firstId", "folderId", first)), "secondToken", null))
+                .when(storageChangeFeed).getChanges("firstToken");
+        doReturn(new StorageChangePage(List.of(new StorageChange("secondId", "folderId", second)), null, "newStartToken"))
+                .when(storageChangeFeed).getChanges("secondToken");
+
+        videoCatalogSynchronizer.synchronize();
+
+        assertThat(videoCatalog.findPage(List.of("VideosApp"), null, 10)).containsExactly(first, second);
+        assertThat(videoCatalog.getPageToken()).contains("newStartToken");
+    }
+}
@@ -0,0 +1,183 @@
+package com.alex788.videos.video_download;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SharedVideoDownloadsTest {
+
+    static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    ExecutorService transferExecutor;
+    SharedVideoDownloads<String> sharedVideoDownloads;
+    AtomicInteger openedSources;
+
+    @BeforeEach
+    void beforeEach() {
+        transferExecutor = Executors.newCachedThreadPool();
+        sharedVideoDownloads = new SharedVideoDownloads<>(directory, 1024, 4, transferExecutor);
+        openedSources = new AtomicInteger();
+    }
+
+    @AfterEach
+    void afterEach() {
+        transferExecutor.shutdownNow();
+    }
+
+    @Test
+    void open_DownloadOfVideoRunning_StreamsFromIt() throws IOException, InterruptedException {
+        CountDownLatch sourceReleased = new CountDownLatch(1);
+
+        try (InputStream firstInputStream = sharedVideoDownloads.open("Video.mp4", () -> source(sourceReleased)).orElseThrow();
+             InputStream secondInputStream = sharedVideoDownloads.open("Video.mp4", () -> source(sourceReleased)).orElseThrow()) {
+            sourceReleased.countDown();
+
+            assertThat(firstInputStream.readAllBytes()).isEqualTo(CONTENT);
+            assertThat(secondInputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+        assertThat(openedSources.get()).isEqualTo(1);
+        awaitSpoolFilesDeleted();
+    }
+
+    @Test
+    void open_DownloadOfVideoEnded_StartsNewOne() throws IOException, InterruptedException {
+        try (InputStream inputStream = sharedVideoDownloads.open("Video.mp4", () -> source(new CountDownLatch(0))).orElseThrow()) {
+            inputStream.readAllBytes();
+        }
+        awaitSpoolFilesDeleted();
+
+        try (InputStream inputStream = sharedVideoDownloads.open("Video.mp4", () -> source(new CountDownLatch(0))).orElseThrow()) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+        assertThat(openedSources.get()).isEqualTo(2);
+    }
+
+    @Test
+    void open_VideoMissing_ReturnsNothing() throws IOException {
+        assertThat(sharedVideoDownloads.open("Video.mp4", Optional::empty)).isEmpty();
+
+        assertThat(sharedVideoDownloads.size()).isEqualTo(0);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    void read_SourceFails_ThrowsException() throws IOException {
+        InputStream failingSource = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset.");
+            }
+        };
+
+        try (InputStream inputStream = sharedVideoDownloads.open("Video.mp4", () -> Optional.of(failingSource)).orElseThrow()) {
+            assertThatThrownBy(inputStream::readAllBytes)
+                    .isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    void open_SpoolFull_StreamsFromSourceUnshared() throws IOException, InterruptedException {
+        sharedVideoDownloads = new SharedVideoDownloads<>(directory, CONTENT.length, 4, transferExecutor);
+        InputStream firstInputStream = sharedVideoDownloads.open("First.mp4", () -> source(new CountDownLatch(0))).orElseThrow();
+        assertThat(firstInputStream.readAllBytes()).isEqualTo(CONTENT);
+
+        try (InputStream secondInputStream = sharedVideoDownloads.open("Second.mp4", () -> source(new CountDownLatch(0))).orElseThrow()) {
+            assertThat(secondInputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+        assertThat(sharedVideoDownloads.getSpooledBytes()).isEqualTo(CONTENT.length);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isLessThanOrEqualTo(1);
+        }
+
+        firstInputStream.close();
+        awaitSpoolFilesDeleted();
+        assertThat(sharedVideoDownloads.getSpooledBytes()).isZero();
+    }
+
+    @Test
+    void open_MaxDownloadsRunning_StreamsFromSourceUnshared() throws IOException {
+        sharedVideoDownloads = new SharedVideoDownloads<>(directory, 1024, 1, transferExecutor);
+        CountDownLatch released = new CountDownLatch(1);
+        InputStream firstInputStream = sharedVideoDownloads.open("First.mp4", () -> source(released)).orElseThrow();
+
+        try (InputStream secondInputStream = sharedVideoDownloads.open("Second.mp4", () -> source(new CountDownLatch(0))).orElseThrow()) {
+            assertThat(secondInputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+        assertThat(sharedVideoDownloads.size()).isEqualTo(1);
+
+        released.countDown();
+        try (firstInputStream) {
+            assertThat(firstInputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void constructor_DirectoryOfPreviousRun_DeletesOnlySpoolFiles() throws IOException {
+        Path spoolFile = Files.writeString(directory.resolve("video123.part"), "0123");
+        Path foreignFile = Files.writeString(directory.resolve("notes.txt"), "notes");
+        Path subdirectory = Files.createDirectories(directory.resolve("nested"));
+
+        new SharedVideoDownloads<String>(directory, 1024, 4, transferExecutor);
+
+        assertThat(spoolFile).doesNotExist();
+        assertThat(foreignFile).exists();
+        assertThat(subdirectory).exists();
+    }
+
+    Optional<InputStream> source(CountDownLatch released) {
+        openedSources.incrementAndGet();
+        return Optional.of(new ByteArrayInputStream(CONTENT) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+                return super.read(b, off, len);
+            }
+        });
+    }
+
+    /**
+     * The transfer deletes its spool file after the last byte reached the readers.
+     */
+    void awaitSpoolFilesDeleted() throws IOException, InterruptedException {
+        for (int i = 0; i < 100 && sharedVideoDownloads.size() > 0; i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        for (int i = 0; i < 100; i++) {
+            try (Stream<Path> files = Files.list(directory)) {
+                if (files.count() == 0) {
+                    return;
+                }
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        throw new AssertionError("Spool files weren't deleted.");
+    }
+}
@@ -0,0 +1,100 @@
+package com.alex788.videos.video_faststart;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FaststartRemuxerTest {
+
+    static final byte[] MEDIA_DATA = "first chunk of samples".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void openSpool_MovieBoxAfterMediaData_MovesItAndShiftsChunkOffsets() throws IOException {
+        byte[] fileType = fileTypeBox();
+        byte[] mediaData = box("mdat", MEDIA_DATA);
+        long chunkOffset = fileType.length + 8;
+        byte[] movie = movieBox(chunkOffset);
+        Path spoolPath = spool(concat(fileType, mediaData, movie));
+
+        byte[] remuxed;
+        try (InputStream inputStream = new FaststartRemuxer(true, 1024 * 1024).openSpool(spoolPath)) {
+            remuxed = inputStream.readAllBytes();
+        }
+
+        assertThat(remuxed.length).isEqualTo(fileType.length + mediaData.length + movie.length);
+        assertThat(new String(remuxed, fileType.length + 4, 4, StandardCharsets.US_ASCII)).isEqualTo("moov");
+        long shiftedChunkOffset = ByteBuffer.wrap(remuxed).getInt(fileType.length + movie.length - 4);
+        assertThat(shiftedChunkOffset).isEqualTo(chunkOffset + movie.length);
+        assertThat(Arrays.copyOfRange(remuxed, (int) shiftedChunkOffset, (int) shiftedChunkOffset + MEDIA_DATA.length)).isEqualTo(MEDIA_DATA);
+        assertThat(Files.exists(spoolPath)).isFalse();
+    }
+
+    @Test
+    void openSpool_MovieBoxBeforeMediaData_ReturnsFileAsItIs() throws IOException {
+        byte[] fileType = fileTypeBox();
+        int movieSize = movieBox(0).length;
+        byte[] content = concat(fileType, movieBox(fileType.length + movieSize + 8), box("mdat", MEDIA_DATA));
+        Path spoolPath = spool(content);
+
+        try (InputStream inputStream = new FaststartRemuxer(true, 1024 * 1024).openSpool(spoolPath)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void openSpool_Disabled_ReturnsFileAsItIs() throws IOException {
+        byte[] fileType = fileTypeBox();
+        byte[] content = concat(fileType, box("mdat", MEDIA_DATA), movieBox(fileType.length + 8));
+        Path spoolPath = spool(content);
+
+        try (InputStream inputStream = new FaststartRemuxer(false, 1024 * 1024).openSpool(spoolPath)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(Files.exists(spoolPath)).isFalse();
+    }
+
+    Path spool(byte[] content) throws IOException {
+        return Files.write(directory.resolve("video.part"), content);
+    }
+
+    static byte[] fileTypeBox() {
+        return box("ftyp", ByteBuffer.allocate(8).put(ascii("isom")).putInt(0x200).array());
+    }
+
+    /**
+     * Movie with one track of one chunk, the chunk offset table is the last box.
+     */
+    static byte[] movieBox(long chunkOffset) {
+        byte[] chunkOffsets = ByteBuffer.allocate(12).putInt(0).putInt(1).putInt((int) chunkOffset).array();
+        return box("moov", box("trak", box("mdia", box("minf", box("stbl", box("stco", chunkOffsets))))));
+    }
+
+    static byte[] box(String type, byte[] body) {
+        return ByteBuffer.allocate(8 + body.length).putInt(8 + body.length).put(ascii(type)).put(body).array();
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            outputStream.writeBytes(part);
+        }
+        return outputStream.toByteArray();
+    }
+
+    static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
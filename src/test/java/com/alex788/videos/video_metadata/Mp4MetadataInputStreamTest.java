@@ -0,0 +1,112 @@
+package com.alex788.videos.video_metadata;
+
+import com.alex788.videos.entity.VideoMetadata;
+import com.alex788.videos.exception.InvalidVideoException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Mp4MetadataInputStreamTest {
+
+    @Test
+    void read_MovieBoxAfterMediaData_ReadsMetadata() throws IOException {
+        byte[] content = concat(fileTypeBox(), box("mdat", new byte[100_000]), movieBox());
+        Mp4MetadataInputStream inputStream = new Mp4MetadataInputStream(new ByteArrayInputStream(content));
+
+        inputStream.checkFileType();
+        byte[] readContent = readInSmallChunks(inputStream);
+
+        assertThat(readContent).isEqualTo(content);
+        long bitrate = content.length * 8L * 1000 / 5_000;
+        assertThat(inputStream.getMetadata()).contains(new VideoMetadata(5_000L, 1280, 720, "avc1", "mp4a", bitrate));
+    }
+
+    @Test
+    void read_StreamNotReadToEnd_MetadataHasNoBitrate() throws IOException {
+        byte[] content = concat(fileTypeBox(), movieBox(), box("mdat", new byte[1000]));
+        Mp4MetadataInputStream inputStream = new Mp4MetadataInputStream(new ByteArrayInputStream(content));
+
+        inputStream.readNBytes(content.length - 100);
+
+        Optional<VideoMetadata> metadataOpt = inputStream.getMetadata();
+        assertThat(metadataOpt).isPresent();
+        assertThat(metadataOpt.get().bitrate()).isNull();
+    }
+
+    @Test
+    void getMetadata_NoMovieBox_ReturnsNothing() throws IOException {
+        Mp4MetadataInputStream inputStream = new Mp4MetadataInputStream(new ByteArrayInputStream(concat(fileTypeBox(), box("mdat", new byte[10]))));
+
+        inputStream.readAllBytes();
+
+        assertThat(inputStream.getMetadata()).isEmpty();
+    }
+
+    @Test
+    void checkFileType_NotMp4_ThrowsException() {
+        Mp4MetadataInputStream inputStream = new Mp4MetadataInputStream(new ByteArrayInputStream("GIF89a, not a video".getBytes(StandardCharsets.US_ASCII)));
+
+        assertThatThrownBy(inputStream::checkFileType)
+                .isInstanceOf(InvalidVideoException.class);
+    }
+
+    static byte[] readInSmallChunks(Mp4MetadataInputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int count;
+        while ((count = inputStream.read(buffer)) >= 0) {
+            outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+
+    static byte[] fileTypeBox() {
+        return box("ftyp", ByteBuffer.allocate(8).put(ascii("isom")).putInt(0x200).array());
+    }
+
+    /**
+     * Movie of 5 seconds with a 1280x720 AVC video track and an AAC audio track.
+     */
+    static byte[] movieBox() {
+        byte[] movieHeader = ByteBuffer.allocate(100)
+                .putInt(0).putInt(0).putInt(0).putInt(1000).putInt(5000)
+                .array();
+        byte[] videoTrackHeader = ByteBuffer.allocate(84)
+                .position(76).putInt(1280 << 16).putInt(720 << 16)
+                .array();
+        return box("moov", concat(
+                box("mvhd", movieHeader),
+                box("trak", concat(box("tkhd", videoTrackHeader), mediaBox("vide", "avc1"))),
+                box("trak", concat(box("tkhd", new byte[84]), mediaBox("soun", "mp4a")))));
+    }
+
+    static byte[] mediaBox(String handlerType, String sampleEntryType) {
+        byte[] handler = ByteBuffer.allocate(25).putInt(0).putInt(0).put(ascii(handlerType)).array();
+        byte[] sampleDescription = ByteBuffer.allocate(24).putInt(0).putInt(1).putInt(16).put(ascii(sampleEntryType)).array();
+        return box("mdia", concat(box("hdlr", handler), box("minf", box("stbl", box("stsd", sampleDescription)))));
+    }
+
+    static byte[] box(String type, byte[] body) {
+        return ByteBuffer.allocate(8 + body.length).putInt(8 + body.length).put(ascii(type)).put(body).array();
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            outputStream.writeBytes(part);
+        }
+        return outputStream.toByteArray();
+    }
+
+    static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}